@@ -0,0 +1,96 @@
+package com.soulw.common.nameserver.benchmark;
+
+import com.google.common.collect.Lists;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.client.Role;
+import com.soulw.common.nameserver.domain.context.model.Context;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import com.soulw.common.nameserver.domain.registry.Registry;
+import com.soulw.common.nameserver.domain.registry.store.HeapClientStore;
+import com.soulw.common.nameserver.domain.registry.store.OffHeapClientStore;
+
+import java.util.List;
+
+/**
+ * 基准测试公共数据
+ *
+ * @author SoulW
+ * @since 2024/3/26 10:00
+ */
+final class BenchmarkSupport {
+    static final String CLUSTER = "benchCluster";
+    static final int GROUPS = 16;
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 构造不启动后台任务的上下文，节点自身已注册为主节点
+     *
+     * @param store   客户端存储，heap或offHeap
+     * @param nodes   集群节点数
+     * @param clients 注册的客户端数
+     * @return 上下文
+     */
+    static Context newContext(String store, int nodes, int clients) {
+        SystemConfig systemConfig = new SystemConfig();
+        systemConfig.setClientStore(store);
+        systemConfig.setPort(8080);
+        List<SystemConfig.Node> configNodes = Lists.newArrayList();
+        for (int i = 0; i < nodes; i++) {
+            configNodes.add(new SystemConfig.Node().setIp("127.0.0.1").setPort(8080 + i));
+        }
+        systemConfig.setNodes(configNodes);
+
+        Context context = new Context();
+        context.setSystemConfig(systemConfig);
+        context.setRegistry(new Registry(systemConfig.getClientExpireTime(), systemConfig.getExpireTickTime(),
+                systemConfig.getChangeLogSize(), systemConfig.isOffHeapStore() ? new OffHeapClientStore()
+                : new HeapClientStore()));
+        context.setClusterName(systemConfig.getCluster());
+        context.setGroupName(systemConfig.getClientGroup());
+        context.setClientName(ClientConfig.calculateClientName(systemConfig.getIp(), systemConfig.getPort()));
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < nodes; i++) {
+            Role role = i == 0 ? Role.MASTER : Role.SLAVE;
+            context.getRegistry().put(new ClientConfig().setIp("127.0.0.1")
+                    .setPort(8080 + i)
+                    .setRole(role.name())
+                    .setClusterName(systemConfig.getCluster())
+                    .setGroupName(systemConfig.getClientGroup())
+                    .setHeartbeatTime(now));
+        }
+        for (Heartbeat heartbeat : newHeartbeats(clients)) {
+            ClientConfig client = heartbeat.getClientConfig();
+            context.getRegistry().put(new ClientConfig().setIp(client.getIp())
+                    .setPort(client.getPort())
+                    .setRole(client.getRole())
+                    .setClusterName(heartbeat.getCluster())
+                    .setGroupName(heartbeat.getGroupCode())
+                    .setHeartbeatTime(now));
+        }
+        return context;
+    }
+
+    /**
+     * 构造客户端心跳，客户端均匀分布在{@link #GROUPS}个分组中
+     *
+     * @param n 客户端数
+     * @return 心跳
+     */
+    static List<Heartbeat> newHeartbeats(int n) {
+        List<Heartbeat> r = Lists.newArrayListWithCapacity(n);
+        for (int i = 0; i < n; i++) {
+            ClientConfig client = new ClientConfig().setIp(ip(i))
+                    .setPort(20880)
+                    .setRole(Role.SLAVE.name());
+            r.add(new Heartbeat(CLUSTER, "group-" + (i % GROUPS), client));
+        }
+        return r;
+    }
+
+    static String ip(int i) {
+        return "10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF);
+    }
+}
@@ -0,0 +1,36 @@
+package com.soulw.common.nameserver.benchmark;
+
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端名称计算，每次心跳都会调用
+ *
+ * @author SoulW
+ * @since 2024/3/26 11:10
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClientNameBenchmark {
+    private String ip = "10.12.34.56";
+    private Integer port = 20880;
+
+    @Benchmark
+    public String calculateClientName() {
+        return ClientConfig.calculateClientName(ip, port);
+    }
+}
@@ -0,0 +1,61 @@
+package com.soulw.common.nameserver.benchmark;
+
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.model.Context;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 选举、心跳、复制每轮都会调用的上下文查询
+ *
+ * @author SoulW
+ * @since 2024/3/26 11:00
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContextBenchmark {
+    @Param({"3", "7"})
+    private int nodes;
+    @Param({"heap", "offHeap"})
+    private String store;
+
+    private Context context;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkSupport.newContext(store, nodes, 10_000);
+    }
+
+    @Benchmark
+    public List<SystemConfig.Node> getAllNodes() {
+        return context.getAllNodes();
+    }
+
+    @Benchmark
+    public ClientConfig getMaster() {
+        return context.getMaster();
+    }
+
+    @Benchmark
+    public boolean isCurMaster() {
+        return context.isCurMaster();
+    }
+}
@@ -0,0 +1,59 @@
+package com.soulw.common.nameserver.benchmark;
+
+import com.soulw.common.nameserver.domain.context.model.Context;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import com.soulw.common.nameserver.domain.context.service.impl.VoteServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已注册客户端的心跳(刷新心跳时间)，多线程并发
+ *
+ * @author SoulW
+ * @since 2024/3/26 10:20
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class HeartbeatBenchmark {
+    @Param({"heap", "offHeap"})
+    private String store;
+    @Param({"10000", "100000"})
+    private int clients;
+
+    private VoteServiceImpl voteService;
+    private List<Heartbeat> heartbeats;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Context context = BenchmarkSupport.newContext(store, 3, clients);
+        voteService = new VoteServiceImpl();
+        voteService.setSystemConfig(context.getSystemConfig());
+        voteService.setContext(context);
+        heartbeats = BenchmarkSupport.newHeartbeats(clients);
+    }
+
+    @Benchmark
+    public void heartbeat() {
+        voteService.heartbeat(heartbeats.get(ThreadLocalRandom.current().nextInt(clients)));
+    }
+}
@@ -0,0 +1,108 @@
+package com.soulw.common.nameserver.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.soulw.common.nameserver.codec.BinaryCodec;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.model.Context;
+import com.soulw.common.nameserver.dto.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 集群查询：从注册表取客户端并编码为响应体，服务端经Spring MVC使用Jackson，SDK使用Gson，另对比fastjson及二进制编码；
+ * 解码对比节点间请求使用的Gson与二进制编码
+ *
+ * @author SoulW
+ * @since 2024/3/26 10:40
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryClientsCodecBenchmark {
+    private static final Gson GSON = new Gson();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Type CLIENTS_RESULT = new TypeToken<Result<Map<String, ClientConfig>>>() {
+    }.getType();
+
+    @Param({"1000", "10000", "100000"})
+    private int clients;
+    @Param({"heap", "offHeap"})
+    private String store;
+
+    private Context context;
+    private Map<String, ClientConfig> snapshot;
+    private String json;
+    private byte[] binary;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkSupport.newContext(store, 3, clients);
+        snapshot = context.getClients();
+        json = GSON.toJson(Result.success(snapshot));
+        binary = BinaryCodec.encode(Result.success(snapshot), CLIENTS_RESULT);
+        System.out.printf("%n[payload] clients=%s, json=%s bytes, binary=%s bytes%n", clients,
+                json.getBytes(StandardCharsets.UTF_8).length, binary.length);
+    }
+
+    @Benchmark
+    public Map<String, ClientConfig> query() {
+        return context.getClients();
+    }
+
+    @Benchmark
+    public String gson() {
+        return GSON.toJson(Result.success(snapshot));
+    }
+
+    @Benchmark
+    public String fastjson() {
+        return JSON.toJSONString(Result.success(snapshot));
+    }
+
+    @Benchmark
+    public byte[] jackson() throws JsonProcessingException {
+        return MAPPER.writeValueAsBytes(Result.success(snapshot));
+    }
+
+    @Benchmark
+    public byte[] binary() {
+        return BinaryCodec.encode(Result.success(snapshot), CLIENTS_RESULT);
+    }
+
+    @Benchmark
+    public Result<Map<String, ClientConfig>> gsonDecode() {
+        return GSON.fromJson(json, CLIENTS_RESULT);
+    }
+
+    @Benchmark
+    public Result<Map<String, ClientConfig>> binaryDecode() {
+        return BinaryCodec.decode(binary, CLIENTS_RESULT);
+    }
+
+    @Benchmark
+    public byte[] queryAndEncode() throws JsonProcessingException {
+        return MAPPER.writeValueAsBytes(Result.success(context.getClients()));
+    }
+}
@@ -0,0 +1,91 @@
+package com.soulw.common.nameserver.benchmark;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.registry.Registry;
+import com.soulw.common.nameserver.sdk.InstanceSelector;
+import com.soulw.common.nameserver.sdk.LeastOutstandingSelector;
+import com.soulw.common.nameserver.sdk.WeightedRoundRobinSelector;
+import com.soulw.common.nameserver.sdk.ZoneAwareSelector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端选择实例，每次调用都会执行，多线程共享同一个选择器；配合-prof gc确认选择过程不分配对象
+ *
+ * @author SoulW
+ * @since 2024/3/31 17:00
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class SelectorBenchmark {
+    private static final String CLUSTER = "bench";
+    private static final String GROUP = "provider";
+    private static final int PORT = 20880;
+
+    @Param({"roundRobin", "leastOutstanding", "zoneAware"})
+    private String selector;
+    @Param({"10", "1000"})
+    private int instances;
+
+    private InstanceSelector instanceSelector;
+    private List<ClientConfig> list;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // 实例经注册表心跳登记后再查询，权重、可用区来自心跳携带的扩展信息
+        Registry registry = new Registry();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < instances; i++) {
+            String ip = "10.0." + i / 250 + "." + i % 250;
+            Map<String, Object> ext = Maps.newHashMap();
+            ext.put(InstanceSelector.WEIGHT, 50 + i % 4 * 50);
+            ext.put(InstanceSelector.ZONE, "zone" + i % 3);
+            registry.heartbeat(CLUSTER, GROUP, ClientConfig.calculateClientName(ip, PORT), ext,
+                    e -> new ClientConfig().setClientName(e).setIp(ip).setPort(PORT), now);
+        }
+        list = ImmutableList.copyOf(registry.query(CLUSTER, GROUP).values());
+        Preconditions.checkState(list.size() == instances && Objects.nonNull(InstanceSelector.zone(list.get(0))),
+                "instances registered without ext");
+        switch (selector) {
+            case "roundRobin":
+                instanceSelector = new WeightedRoundRobinSelector();
+                break;
+            case "leastOutstanding":
+                instanceSelector = new LeastOutstandingSelector();
+                break;
+            default:
+                instanceSelector = new ZoneAwareSelector("zone0", 1, new LeastOutstandingSelector());
+        }
+    }
+
+    @Benchmark
+    public ClientConfig selectAndRelease() {
+        ClientConfig instance = instanceSelector.select(list);
+        instanceSelector.release(instance);
+        return instance;
+    }
+}
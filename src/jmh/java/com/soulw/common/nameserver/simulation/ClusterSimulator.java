@@ -0,0 +1,401 @@
+package com.soulw.common.nameserver.simulation;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.model.Context;
+import com.soulw.common.nameserver.domain.context.service.impl.VoteServiceImpl;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内集群仿真，在同一进程中启动N个CP模式节点，经{@link SimulatedNetwork}互联，
+ * 每轮冷启动后随机注入一种故障，统计选主耗时、全部节点收敛耗时及双主次数
+ * <p>
+ * 故障场景：
+ * <ul>
+ *     <li>kill：主节点宕机，统计其余节点重新选主及收敛耗时</li>
+ *     <li>partition：主节点被隔离到少数派，统计多数派选主耗时；恢复后统计全部节点收敛耗时</li>
+ *     <li>lossy：链路丢包并增加延迟，统计期间主节点变更次数；恢复后统计收敛耗时</li>
+ * </ul>
+ * 双主指同一时刻有多个存活节点认为自己是主节点，网络隔离的旧主节点在恢复前不会主动降级，属预期行为；
+ * 同任期双主违反选举安全性，应始终为0，连续两次采样都出现才计入。
+ * <p>
+ * 使用真实时钟，节点的选举超时、心跳等间隔按比例压缩，结果受机器负载影响，对比时应使用相同参数。
+ * 参数以key=value传入：runs、nodes、scenarios(逗号分隔)、electionTimeout(ms)、latency(单程最大延迟ms)、
+ * loss(lossy场景丢包率)、phaseTimeout(ms)、seed、log(日志级别，默认off)
+ *
+ * @author SoulW
+ * @since 2024/3/27 11:00
+ */
+public class ClusterSimulator {
+    private static final long POLL_INTERVAL = 2L;
+    private static final int BASE_PORT = 9000;
+
+    private final int nodeCount;
+    private final long electionTimeout;
+    private final long latency;
+    private final double lossRate;
+    private final long phaseTimeout;
+    private final List<String> scenarios;
+    private final Random random;
+    private final Map<String, Stats> stats = Maps.newLinkedHashMap();
+    private int dualLeaderRuns;
+    private int sameTermLeaderRuns;
+    private long messages;
+    private long dropped;
+
+    public ClusterSimulator(Map<String, String> options) {
+        this.nodeCount = Integer.parseInt(options.getOrDefault("nodes", "3"));
+        this.electionTimeout = Long.parseLong(options.getOrDefault("electionTimeout", "150"));
+        this.latency = Long.parseLong(options.getOrDefault("latency", "2"));
+        this.lossRate = Double.parseDouble(options.getOrDefault("loss", "0.2"));
+        this.phaseTimeout = Long.parseLong(options.getOrDefault("phaseTimeout", String.valueOf(electionTimeout * 20)));
+        this.scenarios = Lists.newArrayList(options.getOrDefault("scenarios", "kill,partition,lossy").split(","));
+        this.random = new Random(Long.parseLong(options.getOrDefault("seed", String.valueOf(System.nanoTime()))));
+        if (nodeCount < 3) {
+            throw new IllegalArgumentException("nodes must be >= 3");
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = Maps.newHashMap();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index > 0) {
+                options.put(arg.substring(0, index), arg.substring(index + 1));
+            }
+        }
+        // 须在加载任何节点类之前设置，故障注入期间节点会大量打印错误日志
+        if (Objects.isNull(System.getProperty("sweet.level"))) {
+            System.setProperty("sweet.level", options.getOrDefault("log", "off"));
+        }
+        int runs = Integer.parseInt(options.getOrDefault("runs", "100"));
+        ClusterSimulator simulator = new ClusterSimulator(options);
+        long begin = System.currentTimeMillis();
+        for (int i = 1; i <= runs; i++) {
+            simulator.runOnce();
+            if (i % 50 == 0 || i == runs) {
+                System.out.printf("progress %d/%d, elapsed=%ds%n", i, runs, (System.currentTimeMillis() - begin) / 1000);
+            }
+        }
+        simulator.report(runs);
+        System.exit(0);
+    }
+
+    /**
+     * 执行一轮：冷启动选主，随机注入一种故障，恢复后关闭全部节点
+     */
+    public void runOnce() {
+        SimCluster cluster = new SimCluster();
+        try {
+            cluster.start();
+            Observation cold = cluster.await(cluster.nodes, null, phaseTimeout);
+            record("coldStart", cold);
+            if (Objects.isNull(cold.leader)) {
+                return;
+            }
+            String scenario = scenarios.get(random.nextInt(scenarios.size())).trim();
+            switch (scenario) {
+                case "kill":
+                    cluster.network.kill(cold.leader);
+                    record("kill.failover", cluster.await(cluster.aliveNodes(), cold.leader, phaseTimeout));
+                    break;
+                case "partition":
+                    List<SystemConfig.Node> majority = Lists.newArrayList(cluster.nodes);
+                    majority.remove(cold.leader);
+                    Collections.shuffle(majority, random);
+                    List<SystemConfig.Node> minority = Lists.newArrayList(cold.leader);
+                    while (minority.size() < (nodeCount - 1) / 2) {
+                        minority.add(majority.remove(0));
+                    }
+                    cluster.network.partition(Lists.newArrayList(majority, minority));
+                    record("partition.failover", cluster.await(majority, cold.leader, phaseTimeout));
+                    cluster.network.heal();
+                    recordConverge("partition.heal", cluster.await(cluster.nodes, null, phaseTimeout));
+                    break;
+                case "lossy":
+                    cluster.network.setLossRate(lossRate);
+                    cluster.network.setLatency(latency, latency * 5);
+                    Observation lossy = cluster.hold(electionTimeout * 10);
+                    stats("lossy.leaderChanges").values.add(lossy.leaderChanges);
+                    cluster.network.heal();
+                    recordConverge("lossy.heal", cluster.await(cluster.nodes, null, phaseTimeout));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown scenario: " + scenario);
+            }
+        } finally {
+            cluster.close();
+            if (cluster.dualLeader) {
+                dualLeaderRuns++;
+            }
+            if (cluster.sameTermLeader) {
+                sameTermLeaderRuns++;
+            }
+            messages += cluster.network.getSent();
+            dropped += cluster.network.getDropped();
+        }
+    }
+
+    /**
+     * 打印各阶段耗时分布(ms)
+     *
+     * @param runs 轮数
+     */
+    public void report(int runs) {
+        System.out.printf("%nnodes=%d, runs=%d, electionTimeout=%dms, latency=%dms, loss=%.2f, messages=%d, dropped=%d%n",
+                nodeCount, runs, electionTimeout, latency, lossRate, messages, dropped);
+        System.out.printf("%-26s %8s %8s %8s %8s %8s %8s %8s%n", "phase", "count", "timeout", "mean", "p50", "p90",
+                "p99", "max");
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            entry.getValue().print(entry.getKey());
+        }
+        System.out.printf("%nruns with dual leaders: %d, runs with same-term dual leaders: %d%n", dualLeaderRuns,
+                sameTermLeaderRuns);
+    }
+
+    private void record(String phase, Observation observation) {
+        Stats elect = stats(phase + ".elect");
+        if (observation.electTime >= 0) {
+            elect.values.add(observation.electTime);
+        } else {
+            elect.timeouts++;
+        }
+        recordConverge(phase, observation);
+    }
+
+    /**
+     * 恢复阶段已有主节点，只统计收敛耗时
+     */
+    private void recordConverge(String phase, Observation observation) {
+        Stats converge = stats(phase + ".converge");
+        if (observation.convergeTime >= 0) {
+            converge.values.add(observation.convergeTime);
+        } else {
+            converge.timeouts++;
+        }
+    }
+
+    private Stats stats(String name) {
+        return stats.computeIfAbsent(name, e -> new Stats());
+    }
+
+    /**
+     * 一轮仿真中的集群
+     *
+     * @author SoulW
+     */
+    private class SimCluster {
+        private final SimulatedNetwork network = new SimulatedNetwork(electionTimeout);
+        private final List<SystemConfig.Node> nodes = Lists.newArrayList();
+        private final Map<SystemConfig.Node, VoteServiceImpl> services = Maps.newHashMap();
+        private boolean dualLeader;
+        private boolean sameTermLeader;
+        /**
+         * 上次采样是否出现同任期双主，连续两次采样都出现才计入，排除节点处理主节点同步过程中的中间状态
+         */
+        private boolean sameTermSampled;
+
+        private SimCluster() {
+            for (int i = 0; i < nodeCount; i++) {
+                nodes.add(new SystemConfig.Node().setIp("127.0.0.1").setPort(BASE_PORT + i));
+            }
+        }
+
+        private void start() {
+            for (SystemConfig.Node node : nodes) {
+                SystemConfig config = new SystemConfig();
+                config.setIp(node.getIp());
+                config.setPort(node.getPort());
+                config.setNodes(nodes);
+                config.setElectionTimeout(electionTimeout);
+                config.setElectionTickTime(Math.max(1L, electionTimeout / 30));
+                config.setHeartbeatTime(electionTimeout / 3);
+                config.setVoteTimeout(electionTimeout * 2 / 3);
+                config.setClusterSyncTime(electionTimeout * 2 / 3);
+                config.setClientExpireTime(electionTimeout * 4);
+                config.setExpireTickTime(electionTimeout / 3);
+                VoteServiceImpl service = new VoteServiceImpl();
+                service.setSystemConfig(config);
+                service.setVoteGateway(new InMemoryVoteGateway(node, network));
+                service.setShard(0);
+                services.put(node, service);
+                network.register(node, service);
+            }
+            services.values().forEach(VoteServiceImpl::init);
+        }
+
+        private List<SystemConfig.Node> aliveNodes() {
+            List<SystemConfig.Node> r = Lists.newArrayList();
+            for (SystemConfig.Node node : nodes) {
+                if (network.isAlive(node)) {
+                    r.add(node);
+                }
+            }
+            return r;
+        }
+
+        /**
+         * 等待范围内的节点选出主节点且全部跟随该主节点
+         *
+         * @param scope    统计范围
+         * @param excluded 不计入的旧主节点
+         * @param timeout  超时(ms)
+         * @return 观测结果，超时的阶段耗时为-1
+         */
+        private Observation await(Collection<SystemConfig.Node> scope, SystemConfig.Node excluded, long timeout) {
+            Observation r = new Observation();
+            long begin = System.nanoTime();
+            long elapsed;
+            while ((elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin)) < timeout) {
+                sample(r);
+                List<SystemConfig.Node> leaders = Lists.newArrayList();
+                for (SystemConfig.Node node : scope) {
+                    if (!Objects.equals(node, excluded) && isLeader(node)) {
+                        leaders.add(node);
+                    }
+                }
+                if (!leaders.isEmpty() && r.electTime < 0) {
+                    r.electTime = elapsed;
+                }
+                if (leaders.size() == 1 && isFollowing(scope, leaders.get(0))) {
+                    r.convergeTime = elapsed;
+                    r.leader = leaders.get(0);
+                    return r;
+                }
+                sleep();
+            }
+            return r;
+        }
+
+        /**
+         * 保持当前网络状态一段时间，期间持续采样
+         *
+         * @param duration 时长(ms)
+         * @return 观测结果
+         */
+        private Observation hold(long duration) {
+            Observation r = new Observation();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+            while (System.nanoTime() < deadline) {
+                sample(r);
+                sleep();
+            }
+            return r;
+        }
+
+        /**
+         * 采样全部存活节点的主节点状态，记录双主及主节点变更
+         */
+        private void sample(Observation r) {
+            Map<Long/** term */, Integer> terms = Maps.newHashMap();
+            int leaders = 0;
+            for (SystemConfig.Node node : nodes) {
+                if (!isLeader(node)) {
+                    continue;
+                }
+                leaders++;
+                long term = services.get(node).getContext().getCurrentTerm();
+                if (terms.merge(term, 1, Integer::sum) > 1 && sameTermSampled) {
+                    sameTermLeader = true;
+                }
+                if (r.seenLeaders.add(node.getPort() + "@" + term) && r.seenLeaders.size() > 1) {
+                    r.leaderChanges++;
+                }
+            }
+            if (leaders > 1) {
+                dualLeader = true;
+            }
+            sameTermSampled = terms.values().stream().anyMatch(e -> e > 1);
+        }
+
+        private boolean isLeader(SystemConfig.Node node) {
+            try {
+                return network.isAlive(node) && services.get(node).getContext().isCurMaster();
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        private boolean isFollowing(Collection<SystemConfig.Node> scope, SystemConfig.Node leader) {
+            String leaderName = ClientConfig.calculateClientName(leader.getIp(), leader.getPort());
+            for (SystemConfig.Node node : scope) {
+                if (!network.isAlive(node)) {
+                    continue;
+                }
+                Context context = services.get(node).getContext();
+                ClientConfig master = context.getMaster();
+                if (context.isVoting() || Objects.isNull(master) || !Objects.equals(leaderName, master.getClientName())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void close() {
+            network.close();
+        }
+    }
+
+    /**
+     * 单阶段观测结果
+     *
+     * @author SoulW
+     */
+    private static class Observation {
+        /**
+         * 首次出现主节点的耗时(ms)
+         */
+        private long electTime = -1;
+        /**
+         * 范围内全部节点跟随同一主节点的耗时(ms)
+         */
+        private long convergeTime = -1;
+        private SystemConfig.Node leader;
+        private final Set<String/** port@term */> seenLeaders = Sets.newHashSet();
+        private long leaderChanges;
+    }
+
+    /**
+     * 耗时分布
+     *
+     * @author SoulW
+     */
+    private static class Stats {
+        private final List<Long> values = Lists.newArrayList();
+        private int timeouts;
+
+        private void print(String name) {
+            Collections.sort(values);
+            double mean = values.stream().mapToLong(Long::longValue).average().orElse(0);
+            System.out.printf("%-26s %8d %8d %8.1f %8d %8d %8d %8d%n", name, values.size(), timeouts, mean,
+                    percentile(0.5), percentile(0.9), percentile(0.99), percentile(1));
+        }
+
+        private long percentile(double p) {
+            if (values.isEmpty()) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * values.size()) - 1;
+            return values.get(Math.max(0, Math.min(index, values.size() - 1)));
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(POLL_INTERVAL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.soulw.common.nameserver.simulation;
+
+import com.google.common.base.Throwables;
+import com.google.gson.reflect.TypeToken;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.gateway.VoteGateway;
+import com.soulw.common.nameserver.domain.context.model.Context;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import com.soulw.common.nameserver.domain.context.model.Vote;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
+import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 进程内节点网关，请求经{@link SimulatedNetwork}直接调用目标节点的{@link com.soulw.common.nameserver.domain.context.service.VoteService}，
+ * 请求构造与{@link com.soulw.common.nameserver.infrastructure.gateway.impl.VoteGatewayImpl}一致，不做熔断
+ *
+ * @author SoulW
+ * @since 2024/3/27 10:30
+ */
+public class InMemoryVoteGateway implements VoteGateway {
+    private static final Type CLIENTS = new TypeToken<Map<String, ClientConfig>>() {
+    }.getType();
+    private static final Type HEARTBEATS = new TypeToken<List<Heartbeat>>() {
+    }.getType();
+    private static final Type ACKS = new TypeToken<List<HeartbeatAck>>() {
+    }.getType();
+
+    private final SystemConfig.Node self;
+    private final SimulatedNetwork network;
+
+    /**
+     * @param self    当前节点
+     * @param network 模拟网络
+     */
+    public InMemoryVoteGateway(SystemConfig.Node self, SimulatedNetwork network) {
+        this.self = self;
+        this.network = network;
+    }
+
+    @Override
+    public void slaveHeartbeat(SystemConfig.Node master, Context context) {
+        await(slaveHeartbeatAsync(master, context));
+    }
+
+    @Override
+    public Map<String, ClientConfig> queryClients(SystemConfig.Node master, QueryClients query) {
+        return await(queryClientsAsync(master, query));
+    }
+
+    @Override
+    public RegistryDelta queryDelta(SystemConfig.Node master, QueryDelta query) {
+        return await(queryDeltaAsync(master, query));
+    }
+
+    @Override
+    public void sendVoteRequest(SystemConfig.Node node, Vote vote) {
+        await(sendVoteRequestAsync(node, vote));
+    }
+
+    @Override
+    public void sendMasterSync(SystemConfig.Node node, Vote vote) {
+        await(sendMasterSyncAsync(node, vote));
+    }
+
+    @Override
+    public CompletableFuture<Void> slaveHeartbeatAsync(SystemConfig.Node master, Context context) {
+        Heartbeat request = new Heartbeat();
+        request.setCluster(context.getClusterName());
+        request.setGroupCode(context.getGroupName());
+        request.setShard(context.getShard());
+        SystemConfig config = context.getSystemConfig();
+        request.setClientConfig(new ClientConfig().setIp(config.getIp())
+                .setPort(config.getPort()));
+        return heartbeatAsync(master, request);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, ClientConfig>> queryClientsAsync(SystemConfig.Node node, QueryClients query) {
+        return network.send(self, node, query, QueryClients.class, CLIENTS, (service, r) -> service.queryClients(r));
+    }
+
+    @Override
+    public CompletableFuture<Void> heartbeatAsync(SystemConfig.Node node, Heartbeat heartbeat) {
+        return network.send(self, node, heartbeat, Heartbeat.class, null, (service, r) -> {
+            service.heartbeat(r);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<HeartbeatAck>> batchHeartbeatAsync(SystemConfig.Node node, List<Heartbeat> heartbeats) {
+        return network.send(self, node, heartbeats, HEARTBEATS, ACKS, (service, r) -> service.batchHeartbeat(r));
+    }
+
+    @Override
+    public CompletableFuture<Lease> grantLeaseAsync(SystemConfig.Node node, LeaseGrant grant) {
+        return network.send(self, node, grant, LeaseGrant.class, Lease.class, (service, r) -> service.grantLease(r));
+    }
+
+    @Override
+    public CompletableFuture<long[]> keepaliveAsync(SystemConfig.Node node, LeaseKeepalive request) {
+        return network.send(self, node, request, LeaseKeepalive.class, long[].class, (service, r) -> service.keepalive(r));
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeLeaseAsync(SystemConfig.Node node, Lease lease) {
+        return network.send(self, node, lease, Lease.class, null, (service, r) -> {
+            service.revokeLease(r);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<RegistryDelta> queryDeltaAsync(SystemConfig.Node master, QueryDelta query) {
+        return network.send(self, master, query, QueryDelta.class, RegistryDelta.class,
+                (service, r) -> service.queryDelta(r));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendVoteRequestAsync(SystemConfig.Node node, Vote vote) {
+        return network.send(self, node, vote, Vote.class, null, (service, r) -> {
+            service.accept(r);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> sendMasterSyncAsync(SystemConfig.Node node, Vote vote) {
+        return network.send(self, node, vote, Vote.class, null, (service, r) -> {
+            service.masterSync(r);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<QueryDelta> replicateAsync(SystemConfig.Node node, ReplicationBatch batch) {
+        return network.send(self, node, batch, ReplicationBatch.class, QueryDelta.class,
+                (service, r) -> service.replicate(r));
+    }
+
+    @Override
+    public CompletableFuture<Void> gossipAsync(SystemConfig.Node node, GossipMessage message) {
+        return network.send(self, node, message, GossipMessage.class, null, (service, r) -> {
+            service.gossip(r);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<GossipDiff> digestAsync(SystemConfig.Node node, GossipDigest digest) {
+        return network.send(self, node, digest, GossipDigest.class, GossipDiff.class,
+                (service, r) -> service.digest(r));
+    }
+
+    @Override
+    public boolean isAvailable(SystemConfig.Node node) {
+        return true;
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = Objects.isNull(e.getCause()) ? e : e.getCause();
+            Throwables.throwIfUnchecked(cause);
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+}
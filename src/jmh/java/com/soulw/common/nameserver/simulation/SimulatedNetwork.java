@@ -0,0 +1,223 @@
+package com.soulw.common.nameserver.simulation;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.context.service.impl.VoteServiceImpl;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内模拟网络，节点间请求经过延迟、丢包、分区和宕机注入后直接调用目标节点
+ * <p>
+ * 请求和响应各为一段链路，分别计算延迟和丢包；丢弃的请求在超时时间后失败，与真实网络的连接超时一致。
+ * 请求和响应经过序列化复制，节点之间不共享对象
+ *
+ * @author SoulW
+ * @since 2024/3/27 10:00
+ */
+public class SimulatedNetwork {
+    private static final Gson GSON = new Gson();
+
+    private final Map<SystemConfig.Node, VoteServiceImpl> nodes = Maps.newConcurrentMap();
+    private final Set<SystemConfig.Node> killed = Sets.newConcurrentHashSet();
+    private final Map<SystemConfig.Node, Integer/** partitionId */> partitions = Maps.newConcurrentMap();
+    /**
+     * 链路延迟，分发和处理由线程池完成
+     */
+    private final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(2,
+            VoteServiceImpl.buildThreadFactory("simNetTimer-%s"));
+    /**
+     * 处理线程不设上限，主节点同步等处理过程会同步回调其他节点
+     */
+    private final ExecutorService handlers = Executors.newCachedThreadPool(
+            VoteServiceImpl.buildThreadFactory("simNetHandler-%s"));
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long minLatency;
+    private volatile long maxLatency;
+    private volatile double lossRate;
+    private final long timeout;
+
+    /**
+     * @param timeout 请求被丢弃或目标不可达时的失败时间(ms)
+     */
+    public SimulatedNetwork(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public void register(SystemConfig.Node node, VoteServiceImpl service) {
+        nodes.put(node, service);
+        killed.remove(node);
+    }
+
+    /**
+     * 宕机，之后发往该节点的请求均超时
+     *
+     * @param node 节点
+     */
+    public void kill(SystemConfig.Node node) {
+        killed.add(node);
+        VoteServiceImpl service = nodes.remove(node);
+        if (Objects.nonNull(service)) {
+            service.destroy();
+        }
+    }
+
+    public boolean isAlive(SystemConfig.Node node) {
+        return !killed.contains(node) && nodes.containsKey(node);
+    }
+
+    /**
+     * 按分组划分网络，不同分组之间不可达，未列出的节点归入第一个分组
+     *
+     * @param groups 分组
+     */
+    public void partition(Collection<? extends Collection<SystemConfig.Node>> groups) {
+        partitions.clear();
+        int id = 0;
+        for (Collection<SystemConfig.Node> group : groups) {
+            for (SystemConfig.Node node : group) {
+                partitions.put(node, id);
+            }
+            id++;
+        }
+    }
+
+    /**
+     * 恢复分区及链路质量
+     */
+    public void heal() {
+        partitions.clear();
+        setLatency(0, 0);
+        setLossRate(0);
+    }
+
+    public void setLatency(long min, long max) {
+        this.minLatency = min;
+        this.maxLatency = Math.max(min, max);
+    }
+
+    public void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    public boolean isReachable(SystemConfig.Node from, SystemConfig.Node to) {
+        return isAlive(to) && Objects.equals(partitions.getOrDefault(from, 0), partitions.getOrDefault(to, 0));
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * 发送请求
+     *
+     * @param from         发送节点
+     * @param to           目标节点
+     * @param request      请求，复制后交给目标节点
+     * @param requestType  请求类型
+     * @param responseType 响应类型，为null时不复制响应
+     * @param handler      目标节点的处理方法
+     * @return 响应
+     */
+    public <Q, R> CompletableFuture<R> send(SystemConfig.Node from, SystemConfig.Node to, Q request, Type requestType,
+                                            Type responseType, BiHandler<Q, R> handler) {
+        sent.incrementAndGet();
+        CompletableFuture<R> r = new CompletableFuture<>();
+        String content = GSON.toJson(request, requestType);
+        if (isDropped(from, to)) {
+            fail(r, "request dropped, " + from + " -> " + to);
+            return r;
+        }
+        delay(() -> handlers.execute(() -> {
+            VoteServiceImpl service = nodes.get(to);
+            if (Objects.isNull(service) || !isReachable(from, to)) {
+                fail(r, "unreachable, " + from + " -> " + to);
+                return;
+            }
+            R response;
+            try {
+                response = handler.apply(service, GSON.fromJson(content, requestType));
+            } catch (Exception e) {
+                delay(() -> r.completeExceptionally(new RuntimeException(e.getMessage(), e)));
+                return;
+            }
+            if (isDropped(to, from)) {
+                fail(r, "response dropped, " + to + " -> " + from);
+                return;
+            }
+            R copy = Objects.isNull(responseType) || Objects.isNull(response) ? response
+                    : GSON.fromJson(GSON.toJson(response, responseType), responseType);
+            delay(() -> r.complete(copy));
+        }));
+        return r;
+    }
+
+    /**
+     * 关闭网络线程，须在全部节点关闭后调用
+     */
+    public void close() {
+        nodes.keySet().forEach(this::kill);
+        timer.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    private boolean isDropped(SystemConfig.Node from, SystemConfig.Node to) {
+        if (!isReachable(from, to) || (lossRate > 0 && ThreadLocalRandom.current().nextDouble() < lossRate)) {
+            dropped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void fail(CompletableFuture<?> r, String msg) {
+        schedule(() -> r.completeExceptionally(new RuntimeException(msg)), timeout);
+    }
+
+    private void delay(Runnable task) {
+        long min = minLatency;
+        long max = maxLatency;
+        long latency = max > min ? ThreadLocalRandom.current().nextLong(min, max + 1) : min;
+        if (latency <= 0) {
+            task.run();
+            return;
+        }
+        schedule(task, latency);
+    }
+
+    private void schedule(Runnable task, long delay) {
+        try {
+            timer.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (Exception ignored) {
+            // 网络已关闭
+        }
+    }
+
+    /**
+     * 目标节点的处理方法
+     *
+     * @author SoulW
+     */
+    @FunctionalInterface
+    public interface BiHandler<Q, R> {
+        R apply(VoteServiceImpl service, Q request);
+    }
+}
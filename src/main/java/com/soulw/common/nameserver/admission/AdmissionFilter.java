@@ -0,0 +1,171 @@
+package com.soulw.common.nameserver.admission;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.dto.Result;
+import com.soulw.common.nameserver.metrics.NameServerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 准入控制，按接口把请求分为三条通道，避免客户端请求洪峰占满servlet线程导致选举请求排队、选举超时
+ * <ul>
+ *     <li>控制通道：投票、主节点同步、复制、传播、增量同步，以及其它节点发来的请求(转发的心跳、租约，
+ *     从节点心跳)，总是放行</li>
+ *     <li>心跳通道：心跳、租约，按客户端限流，并与查询通道共享并发上限</li>
+ *     <li>查询通道：集群查询、增量、监听，按客户端限流，只能使用部分并发上限，过载时先于心跳被拒绝</li>
+ * </ul>
+ * 并发上限为servlet最大线程数减去为控制通道预留的线程数；被拒绝的请求返回429及Retry-After。
+ * 节点间请求通过{@link #PEER_HEADER}携带发送方地址，该地址须为配置的节点且与连接来源IP一致
+ *
+ * @author SoulW
+ * @since 2024/3/29 10:30
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AdmissionFilter extends OncePerRequestFilter {
+    /**
+     * 节点间请求的发送方地址(ip:port)
+     */
+    public static final String PEER_HEADER = "X-NS-Peer";
+    private static final String PATH_PREFIX = "/vote/";
+    private static final String LANE_HEARTBEAT = "heartbeat";
+    private static final String LANE_QUERY = "query";
+    private static final Set<String> CONTROL_PATHS = ImmutableSet.of("/vote/accept", "/vote/master/sync",
+            "/vote/replicate", "/vote/gossip", "/vote/gossip/digest", "/vote/clusters/delta");
+    private static final Set<String> HEARTBEAT_PATHS = ImmutableSet.of("/vote/heartbeat", "/vote/heartbeat/batch",
+            "/vote/lease/grant", "/vote/lease/keepalive", "/vote/lease/keepalive/shard", "/vote/lease/revoke");
+    private static final byte[] REJECTED_BODY = JSON.toJSONBytes(Result.failed("too many requests")
+            .setCode(HttpStatus.TOO_MANY_REQUESTS.value()));
+
+    @Resource
+    private SystemConfig systemConfig;
+    @Resource
+    private ServerProperties serverProperties;
+    @Resource
+    private NameServerMetrics metrics;
+    /**
+     * 心跳、查询通道当前在处理的请求数
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * 配置的节点地址(ip:port)
+     */
+    private Set<String> peers;
+    private ClientRateLimiter rateLimiter;
+    private int heartbeatLimit;
+    private int queryLimit;
+    private Counter heartbeatRateLimited;
+    private Counter heartbeatOverloaded;
+    private Counter queryRateLimited;
+    private Counter queryOverloaded;
+
+    @PostConstruct
+    public void init() {
+        int maxThreads = serverProperties.getTomcat().getThreads().getMax();
+        heartbeatLimit = maxThreads - systemConfig.getAdmissionReservedThreads();
+        Preconditions.checkState(heartbeatLimit > 0, "admissionReservedThreads must be less than max threads "
+                + maxThreads);
+        queryLimit = Math.max(1, heartbeatLimit * systemConfig.getAdmissionQueryPercent() / 100);
+        Set<String> addrs = Sets.newHashSet();
+        if (Objects.nonNull(systemConfig.getNodes())) {
+            for (SystemConfig.Node node : systemConfig.getNodes()) {
+                addrs.add(node.getIp() + ":" + node.getPort());
+            }
+        }
+        peers = addrs;
+        if (systemConfig.getAdmissionClientRate() > 0) {
+            rateLimiter = new ClientRateLimiter(systemConfig.getAdmissionClientRate(),
+                    systemConfig.getAdmissionClientBurst(), systemConfig.getAdmissionMaxClients());
+        }
+
+        MeterRegistry registry = metrics.getRegistry();
+        Gauge.builder("ns.admission.inflight", inFlight, AtomicInteger::get).register(registry);
+        heartbeatRateLimited = rejected(registry, LANE_HEARTBEAT, "rateLimited");
+        heartbeatOverloaded = rejected(registry, LANE_HEARTBEAT, "overloaded");
+        queryRateLimited = rejected(registry, LANE_QUERY, "rateLimited");
+        queryOverloaded = rejected(registry, LANE_QUERY, "overloaded");
+        log.info("admission control, maxThreads={}, heartbeatLimit={}, queryLimit={}, clientRate={}", maxThreads,
+                heartbeatLimit, queryLimit, systemConfig.getAdmissionClientRate());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return !path.startsWith(PATH_PREFIX) || CONTROL_PATHS.contains(path) || isPeer(request);
+    }
+
+    /**
+     * 判断是否为其它节点发来的请求，只看请求头时客户端可伪造以绕过准入，须同时校验连接来源
+     */
+    private boolean isPeer(HttpServletRequest request) {
+        String peer = request.getHeader(PEER_HEADER);
+        return Objects.nonNull(peer) && peers.contains(peer) && peer.startsWith(request.getRemoteAddr() + ":");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        boolean heartbeat = HEARTBEAT_PATHS.contains(request.getRequestURI());
+        if (Objects.nonNull(rateLimiter)) {
+            long wait = rateLimiter.tryAcquire(request.getRemoteAddr());
+            if (wait > 0) {
+                (heartbeat ? heartbeatRateLimited : queryRateLimited).increment();
+                reject(response, TimeUnit.NANOSECONDS.toSeconds(wait) + 1);
+                return;
+            }
+        }
+        if (inFlight.incrementAndGet() > (heartbeat ? heartbeatLimit : queryLimit)) {
+            inFlight.decrementAndGet();
+            (heartbeat ? heartbeatOverloaded : queryOverloaded).increment();
+            reject(response, systemConfig.getAdmissionRetryAfter());
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void reject(HttpServletResponse response, long retryAfter) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(REJECTED_BODY.length);
+        response.getOutputStream().write(REJECTED_BODY);
+    }
+
+    private static Counter rejected(MeterRegistry registry, String lane, String reason) {
+        return Counter.builder("ns.admission.rejected")
+                .tag("lane", lane)
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
@@ -0,0 +1,75 @@
+package com.soulw.common.nameserver.admission;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按客户端限流，每个客户端一个令牌桶
+ * <p>
+ * 令牌桶以GCRA实现：只保存下一个请求的理论到达时间，判断和更新为一次CAS，不加锁；
+ * 长时间无请求的客户端从缓存中淘汰
+ *
+ * @author SoulW
+ * @since 2024/3/29 10:00
+ */
+public class ClientRateLimiter {
+    private static final long IDLE_EXPIRE_TIME = 60_000L;
+
+    /**
+     * 每个请求占用的时间(ns)
+     */
+    private final long interval;
+    /**
+     * 理论到达时间最多可超前当前时间多少(ns)，对应突发量
+     */
+    private final long tolerance;
+    private final Cache<String/** client */, AtomicLong/** 理论到达时间 */> buckets;
+
+    /**
+     * @param rate       每个客户端每秒允许的请求数
+     * @param burst      每个客户端允许的突发请求数
+     * @param maxClients 最多跟踪的客户端数
+     */
+    public ClientRateLimiter(int rate, int burst, int maxClients) {
+        Preconditions.checkArgument(rate > 0, "rate must be positive");
+        Preconditions.checkArgument(burst >= 1, "burst must be positive");
+        this.interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        this.tolerance = interval * (burst - 1);
+        this.buckets = CacheBuilder.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(IDLE_EXPIRE_TIME, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 尝试放行一个请求
+     *
+     * @param client 客户端标识
+     * @return 放行返回0，否则返回需等待的时间(ns)
+     */
+    public long tryAcquire(String client) {
+        AtomicLong tat;
+        try {
+            tat = buckets.get(client, () -> new AtomicLong(System.nanoTime()));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        long now = System.nanoTime();
+        while (true) {
+            long cur = tat.get();
+            long base = cur - now > 0 ? cur : now;
+            long wait = base - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (tat.compareAndSet(cur, base + interval)) {
+                return 0;
+            }
+        }
+    }
+}
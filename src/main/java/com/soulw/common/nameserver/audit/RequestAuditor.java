@@ -0,0 +1,203 @@
+package com.soulw.common.nameserver.audit;
+
+import com.alibaba.fastjson.JSON;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.context.service.impl.VoteServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求审计，服务端接口及节点间请求完成后发布一条事件到环形队列，由单独线程写入RPC日志
+ * <p>
+ * 请求线程只做采样判断并填充预分配的事件，不序列化、不取调用栈；
+ * 失败或慢请求全部记录并输出完整请求和响应，成功请求按接口采样只输出摘要。
+ * 队列满时丢弃事件，不阻塞请求线程
+ *
+ * @author SoulW
+ * @since 2024/3/28 15:00
+ */
+@Slf4j(topic = "RPC")
+@Component
+public class RequestAuditor {
+    @Resource
+    private SystemConfig systemConfig;
+    private Disruptor<AuditEvent> disruptor;
+    private RingBuffer<AuditEvent> ringBuffer;
+    private long slowNanos;
+    private final AtomicLong dropped = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        slowNanos = TimeUnit.MILLISECONDS.toNanos(systemConfig.getAuditSlowThreshold());
+        disruptor = new Disruptor<>(AuditEvent::new, systemConfig.getAuditBufferSize(),
+                VoteServiceImpl.buildThreadFactory("requestAudit-%s"), ProducerType.MULTI, new BlockingWaitStrategy());
+        disruptor.handleEventsWith(new AuditHandler());
+        ringBuffer = disruptor.start();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        try {
+            disruptor.shutdown(3, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            disruptor.halt();
+        }
+    }
+
+    /**
+     * 记录服务端接口调用
+     *
+     * @param endpoint   接口
+     * @param startNanos 开始时间，{@link System#nanoTime()}
+     * @param request    请求
+     * @param response   响应
+     * @param error      异常，成功时为null
+     */
+    public void server(String endpoint, long startNanos, Object request, Object response, Throwable error) {
+        publish(endpoint, null, startNanos, request, response, error);
+    }
+
+    /**
+     * 记录节点间请求
+     *
+     * @param path       请求路径
+     * @param peer       目标节点地址
+     * @param startNanos 开始时间，{@link System#nanoTime()}
+     * @param request    请求
+     * @param response   响应
+     * @param error      异常，成功时为null
+     */
+    public void client(String path, String peer, long startNanos, Object request, Object response, Throwable error) {
+        publish(path, peer, startNanos, request, response, error);
+    }
+
+    /**
+     * 因队列满丢弃的事件数
+     *
+     * @return 丢弃数
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private void publish(String endpoint, String peer, long startNanos, Object request, Object response,
+                         Throwable error) {
+        long cost = System.nanoTime() - startNanos;
+        boolean detail = Objects.nonNull(error) || cost >= slowNanos;
+        if (!detail && !isSampled(endpoint)) {
+            return;
+        }
+        long sequence;
+        try {
+            sequence = ringBuffer.tryNext();
+        } catch (InsufficientCapacityException e) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            AuditEvent event = ringBuffer.get(sequence);
+            event.endpoint = endpoint;
+            event.peer = peer;
+            event.timestamp = System.currentTimeMillis();
+            event.costNanos = cost;
+            event.detail = detail;
+            event.request = request;
+            event.response = response;
+            event.error = error;
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+    }
+
+    private boolean isSampled(String endpoint) {
+        Map<String, Integer> rates = systemConfig.getAuditSampleRates();
+        Integer rate = Objects.isNull(rates) ? null : rates.get(endpoint);
+        int n = Objects.isNull(rate) ? systemConfig.getAuditSampleRate() : rate;
+        return n > 0 && (n == 1 || ThreadLocalRandom.current().nextInt(n) == 0);
+    }
+
+    /**
+     * 审计事件，环形队列中预分配并复用
+     *
+     * @author SoulW
+     */
+    private static class AuditEvent {
+        private String endpoint;
+        private String peer;
+        private long timestamp;
+        private long costNanos;
+        private boolean detail;
+        private Object request;
+        private Object response;
+        private Throwable error;
+
+        private void clear() {
+            request = null;
+            response = null;
+            error = null;
+        }
+    }
+
+    /**
+     * 写日志，失败或慢请求输出完整请求和响应
+     *
+     * @author SoulW
+     */
+    private class AuditHandler implements EventHandler<AuditEvent> {
+        private long reportedDropped;
+
+        @Override
+        public void onEvent(AuditEvent event, long sequence, boolean endOfBatch) {
+            try {
+                long costMicros = TimeUnit.NANOSECONDS.toMicros(event.costNanos);
+                if (Objects.nonNull(event.error)) {
+                    log.error("audit endpoint={}, peer={}, time={}, cost={}us, success=false, request={}, response={}, error={}",
+                            event.endpoint, event.peer, event.timestamp, costMicros, toJson(event.request),
+                            toJson(event.response), event.error.getMessage(), event.error);
+                } else if (event.detail) {
+                    log.warn("audit endpoint={}, peer={}, time={}, cost={}us, success=true, slow, request={}, response={}",
+                            event.endpoint, event.peer, event.timestamp, costMicros, toJson(event.request),
+                            toJson(event.response));
+                } else {
+                    log.info("audit endpoint={}, peer={}, time={}, cost={}us, success=true", event.endpoint, event.peer,
+                            event.timestamp, costMicros);
+                }
+                if (endOfBatch && dropped.get() != reportedDropped) {
+                    reportedDropped = dropped.get();
+                    log.warn("audit queue full, dropped={}", reportedDropped);
+                }
+            } catch (Exception e) {
+                log.error("audit failed, endpoint={}", event.endpoint, e);
+            } finally {
+                event.clear();
+            }
+        }
+
+        private String toJson(Object value) {
+            if (Objects.isNull(value) || value instanceof String) {
+                return (String) value;
+            }
+            try {
+                return JSON.toJSONString(value);
+            } catch (Exception e) {
+                return String.valueOf(value);
+            }
+        }
+    }
+}
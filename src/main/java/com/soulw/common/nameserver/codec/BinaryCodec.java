@@ -0,0 +1,590 @@
+package com.soulw.common.nameserver.codec;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.domain.client.BaseModel;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import com.soulw.common.nameserver.domain.context.model.Vote;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
+import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+import com.soulw.common.nameserver.dto.Result;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 节点间及心跳请求的二进制编码，通过Content-Type/Accept为{@link #MEDIA_TYPE}协商，未协商时仍使用JSON
+ * <p>
+ * 对象编码为字段位图加各非空字段，不写字段名；整数为varint，字符串进入字符串表，
+ * 同一消息中重复的ip、集群、分组、角色等只写一次。字段只能在末尾追加，
+ * 解码方遇到未知字段时失败，不兼容的修改需升级{@link #VERSION}
+ * <p>
+ * 支持的类型：已注册的DTO、String、Long、Integer、Boolean、long[]、int[]，
+ * 以及由它们组成的Result、List、键为String的Map
+ *
+ * @author SoulW
+ * @since 2024/3/29 14:30
+ */
+public final class BinaryCodec {
+    /**
+     * 二进制编码的媒体类型
+     */
+    public static final String MEDIA_TYPE = "application/x-ns-binary";
+    /**
+     * 编码版本，写在每条消息的第一个字节
+     */
+    private static final int VERSION = 1;
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_LONG = 2;
+    private static final int TAG_DOUBLE = 3;
+    private static final int TAG_TRUE = 4;
+    private static final int TAG_FALSE = 5;
+    private static final int TAG_JSON = 6;
+
+    private static final ValueCodec<String> STRING = new ValueCodec<String>() {
+        @Override
+        public void write(BinaryWriter out, String value) {
+            out.writeString(value);
+        }
+
+        @Override
+        public String read(BinaryReader in) {
+            return in.readString();
+        }
+    };
+    private static final ValueCodec<Long> LONG = new ValueCodec<Long>() {
+        @Override
+        public void write(BinaryWriter out, Long value) {
+            out.writeZigZag(value);
+        }
+
+        @Override
+        public Long read(BinaryReader in) {
+            return in.readZigZag();
+        }
+    };
+    private static final ValueCodec<Integer> INT = new ValueCodec<Integer>() {
+        @Override
+        public void write(BinaryWriter out, Integer value) {
+            out.writeZigZag(value);
+        }
+
+        @Override
+        public Integer read(BinaryReader in) {
+            return (int) in.readZigZag();
+        }
+    };
+    private static final ValueCodec<Boolean> BOOL = new ValueCodec<Boolean>() {
+        @Override
+        public void write(BinaryWriter out, Boolean value) {
+            out.writeByte(value ? 1 : 0);
+        }
+
+        @Override
+        public Boolean read(BinaryReader in) {
+            return in.readByte() != 0;
+        }
+    };
+    private static final ValueCodec<Object> VOID = new ValueCodec<Object>() {
+        @Override
+        public void write(BinaryWriter out, Object value) {
+        }
+
+        @Override
+        public Object read(BinaryReader in) {
+            return null;
+        }
+    };
+    private static final ValueCodec<long[]> LONG_ARRAY = new ValueCodec<long[]>() {
+        @Override
+        public void write(BinaryWriter out, long[] value) {
+            out.writeVarLong(value.length);
+            for (long v : value) {
+                out.writeZigZag(v);
+            }
+        }
+
+        @Override
+        public long[] read(BinaryReader in) {
+            long[] r = new long[in.readSize()];
+            for (int i = 0; i < r.length; i++) {
+                r[i] = in.readZigZag();
+            }
+            return r;
+        }
+    };
+    private static final ValueCodec<int[]> INT_ARRAY = new ValueCodec<int[]>() {
+        @Override
+        public void write(BinaryWriter out, int[] value) {
+            out.writeVarLong(value.length);
+            for (int v : value) {
+                out.writeZigZag(v);
+            }
+        }
+
+        @Override
+        public int[] read(BinaryReader in) {
+            int[] r = new int[in.readSize()];
+            for (int i = 0; i < r.length; i++) {
+                r[i] = (int) in.readZigZag();
+            }
+            return r;
+        }
+    };
+    /**
+     * 扩展字段，值按类型打标签，非基本类型以JSON字符串传输
+     */
+    private static final ValueCodec<Map<String, Object>> EXT = new ValueCodec<Map<String, Object>>() {
+        @Override
+        public void write(BinaryWriter out, Map<String, Object> value) {
+            out.writeVarLong(value.size());
+            for (Map.Entry<String, Object> e : value.entrySet()) {
+                out.writeString(e.getKey());
+                writeTagged(out, e.getValue());
+            }
+        }
+
+        @Override
+        public Map<String, Object> read(BinaryReader in) {
+            int size = in.readSize();
+            Map<String, Object> r = Maps.newHashMapWithExpectedSize(size);
+            for (int i = 0; i < size; i++) {
+                r.put(in.readString(), readTagged(in));
+            }
+            return r;
+        }
+
+        @Override
+        public boolean isAbsent(Map<String, Object> value) {
+            return Objects.isNull(value) || value.isEmpty();
+        }
+    };
+
+    private static final Schema<ClientConfig> CLIENT_CONFIG = ext(new Schema<>(ClientConfig::new))
+            .field(ClientConfig::getClientName, ClientConfig::setClientName, STRING)
+            .field(ClientConfig::getIp, ClientConfig::setIp, STRING)
+            .field(ClientConfig::getPort, ClientConfig::setPort, INT)
+            .field(ClientConfig::getRole, ClientConfig::setRole, STRING)
+            .field(ClientConfig::getClusterName, ClientConfig::setClusterName, STRING)
+            .field(ClientConfig::getGroupName, ClientConfig::setGroupName, STRING)
+            .field(ClientConfig::getLeaseId, ClientConfig::setLeaseId, LONG)
+            .field(ClientConfig::getHeartbeatTime, ClientConfig::setHeartbeatTime, LONG);
+    private static final Schema<RegistryDelta> REGISTRY_DELTA = new Schema<>(RegistryDelta::new)
+            .field(RegistryDelta::getRegistryId, RegistryDelta::setRegistryId, STRING)
+            .field(RegistryDelta::getRevision, RegistryDelta::setRevision, LONG)
+            .field(RegistryDelta::getFull, RegistryDelta::setFull, BOOL)
+            .field(RegistryDelta::getUpserts, RegistryDelta::setUpserts, map(CLIENT_CONFIG))
+            .field(RegistryDelta::getRemoves, RegistryDelta::setRemoves, list(STRING));
+    private static final Schema<GossipMessage> GOSSIP_MESSAGE = new Schema<>(GossipMessage::new)
+            .field(GossipMessage::getUpserts, GossipMessage::setUpserts, list(CLIENT_CONFIG))
+            .field(GossipMessage::getRemoves, GossipMessage::setRemoves, map(nullable(LONG)))
+            .field(GossipMessage::getShard, GossipMessage::setShard, INT);
+    private static final Schema<Heartbeat> HEARTBEAT = ext(new Schema<>(Heartbeat::new))
+            .field(Heartbeat::getCluster, Heartbeat::setCluster, STRING)
+            .field(Heartbeat::getGroupCode, Heartbeat::setGroupCode, STRING)
+            .field(Heartbeat::getClientConfig, Heartbeat::setClientConfig, CLIENT_CONFIG)
+            .field(Heartbeat::getShard, Heartbeat::setShard, INT);
+    private static final Map<Class<?>, ValueCodec<?>> SCHEMAS = Maps.newHashMap();
+    private static final Map<Type, Optional<ValueCodec<Object>>> CODECS = Maps.newConcurrentMap();
+
+    static {
+        SCHEMAS.put(ClientConfig.class, CLIENT_CONFIG);
+        SCHEMAS.put(RegistryDelta.class, REGISTRY_DELTA);
+        SCHEMAS.put(GossipMessage.class, GOSSIP_MESSAGE);
+        SCHEMAS.put(Heartbeat.class, HEARTBEAT);
+        SCHEMAS.put(Vote.class, ext(new Schema<>(Vote::new))
+                .field(Vote::getVoteId, Vote::setVoteId, STRING)
+                .field(Vote::getBeginClientName, Vote::setBeginClientName, STRING)
+                .field(Vote::getVoteTime, Vote::setVoteTime, LONG)
+                .field(Vote::getTerm, Vote::setTerm, LONG)
+                .field(Vote::getPreVote, Vote::setPreVote, BOOL)
+                .field(Vote::getIp, Vote::setIp, STRING)
+                .field(Vote::getPort, Vote::setPort, INT)
+                .field(Vote::getShard, Vote::setShard, INT));
+        SCHEMAS.put(HeartbeatAck.class, new Schema<>(HeartbeatAck::new)
+                .field(HeartbeatAck::getClientName, HeartbeatAck::setClientName, STRING)
+                .field(HeartbeatAck::getSuccess, HeartbeatAck::setSuccess, BOOL)
+                .field(HeartbeatAck::getMessage, HeartbeatAck::setMessage, STRING));
+        SCHEMAS.put(QueryClients.class, new Schema<>(QueryClients::new)
+                .field(QueryClients::getCluster, QueryClients::setCluster, STRING)
+                .field(QueryClients::getGroupCode, QueryClients::setGroupCode, STRING)
+                .field(QueryClients::getShard, QueryClients::setShard, INT));
+        SCHEMAS.put(QueryDelta.class, new Schema<>(QueryDelta::new)
+                .field(QueryDelta::getRegistryId, QueryDelta::setRegistryId, STRING)
+                .field(QueryDelta::getRevision, QueryDelta::setRevision, LONG)
+                .field(QueryDelta::getShard, QueryDelta::setShard, INT));
+        SCHEMAS.put(ReplicationBatch.class, new Schema<>(ReplicationBatch::new)
+                .field(ReplicationBatch::getTerm, ReplicationBatch::setTerm, LONG)
+                .field(ReplicationBatch::getIp, ReplicationBatch::setIp, STRING)
+                .field(ReplicationBatch::getPort, ReplicationBatch::setPort, INT)
+                .field(ReplicationBatch::getBaseRevision, ReplicationBatch::setBaseRevision, LONG)
+                .field(ReplicationBatch::getDelta, ReplicationBatch::setDelta, REGISTRY_DELTA)
+                .field(ReplicationBatch::getShard, ReplicationBatch::setShard, INT));
+        SCHEMAS.put(GossipDigest.class, new Schema<>(GossipDigest::new)
+                .field(GossipDigest::getRoot, GossipDigest::setRoot, LONG)
+                .field(GossipDigest::getBuckets, GossipDigest::setBuckets, LONG_ARRAY)
+                .field(GossipDigest::getShard, GossipDigest::setShard, INT));
+        SCHEMAS.put(GossipDiff.class, new Schema<>(GossipDiff::new)
+                .field(GossipDiff::getBuckets, GossipDiff::setBuckets, INT_ARRAY)
+                .field(GossipDiff::getMessage, GossipDiff::setMessage, GOSSIP_MESSAGE));
+        SCHEMAS.put(LeaseGrant.class, new Schema<>(LeaseGrant::new)
+                .field(LeaseGrant::getTtl, LeaseGrant::setTtl, LONG)
+                .field(LeaseGrant::getHeartbeats, LeaseGrant::setHeartbeats, list(HEARTBEAT)));
+        SCHEMAS.put(Lease.class, new Schema<>(Lease::new)
+                .field(Lease::getLeaseId, Lease::setLeaseId, LONG)
+                .field(Lease::getTtl, Lease::setTtl, LONG)
+                .field(Lease::getShard, Lease::setShard, INT));
+        SCHEMAS.put(LeaseKeepalive.class, new Schema<>(LeaseKeepalive::new)
+                .field(LeaseKeepalive::getShard, LeaseKeepalive::setShard, INT)
+                .field(LeaseKeepalive::getLeaseIds, LeaseKeepalive::setLeaseIds, LONG_ARRAY));
+        SCHEMAS.put(String.class, STRING);
+        SCHEMAS.put(Long.class, nullable(LONG));
+        SCHEMAS.put(Integer.class, nullable(INT));
+        SCHEMAS.put(Boolean.class, nullable(BOOL));
+        SCHEMAS.put(Void.class, VOID);
+        SCHEMAS.put(long[].class, nullable(LONG_ARRAY));
+        SCHEMAS.put(int[].class, nullable(INT_ARRAY));
+    }
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * 判断类型是否支持二进制编码
+     *
+     * @param type 类型，可为泛型
+     * @return 支持返回true
+     */
+    public static boolean supports(Type type) {
+        return Objects.nonNull(type) && codec(type).isPresent();
+    }
+
+    /**
+     * 编码
+     *
+     * @param value 值
+     * @param type  值的类型，可为泛型
+     * @return 编码结果
+     */
+    public static byte[] encode(Object value, Type type) {
+        ValueCodec<Object> codec = codec(type).orElseThrow(() -> new IllegalArgumentException("unsupported type "
+                + type));
+        BinaryWriter out = new BinaryWriter(256);
+        out.writeByte(VERSION);
+        codec.write(out, value);
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码
+     *
+     * @param data 编码结果
+     * @param type 目标类型，可为泛型
+     * @return 值
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decode(byte[] data, Type type) {
+        ValueCodec<Object> codec = codec(type).orElseThrow(() -> new IllegalArgumentException("unsupported type "
+                + type));
+        BinaryReader in = new BinaryReader(data);
+        int version = in.readByte();
+        Preconditions.checkState(version == VERSION, "unsupported version %s", version);
+        T r = (T) codec.read(in);
+        Preconditions.checkState(in.isEnd(), "trailing bytes after %s", type);
+        return r;
+    }
+
+    private static Optional<ValueCodec<Object>> codec(Type type) {
+        Optional<ValueCodec<Object>> r = CODECS.get(type);
+        if (Objects.isNull(r)) {
+            r = CODECS.computeIfAbsent(type, e -> Optional.ofNullable(resolve(e)));
+        }
+        return r;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ValueCodec<Object> resolve(Type type) {
+        if (type instanceof Class) {
+            return (ValueCodec<Object>) SCHEMAS.get(type);
+        }
+        // Gson将数组类型表示为GenericArrayType
+        if (type instanceof GenericArrayType) {
+            Type component = ((GenericArrayType) type).getGenericComponentType();
+            return component == long.class ? (ValueCodec) SCHEMAS.get(long[].class)
+                    : component == int.class ? (ValueCodec) SCHEMAS.get(int[].class) : null;
+        }
+        if (!(type instanceof ParameterizedType)) {
+            return null;
+        }
+        ParameterizedType p = (ParameterizedType) type;
+        Type raw = p.getRawType();
+        Type[] args = p.getActualTypeArguments();
+        if (raw == Result.class) {
+            ValueCodec data = resolve(args[0]);
+            return Objects.isNull(data) ? null : (ValueCodec) new Schema<Result>(Result::new)
+                    .field(Result::getSuccess, Result::setSuccess, BOOL)
+                    .field(Result::getCode, Result::setCode, INT)
+                    .field(Result::getMessage, Result::setMessage, STRING)
+                    .field(Result::getData, Result::setData, data);
+        }
+        if (raw == List.class || raw == Collection.class) {
+            ValueCodec element = resolve(args[0]);
+            return Objects.isNull(element) ? null : (ValueCodec) nullable(list(element));
+        }
+        if (raw == Map.class && args[0] == String.class) {
+            ValueCodec value = resolve(args[1]);
+            return Objects.isNull(value) ? null : (ValueCodec) nullable(map(value));
+        }
+        return null;
+    }
+
+    private static <T extends BaseModel> Schema<T> ext(Schema<T> schema) {
+        return schema.field(BaseModel::getExt, BaseModel::setExt, EXT);
+    }
+
+    private static <T> ValueCodec<List<T>> list(ValueCodec<T> element) {
+        return new ValueCodec<List<T>>() {
+            @Override
+            public void write(BinaryWriter out, List<T> value) {
+                out.writeVarLong(value.size());
+                for (T e : value) {
+                    element.write(out, e);
+                }
+            }
+
+            @Override
+            public List<T> read(BinaryReader in) {
+                int size = in.readSize();
+                List<T> r = Lists.newArrayListWithCapacity(size);
+                for (int i = 0; i < size; i++) {
+                    r.add(element.read(in));
+                }
+                return r;
+            }
+
+            @Override
+            public boolean isAbsent(List<T> value) {
+                return Objects.isNull(value) || value.isEmpty();
+            }
+        };
+    }
+
+    private static <T> ValueCodec<Map<String, T>> map(ValueCodec<T> value) {
+        return new ValueCodec<Map<String, T>>() {
+            @Override
+            public void write(BinaryWriter out, Map<String, T> map) {
+                // 注册表查询返回的可能是并发修改中的视图，数量以实际写入为准
+                int at = out.reserveVarInt();
+                int size = 0;
+                for (Map.Entry<String, T> e : map.entrySet()) {
+                    out.writeString(e.getKey());
+                    value.write(out, e.getValue());
+                    size++;
+                }
+                out.patchVarInt(at, size);
+            }
+
+            @Override
+            public Map<String, T> read(BinaryReader in) {
+                int size = in.readSize();
+                Map<String, T> r = Maps.newHashMapWithExpectedSize(size);
+                for (int i = 0; i < size; i++) {
+                    r.put(in.readString(), value.read(in));
+                }
+                return r;
+            }
+
+            @Override
+            public boolean isAbsent(Map<String, T> map) {
+                return Objects.isNull(map) || map.isEmpty();
+            }
+        };
+    }
+
+    /**
+     * 用于集合元素及顶层值，多写1字节表示是否为null；对象字段的null由字段位图表示，不需要
+     */
+    private static <T> ValueCodec<T> nullable(ValueCodec<T> codec) {
+        return new ValueCodec<T>() {
+            @Override
+            public void write(BinaryWriter out, T value) {
+                if (Objects.isNull(value)) {
+                    out.writeByte(0);
+                } else {
+                    out.writeByte(1);
+                    codec.write(out, value);
+                }
+            }
+
+            @Override
+            public T read(BinaryReader in) {
+                return in.readByte() == 0 ? null : codec.read(in);
+            }
+        };
+    }
+
+    private static void writeTagged(BinaryWriter out, Object value) {
+        if (Objects.isNull(value)) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            out.writeByte(TAG_LONG);
+            out.writeZigZag(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else {
+            out.writeByte(TAG_JSON);
+            out.writeString(JSON.toJSONString(value));
+        }
+    }
+
+    private static Object readTagged(BinaryReader in) {
+        int tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return in.readString();
+            case TAG_LONG:
+                // 与JSON反序列化一致，int范围内的整数还原为Integer
+                long v = in.readZigZag();
+                return v == (int) v ? (Object) (int) v : (Object) v;
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_TRUE:
+                return true;
+            case TAG_FALSE:
+                return false;
+            case TAG_JSON:
+                return JSON.parse(in.readString());
+            default:
+                throw new RuntimeException("unknown tag " + tag);
+        }
+    }
+
+    /**
+     * 单个类型的编解码
+     */
+    private interface ValueCodec<T> {
+        void write(BinaryWriter out, T value);
+
+        T read(BinaryReader in);
+
+        /**
+         * 作为对象字段时是否不写入，默认null不写入
+         */
+        default boolean isAbsent(T value) {
+            return Objects.isNull(value);
+        }
+    }
+
+    /**
+     * 对象编码：字段位图(左移1位，最低位为1，0表示null对象)，之后按顺序写入位图中的字段
+     */
+    private static final class Schema<T> implements ValueCodec<T> {
+        private final Supplier<T> factory;
+        private final List<Field<T, ?>> fields = Lists.newArrayList();
+
+        private Schema(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        private <V> Schema<T> field(Function<T, V> getter, BiConsumer<T, V> setter, ValueCodec<V> codec) {
+            Preconditions.checkState(fields.size() < Long.SIZE - 1, "too many fields");
+            fields.add(new Field<>(getter, setter, codec));
+            return this;
+        }
+
+        @Override
+        public void write(BinaryWriter out, T value) {
+            if (Objects.isNull(value)) {
+                out.writeVarLong(0);
+                return;
+            }
+            long mask = 0;
+            for (int i = 0; i < fields.size(); i++) {
+                if (!fields.get(i).isAbsent(value)) {
+                    mask |= 1L << i;
+                }
+            }
+            out.writeVarLong((mask << 1) | 1);
+            for (int i = 0; i < fields.size(); i++) {
+                if ((mask & (1L << i)) != 0) {
+                    fields.get(i).write(out, value);
+                }
+            }
+        }
+
+        @Override
+        public T read(BinaryReader in) {
+            long v = in.readVarLong();
+            if (v == 0) {
+                return null;
+            }
+            long mask = v >>> 1;
+            Preconditions.checkState((mask >>> fields.size()) == 0, "unknown fields, mask=%s", mask);
+            T r = factory.get();
+            for (int i = 0; i < fields.size(); i++) {
+                if ((mask & (1L << i)) != 0) {
+                    fields.get(i).read(in, r);
+                }
+            }
+            return r;
+        }
+    }
+
+    /**
+     * 对象字段
+     */
+    private static final class Field<T, V> {
+        private final Function<T, V> getter;
+        private final BiConsumer<T, V> setter;
+        private final ValueCodec<V> codec;
+
+        private Field(Function<T, V> getter, BiConsumer<T, V> setter, ValueCodec<V> codec) {
+            this.getter = getter;
+            this.setter = setter;
+            this.codec = codec;
+        }
+
+        private boolean isAbsent(T obj) {
+            return codec.isAbsent(getter.apply(obj));
+        }
+
+        private void write(BinaryWriter out, T obj) {
+            codec.write(out, getter.apply(obj));
+        }
+
+        private void read(BinaryReader in, T obj) {
+            setter.accept(obj, codec.read(in));
+        }
+    }
+}
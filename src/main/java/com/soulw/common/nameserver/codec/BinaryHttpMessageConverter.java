@@ -0,0 +1,65 @@
+package com.soulw.common.nameserver.codec;
+
+import com.soulw.common.nameserver.dto.Result;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Objects;
+
+/**
+ * 服务端二进制编码转换器，请求Content-Type或Accept为{@link BinaryCodec#MEDIA_TYPE}且类型受支持时生效
+ * <p>
+ * 须排在JSON转换器之后，未声明Accept的请求仍返回JSON
+ *
+ * @author SoulW
+ * @since 2024/3/29 15:30
+ */
+public class BinaryHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    public BinaryHttpMessageConverter() {
+        super(MediaType.valueOf(BinaryCodec.MEDIA_TYPE));
+    }
+
+    /**
+     * 只按原始类型判断，用于Spring收集可生成的媒体类型；
+     * 泛型参数在{@link #canRead(Type, Class, MediaType)}、{@link #canWrite(Type, Class, MediaType)}中判断
+     */
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == Result.class || BinaryCodec.supports(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return canRead(mediaType) && BinaryCodec.supports(GenericTypeResolver.resolveType(type, contextClass));
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return canWrite(mediaType) && BinaryCodec.supports(Objects.isNull(type) ? clazz : type);
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return BinaryCodec.decode(StreamUtils.copyToByteArray(inputMessage.getBody()),
+                GenericTypeResolver.resolveType(type, contextClass));
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        return BinaryCodec.decode(StreamUtils.copyToByteArray(inputMessage.getBody()), clazz);
+    }
+
+    @Override
+    protected void writeInternal(Object o, Type type, HttpOutputMessage outputMessage) throws IOException {
+        byte[] body = BinaryCodec.encode(o, Objects.isNull(type) ? o.getClass() : type);
+        outputMessage.getHeaders().setContentLength(body.length);
+        outputMessage.getBody().write(body);
+    }
+}
@@ -0,0 +1,123 @@
+package com.soulw.common.nameserver.codec;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 二进制解码输入，与{@link BinaryWriter}对应，按相同顺序重建字符串表
+ * <p>
+ * 非线程安全，每次解码新建
+ *
+ * @author SoulW
+ * @since 2024/3/29 14:00
+ */
+public class BinaryReader {
+    private final byte[] buf;
+    private int pos;
+    private final List<String> strings = Lists.newArrayList();
+
+    public BinaryReader(byte[] buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * 读取单字节
+     *
+     * @return 字节，0~255
+     */
+    public int readByte() {
+        check(1);
+        return buf[pos++] & 0xFF;
+    }
+
+    /**
+     * 读取无符号varint
+     *
+     * @return 值
+     */
+    public long readVarLong() {
+        long r = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            r |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return r;
+            }
+        }
+        throw new RuntimeException("malformed varint, pos=" + pos);
+    }
+
+    /**
+     * 读取zigzag编码的有符号整数
+     *
+     * @return 值
+     */
+    public long readZigZag() {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * 读取浮点数
+     *
+     * @return 值
+     */
+    public double readDouble() {
+        check(8);
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (long) (buf[pos++] & 0xFF) << (i * 8);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * 读取字符串
+     *
+     * @return 字符串，可能为null
+     */
+    public String readString() {
+        long v = readVarLong();
+        if (v == 0) {
+            return null;
+        }
+        if ((v & 1) == 1) {
+            long index = v >>> 1;
+            Preconditions.checkState(index < strings.size(), "string index out of range, index=%s", index);
+            return strings.get((int) index);
+        }
+        long len = (v >>> 1) - 1;
+        Preconditions.checkState(len <= buf.length - pos, "string length out of range, len=%s", len);
+        String s = new String(buf, pos, (int) len, StandardCharsets.UTF_8);
+        pos += (int) len;
+        strings.add(s);
+        return s;
+    }
+
+    /**
+     * 读取集合长度，并校验不超过剩余字节数，避免错误数据导致分配过大的集合
+     *
+     * @return 长度
+     */
+    public int readSize() {
+        long size = readVarLong();
+        Preconditions.checkState(size <= buf.length - pos, "size out of range, size=%s", size);
+        return (int) size;
+    }
+
+    /**
+     * 是否已读完
+     *
+     * @return 读完返回true
+     */
+    public boolean isEnd() {
+        return pos == buf.length;
+    }
+
+    private void check(int n) {
+        Preconditions.checkState(pos + n <= buf.length, "unexpected end of data, pos=%s", pos);
+    }
+}
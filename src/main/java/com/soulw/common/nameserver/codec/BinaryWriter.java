@@ -0,0 +1,190 @@
+package com.soulw.common.nameserver.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 二进制编码输出，整数使用varint，字符串带长度前缀并按出现顺序进入字符串表，再次出现时只写表中序号
+ * <p>
+ * 字符串表为开放寻址的数组，不装箱序号；ASCII字符串直接写入缓冲区，不经过中间字节数组。
+ * 非线程安全，每次编码新建
+ *
+ * @author SoulW
+ * @since 2024/3/29 14:00
+ */
+public class BinaryWriter {
+    private byte[] buf;
+    private int pos;
+    /**
+     * 字符串表，线性探测，容量为2的幂，负载不超过1/2
+     */
+    private String[] tableKeys = new String[64];
+    private int[] tableIndexes = new int[64];
+    private int tableSize;
+
+    public BinaryWriter(int capacity) {
+        this.buf = new byte[Math.max(16, capacity)];
+    }
+
+    /**
+     * 写入单字节
+     *
+     * @param b 字节
+     */
+    public void writeByte(int b) {
+        ensure(1);
+        buf[pos++] = (byte) b;
+    }
+
+    /**
+     * 写入无符号varint，每字节7位，最高位表示后续还有字节
+     *
+     * @param v 值，按无符号处理
+     */
+    public void writeVarLong(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[pos++] = (byte) v;
+    }
+
+    /**
+     * 预留5字节写入非负int，写完内容后由{@link #patchVarInt}回填，用于写入前无法确定的数量
+     *
+     * @return 预留位置
+     */
+    public int reserveVarInt() {
+        ensure(5);
+        int r = pos;
+        pos += 5;
+        return r;
+    }
+
+    /**
+     * 回填预留位置，按5字节定长varint写入(非最短编码，读取方式不变)
+     *
+     * @param at 预留位置
+     * @param v  值，非负
+     */
+    public void patchVarInt(int at, int v) {
+        for (int i = 0; i < 4; i++) {
+            buf[at + i] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[at + 4] = (byte) v;
+    }
+
+    /**
+     * 写入有符号整数，zigzag后按varint编码，绝对值小的负数同样只占少量字节
+     *
+     * @param v 值
+     */
+    public void writeZigZag(long v) {
+        writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    /**
+     * 写入浮点数，固定8字节
+     *
+     * @param v 值
+     */
+    public void writeDouble(double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        ensure(8);
+        for (int i = 0; i < 8; i++) {
+            buf[pos++] = (byte) (bits >>> (i * 8));
+        }
+    }
+
+    /**
+     * 写入字符串：0表示null，奇数为字符串表序号，偶数为新字符串的长度，其后为UTF-8内容
+     *
+     * @param s 字符串
+     */
+    public void writeString(String s) {
+        if (Objects.isNull(s)) {
+            writeVarLong(0);
+            return;
+        }
+        int mask = tableKeys.length - 1;
+        int slot = mix(s.hashCode()) & mask;
+        for (String key; Objects.nonNull(key = tableKeys[slot]); slot = (slot + 1) & mask) {
+            if (key.equals(s)) {
+                writeVarLong(((long) tableIndexes[slot] << 1) | 1);
+                return;
+            }
+        }
+        tableKeys[slot] = s;
+        tableIndexes[slot] = tableSize++;
+        if (tableSize << 1 > tableKeys.length) {
+            resizeTable();
+        }
+        if (!writeAscii(s)) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong((long) (bytes.length + 1) << 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+    }
+
+    /**
+     * 获取编码结果
+     *
+     * @return 已写入的字节
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, pos);
+    }
+
+    /**
+     * 字符串全为ASCII时直接写入，否则回退并返回false
+     */
+    private boolean writeAscii(String s) {
+        int len = s.length();
+        int begin = pos;
+        writeVarLong((long) (len + 1) << 1);
+        ensure(len);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                pos = begin;
+                return false;
+            }
+            buf[pos++] = (byte) c;
+        }
+        return true;
+    }
+
+    private void resizeTable() {
+        String[] keys = tableKeys;
+        int[] indexes = tableIndexes;
+        tableKeys = new String[keys.length << 1];
+        tableIndexes = new int[keys.length << 1];
+        int mask = tableKeys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (Objects.nonNull(keys[i])) {
+                int slot = mix(keys[i].hashCode()) & mask;
+                while (Objects.nonNull(tableKeys[slot])) {
+                    slot = (slot + 1) & mask;
+                }
+                tableKeys[slot] = keys[i];
+                tableIndexes[slot] = indexes[i];
+            }
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void ensure(int n) {
+        if (pos + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+        }
+    }
+}
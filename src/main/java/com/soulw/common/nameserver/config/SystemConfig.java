@@ -1,5 +1,7 @@
 package com.soulw.common.nameserver.config;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.experimental.Accessors;
@@ -7,8 +9,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
-import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -38,9 +40,18 @@ public class SystemConfig {
      */
     private Integer type = 2;
     /**
-     * 选举超时时间
+     * 单轮投票等待时间(ms)，超时未获得多数票视为本轮失败
      */
-    private long voteTimeout = Duration.ofSeconds(60_000).toNanos();
+    private long voteTimeout = 3_000L;
+    /**
+     * 选举超时基准(ms)，超过该时间未联系到主节点则发起选举，实际超时在[electionTimeout, 2*electionTimeout)内随机，
+     * 需大于heartbeatTime
+     */
+    private Long electionTimeout = 15_000L;
+    /**
+     * 选举超时检测精度
+     */
+    private Long electionTickTime = 100L;
     /**
      * 所有的节点
      */
@@ -66,6 +77,169 @@ public class SystemConfig {
      * 集群更新时间
      */
     private Long clusterSyncTime = 3_000L;
+    /**
+     * 客户端过期时间，超过该时间未心跳的客户端会被移除
+     */
+    private Long clientExpireTime = 30_000L;
+    /**
+     * 过期检测精度
+     */
+    private Long expireTickTime = 1_000L;
+    /**
+     * 注册表变更日志长度，增量同步落后超过该长度时退化为全量
+     */
+    private Integer changeLogSize = 10_000;
+    /**
+     * 监听请求最长挂起时间
+     */
+    private Long watchTimeout = 30_000L;
+    /**
+     * 集群查询快照合并窗口，注册表变化后同一查询条件在该窗口内最多重建一次
+     */
+    private Long snapshotCoalesceTime = 100L;
+    /**
+     * 集群查询快照最多缓存的查询条件数
+     */
+    private Integer snapshotCacheSize = 1024;
+    /**
+     * 主节点向每个从节点推送复制批次时，最多同时在途的批次数
+     */
+    private Integer replicationWindow = 4;
+    /**
+     * 节点连续网络失败多少次后熔断
+     */
+    private Integer peerFailureThreshold = 3;
+    /**
+     * 节点熔断时长(ms)，到期后放行一个探测请求
+     */
+    private Long peerOpenTime = 5_000L;
+    /**
+     * AP模式下传播变更的间隔
+     */
+    private Long gossipInterval = 1_000L;
+    /**
+     * AP模式下每轮传播的节点数
+     */
+    private Integer gossipFanout = 2;
+    /**
+     * AP模式下单次传播最多携带的客户端数
+     */
+    private Integer gossipBatchSize = 1_000;
+    /**
+     * AP模式下与随机节点比对摘要、修复差异的间隔
+     */
+    private Long antiEntropyInterval = 10_000L;
+    /**
+     * 注册表分片数，按集群、分组一致性哈希到分片，每个分片独立选主和复制；为1时不分片
+     */
+    private Integer shards = 1;
+    /**
+     * 客户端存储：heap-堆内对象，offHeap-堆外定长记录，客户端数量很大时降低GC压力
+     */
+    private String clientStore = "heap";
+    /**
+     * 注册表持久化目录，每个分片一个子目录；为空时不持久化，重启后注册表为空
+     */
+    private String dataDir;
+    /**
+     * 预写日志单段大小(byte)
+     */
+    private Integer walSegmentSize = 64 * 1024 * 1024;
+    /**
+     * 预写日志刷盘策略：none-由操作系统回写，interval-定时刷盘，always-每次写入后刷盘
+     */
+    private String walFlushMode = "interval";
+    /**
+     * 预写日志定时刷盘间隔(ms)
+     */
+    private Long walFlushInterval = 1_000L;
+    /**
+     * 注册表快照间隔(ms)，快照后截断预写日志
+     */
+    private Long registrySnapshotInterval = 300_000L;
+    /**
+     * 各集群、分组客户端数指标的刷新间隔(ms)，需遍历注册表
+     */
+    private Long metricsRefreshTime = 15_000L;
+    /**
+     * 节点间请求编码：json-JSON，binary-二进制编码；对方按Content-Type解码，按Accept选择响应编码。
+     * 旧版本节点不识别二进制请求，须全部节点升级后再改为binary
+     */
+    private String peerCodec = "json";
+    /**
+     * 节点间请求传输：http-经Tomcat及OkHttp，tcp-基于NIO的长连接，多个请求复用同一连接；
+     * tcp时需配置tcpPortOffset，且对方节点同样开启TCP监听
+     */
+    private String transport = "http";
+    /**
+     * TCP监听端口相对server.port的偏移，对方节点的TCP端口按其HTTP端口加该偏移计算；为0时不监听
+     */
+    private Integer tcpPortOffset = 0;
+    /**
+     * TCP传输的IO线程数
+     */
+    private Integer tcpIoThreads = 2;
+    /**
+     * TCP服务端处理心跳、查询请求的线程数，选举、复制等请求使用单独线程
+     */
+    private Integer tcpWorkerThreads = 16;
+    /**
+     * TCP服务端等待处理的心跳、查询请求上限，超出时直接返回过载
+     */
+    private Integer tcpWorkerQueueSize = 10_000;
+    /**
+     * UDP续约监听端口相对server.port的偏移，为0时不监听；客户端通过HTTP申请租约后可经UDP续约
+     */
+    private Integer udpPortOffset = 0;
+    /**
+     * UDP续约合并窗口(ms)，窗口内收到的续约合并为一次批量续约后统一确认
+     */
+    private Long udpBatchWindow = 5L;
+    /**
+     * UDP续约单次合并的租约数上限，达到后立即处理
+     */
+    private Integer udpBatchSize = 4096;
+    /**
+     * 请求审计默认采样率，成功请求每N次记录1次摘要，为0时不记录；失败及慢请求总是记录完整内容
+     */
+    private Integer auditSampleRate = 100;
+    /**
+     * 按接口(服务端接口名或节点间请求路径)覆盖的采样率，选举相关请求量小，全部记录
+     */
+    private Map<String, Integer> auditSampleRates = Maps.newHashMap(ImmutableMap.of(
+            "accept", 1, "masterSync", 1, "/vote/accept", 1, "/vote/master/sync", 1));
+    /**
+     * 慢请求阈值(ms)，超过时记录完整请求和响应
+     */
+    private Long auditSlowThreshold = 200L;
+    /**
+     * 审计环形队列大小，须为2的幂，队列满时丢弃
+     */
+    private Integer auditBufferSize = 8192;
+    /**
+     * 为选举、复制等节点间请求预留的servlet线程数，客户端请求最多使用其余线程
+     */
+    private Integer admissionReservedThreads = 40;
+    /**
+     * 查询请求最多使用客户端并发上限的百分比，过载时查询先于心跳被拒绝
+     */
+    private Integer admissionQueryPercent = 75;
+    /**
+     * 每个客户端(按来源地址)每秒允许的心跳、查询请求数，为0时不限流
+     */
+    private Integer admissionClientRate = 100;
+    /**
+     * 每个客户端允许的突发请求数
+     */
+    private Integer admissionClientBurst = 200;
+    /**
+     * 限流最多跟踪的客户端数
+     */
+    private Integer admissionMaxClients = 100_000;
+    /**
+     * 因过载被拒绝时建议客户端重试的等待时间(s)
+     */
+    private Long admissionRetryAfter = 1L;
     /**
      * 启动心跳
      */
@@ -80,6 +254,33 @@ public class SystemConfig {
         return Objects.equals(TYPE_CP, type);
     }
 
+    /**
+     * 是否使用堆外客户端存储
+     *
+     * @return 使用堆外存储返回true
+     */
+    public boolean isOffHeapStore() {
+        return "offHeap".equalsIgnoreCase(clientStore);
+    }
+
+    /**
+     * 节点间请求是否使用二进制编码
+     *
+     * @return 使用二进制编码返回true
+     */
+    public boolean isBinaryPeerCodec() {
+        return "binary".equalsIgnoreCase(peerCodec);
+    }
+
+    /**
+     * 节点间请求是否使用TCP传输
+     *
+     * @return 使用TCP传输返回true
+     */
+    public boolean isTcpTransport() {
+        return "tcp".equalsIgnoreCase(transport);
+    }
+
     /**
      * 获取心跳时间差
      *
@@ -0,0 +1,24 @@
+package com.soulw.common.nameserver.config;
+
+import com.soulw.common.nameserver.codec.BinaryHttpMessageConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Spring MVC配置
+ *
+ * @author SoulW
+ * @since 2024/3/29 15:40
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // 追加在JSON之后，只有显式协商二进制编码的请求才使用
+        converters.add(new BinaryHttpMessageConverter());
+    }
+}
@@ -0,0 +1,182 @@
+package com.soulw.common.nameserver.controller;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.codec.BinaryCodec;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.service.VoteService;
+import com.soulw.common.nameserver.domain.registry.Registry;
+import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.Result;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 集群查询结果缓存，按查询条件缓存序列化后的响应体，所有读请求共享
+ * <p>
+ * 注册表版本变化后才重建，且同一查询条件在合并窗口内最多重建一次，
+ * 心跳刷新不改变版本，因此缓存中的heartbeatTime可能滞后；
+ * 分片模式下跨分片的查询以涉及的全部分片版本作为快照版本
+ *
+ * @author SoulW
+ * @since 2024/3/18 10:15
+ */
+@Slf4j
+@Component
+public class ClientsSnapshotCache {
+    private static final Type CLIENTS_RESULT = new TypeReference<Result<Map<String, ClientConfig>>>() {
+    }.getType();
+    @Resource
+    private VoteService voteService;
+    @Resource
+    private SystemConfig systemConfig;
+    @Resource
+    private ObjectMapper objectMapper;
+    private Cache<String, Snapshot> cache;
+    private Snapshot unhealthy;
+
+    @PostConstruct
+    public void init() {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(systemConfig.getSnapshotCacheSize())
+                .build();
+        unhealthy = build(null, "\"unhealthy\"", Collections.emptyMap(), 0);
+    }
+
+    /**
+     * 获取查询条件对应的快照
+     *
+     * @param query 查询条件
+     * @return 快照
+     */
+    public Snapshot get(QueryClients query) {
+        if (!voteService.isHealth()) {
+            return unhealthy;
+        }
+        String cluster = Objects.isNull(query) ? null : query.getCluster();
+        String group = Objects.isNull(query) ? null : query.getGroupCode();
+        Integer shard = Objects.isNull(query) ? null : query.getShard();
+        String key = StringUtils.defaultString(cluster) + "/" + StringUtils.defaultString(group)
+                + (Objects.isNull(shard) ? "" : "#" + shard);
+        List<Registry> registries = voteService.getRegistries(query);
+        Snapshot snapshot = cache.getIfPresent(key);
+        if (Objects.nonNull(snapshot) && !snapshot.isExpired(registries, systemConfig.getSnapshotCoalesceTime())) {
+            return snapshot;
+        }
+        // 同一查询条件串行重建，等待方直接复用重建结果
+        return cache.asMap().compute(key, (k, old) -> {
+            if (Objects.nonNull(old) && !old.isExpired(registries, systemConfig.getSnapshotCoalesceTime())) {
+                return old;
+            }
+            // 先取版本再查询，查询期间的变更会在下次请求时触发重建
+            String version = version(registries);
+            Map<String, ClientConfig> clients;
+            if (registries.size() == 1) {
+                clients = registries.get(0).query(cluster, group);
+            } else {
+                clients = Maps.newHashMap();
+                for (Registry registry : registries) {
+                    clients.putAll(registry.query(cluster, group));
+                }
+            }
+            String etag = "\"" + (registries.size() == 1 ? version : Integer.toHexString(version.hashCode())) + "-"
+                    + Integer.toHexString(k.hashCode()) + "\"";
+            return build(version, etag, clients, System.currentTimeMillis());
+        });
+    }
+
+    private static String version(List<Registry> registries) {
+        StringBuilder r = new StringBuilder();
+        for (Registry registry : registries) {
+            if (r.length() > 0) {
+                r.append(',');
+            }
+            r.append(registry.getRegistryId()).append('-').append(registry.getRevision());
+        }
+        return r.toString();
+    }
+
+    /**
+     * 序列化失败结果，与快照使用同一JSON编码
+     *
+     * @param message 失败信息
+     * @return 序列化后的失败结果
+     */
+    public byte[] encodeFailed(String message) {
+        return encode(Result.failed(message));
+    }
+
+    private Snapshot build(String version, String etag, Map<String, ClientConfig> clients, long buildTime) {
+        Result<Map<String, ClientConfig>> result = Result.success(clients);
+        return new Snapshot(version, etag, encode(result), BinaryCodec.encode(result, CLIENTS_RESULT),
+                clients.size(), buildTime);
+    }
+
+    private byte[] encode(Result<?> result) {
+        try {
+            return objectMapper.writeValueAsBytes(result);
+        } catch (Exception e) {
+            log.error("encode() failed", e);
+            throw new RuntimeException("encode result failed", e);
+        }
+    }
+
+    /**
+     * 序列化后的查询结果，JSON和二进制编码各一份，均在构建时生成，与版本一致
+     *
+     * @author SoulW
+     */
+    @Getter
+    public static class Snapshot {
+        /**
+         * 构建时涉及的各注册表标识及版本
+         */
+        private final String version;
+        private final String etag;
+        private final byte[] body;
+        private final byte[] binaryBody;
+        private final int size;
+        private final long buildTime;
+
+        private Snapshot(String version, String etag, byte[] body, byte[] binaryBody, int size, long buildTime) {
+            this.version = version;
+            this.etag = etag;
+            this.body = body;
+            this.binaryBody = binaryBody;
+            this.size = size;
+            this.buildTime = buildTime;
+        }
+
+        /**
+         * 判断调用方缓存是否仍有效
+         *
+         * @param ifNoneMatch 请求头If-None-Match
+         * @return 是否匹配
+         */
+        public boolean matches(String ifNoneMatch) {
+            return StringUtils.isNotBlank(ifNoneMatch)
+                    && (ifNoneMatch.contains(etag) || StringUtils.equals("*", ifNoneMatch.trim()));
+        }
+
+        private boolean isExpired(List<Registry> registries, long coalesceTime) {
+            if (Objects.equals(version, version(registries))) {
+                return false;
+            }
+            return System.currentTimeMillis() - buildTime >= coalesceTime;
+        }
+    }
+}
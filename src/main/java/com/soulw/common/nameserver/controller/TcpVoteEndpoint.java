@@ -0,0 +1,186 @@
+package com.soulw.common.nameserver.controller;
+
+import com.google.gson.reflect.TypeToken;
+import com.soulw.common.nameserver.audit.RequestAuditor;
+import com.soulw.common.nameserver.codec.BinaryCodec;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import com.soulw.common.nameserver.domain.context.model.Vote;
+import com.soulw.common.nameserver.domain.context.service.impl.VoteServiceImpl;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
+import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+import com.soulw.common.nameserver.dto.Result;
+import com.soulw.common.nameserver.metrics.NameServerMetrics;
+import com.soulw.common.nameserver.transport.NioConnection;
+import com.soulw.common.nameserver.transport.NioServer;
+import com.soulw.common.nameserver.transport.TcpMethod;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 节点间请求的TCP入口，在server.port加{@link SystemConfig#getTcpPortOffset()}的端口监听，偏移为0时不启动
+ * <p>
+ * 请求按方法分发到{@link VoteController}，与HTTP共用处理逻辑、指标及审计；选举、复制等控制请求使用单独线程，
+ * 心跳、查询使用有界队列，队列满时直接返回429
+ *
+ * @author SoulW
+ * @since 2024/3/30 10:00
+ */
+@Slf4j
+@Component
+public class TcpVoteEndpoint implements NioConnection.FrameListener {
+    private static final Type VOID_RESULT = new TypeToken<Result<Void>>() {
+    }.getType();
+    private static final int CONTROL_THREADS = 4;
+
+    @Resource
+    private VoteController voteController;
+    @Resource
+    private SystemConfig systemConfig;
+    @Resource
+    private ClientsSnapshotCache clientsSnapshotCache;
+    @Resource
+    private NameServerMetrics metrics;
+    @Resource
+    private RequestAuditor requestAuditor;
+    private NioServer server;
+    private ExecutorService controlExecutor;
+    private ExecutorService workerExecutor;
+    private Counter overloaded;
+
+    @PostConstruct
+    public void init() {
+        if (systemConfig.getTcpPortOffset() <= 0) {
+            return;
+        }
+        int port = systemConfig.getPort() + systemConfig.getTcpPortOffset();
+        controlExecutor = new ThreadPoolExecutor(CONTROL_THREADS, CONTROL_THREADS, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), VoteServiceImpl.buildThreadFactory("tcpControl-%s"));
+        workerExecutor = new ThreadPoolExecutor(systemConfig.getTcpWorkerThreads(), systemConfig.getTcpWorkerThreads(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(systemConfig.getTcpWorkerQueueSize()),
+                VoteServiceImpl.buildThreadFactory("tcpWorker-%s"));
+        overloaded = Counter.builder("ns.admission.rejected")
+                .tag("lane", "tcp")
+                .tag("reason", "overloaded")
+                .register(metrics.getRegistry());
+        try {
+            server = new NioServer(port, systemConfig.getTcpIoThreads(), this);
+        } catch (IOException e) {
+            throw new RuntimeException("tcp listen failed, port=" + port, e);
+        }
+        log.info("tcp transport listening, port={}", port);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (Objects.isNull(server)) {
+            return;
+        }
+        server.close();
+        controlExecutor.shutdown();
+        workerExecutor.shutdown();
+    }
+
+    @Override
+    public void onFrame(NioConnection conn, long id, int code, byte[] payload) {
+        TcpMethod method = TcpMethod.of(code);
+        if (Objects.isNull(method)) {
+            conn.send(id, code, BinaryCodec.encode(Result.failed("unsupported method: " + code), VOID_RESULT));
+            return;
+        }
+        try {
+            (method.isControl() ? controlExecutor : workerExecutor).execute(() -> handle(conn, id, method, payload));
+        } catch (RejectedExecutionException e) {
+            overloaded.increment();
+            conn.send(id, code, BinaryCodec.encode(Result.failed("too many requests").setCode(429),
+                    method.getResponseType()));
+        }
+    }
+
+    @Override
+    public void onClose(NioConnection conn, Throwable cause) {
+        log.info("peer connection closed, remote={}, msg={}", conn.getRemote(),
+                Objects.isNull(cause) ? null : cause.getMessage());
+    }
+
+    private void handle(NioConnection conn, long id, TcpMethod method, byte[] payload) {
+        byte[] resp;
+        try {
+            Object request = BinaryCodec.decode(payload, method.getRequestType());
+            resp = method == TcpMethod.CLUSTERS ? queryClusters((QueryClients) request)
+                    : BinaryCodec.encode(invoke(method, request), method.getResponseType());
+        } catch (Exception e) {
+            log.error("handle tcp request failed, method={}, msg={}", method, e.getMessage());
+            resp = BinaryCodec.encode(Result.failed(e.getMessage()), method.getResponseType());
+        }
+        conn.send(id, method.getCode(), resp);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Result<?> invoke(TcpMethod method, Object request) {
+        switch (method) {
+            case HEARTBEAT:
+                return voteController.heartbeat((Heartbeat) request);
+            case HEARTBEAT_BATCH:
+                return voteController.batchHeartbeat((List<Heartbeat>) request);
+            case CLUSTERS_DELTA:
+                return voteController.queryDelta((QueryDelta) request);
+            case ACCEPT:
+                return voteController.acceptVote((Vote) request);
+            case MASTER_SYNC:
+                return voteController.syncMaster((Vote) request);
+            case REPLICATE:
+                return voteController.replicate((ReplicationBatch) request);
+            case GOSSIP:
+                return voteController.gossip((GossipMessage) request);
+            case GOSSIP_DIGEST:
+                return voteController.digest((GossipDigest) request);
+            case LEASE_GRANT:
+                return voteController.grantLease((LeaseGrant) request);
+            case LEASE_KEEPALIVE:
+                return voteController.keepaliveShard((LeaseKeepalive) request);
+            case LEASE_REVOKE:
+                return voteController.revokeLease((Lease) request);
+            default:
+                return Result.failed("unsupported method: " + method);
+        }
+    }
+
+    /**
+     * 查询集群，直接返回共享快照的二进制编码，与HTTP接口一致
+     */
+    private byte[] queryClusters(QueryClients queryClients) {
+        long begin = System.nanoTime();
+        try {
+            byte[] body = clientsSnapshotCache.get(queryClients).getBinaryBody();
+            metrics.getQueryClusters().record(begin, true);
+            requestAuditor.server("clusters", begin, queryClients, null, null);
+            return body;
+        } catch (Exception e) {
+            metrics.getQueryClusters().record(begin, false);
+            requestAuditor.server("clusters", begin, queryClients, null, e);
+            return BinaryCodec.encode(Result.failed(e.getMessage()), TcpMethod.CLUSTERS.getResponseType());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.soulw.common.nameserver.controller;
+
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.context.service.VoteService;
+import com.soulw.common.nameserver.domain.context.service.impl.VoteServiceImpl;
+import com.soulw.common.nameserver.metrics.NameServerMetrics;
+import com.soulw.common.nameserver.transport.HeartbeatDatagram;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UDP续约入口，在server.port加{@link SystemConfig#getUdpPortOffset()}的端口监听，偏移为0时不启动
+ * <p>
+ * 客户端经HTTP申请租约，之后周期性发送只包含租约id的定长报文。单线程接收，合并窗口内的报文合并为一次
+ * {@link VoteService#keepalive}，处理后逐个报文回复确认，确认中带回不存在的租约供客户端重新申请；
+ * 确认不大于请求，不会被用来放大流量
+ *
+ * @author SoulW
+ * @since 2024/3/31 10:00
+ */
+@Slf4j
+@Component
+public class UdpHeartbeatEndpoint {
+    @Resource
+    private VoteService voteService;
+    @Resource
+    private SystemConfig systemConfig;
+    @Resource
+    private NameServerMetrics metrics;
+    private DatagramChannel channel;
+    private Selector selector;
+    private volatile boolean running;
+    private Counter received;
+    private Counter malformed;
+
+    @PostConstruct
+    public void init() {
+        if (systemConfig.getUdpPortOffset() <= 0) {
+            return;
+        }
+        int port = systemConfig.getPort() + systemConfig.getUdpPortOffset();
+        received = Counter.builder("ns.udp.datagrams").tag("result", "received").register(metrics.getRegistry());
+        malformed = Counter.builder("ns.udp.datagrams").tag("result", "malformed").register(metrics.getRegistry());
+        try {
+            selector = Selector.open();
+            channel = DatagramChannel.open();
+            channel.configureBlocking(false);
+            channel.bind(new InetSocketAddress(port));
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            throw new RuntimeException("udp listen failed, port=" + port, e);
+        }
+        running = true;
+        VoteServiceImpl.buildThreadFactory("udpHeartbeat-%s").newThread(this::run).start();
+        log.info("udp heartbeat listening, port={}", port);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (Objects.isNull(channel)) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+    }
+
+    private void run() {
+        Batch batch = new Batch(systemConfig.getUdpBatchSize());
+        ByteBuffer in = ByteBuffer.allocate(HeartbeatDatagram.MAX_SIZE + 1);
+        ByteBuffer out = ByteBuffer.allocate(HeartbeatDatagram.MAX_SIZE);
+        long window = TimeUnit.MILLISECONDS.toNanos(systemConfig.getUdpBatchWindow());
+        while (running) {
+            try {
+                // 有待处理的报文时最多等到合并窗口结束
+                long remaining = batch.isEmpty() ? 0 : batch.begin + window - System.nanoTime();
+                if (batch.isEmpty()) {
+                    selector.select();
+                } else if (remaining > 0) {
+                    selector.select(TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+                }
+                selector.selectedKeys().clear();
+                for (SocketAddress from; Objects.nonNull(from = channel.receive(in)); in.clear()) {
+                    in.flip();
+                    HeartbeatDatagram datagram = HeartbeatDatagram.read(in);
+                    if (Objects.isNull(datagram) || datagram.getType() != HeartbeatDatagram.TYPE_KEEPALIVE) {
+                        malformed.increment();
+                        continue;
+                    }
+                    received.increment();
+                    if (!batch.add(from, datagram)) {
+                        flush(batch, out);
+                        batch.add(from, datagram);
+                    }
+                    // 持续有报文到达时同样按窗口处理，不等接收缓冲区读空
+                    if (System.nanoTime() - batch.begin >= window) {
+                        flush(batch, out);
+                    }
+                }
+                if (!batch.isEmpty() && System.nanoTime() - batch.begin >= window) {
+                    flush(batch, out);
+                }
+            } catch (Exception e) {
+                log.error("udp heartbeat error", e);
+            }
+        }
+        try {
+            channel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.warn("close udp channel failed", e);
+        }
+    }
+
+    /**
+     * 批量续约并逐个报文回复确认，确认发送失败(发送缓冲区满)时丢弃，客户端按丢包处理
+     */
+    private void flush(Batch batch, ByteBuffer out) throws IOException {
+        long[] missing;
+        try {
+            missing = voteService.keepalive(Arrays.copyOf(batch.leaseIds, batch.size));
+        } catch (Exception e) {
+            // 续约失败时不回复确认，客户端超时后改用HTTP续约
+            log.error("keepalive() failed, size={}, msg={}", batch.size, e.getMessage());
+            batch.clear();
+            return;
+        }
+        Arrays.sort(missing);
+        long[] expired = new long[HeartbeatDatagram.MAX_LEASES];
+        for (int i = 0; i < batch.datagrams; i++) {
+            int n = 0;
+            for (int j = batch.offsets[i]; j < batch.offsets[i + 1] && missing.length > 0; j++) {
+                if (Arrays.binarySearch(missing, batch.leaseIds[j]) >= 0) {
+                    expired[n++] = batch.leaseIds[j];
+                }
+            }
+            HeartbeatDatagram.write(out, HeartbeatDatagram.TYPE_ACK, batch.seqs[i], batch.timestamps[i], expired, 0, n);
+            channel.send(out, batch.senders[i]);
+        }
+        batch.clear();
+    }
+
+    /**
+     * 合并窗口内收到的报文，租约id连续存放，按下标区分所属报文
+     */
+    private static class Batch {
+        private final long[] leaseIds;
+        private final SocketAddress[] senders;
+        private final int[] seqs;
+        private final long[] timestamps;
+        private final int[] offsets;
+        private int size;
+        private int datagrams;
+        private long begin;
+
+        Batch(int capacity) {
+            int max = Math.max(capacity, HeartbeatDatagram.MAX_LEASES);
+            leaseIds = new long[max];
+            senders = new SocketAddress[max];
+            seqs = new int[max];
+            timestamps = new long[max];
+            offsets = new int[max + 1];
+        }
+
+        /**
+         * 加入报文
+         *
+         * @return 容量不足时返回false
+         */
+        boolean add(SocketAddress from, HeartbeatDatagram datagram) {
+            long[] ids = datagram.getLeaseIds();
+            if (size + ids.length > leaseIds.length || datagrams == senders.length) {
+                return false;
+            }
+            if (datagrams == 0) {
+                begin = System.nanoTime();
+            }
+            System.arraycopy(ids, 0, leaseIds, size, ids.length);
+            senders[datagrams] = from;
+            seqs[datagrams] = datagram.getSeq();
+            timestamps[datagrams] = datagram.getTimestamp();
+            offsets[datagrams] = size;
+            size += ids.length;
+            offsets[++datagrams] = size;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return datagrams == 0;
+        }
+
+        void clear() {
+            Arrays.fill(senders, 0, datagrams, null);
+            size = 0;
+            datagrams = 0;
+        }
+    }
+}
@@ -1,22 +1,46 @@
 package com.soulw.common.nameserver.controller;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.soulw.common.nameserver.audit.RequestAuditor;
+import com.soulw.common.nameserver.codec.BinaryCodec;
 import com.soulw.common.nameserver.domain.client.ClientConfig;
 import com.soulw.common.nameserver.domain.context.model.Heartbeat;
 import com.soulw.common.nameserver.domain.context.model.Vote;
+import com.soulw.common.nameserver.config.SystemConfig;
 import com.soulw.common.nameserver.domain.context.service.VoteService;
+import com.soulw.common.nameserver.domain.registry.RegistryWatcher;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
 import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
 import com.soulw.common.nameserver.dto.Result;
+import com.soulw.common.nameserver.dto.WatchClients;
+import com.soulw.common.nameserver.metrics.NameServerMetrics;
+import com.soulw.common.nameserver.metrics.ResultTimer;
 import com.soulw.common.nameserver.sdk.VoteApi;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.annotation.Resource;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Supplier;
 
 /**
@@ -32,6 +56,14 @@ public class VoteController implements VoteApi {
 
     @Resource
     private VoteService voteService;
+    @Resource
+    private SystemConfig systemConfig;
+    @Resource
+    private ClientsSnapshotCache clientsSnapshotCache;
+    @Resource
+    private NameServerMetrics metrics;
+    @Resource
+    private RequestAuditor requestAuditor;
 
     /**
      * 处理心跳请求
@@ -42,36 +74,209 @@ public class VoteController implements VoteApi {
     @PostMapping("/heartbeat")
     @Override
     public Result<Void> heartbeat(@RequestBody Heartbeat heartbeat) {
-        return call(heartbeat, () -> {
+        return call("heartbeat", metrics.getHeartbeat(), heartbeat, () -> {
             voteService.heartbeat(heartbeat);
             return Result.success(null);
         });
     }
 
-    private <T> Result<T> call(Object request, Supplier<Result<T>> supplier) {
+    /**
+     * 批量处理心跳请求，审计只记录数量，失败或慢请求记录完整内容
+     *
+     * @param heartbeats 心跳列表
+     * @return 每个实例的心跳结果
+     */
+    @PostMapping("/heartbeat/batch")
+    @Override
+    public Result<List<HeartbeatAck>> batchHeartbeat(@RequestBody List<Heartbeat> heartbeats) {
+        return call("heartbeatBatch", metrics.getBatchHeartbeat(), heartbeats,
+                () -> Result.success(voteService.batchHeartbeat(heartbeats)));
+    }
+
+    /**
+     * 申请租约并注册挂在租约上的实例
+     *
+     * @param grant 租约申请
+     * @return 租约
+     */
+    @PostMapping("/lease/grant")
+    @Override
+    public Result<Lease> grantLease(@RequestBody LeaseGrant grant) {
+        return call("leaseGrant", null, grant, () -> Result.success(voteService.grantLease(grant)));
+    }
+
+    /**
+     * 批量续约，请求体只包含租约id，只记录摘要日志
+     *
+     * @param leaseIds 租约id
+     * @return 不存在(已过期)的租约id
+     */
+    @PostMapping("/lease/keepalive")
+    @Override
+    public Result<long[]> keepalive(@RequestBody long[] leaseIds) {
+        try {
+            long[] missing = voteService.keepalive(leaseIds);
+            if (missing.length > 0) {
+                log.info("Receive Http Request [keepalive()] >>> size={}, missing={}", leaseIds.length, missing.length);
+            }
+            return Result.success(missing);
+        } catch (Exception e) {
+            log.error("keepalive() error", e);
+            return Result.failed(e.getMessage());
+        }
+    }
+
+    /**
+     * 在指定分片上续约，由接收客户端续约的节点转发给分片主节点
+     *
+     * @param request 分片及租约id
+     * @return 不存在(已过期)的租约id
+     */
+    @PostMapping("/lease/keepalive/shard")
+    public Result<long[]> keepaliveShard(@RequestBody LeaseKeepalive request) {
+        try {
+            return Result.success(voteService.keepalive(request));
+        } catch (Exception e) {
+            log.error("keepaliveShard() error", e);
+            return Result.failed(e.getMessage());
+        }
+    }
+
+    /**
+     * 撤销租约
+     *
+     * @param lease 租约
+     * @return 无返回结果
+     */
+    @PostMapping("/lease/revoke")
+    @Override
+    public Result<Void> revokeLease(@RequestBody Lease lease) {
+        return call("leaseRevoke", null, lease, () -> {
+            voteService.revokeLease(lease);
+            return Result.success(null);
+        });
+    }
+
+    /**
+     * 执行请求，记录耗时指标并提交审计，异常转为失败结果
+     *
+     * @param endpoint 接口名，用于审计采样
+     * @param timer    耗时统计，为null时不记录
+     * @param request  请求
+     * @param supplier 处理逻辑
+     * @return 处理结果
+     */
+    private <T> Result<T> call(String endpoint, ResultTimer timer, Object request, Supplier<Result<T>> supplier) {
+        long begin = System.nanoTime();
         Result<T> r;
+        Exception error = null;
         try {
             r = supplier.get();
         } catch (Exception e) {
-            log.error("call() error", e);
+            error = e;
             r = Result.failed(e.getMessage());
         }
-        StackTraceElement[] trace = Thread.currentThread().getStackTrace();
-        log.info("Receive Http Request [{}()] >>> request={}, response={}", trace[2].getMethodName(), JSON.toJSONString(request),
-                JSON.toJSONString(r, SerializerFeature.PrettyFormat));
+        if (Objects.nonNull(timer)) {
+            timer.record(begin, Objects.isNull(error));
+        }
+        requestAuditor.server(endpoint, begin, request, r, error);
         return r;
     }
 
     /**
-     * 查询集群
+     * 查询集群，可按集群、分组过滤，供进程内调用，HTTP请求由{@link #queryClustersSnapshot}处理
      *
      * @param queryClients 查询集群的请求体
      * @return 查询到的集群信息
      */
+    @Override
+    public Result<Map<String, ClientConfig>> queryClusters(QueryClients queryClients) {
+        return call("queryClusters", null, queryClients, () -> Result.success(voteService.queryClients(queryClients)));
+    }
+
+    /**
+     * 查询集群，返回共享的序列化快照，请求头If-None-Match与当前版本一致时返回304；
+     * Accept包含二进制编码时返回二进制快照
+     *
+     * @param queryClients 查询集群的请求体
+     * @param ifNoneMatch  调用方已缓存的ETag
+     * @param accept       调用方可接受的编码
+     * @return 序列化后的查询结果
+     */
     @PostMapping("/clusters")
+    public ResponseEntity<byte[]> queryClustersSnapshot(@RequestBody QueryClients queryClients,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        long begin = System.nanoTime();
+        try {
+            ClientsSnapshotCache.Snapshot snapshot = clientsSnapshotCache.get(queryClients);
+            boolean notModified = snapshot.matches(ifNoneMatch);
+            log.debug("Receive Http Request [queryClusters()] >>> request={}, version={}, size={}, notModified={}",
+                    queryClients, snapshot.getVersion(), snapshot.getSize(), notModified);
+            metrics.getQueryClusters().record(begin, true);
+            requestAuditor.server("clusters", begin, queryClients, null, null);
+            if (notModified) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.getEtag()).build();
+            }
+            boolean binary = StringUtils.containsIgnoreCase(accept, BinaryCodec.MEDIA_TYPE);
+            return ResponseEntity.ok()
+                    .eTag(snapshot.getEtag())
+                    .contentType(binary ? MediaType.valueOf(BinaryCodec.MEDIA_TYPE) : MediaType.APPLICATION_JSON)
+                    .body(binary ? snapshot.getBinaryBody() : snapshot.getBody());
+        } catch (Exception e) {
+            metrics.getQueryClusters().record(begin, false);
+            requestAuditor.server("clusters", begin, queryClients, null, e);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(clientsSnapshotCache.encodeFailed(e.getMessage()));
+        }
+    }
+
+    /**
+     * 查询注册表增量
+     *
+     * @param queryDelta 已同步的注册表标识及版本
+     * @return 增量，版本无法衔接时返回全量
+     */
+    @PostMapping("/clusters/delta")
     @Override
-    public Result<Map<String, ClientConfig>> queryClusters(@RequestBody QueryClients queryClients) {
-        return call(queryClients, () -> Result.success(voteService.queryClients()));
+    public Result<RegistryDelta> queryDelta(@RequestBody QueryDelta queryDelta) {
+        return call("queryDelta", null, queryDelta, () -> Result.success(voteService.queryDelta(queryDelta)));
+    }
+
+    /**
+     * 监听注册表变更，请求异步挂起不占用servlet线程，
+     * 调用方版本落后时立即返回增量，否则在注册表变化或超时后返回
+     *
+     * @param watchClients 已同步的注册表标识及版本
+     * @return 增量，超时返回空增量
+     * @see com.soulw.common.nameserver.sdk.WatchApi
+     */
+    @PostMapping("/watch")
+    public DeferredResult<Result<RegistryDelta>> watch(@RequestBody WatchClients watchClients) {
+        long timeout = systemConfig.getWatchTimeout();
+        if (Objects.nonNull(watchClients.getTimeout()) && watchClients.getTimeout() > 0) {
+            timeout = Math.min(timeout, watchClients.getTimeout());
+        }
+        DeferredResult<Result<RegistryDelta>> r = new DeferredResult<>(timeout);
+        try {
+            RegistryWatcher.Watch watch = voteService.watch(watchClients, delta -> r.setResult(Result.success(delta)));
+            r.onTimeout(() -> {
+                try {
+                    r.setResult(Result.success(voteService.queryDelta(new QueryDelta()
+                            .setRegistryId(watchClients.getRegistryId())
+                            .setRevision(watchClients.getRevision())
+                            .setShard(watchClients.getShard()))));
+                } catch (Exception e) {
+                    r.setResult(Result.failed(e.getMessage()));
+                }
+            });
+            r.onCompletion(watch::cancel);
+        } catch (Exception e) {
+            log.error("watch() error", e);
+            r.setResult(Result.failed(e.getMessage()));
+        }
+        return r;
     }
 
     /**
@@ -83,12 +288,72 @@ public class VoteController implements VoteApi {
     @PostMapping("/master/sync")
     @Override
     public Result<Void> syncMaster(@RequestBody Vote vote) {
-        return call(vote, () -> {
+        return call("masterSync", metrics.getMasterSync(), vote, () -> {
             voteService.masterSync(vote);
             return Result.success(null);
         });
     }
 
+    /**
+     * 接收主节点推送的复制批次
+     *
+     * @param batch 复制批次
+     * @return 本节点已应用的注册表标识及版本
+     */
+    @PostMapping("/replicate")
+    @Override
+    public Result<QueryDelta> replicate(@RequestBody ReplicationBatch batch) {
+        Result<QueryDelta> r;
+        try {
+            r = Result.success(voteService.replicate(batch));
+        } catch (Exception e) {
+            log.error("replicate() error, msg={}", e.getMessage());
+            r = Result.failed(e.getMessage());
+        }
+        RegistryDelta delta = Objects.isNull(batch) ? null : batch.getDelta();
+        // 增量批次频繁，只记录全量
+        if (Objects.nonNull(delta) && Boolean.TRUE.equals(delta.getFull())) {
+            log.info("Receive Http Request [replicate()] >>> revision={}, size={}, ack={}", delta.getRevision(),
+                    delta.getUpserts().size(), r.getData());
+        }
+        return r;
+    }
+
+    /**
+     * 合并其他节点传播的变更(AP模式)，传播频繁，只记录失败
+     *
+     * @param message 变更
+     * @return 无返回结果
+     */
+    @PostMapping("/gossip")
+    @Override
+    public Result<Void> gossip(@RequestBody GossipMessage message) {
+        try {
+            voteService.gossip(message);
+            return Result.success(null);
+        } catch (Exception e) {
+            log.error("gossip() error, msg={}", e.getMessage());
+            return Result.failed(e.getMessage());
+        }
+    }
+
+    /**
+     * 比对注册表摘要(AP模式)
+     *
+     * @param digest 其他节点的摘要
+     * @return 不一致的分桶及本地在这些分桶中的数据
+     */
+    @PostMapping("/gossip/digest")
+    @Override
+    public Result<GossipDiff> digest(@RequestBody GossipDigest digest) {
+        try {
+            return Result.success(voteService.digest(digest));
+        } catch (Exception e) {
+            log.error("digest() error, msg={}", e.getMessage());
+            return Result.failed(e.getMessage());
+        }
+    }
+
     /**
      * 接受投票
      *
@@ -98,7 +363,7 @@ public class VoteController implements VoteApi {
     @PostMapping("/accept")
     @Override
     public Result<Void> acceptVote(@RequestBody Vote vote) {
-        return call(vote, () -> {
+        return call("accept", metrics.getAcceptVote(), vote, () -> {
             voteService.accept(vote);
             return Result.success(null);
         });
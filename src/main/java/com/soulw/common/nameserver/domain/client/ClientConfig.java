@@ -28,6 +28,18 @@ public class ClientConfig extends BaseModel {
      * @see Role
      */
     private String role;
+    /**
+     * 所属集群
+     */
+    private String clusterName;
+    /**
+     * 所属分组
+     */
+    private String groupName;
+    /**
+     * 租约id，通过租约注册的客户端由租约续约维持存活
+     */
+    private Long leaseId;
     /**
      * 心跳时间
      */
@@ -3,12 +3,28 @@ package com.soulw.common.nameserver.domain.context.gateway;
 import com.soulw.common.nameserver.config.SystemConfig;
 import com.soulw.common.nameserver.domain.client.ClientConfig;
 import com.soulw.common.nameserver.domain.context.model.Context;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
 import com.soulw.common.nameserver.domain.context.model.Vote;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
+import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by SoulW on 2024/3/5.
+ * <p>
+ * 同步方法阻塞调用线程直至返回，Async方法立即返回，结果在响应到达后完成，失败时异常完成
  *
  * @author SoulW
  */
@@ -25,9 +41,19 @@ public interface VoteGateway {
      * 查询集群信息
      *
      * @param master 客户端配置
+     * @param query  查询条件
      * @return 包含集群信息的映射
      */
-    Map<String, ClientConfig> queryClients(SystemConfig.Node master);
+    Map<String, ClientConfig> queryClients(SystemConfig.Node master, QueryClients query);
+
+    /**
+     * 查询注册表增量
+     *
+     * @param master 主节点
+     * @param query  已同步的注册表标识及版本
+     * @return 增量
+     */
+    RegistryDelta queryDelta(SystemConfig.Node master, QueryDelta query);
 
     /**
      * 发送投票请求
@@ -44,4 +70,129 @@ public interface VoteGateway {
      * @param vote 投票信息
      */
     void sendMasterSync(SystemConfig.Node node, Vote vote);
+
+    /**
+     * 异步发送心跳
+     *
+     * @param master  主节点
+     * @param context 上下文环境
+     * @return 心跳结果
+     */
+    CompletableFuture<Void> slaveHeartbeatAsync(SystemConfig.Node master, Context context);
+
+    /**
+     * 异步查询集群信息
+     *
+     * @param node  节点
+     * @param query 查询条件
+     * @return 集群信息
+     */
+    CompletableFuture<Map<String, ClientConfig>> queryClientsAsync(SystemConfig.Node node, QueryClients query);
+
+    /**
+     * 异步转发客户端心跳，分片模式下转发给分片主节点
+     *
+     * @param node      节点
+     * @param heartbeat 心跳，须指定分片
+     * @return 心跳结果
+     */
+    CompletableFuture<Void> heartbeatAsync(SystemConfig.Node node, Heartbeat heartbeat);
+
+    /**
+     * 异步转发批量客户端心跳
+     *
+     * @param node       节点
+     * @param heartbeats 心跳，须指定分片
+     * @return 每个实例的心跳结果
+     */
+    CompletableFuture<List<HeartbeatAck>> batchHeartbeatAsync(SystemConfig.Node node, List<Heartbeat> heartbeats);
+
+    /**
+     * 异步转发租约申请，CP模式下转发给分片主节点
+     *
+     * @param node  节点
+     * @param grant 租约申请，心跳须指定分片
+     * @return 租约
+     */
+    CompletableFuture<Lease> grantLeaseAsync(SystemConfig.Node node, LeaseGrant grant);
+
+    /**
+     * 异步转发续约
+     *
+     * @param node    节点
+     * @param request 分片及租约id
+     * @return 不存在(已过期)的租约id
+     */
+    CompletableFuture<long[]> keepaliveAsync(SystemConfig.Node node, LeaseKeepalive request);
+
+    /**
+     * 异步转发撤销租约
+     *
+     * @param node  节点
+     * @param lease 租约，须指定分片
+     * @return 撤销结果
+     */
+    CompletableFuture<Void> revokeLeaseAsync(SystemConfig.Node node, Lease lease);
+
+    /**
+     * 异步查询注册表增量
+     *
+     * @param master 主节点
+     * @param query  已同步的注册表标识及版本
+     * @return 增量
+     */
+    CompletableFuture<RegistryDelta> queryDeltaAsync(SystemConfig.Node master, QueryDelta query);
+
+    /**
+     * 异步发送投票请求，对方拒绝时异常完成
+     *
+     * @param node 节点信息
+     * @param vote 投票信息
+     * @return 投票结果
+     */
+    CompletableFuture<Void> sendVoteRequestAsync(SystemConfig.Node node, Vote vote);
+
+    /**
+     * 异步发送主节点同步
+     *
+     * @param node 节点信息
+     * @param vote 投票信息
+     * @return 同步结果
+     */
+    CompletableFuture<Void> sendMasterSyncAsync(SystemConfig.Node node, Vote vote);
+
+    /**
+     * 异步推送复制批次
+     *
+     * @param node  从节点
+     * @param batch 复制批次
+     * @return 从节点已应用的注册表标识及版本
+     */
+    CompletableFuture<QueryDelta> replicateAsync(SystemConfig.Node node, ReplicationBatch batch);
+
+    /**
+     * 异步传播AP模式下的变更
+     *
+     * @param node    节点
+     * @param message 变更
+     * @return 传播结果
+     */
+    CompletableFuture<Void> gossipAsync(SystemConfig.Node node, GossipMessage message);
+
+    /**
+     * 异步比对AP模式下的注册表摘要
+     *
+     * @param node   节点
+     * @param digest 本地摘要
+     * @return 不一致的分桶及对方在这些分桶中的数据
+     */
+    CompletableFuture<GossipDiff> digestAsync(SystemConfig.Node node, GossipDigest digest);
+
+    /**
+     * 判断节点当前是否可用，已熔断的节点返回false
+     *
+     * @param node 节点
+     * @return 是否可用
+     */
+    boolean isAvailable(SystemConfig.Node node);
 }
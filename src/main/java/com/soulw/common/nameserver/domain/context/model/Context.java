@@ -4,11 +4,13 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.soulw.common.nameserver.config.SystemConfig;
 import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.registry.Registry;
 import lombok.Data;
 
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -20,29 +22,94 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @Data
 public class Context {
     private SystemConfig systemConfig;
-    private Map<String/** clientName */, ClientConfig> clients = Maps.newConcurrentMap();
+    /**
+     * 注册表
+     */
+    private Registry registry = new Registry();
     private String clusterName;
     private String groupName;
     private String clientName;
+    /**
+     * 已同步的主节点注册表标识
+     */
+    private String syncRegistryId;
+    /**
+     * 已同步的主节点注册表版本
+     */
+    private Long syncRevision;
     /**
      * 是否选举中
      */
     private AtomicBoolean votingFlag = new AtomicBoolean(false);
     /**
-     * 发起的选举对象
+     * 已知主节点的选举对象
      */
     private Vote vote;
+    /**
+     * 当前任期
+     */
+    private long currentTerm;
+    /**
+     * 当前任期内投票给的节点
+     */
+    private String votedFor;
+    /**
+     * 最近一次联系到主节点的时间
+     */
+    private volatile long leaderContactTime = -1;
+    /**
+     * 选举超时时间点，到期未联系到主节点则发起选举
+     */
+    private volatile long electionDeadline = -1;
+    /**
+     * 所属分片，未分片时为0
+     */
+    private int shard;
+    /**
+     * 是否为该分片的优先主节点，优先节点的选举超时取随机区间的前半段，其余节点取后半段，
+     * 使各分片的主节点分散到不同节点；为空时不区分
+     */
+    private Boolean preferredLeader;
     /**
      * 属性
      */
     private Map<String, Object> attributes = Maps.newHashMap();
 
+    /**
+     * 获取全部客户端
+     *
+     * @return 客户端列表
+     */
+    public Map<String/** clientName */, ClientConfig> getClients() {
+        return registry.getClients();
+    }
+
+    /**
+     * 使用快照替换全部客户端
+     *
+     * @param clients 客户端快照
+     */
+    public void setClients(Map<String/** clientName */, ClientConfig> clients) {
+        registry.replaceAll(clients);
+    }
+
+    /**
+     * 获取当前节点所在分组的客户端
+     *
+     * @return 客户端列表
+     */
+    public Map<String/** clientName */, ClientConfig> getGroupClients() {
+        return registry.query(clusterName, groupName);
+    }
+
     /**
      * 从客户端列表中移除主客户端
      */
     public void removeMaster() {
         ClientConfig master = getMaster();
-        clients.remove(master.getClientName());
+        if (Objects.nonNull(master)) {
+            registry.remove(master.getClientName());
+        }
     }
 
     /**
@@ -68,10 +135,8 @@ public class Context {
         if (Objects.nonNull(vote)) {
             return convertToNode(vote);
         } else {
-            return clients.values()
-                    .stream().filter(ClientConfig::isMaster)
-                    .map(this::convertToNode)
-                    .findFirst().orElse(null);
+            ClientConfig master = getMaster();
+            return Objects.isNull(master) ? null : convertToNode(master);
         }
     }
 
@@ -81,12 +146,7 @@ public class Context {
      * @return 返回主客户端配置，如果clientGroup不为null则返回clientGroup的主客户端配置，否则返回null
      */
     public ClientConfig getMaster() {
-        for (ClientConfig value : clients.values()) {
-            if (value.isMaster()) {
-                return value;
-            }
-        }
-        return null;
+        return registry.getMaster(clusterName, groupName);
     }
 
     /**
@@ -95,7 +155,7 @@ public class Context {
      * @return 当前客户端配置
      */
     public ClientConfig getCurConfig() {
-        return clients.get(clientName);
+        return registry.get(clientName);
     }
 
     /**
@@ -111,11 +171,11 @@ public class Context {
     /**
      * 获取所有节点的方法
      *
-     * @return 返回系统配置中的所有节点列表
+     * @return 返回当前分组及系统配置中的所有节点列表
      */
     public List<SystemConfig.Node> getAllNodes() {
         List<SystemConfig.Node> r = Lists.newArrayList();
-        for (ClientConfig value : clients.values()) {
+        for (ClientConfig value : getGroupClients().values()) {
             SystemConfig.Node node = convertToNode(value);
             if (r.contains(node)) {
                 continue;
@@ -141,23 +201,126 @@ public class Context {
     }
 
     /**
-     * 比较并替换投票
+     * 处理预投票，只判断是否会投票，不改变任期
+     *
+     * @param vote 预投票
+     * @param now  当前时间戳(ms)
+     * @return 是否同意
+     */
+    public synchronized boolean grantPreVote(Vote vote, long now) {
+        return vote.getTerm() > currentTerm && !hasLeader(now);
+    }
+
+    /**
+     * 处理投票，同一任期只投一票，仍能联系到主节点时拒绝
+     *
+     * @param vote 投票
+     * @param now  当前时间戳(ms)
+     * @return 是否同意
+     */
+    public synchronized boolean grantVote(Vote vote, long now) {
+        if (vote.getTerm() < currentTerm || hasLeader(now)) {
+            return false;
+        }
+        if (vote.getTerm() > currentTerm) {
+            currentTerm = vote.getTerm();
+            votedFor = null;
+        }
+        if (Objects.nonNull(votedFor) && !votedFor.equals(vote.getBeginClientName())) {
+            return false;
+        }
+        votedFor = vote.getBeginClientName();
+        resetElectionDeadline(now);
+        return true;
+    }
+
+    /**
+     * 接受主节点，任期落后的主节点不接受
      *
-     * @param vote 投票对象
-     * @return 如果投票已经过期或者当前投票为空，返回false；否则返回true
+     * @param vote 主节点的选举对象
+     * @param now  当前时间戳(ms)
+     * @return 是否接受
      */
-    public boolean compareToReplace(Vote vote) {
-        if (isTimeout(vote)) {
+    public synchronized boolean acceptLeader(Vote vote, long now) {
+        if (vote.getTerm() < currentTerm) {
             return false;
         }
-        if (Objects.isNull(this.vote) || this.vote.getVoteId().equals(vote.getVoteId()) || isTimeout(this.vote)) {
-            return true;
+        if (vote.getTerm() > currentTerm) {
+            currentTerm = vote.getTerm();
+            votedFor = vote.getBeginClientName();
         }
-        return vote.getVoteTime() < this.vote.getVoteTime();
+        this.vote = vote;
+        touchLeader(now);
+        return true;
+    }
+
+    /**
+     * 进入下一任期并投票给自己
+     *
+     * @return 新任期
+     */
+    public synchronized long startElection() {
+        currentTerm++;
+        votedFor = clientName;
+        return currentTerm;
+    }
+
+    /**
+     * 记录联系到主节点，并推迟选举
+     *
+     * @param now 当前时间戳(ms)
+     */
+    public void touchLeader(long now) {
+        leaderContactTime = now;
+        resetElectionDeadline(now);
+    }
+
+    /**
+     * 最近一个选举超时基准内是否联系到过主节点
+     *
+     * @param now 当前时间戳(ms)
+     * @return 是否有主节点
+     */
+    public boolean hasLeader(long now) {
+        return leaderContactTime > 0 && now - leaderContactTime < systemConfig.getElectionTimeout();
     }
 
-    private boolean isTimeout(Vote vote) {
-        return Objects.nonNull(vote) && (System.nanoTime() - vote.getVoteTime()) > systemConfig.getVoteTimeout();
+    /**
+     * 是否已到选举超时
+     *
+     * @param now 当前时间戳(ms)
+     * @return 是否超时
+     */
+    public boolean isElectionTimeout(long now) {
+        return electionDeadline > 0 && now >= electionDeadline;
+    }
+
+    /**
+     * 启动时在[0, electionTimeout)内随机首次选举时间，新集群无需等待完整的选举超时
+     *
+     * @param now 当前时间戳(ms)
+     */
+    public void startElectionTimer(long now) {
+        electionDeadline = now + randomElectionDelay();
+    }
+
+    /**
+     * 重新随机选举超时，错开各节点发起选举的时间
+     *
+     * @param now 当前时间戳(ms)
+     */
+    public void resetElectionDeadline(long now) {
+        electionDeadline = now + systemConfig.getElectionTimeout() + randomElectionDelay();
+    }
+
+    private long randomElectionDelay() {
+        long timeout = systemConfig.getElectionTimeout();
+        if (Objects.isNull(preferredLeader)) {
+            return ThreadLocalRandom.current().nextLong(timeout);
+        }
+        long half = Math.max(1, timeout / 2);
+        return preferredLeader ? ThreadLocalRandom.current().nextLong(half)
+                : half + ThreadLocalRandom.current().nextLong(Math.max(1, timeout - half));
     }
 
     /**
@@ -181,10 +344,6 @@ public class Context {
                 .setPort(clientConfig.getPort());
     }
 
-    public boolean isAlreadyVoteTimeout() {
-        return isTimeout(this.vote);
-    }
-
     /**
      * 将投票对象转换为节点对象
      *
@@ -21,4 +21,12 @@ public class Heartbeat extends BaseModel {
     private String cluster;
     private String groupCode;
     private ClientConfig clientConfig;
+    /**
+     * 分片，节点间转发时指定，为空时按集群、分组路由
+     */
+    private Integer shard;
+
+    public Heartbeat(String cluster, String groupCode, ClientConfig clientConfig) {
+        this(cluster, groupCode, clientConfig, null);
+    }
 }
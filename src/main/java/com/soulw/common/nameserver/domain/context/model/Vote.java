@@ -19,7 +19,22 @@ import lombok.NoArgsConstructor;
 public class Vote extends BaseModel {
     private String voteId;
     private String beginClientName;
+    /**
+     * 发起时间戳(ms)，仅用于排查
+     */
     private Long voteTime;
+    /**
+     * 任期，预投票时为候选节点下一任期
+     */
+    private Long term;
+    /**
+     * 是否预投票，预投票不改变接收方状态
+     */
+    private Boolean preVote;
     private String ip;
     private Integer port;
+    /**
+     * 选举所属分片
+     */
+    private Integer shard;
 }
@@ -3,8 +3,24 @@ package com.soulw.common.nameserver.domain.context.service;
 import com.soulw.common.nameserver.domain.client.ClientConfig;
 import com.soulw.common.nameserver.domain.context.model.Heartbeat;
 import com.soulw.common.nameserver.domain.context.model.Vote;
+import com.soulw.common.nameserver.domain.registry.Registry;
+import com.soulw.common.nameserver.domain.registry.RegistryWatcher;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
+import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+import com.soulw.common.nameserver.dto.WatchClients;
 
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Created by SoulW on 2024/3/5.
@@ -26,6 +42,45 @@ public interface VoteService {
      */
     void heartbeat(Heartbeat heartbeat);
 
+    /**
+     * 批量心跳，单个实例失败不影响其他实例
+     *
+     * @param heartbeats 心跳列表
+     * @return 每个实例的心跳结果，与请求顺序一致
+     */
+    List<HeartbeatAck> batchHeartbeat(List<Heartbeat> heartbeats);
+
+    /**
+     * 申请租约并注册挂在租约上的实例
+     *
+     * @param grant 租约申请
+     * @return 租约
+     */
+    Lease grantLease(LeaseGrant grant);
+
+    /**
+     * 批量续约
+     *
+     * @param leaseIds 租约id
+     * @return 不存在(已过期)的租约id，调用方需重新申请
+     */
+    long[] keepalive(long[] leaseIds);
+
+    /**
+     * 在指定分片上续约，用于节点间转发
+     *
+     * @param request 分片及租约id
+     * @return 不存在(已过期)的租约id
+     */
+    long[] keepalive(LeaseKeepalive request);
+
+    /**
+     * 撤销租约，挂在租约上的实例一并移除
+     *
+     * @param lease 租约
+     */
+    void revokeLease(Lease lease);
+
     /**
      * 主同步方法，用于同步投票信息
      *
@@ -34,9 +89,65 @@ public interface VoteService {
     void masterSync(Vote vote);
 
     /**
-     * 查询集群信息
+     * 应用主节点推送的复制批次，按版本顺序应用，乱序到达的批次暂存
+     *
+     * @param batch 复制批次
+     * @return 本节点已应用的注册表标识及版本
+     */
+    QueryDelta replicate(ReplicationBatch batch);
+
+    /**
+     * 查询集群信息，可按集群、分组过滤
      *
+     * @param query 查询条件
      * @return 返回包含集群信息的Map对象
      */
-    Map<String, ClientConfig> queryClients();
+    Map<String, ClientConfig> queryClients(QueryClients query);
+
+    /**
+     * 当前服务是否健康，不健康时不对外提供查询
+     *
+     * @return 是否健康
+     */
+    boolean isHealth();
+
+    /**
+     * 获取查询涉及的注册表，分片模式下未同时指定集群和分组时涉及全部分片
+     *
+     * @param query 查询条件
+     * @return 注册表
+     */
+    List<Registry> getRegistries(QueryClients query);
+
+    /**
+     * 查询指定版本之后的注册表增量
+     *
+     * @param query 查询条件
+     * @return 增量，版本无法衔接时返回全量
+     */
+    RegistryDelta queryDelta(QueryDelta query);
+
+    /**
+     * 监听注册表变更，调用方版本落后时立即回调，否则在注册表变化后回调
+     *
+     * @param request  已同步的注册表标识及版本
+     * @param listener 变更回调
+     * @return 监听句柄，超时后需取消
+     */
+    RegistryWatcher.Watch watch(WatchClients request, Consumer<RegistryDelta> listener);
+
+    /**
+     * 合并其他节点传播的变更(AP模式)
+     *
+     * @param message 变更
+     */
+    void gossip(GossipMessage message);
+
+    /**
+     * 比对其他节点的注册表摘要(AP模式)
+     *
+     * @param digest 其他节点的摘要
+     * @return 不一致的分桶及本地在这些分桶中的数据
+     */
+    GossipDiff digest(GossipDigest digest);
 }
@@ -0,0 +1,429 @@
+package com.soulw.common.nameserver.domain.context.service.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.gateway.VoteGateway;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import com.soulw.common.nameserver.domain.context.model.Vote;
+import com.soulw.common.nameserver.domain.context.service.VoteService;
+import com.soulw.common.nameserver.domain.registry.Registry;
+import com.soulw.common.nameserver.domain.registry.RegistryWatcher;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
+import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+import com.soulw.common.nameserver.dto.WatchClients;
+import com.soulw.common.nameserver.metrics.NameServerMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * 分片路由，注册表按集群、分组一致性哈希(jump consistent hash)到分片，每个分片独立选主、复制
+ * <p>
+ * 各分片的主节点分散在不同节点上，CP模式下客户端心跳、租约请求由任一节点接收后转发给所属分片的主节点，
+ * 整体注册吞吐随节点数增加；只有主节点清理过期实例，从节点上直接登记的实例不在主节点的变更中，
+ * 不会被移除，因此不分片时同样转发。节点间请求(投票、复制、同步)携带分片号直接交给对应分片处理
+ *
+ * @author SoulW
+ * @since 2024/3/22 16:10
+ */
+@Slf4j
+@Component
+public class ShardedVoteService implements VoteService {
+    @Resource
+    private SystemConfig systemConfig;
+    @Resource
+    private VoteGateway voteGateway;
+    @Resource
+    private NameServerMetrics metrics;
+    private VoteServiceImpl[] shards;
+
+    @PostConstruct
+    public void init() {
+        int n = Math.max(1, systemConfig.getShards());
+        shards = new VoteServiceImpl[n];
+        for (int i = 0; i < n; i++) {
+            VoteServiceImpl shard = new VoteServiceImpl();
+            shard.setSystemConfig(systemConfig);
+            shard.setVoteGateway(voteGateway);
+            shard.setMetrics(metrics);
+            shard.setShard(i);
+            shard.init();
+            shards[i] = shard;
+        }
+        log.info("init() shards={}", n);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (VoteServiceImpl shard : shards) {
+            shard.destroy();
+        }
+    }
+
+    /**
+     * 计算集群、分组所属分片
+     *
+     * @param cluster 集群
+     * @param group   分组
+     * @return 分片号
+     */
+    public int route(String cluster, String group) {
+        return route(cluster, group, shards.length);
+    }
+
+    /**
+     * 按分片数计算集群、分组所属分片，客户端据此直接定位分片
+     *
+     * @param cluster 集群
+     * @param group   分组
+     * @param shards  分片数，需与服务端ns.shards一致
+     * @return 分片号
+     */
+    public static int route(String cluster, String group, int shards) {
+        if (shards <= 1) {
+            return 0;
+        }
+        String key = StringUtils.defaultIfBlank(cluster, Registry.DEFAULT_CLUSTER) + "/"
+                + StringUtils.defaultIfBlank(group, Registry.DEFAULT_GROUP);
+        return Hashing.consistentHash(Hashing.murmur3_32_fixed().hashString(key, StandardCharsets.UTF_8), shards);
+    }
+
+    /**
+     * 获取分片
+     *
+     * @param shard 分片号，为空时取0号分片
+     * @return 分片
+     */
+    public VoteServiceImpl getShard(Integer shard) {
+        int i = Objects.isNull(shard) ? 0 : shard;
+        Preconditions.checkArgument(i >= 0 && i < shards.length, "分片不存在，shard=" + shard);
+        return shards[i];
+    }
+
+    @Override
+    public void accept(Vote vote) {
+        Preconditions.checkNotNull(vote, "vote is null");
+        getShard(vote.getShard()).accept(vote);
+    }
+
+    @Override
+    public void heartbeat(Heartbeat heartbeat) {
+        Preconditions.checkNotNull(heartbeat, "heartbeat is null");
+        int shard = resolve(heartbeat);
+        SystemConfig.Node leader = findForwardLeader(heartbeat, shard);
+        if (Objects.isNull(leader)) {
+            shards[shard].heartbeat(heartbeat);
+            return;
+        }
+        heartbeat.setShard(shard);
+        await(voteGateway.heartbeatAsync(leader, heartbeat));
+    }
+
+    @Override
+    public List<HeartbeatAck> batchHeartbeat(List<Heartbeat> heartbeats) {
+        Preconditions.checkNotNull(heartbeats, "heartbeats is null");
+        if (shards.length == 1 && Objects.isNull(findForwardLeader(0))) {
+            return shards[0].batchHeartbeat(heartbeats);
+        }
+        // step1. 按处理方分组：本地分片，或需要转发的分片主节点
+        HeartbeatAck[] acks = new HeartbeatAck[heartbeats.size()];
+        Map<Integer/** shard */, List<Integer>> locals = Maps.newHashMap();
+        Map<SystemConfig.Node, List<Integer>> remotes = Maps.newHashMap();
+        for (int i = 0; i < heartbeats.size(); i++) {
+            Heartbeat heartbeat = heartbeats.get(i);
+            try {
+                int shard = resolve(heartbeat);
+                SystemConfig.Node leader = findForwardLeader(heartbeat, shard);
+                if (Objects.isNull(leader)) {
+                    locals.computeIfAbsent(shard, e -> Lists.newArrayList()).add(i);
+                } else {
+                    heartbeat.setShard(shard);
+                    remotes.computeIfAbsent(leader, e -> Lists.newArrayList()).add(i);
+                }
+            } catch (Exception e) {
+                acks[i] = failedAck(heartbeat, e.getMessage());
+            }
+        }
+        // step2. 先发出转发请求，再处理本地分片
+        Map<SystemConfig.Node, CompletableFuture<List<HeartbeatAck>>> futures = Maps.newHashMap();
+        for (Map.Entry<SystemConfig.Node, List<Integer>> entry : remotes.entrySet()) {
+            futures.put(entry.getKey(), voteGateway.batchHeartbeatAsync(entry.getKey(), select(heartbeats, entry.getValue())));
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : locals.entrySet()) {
+            fill(acks, entry.getValue(), shards[entry.getKey()].batchHeartbeat(select(heartbeats, entry.getValue())), heartbeats, null);
+        }
+        // step3. 收集转发结果
+        for (Map.Entry<SystemConfig.Node, List<Integer>> entry : remotes.entrySet()) {
+            List<HeartbeatAck> r = null;
+            String error = null;
+            try {
+                r = await(futures.get(entry.getKey()));
+            } catch (Exception e) {
+                log.error("batchHeartbeat() forward failed, leader={}, size={}, msg={}", entry.getKey(),
+                        entry.getValue().size(), e.getMessage());
+                error = e.getMessage();
+            }
+            fill(acks, entry.getValue(), r, heartbeats, error);
+        }
+        return Lists.newArrayList(acks);
+    }
+
+    @Override
+    public Lease grantLease(LeaseGrant grant) {
+        Preconditions.checkNotNull(grant, "grant is null");
+        List<Heartbeat> heartbeats = grant.getHeartbeats();
+        Preconditions.checkNotNull(heartbeats, "heartbeats is null");
+        Heartbeat first = heartbeats.isEmpty() ? null : heartbeats.get(0);
+        int shard = Objects.isNull(first) ? 0 : resolve(first);
+        // 租约只存在于一个分片，挂在租约上的实例须路由到同一分片
+        for (int i = 1; i < heartbeats.size(); i++) {
+            int s = resolve(heartbeats.get(i));
+            Preconditions.checkArgument(s == shard, "租约上的实例须属于同一分片，shard=" + shard + ", " + s);
+        }
+        SystemConfig.Node leader = Objects.isNull(first) ? findForwardLeader(shard) : findForwardLeader(first, shard);
+        if (Objects.isNull(leader)) {
+            return shards[shard].grantLease(grant);
+        }
+        for (Heartbeat heartbeat : heartbeats) {
+            heartbeat.setShard(shard);
+        }
+        return await(voteGateway.grantLeaseAsync(leader, grant));
+    }
+
+    @Override
+    public long[] keepalive(long[] leaseIds) {
+        Preconditions.checkNotNull(leaseIds, "leaseIds is null");
+        // 租约只存在于授予它的分片，依次在各分片(或分片主节点)中续约剩余的租约
+        long[] missing = leaseIds;
+        for (int i = 0; i < shards.length && missing.length > 0; i++) {
+            SystemConfig.Node leader = findForwardLeader(i);
+            missing = Objects.isNull(leader) ? shards[i].keepalive(missing)
+                    : await(voteGateway.keepaliveAsync(leader, new LeaseKeepalive().setShard(i).setLeaseIds(missing)));
+        }
+        return missing;
+    }
+
+    @Override
+    public long[] keepalive(LeaseKeepalive request) {
+        Preconditions.checkNotNull(request, "request is null");
+        return getShard(request.getShard()).keepalive(request);
+    }
+
+    @Override
+    public void revokeLease(Lease lease) {
+        Preconditions.checkNotNull(lease, "lease is null");
+        if (Objects.nonNull(lease.getShard())) {
+            getShard(lease.getShard()).revokeLease(lease);
+            return;
+        }
+        for (int i = 0; i < shards.length; i++) {
+            SystemConfig.Node leader = findForwardLeader(i);
+            if (Objects.isNull(leader)) {
+                shards[i].revokeLease(lease);
+            } else {
+                await(voteGateway.revokeLeaseAsync(leader, new Lease().setLeaseId(lease.getLeaseId())
+                        .setTtl(lease.getTtl())
+                        .setShard(i)));
+            }
+        }
+    }
+
+    @Override
+    public void masterSync(Vote vote) {
+        Preconditions.checkNotNull(vote, "vote is null");
+        getShard(vote.getShard()).masterSync(vote);
+    }
+
+    @Override
+    public QueryDelta replicate(ReplicationBatch batch) {
+        Preconditions.checkNotNull(batch, "batch is null");
+        return getShard(batch.getShard()).replicate(batch);
+    }
+
+    @Override
+    public Map<String, ClientConfig> queryClients(QueryClients query) {
+        Integer shard = resolve(query);
+        if (Objects.nonNull(shard)) {
+            return shards[shard].queryClients(query);
+        }
+        // 每个分片都登记了全部节点，节点的角色、主节点标记各分片不同，只取节点所在分组路由到的分片；
+        // 客户端只登记在所属分片，同样满足该条件
+        Map<String, ClientConfig> r = Maps.newHashMap();
+        for (int i = 0; i < shards.length; i++) {
+            for (Map.Entry<String, ClientConfig> entry : shards[i].queryClients(query).entrySet()) {
+                ClientConfig client = entry.getValue();
+                if (route(client.getClusterName(), client.getGroupName()) == i) {
+                    r.put(entry.getKey(), client);
+                }
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public boolean isHealth() {
+        for (VoteServiceImpl shard : shards) {
+            if (!shard.isHealth()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<Registry> getRegistries(QueryClients query) {
+        Integer shard = resolve(query);
+        if (Objects.nonNull(shard)) {
+            return shards[shard].getRegistries(query);
+        }
+        List<Registry> r = Lists.newArrayListWithCapacity(shards.length);
+        for (VoteServiceImpl s : shards) {
+            r.addAll(s.getRegistries(query));
+        }
+        return r;
+    }
+
+    @Override
+    public RegistryDelta queryDelta(QueryDelta query) {
+        Preconditions.checkNotNull(query, "query is null");
+        return getShard(query.getShard()).queryDelta(query);
+    }
+
+    @Override
+    public RegistryWatcher.Watch watch(WatchClients request, Consumer<RegistryDelta> listener) {
+        Preconditions.checkNotNull(request, "request is null");
+        return getShard(request.getShard()).watch(request, listener);
+    }
+
+    @Override
+    public void gossip(GossipMessage message) {
+        Preconditions.checkNotNull(message, "message is null");
+        getShard(message.getShard()).gossip(message);
+    }
+
+    @Override
+    public GossipDiff digest(GossipDigest digest) {
+        Preconditions.checkNotNull(digest, "digest is null");
+        return getShard(digest.getShard()).digest(digest);
+    }
+
+    private int resolve(Heartbeat heartbeat) {
+        if (Objects.nonNull(heartbeat.getShard())) {
+            getShard(heartbeat.getShard());
+            return heartbeat.getShard();
+        }
+        return route(heartbeat.getCluster(), heartbeat.getGroupCode());
+    }
+
+    /**
+     * 查询涉及的分片
+     *
+     * @return 分片号，涉及全部分片时返回null
+     */
+    private Integer resolve(QueryClients query) {
+        if (shards.length == 1) {
+            return 0;
+        }
+        if (Objects.isNull(query)) {
+            return null;
+        }
+        if (Objects.nonNull(query.getShard())) {
+            getShard(query.getShard());
+            return query.getShard();
+        }
+        if (StringUtils.isNotBlank(query.getCluster()) && StringUtils.isNotBlank(query.getGroupCode())) {
+            return route(query.getCluster(), query.getGroupCode());
+        }
+        return null;
+    }
+
+    /**
+     * 客户端直接发来的心跳，CP模式下本节点不是分片主节点时需转发；已指定分片的心跳来自其它节点，本地处理
+     *
+     * @return 分片主节点，本地处理时返回null
+     */
+    private SystemConfig.Node findForwardLeader(Heartbeat heartbeat, int shard) {
+        return Objects.nonNull(heartbeat.getShard()) ? null : findForwardLeader(shard);
+    }
+
+    /**
+     * CP模式下本节点不是分片主节点时需转发给主节点，主节点未知时失败，由客户端换节点重试
+     *
+     * @param shard 分片号
+     * @return 分片主节点，本地处理时返回null
+     */
+    private SystemConfig.Node findForwardLeader(int shard) {
+        if (!systemConfig.isCp()) {
+            return null;
+        }
+        VoteServiceImpl target = shards[shard];
+        if (target.getContext().isCurMaster()) {
+            return null;
+        }
+        SystemConfig.Node leader = target.getContext().findMasterNode();
+        Preconditions.checkState(Objects.nonNull(leader), "分片主节点未知，shard=" + shard);
+        return leader;
+    }
+
+    private static List<Heartbeat> select(List<Heartbeat> heartbeats, List<Integer> indexes) {
+        List<Heartbeat> r = Lists.newArrayListWithCapacity(indexes.size());
+        for (Integer i : indexes) {
+            r.add(heartbeats.get(i));
+        }
+        return r;
+    }
+
+    private static void fill(HeartbeatAck[] acks, List<Integer> indexes, List<HeartbeatAck> r,
+                             List<Heartbeat> heartbeats, String error) {
+        for (int j = 0; j < indexes.size(); j++) {
+            int i = indexes.get(j);
+            HeartbeatAck ack = Objects.nonNull(r) && j < r.size() ? r.get(j) : null;
+            acks[i] = Objects.nonNull(ack) ? ack
+                    : failedAck(heartbeats.get(i), StringUtils.defaultIfBlank(error, "no ack"));
+        }
+    }
+
+    private static HeartbeatAck failedAck(Heartbeat heartbeat, String message) {
+        ClientConfig client = Objects.isNull(heartbeat) ? null : heartbeat.getClientConfig();
+        return new HeartbeatAck()
+                .setClientName(Objects.isNull(client) || Objects.isNull(client.getPort()) ? null : client.getClientName())
+                .setSuccess(false)
+                .setMessage(message);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = Objects.isNull(e.getCause()) ? e : e.getCause();
+            Throwables.throwIfUnchecked(cause);
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package com.soulw.common.nameserver.domain.context.service.impl;
 
-import com.alibaba.fastjson.JSON;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.soulw.common.nameserver.config.SystemConfig;
@@ -12,50 +12,107 @@ import com.soulw.common.nameserver.domain.context.model.Context;
 import com.soulw.common.nameserver.domain.context.model.Heartbeat;
 import com.soulw.common.nameserver.domain.context.model.Vote;
 import com.soulw.common.nameserver.domain.context.service.VoteService;
+import com.soulw.common.nameserver.domain.registry.Registry;
+import com.soulw.common.nameserver.domain.registry.RegistryGossip;
+import com.soulw.common.nameserver.domain.registry.RegistryReplicator;
+import com.soulw.common.nameserver.domain.registry.RegistryWatcher;
+import com.soulw.common.nameserver.domain.registry.store.HeapClientStore;
+import com.soulw.common.nameserver.domain.registry.store.OffHeapClientStore;
+import com.soulw.common.nameserver.domain.registry.store.RegistryStore;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
+import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+import com.soulw.common.nameserver.dto.WatchClients;
+import com.soulw.common.nameserver.metrics.NameServerMetrics;
+import com.soulw.common.nameserver.metrics.ShardMetrics;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.stereotype.Component;
 
-import javax.annotation.PostConstruct;
-import javax.annotation.Resource;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 import java.util.UUID;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Created by SoulW on 2024/3/5.
+ * <p>
+ * 单个分片的选举、复制及注册表，由{@link ShardedVoteService}按分片创建
  *
  * @author SoulW
  * @since 2024/3/5 13:55
  */
-@Component
 @Slf4j
 @Data
 public class VoteServiceImpl implements VoteService {
 
-    @Resource
     private SystemConfig systemConfig;
-    @Resource
     private VoteGateway voteGateway;
+    /**
+     * 所属分片
+     */
+    private int shard;
     /**
      * 当前上下文
      */
     private Context context;
-    private ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(2, buildThreadFactory("voteScheduler-%s"));
-    private ThreadPoolExecutor executor = new ThreadPoolExecutor(10, 10, 30, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
-            buildThreadFactory("voteThreadPool-%s"), new ThreadPoolExecutor.CallerRunsPolicy());
+    private ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(4, buildThreadFactory("voteScheduler-%s"));
     private HeartbeatWorker heartbeatWorker = new HeartbeatWorker();
     private ClusterWorker clusterWorker = new ClusterWorker();
+    private ExpireWorker expireWorker = new ExpireWorker();
+    private ElectionWorker electionWorker = new ElectionWorker();
+    private GossipWorker gossipWorker = new GossipWorker();
+    private AntiEntropyWorker antiEntropyWorker = new AntiEntropyWorker();
+    private MetricsWorker metricsWorker = new MetricsWorker();
+    private NameServerMetrics metrics = NameServerMetrics.NOOP;
+    private ShardMetrics shardMetrics;
+    private RegistryWatcher registryWatcher;
+    private RegistryReplicator registryReplicator;
+    private RegistryGossip registryGossip;
+    private RegistryStore registryStore;
+    /**
+     * 监听通知和复制推送的单线程执行器，关闭时一并关闭
+     */
+    private ExecutorService watcherExecutor;
+    private ExecutorService replicatorExecutor;
+    /**
+     * 乱序到达的复制增量，按起始版本排序，由syncLock保护
+     */
+    private final TreeMap<Long/** baseRevision */, RegistryDelta> pendingDeltas = Maps.newTreeMap();
+    private final Object syncLock = new Object();
+    /**
+     * 最近一次收到复制推送的时间
+     */
+    private volatile long replicateTime = -1;
+    /**
+     * 最近一次与主节点同步成功(推送或拉取)的时间
+     */
+    private volatile long syncTime = -1;
 
     /**
      * 构建一个线程工厂
@@ -73,24 +130,148 @@ public class VoteServiceImpl implements VoteService {
     }
 
     /**
-     * 应用初始化
+     * 初始化，须先设置systemConfig、voteGateway及shard
      */
-    @PostConstruct
     public void init() {
         context = new Context();
         context.setSystemConfig(systemConfig);
+        context.setShard(shard);
+        context.setPreferredLeader(isPreferredLeader());
+        context.setRegistry(new Registry(systemConfig.getClientExpireTime(), systemConfig.getExpireTickTime(),
+                systemConfig.getChangeLogSize(), systemConfig.isOffHeapStore() ? new OffHeapClientStore()
+                : new HeapClientStore()));
+        watcherExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
+                buildThreadFactory("registryWatcher-%s"));
+        replicatorExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
+                buildThreadFactory("registryReplicator-%s"));
+        registryWatcher = new RegistryWatcher(context.getRegistry(), watcherExecutor);
+        registryReplicator = new RegistryReplicator(context.getRegistry(), voteGateway, replicatorExecutor,
+                systemConfig.getReplicationWindow(), shard);
+        registryGossip = new RegistryGossip(context.getRegistry(), voteGateway, systemConfig.getGossipFanout(),
+                systemConfig.getGossipBatchSize(), systemConfig.getClientExpireTime(), shard);
         context.setClusterName(systemConfig.getCluster());
         context.setGroupName(systemConfig.getClientGroup());
         context.setClientName(ClientConfig.calculateClientName(systemConfig.getIp(), systemConfig.getPort()));
+        recover();
+        registerMetrics();
 
         if (systemConfig.isCp()) {
+            context.startElectionTimer(System.currentTimeMillis());
+            scheduler.scheduleWithFixedDelay(electionWorker, systemConfig.getElectionTickTime(),
+                    systemConfig.getElectionTickTime(), TimeUnit.MILLISECONDS);
             scheduler.scheduleAtFixedRate(heartbeatWorker, 0,
                     systemConfig.getHeartbeatTime(), TimeUnit.MILLISECONDS);
             scheduler.scheduleAtFixedRate(clusterWorker, systemConfig.getClusterSyncTime(),
                     systemConfig.getClusterSyncTime(), TimeUnit.MILLISECONDS);
+        } else {
+            // AP模式没有主节点，各节点直接接受心跳，通过传播和摘要比对同步
+            scheduler.scheduleAtFixedRate(heartbeatWorker, 0,
+                    systemConfig.getHeartbeatTime(), TimeUnit.MILLISECONDS);
+            scheduler.scheduleWithFixedDelay(gossipWorker, systemConfig.getGossipInterval(),
+                    systemConfig.getGossipInterval(), TimeUnit.MILLISECONDS);
+            scheduler.scheduleWithFixedDelay(antiEntropyWorker, systemConfig.getAntiEntropyInterval(),
+                    systemConfig.getAntiEntropyInterval(), TimeUnit.MILLISECONDS);
+        }
+        scheduler.scheduleAtFixedRate(expireWorker, systemConfig.getExpireTickTime(),
+                systemConfig.getExpireTickTime(), TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(metricsWorker, 0, systemConfig.getMetricsRefreshTime(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 关闭，停止定时任务和复制推送，写入未落盘的注册表变更
+     */
+    public void destroy() {
+        scheduler.shutdown();
+        registryReplicator.stop();
+        replicatorExecutor.shutdown();
+        watcherExecutor.shutdown();
+        if (Objects.nonNull(registryStore)) {
+            registryStore.stop();
+        }
+    }
+
+    /**
+     * 配置了持久化目录时从本地快照和预写日志恢复注册表，恢复失败则以空注册表启动
+     * <p>
+     * 选举状态不持久化，CP模式下恢复出的主节点角色已失效，移除后重新选举；
+     * 从节点随后通过全量同步与主节点对齐
+     */
+    private void recover() {
+        if (StringUtils.isBlank(systemConfig.getDataDir())) {
+            return;
+        }
+        File dir = new File(systemConfig.getDataDir(), "shard-" + shard);
+        try {
+            registryStore = new RegistryStore(context.getRegistry(), dir, systemConfig.getWalSegmentSize(),
+                    RegistryStore.FlushMode.of(systemConfig.getWalFlushMode()), systemConfig.getWalFlushInterval(),
+                    systemConfig.getRegistrySnapshotInterval(),
+                    new ScheduledThreadPoolExecutor(1, buildThreadFactory("registryStore-" + shard + "-%s")));
+            int size = registryStore.start();
+            if (systemConfig.isCp()) {
+                context.removeMaster();
+            }
+            log.info("recover() shard={}, size={}", shard, size);
+        } catch (Exception e) {
+            log.error("recover() failed, shard={}, dir={}", shard, dir, e);
+            registryStore = null;
+            context.getRegistry().clear();
+        }
+    }
+
+    /**
+     * 注册分片指标：注册表大小及版本，CP模式下另有任期、是否主节点、从节点同步滞后时间及主节点到各从节点的复制延迟
+     */
+    private void registerMetrics() {
+        shardMetrics = metrics.shard(shard);
+        Registry registry = context.getRegistry();
+        shardMetrics.gauge("ns.registry.size", registry, Registry::size);
+        shardMetrics.gauge("ns.registry.revision", registry, Registry::getRevision);
+        if (!systemConfig.isCp()) {
+            return;
+        }
+        shardMetrics.gauge("ns.election.term", context, Context::getCurrentTerm);
+        shardMetrics.gauge("ns.leader", context, e -> e.isCurMaster() ? 1 : 0);
+        shardMetrics.gauge("ns.replication.staleness.seconds", this, e -> e.context.isCurMaster() || e.syncTime < 0 ? 0
+                : (System.currentTimeMillis() - e.syncTime) / 1000.0);
+        SystemConfig.Node curNode = context.getCurNode();
+        for (SystemConfig.Node node : systemConfig.getNodes()) {
+            if (!Objects.equals(curNode, node)) {
+                shardMetrics.gauge("ns.replication.lag", this, e -> e.getReplicationLag(node),
+                        "peer", node.getIp() + ":" + node.getPort());
+            }
         }
     }
 
+    /**
+     * 主节点上从节点落后的版本数
+     *
+     * @param node 从节点
+     * @return 落后的版本数，非主节点或尚未确认时返回NaN
+     */
+    private double getReplicationLag(SystemConfig.Node node) {
+        if (!context.isCurMaster()) {
+            return Double.NaN;
+        }
+        Long applied = registryReplicator.getAppliedRevisions().get(node);
+        return Objects.isNull(applied) ? Double.NaN : Math.max(0, context.getRegistry().getRevision() - applied);
+    }
+
+    /**
+     * 分片模式下按配置节点顺序为分片指定优先主节点，节点数不变时各节点分到的分片数相近
+     *
+     * @return 是否为优先主节点，不分片时返回null
+     */
+    private Boolean isPreferredLeader() {
+        List<SystemConfig.Node> nodes = systemConfig.getNodes();
+        if (systemConfig.getShards() <= 1 || Objects.isNull(nodes) || nodes.isEmpty()) {
+            return null;
+        }
+        List<SystemConfig.Node> sorted = Lists.newArrayList(nodes);
+        sorted.sort(Comparator.comparing(SystemConfig.Node::getIp).thenComparing(SystemConfig.Node::getPort));
+        SystemConfig.Node curNode = new SystemConfig.Node().setIp(systemConfig.getIp()).setPort(systemConfig.getPort());
+        return Objects.equals(curNode, sorted.get(shard % sorted.size()));
+    }
+
     private Heartbeat newHeartbeat(String ip, Integer port, Role role) {
         Preconditions.checkNotNull(role, "role is null");
         Heartbeat r = new Heartbeat();
@@ -111,81 +292,280 @@ public class VoteServiceImpl implements VoteService {
     public void heartbeat(Heartbeat heartbeat) {
         Preconditions.checkNotNull(heartbeat, "heartbeat is null");
         ClientConfig requestClient = heartbeat.getClientConfig();
-        ClientConfig storageClient = context.getClients().computeIfAbsent(heartbeat.getClientConfig().getClientName(),
-                e -> new ClientConfig()
+        context.getRegistry().heartbeat(heartbeat.getCluster(), heartbeat.getGroupCode(),
+                requestClient.getClientName(), requestClient.getExt(), e -> new ClientConfig()
                         .setClientName(e)
                         .setRole(StringUtils.defaultIfBlank(requestClient.getRole(), Role.SLAVE.name()))
                         .setClientName(ClientConfig.calculateClientName(requestClient.getIp(), requestClient.getPort()))
                         .setIp(requestClient.getIp())
-                        .setPort(requestClient.getPort()));
-        storageClient.setHeartbeatTime(System.currentTimeMillis());
+                        .setPort(requestClient.getPort()), System.currentTimeMillis());
+        if (!systemConfig.isCp()) {
+            registryGossip.markDirty(requestClient.getClientName());
+        }
+    }
+
+    @Override
+    public List<HeartbeatAck> batchHeartbeat(List<Heartbeat> heartbeats) {
+        Preconditions.checkNotNull(heartbeats, "heartbeats is null");
+        List<HeartbeatAck> r = Lists.newArrayListWithCapacity(heartbeats.size());
+        for (Heartbeat heartbeat : heartbeats) {
+            HeartbeatAck ack = new HeartbeatAck();
+            try {
+                ack.setClientName(heartbeat.getClientConfig().getClientName());
+                heartbeat(heartbeat);
+                ack.setSuccess(true);
+            } catch (Exception e) {
+                ack.setSuccess(false).setMessage(e.getMessage());
+            }
+            r.add(ack);
+        }
+        return r;
+    }
+
+    @Override
+    public Lease grantLease(LeaseGrant grant) {
+        Preconditions.checkNotNull(grant, "grant is null");
+        long ttl = Objects.nonNull(grant.getTtl()) && grant.getTtl() > 0 ? grant.getTtl() : systemConfig.getClientExpireTime();
+        Registry registry = context.getRegistry();
+        long leaseId = registry.grantLease(ttl, System.currentTimeMillis());
+        for (Heartbeat heartbeat : grant.getHeartbeats()) {
+            heartbeat(heartbeat);
+            ClientConfig client = registry.get(heartbeat.getClientConfig().getClientName());
+            if (Objects.nonNull(client)) {
+                registry.attachLease(leaseId, client);
+            }
+        }
+        return new Lease().setLeaseId(leaseId).setTtl(ttl);
+    }
+
+    @Override
+    public long[] keepalive(long[] leaseIds) {
+        Preconditions.checkNotNull(leaseIds, "leaseIds is null");
+        Registry registry = context.getRegistry();
+        long now = System.currentTimeMillis();
+        long[] missing = null;
+        int n = 0;
+        for (long leaseId : leaseIds) {
+            if (registry.keepalive(leaseId, now)) {
+                if (!systemConfig.isCp()) {
+                    registryGossip.markLease(leaseId);
+                }
+                continue;
+            }
+            if (Objects.isNull(missing)) {
+                missing = new long[leaseIds.length];
+            }
+            missing[n++] = leaseId;
+        }
+        return Objects.isNull(missing) ? new long[0] : Arrays.copyOf(missing, n);
     }
 
     @Override
-    public Map<String, ClientConfig> queryClients() {
+    public long[] keepalive(LeaseKeepalive request) {
+        Preconditions.checkNotNull(request, "request is null");
+        return keepalive(request.getLeaseIds());
+    }
+
+    @Override
+    public void revokeLease(Lease lease) {
+        Preconditions.checkNotNull(lease, "lease is null");
+        Preconditions.checkNotNull(lease.getLeaseId(), "leaseId is null");
+        Registry registry = context.getRegistry();
+        List<String> attached = Lists.newArrayList(registry.getLeaseClients(lease.getLeaseId()));
+        int removed = registry.revokeLease(lease.getLeaseId());
+        if (!systemConfig.isCp()) {
+            long now = System.currentTimeMillis();
+            for (String clientName : attached) {
+                if (Objects.isNull(registry.get(clientName))) {
+                    registryGossip.markRemoved(clientName, now);
+                }
+            }
+        }
+        log.info("revokeLease() leaseId={}, removed={}", lease.getLeaseId(), removed);
+    }
+
+    @Override
+    public Map<String, ClientConfig> queryClients(QueryClients query) {
         if (!context.isHealth()) {
             return Maps.newHashMap();
         }
-        return context.getClients();
+        if (Objects.isNull(query)) {
+            return context.getClients();
+        }
+        return context.getRegistry().query(query.getCluster(), query.getGroupCode());
     }
 
     @Override
-    public void accept(Vote vote) {
-        // step1. 心跳正常不接受投票
-        ClientConfig curConfig = context.getCurConfig();
-        if (Objects.nonNull(curConfig) && !curConfig.isTimeout(systemConfig.getHeartbeatTimeDelta())) {
-            throw new RuntimeException("当前服务心跳正常，不接受投票");
-        }
+    public boolean isHealth() {
+        return context.isHealth();
+    }
 
-        if (context.compareToReplace(vote)) {
-            if ((context.getVotingFlag().get() && context.isAlreadyVoteTimeout()) ||
-                    context.getVotingFlag().compareAndSet(false, true)) {
-                log.info("accept() accepted, vote={}", vote);
-                context.setVote(vote);
-            } else {
-                throw new RuntimeException("当前服务正在投票中，不接受新的不同的投票");
+    @Override
+    public List<Registry> getRegistries(QueryClients query) {
+        return Collections.singletonList(context.getRegistry());
+    }
+
+    @Override
+    public RegistryDelta queryDelta(QueryDelta query) {
+        Preconditions.checkState(context.isHealth(), "当前服务不健康");
+        Preconditions.checkNotNull(query, "query is null");
+        return context.getRegistry().delta(query.getRegistryId(), query.getRevision());
+    }
+
+    @Override
+    public RegistryWatcher.Watch watch(WatchClients request, Consumer<RegistryDelta> listener) {
+        Preconditions.checkState(context.isHealth(), "当前服务不健康");
+        Preconditions.checkNotNull(request, "request is null");
+        return registryWatcher.watch(request.getRegistryId(), request.getRevision(), listener);
+    }
+
+    @Override
+    public void accept(Vote vote) {
+        Preconditions.checkNotNull(vote, "vote is null");
+        Preconditions.checkNotNull(vote.getTerm(), "term is null");
+        long now = System.currentTimeMillis();
+        // step1. 预投票不改变任期，只有能联系到主节点或任期不领先时拒绝
+        if (Boolean.TRUE.equals(vote.getPreVote())) {
+            if (!context.grantPreVote(vote, now)) {
+                throw new RuntimeException("拒绝预投票，term=" + vote.getTerm() + "，currentTerm=" + context.getCurrentTerm());
             }
-        } else {
-            log.info("accept(vote) failed, context.vote={}, req.vote={}", context.getVote(), vote);
-            throw new RuntimeException("在超时范围内，已有合适的投票，不接受新投票");
+            return;
         }
+        // step2. 正式投票，同一任期只投一票
+        if (!context.grantVote(vote, now)) {
+            log.info("accept(vote) rejected, currentTerm={}, votedFor={}, req.vote={}", context.getCurrentTerm(),
+                    context.getVotedFor(), vote);
+            throw new RuntimeException("拒绝投票，term=" + vote.getTerm() + "，currentTerm=" + context.getCurrentTerm());
+        }
+        log.info("accept() accepted, vote={}", vote);
     }
 
     @Override
     public void masterSync(Vote vote) {
-        if (context.compareToReplace(vote)) {
-            context.getVotingFlag().set(false);
-            context.setVote(vote);
-            SystemConfig.Node master = context.convertToNode(vote);
-            voteGateway.slaveHeartbeat(master, context);
-            Map<String, ClientConfig> clients = voteGateway.queryClients(master);
-            context.setClients(clients);
-            log.info("masterSync() success, vote={}, clients={}", vote, clients);
-        } else {
-            log.error("masterSync() failed, vote={}", vote);
+        Preconditions.checkNotNull(vote, "vote is null");
+        Preconditions.checkNotNull(vote.getTerm(), "term is null");
+        if (!context.acceptLeader(vote, System.currentTimeMillis())) {
+            log.error("masterSync() stale term, currentTerm={}, vote={}", context.getCurrentTerm(), vote);
+            throw new RuntimeException("主节点任期落后，term=" + vote.getTerm() + "，currentTerm=" + context.getCurrentTerm());
+        }
+        SystemConfig.Node master = context.convertToNode(vote);
+        // 旧主节点接受新任期后立即降级，不能等同步成功，否则同步失败时仍以主节点身份推送复制
+        if (context.isCurMaster() && !Objects.equals(master, context.getCurNode())) {
+            context.removeMaster();
         }
+        voteGateway.slaveHeartbeat(master, context);
+        syncFromMaster(master);
+        log.info("masterSync() success, vote={}, revision={}", vote, context.getSyncRevision());
     }
 
-    private Boolean sendVoteRequest(SystemConfig.Node node, Vote vote) {
-        try {
-            voteGateway.sendVoteRequest(node, vote);
-            return true;
-        } catch (Exception e) {
-            log.error("sendVoteRequest() msg={}", e.getMessage());
-            return false;
+    @Override
+    public QueryDelta replicate(ReplicationBatch batch) {
+        Preconditions.checkNotNull(batch, "batch is null");
+        Preconditions.checkNotNull(batch.getTerm(), "term is null");
+        Preconditions.checkNotNull(batch.getDelta(), "delta is null");
+        SystemConfig.Node master = new SystemConfig.Node().setIp(batch.getIp()).setPort(batch.getPort());
+        // 任期落后时只接受当前正在跟随的主节点，与定时拉取保持一致
+        if (batch.getTerm() < context.getCurrentTerm() && !Objects.equals(master, context.findMasterNode())) {
+            throw new RuntimeException("主节点任期落后，term=" + batch.getTerm() + "，currentTerm=" + context.getCurrentTerm());
         }
+        long now = System.currentTimeMillis();
+        context.touchLeader(now);
+        replicateTime = now;
+        syncTime = now;
+        applyFromMaster(batch.getBaseRevision(), batch.getDelta());
+        return new QueryDelta().setRegistryId(context.getSyncRegistryId())
+                .setRevision(context.getSyncRevision());
     }
 
-    private void sendMasterSync(SystemConfig.Node node, Vote vote) {
-        try {
-            voteGateway.sendMasterSync(node, vote);
-        } catch (Exception e) {
-            log.error("sendMasterSync() failed, node={}, vote={}", node, vote, e);
+    @Override
+    public void gossip(GossipMessage message) {
+        Preconditions.checkState(!systemConfig.isCp(), "仅AP模式支持");
+        Preconditions.checkNotNull(message, "message is null");
+        registryGossip.merge(message);
+    }
+
+    @Override
+    public GossipDiff digest(GossipDigest digest) {
+        Preconditions.checkState(!systemConfig.isCp(), "仅AP模式支持");
+        Preconditions.checkNotNull(digest, "digest is null");
+        return registryGossip.diff(digest);
+    }
+
+    /**
+     * 从主节点增量同步注册表，注册表标识变化或日志截断时由主节点返回全量
+     *
+     * @param master 主节点
+     */
+    private void syncFromMaster(SystemConfig.Node master) {
+        String registryId = context.getSyncRegistryId();
+        Long revision = context.getSyncRevision();
+        RegistryDelta delta = voteGateway.queryDelta(master, new QueryDelta()
+                .setRegistryId(registryId)
+                .setRevision(revision)
+                .setShard(shard));
+        syncTime = System.currentTimeMillis();
+        if (Objects.equals(delta.getRevision(), revision) && Objects.equals(delta.getRegistryId(), registryId)) {
+            return;
+        }
+        if (applyFromMaster(revision, delta) && Boolean.TRUE.equals(delta.getFull())) {
+            log.info("syncFromMaster() full, master={}, revision={}, size={}", master, delta.getRevision(),
+                    delta.getUpserts().size());
         }
     }
 
     /**
-     * 执行选举
+     * 应用主节点的增量，复制推送与定时拉取共用，按版本顺序应用
+     * <p>
+     * 增量中的数据取自生成时的最新状态，起始版本早于已同步版本的增量可以直接覆盖；
+     * 起始版本晚于已同步版本的增量说明前序批次未到，暂存等待
+     *
+     * @param baseRevision 增量的起始版本(不含)，全量时忽略
+     * @param delta        增量
+     * @return 是否已应用
+     */
+    private boolean applyFromMaster(Long baseRevision, RegistryDelta delta) {
+        synchronized (syncLock) {
+            boolean sameRegistry = Objects.equals(delta.getRegistryId(), context.getSyncRegistryId())
+                    && Objects.nonNull(context.getSyncRevision());
+            if (sameRegistry && delta.getRevision() <= context.getSyncRevision()) {
+                return false;
+            }
+            if (!Boolean.TRUE.equals(delta.getFull())) {
+                if (!sameRegistry || Objects.isNull(baseRevision)) {
+                    return false;
+                }
+                if (baseRevision > context.getSyncRevision()) {
+                    if (pendingDeltas.size() < systemConfig.getReplicationWindow() * 2) {
+                        pendingDeltas.put(baseRevision, delta);
+                    }
+                    return false;
+                }
+            } else {
+                pendingDeltas.clear();
+            }
+            doApply(delta);
+            Map.Entry<Long, RegistryDelta> next;
+            while (Objects.nonNull(next = pendingDeltas.firstEntry()) && next.getKey() <= context.getSyncRevision()) {
+                pendingDeltas.pollFirstEntry();
+                RegistryDelta pending = next.getValue();
+                if (Objects.equals(pending.getRegistryId(), context.getSyncRegistryId())
+                        && pending.getRevision() > context.getSyncRevision()) {
+                    doApply(pending);
+                }
+            }
+            return true;
+        }
+    }
+
+    private void doApply(RegistryDelta delta) {
+        context.getRegistry().apply(delta);
+        context.setSyncRegistryId(delta.getRegistryId());
+        context.setSyncRevision(delta.getRevision());
+    }
+
+    /**
+     * 执行选举，先以下一任期预投票，获得多数同意后才递增任期正式投票，
+     * 避免网络隔离的节点反复抬高任期干扰正常集群
      */
     private boolean doVote() {
         if (context.isVoting() || context.isCurMaster()) {
@@ -195,65 +575,44 @@ public class VoteServiceImpl implements VoteService {
             return false;
         }
         try {
-            // step1. 发起第一轮选举
-            Vote vote = newVote();
-            context.setVote(vote);
-            // step2. 并发请求
-            ExecutorCompletionService<Boolean> service = new ExecutorCompletionService<>(executor);
-            int count = 0;
-            SystemConfig.Node curNode = context.getCurNode();
-            for (SystemConfig.Node node : context.getAllNodes()) {
-                count++;
-                if (Objects.equals(curNode, node)) {
-                    continue;
-                }
-                service.submit(() -> sendVoteRequest(node, vote));
+            // step1. 预投票
+            if (!requestVotes(newVote(context.getCurrentTerm() + 1, true))) {
+                log.info("doVote() pre-vote failed, currentTerm={}", context.getCurrentTerm());
+                return false;
             }
-            // step3. 等待结果
-            long startTime = System.currentTimeMillis(), remainTime;
-            int expectAcceptVoteNum = Math.max((count / 2) + 1, systemConfig.getMinNodeLen());
-            int acceptTimes = 1;
-            boolean isOk = false;
-            for (int i = 0; i < count - 1; i++) {
-                remainTime = systemConfig.getVoteTimeout() - (System.currentTimeMillis() - startTime);
-                if (remainTime <= 0) {
-                    log.error("accept() remainTimes<=0");
-                    break;
-                }
-                try {
-                    Future<Boolean> future = service.poll(remainTime, TimeUnit.MILLISECONDS);
-                    if (Objects.isNull(future)) {
-                        continue;
-                    }
-                    if (Objects.equals(Boolean.TRUE, future.get())) {
-                        acceptTimes++;
-                    }
-                    if (acceptTimes >= expectAcceptVoteNum) {
-                        isOk = true;
-                        break;
-                    }
-                } catch (Exception e) {
-                    log.error("accept(vote) failed", e);
-                }
+            // step2. 递增任期，正式投票
+            Vote vote = newVote(context.startElection(), false);
+            if (!requestVotes(vote)) {
+                log.error("doVote() vote failed, term={}", vote.getTerm());
+                return false;
             }
-            if (!isOk) {
-                log.error("doVote() vote failed, acceptTimes={}", acceptTimes);
+            if (!context.acceptLeader(vote, System.currentTimeMillis())) {
+                log.error("doVote() term changed while voting, term={}, currentTerm={}", vote.getTerm(),
+                        context.getCurrentTerm());
                 return false;
             }
+            log.info("doVote() elected, term={}", vote.getTerm());
 
-            // step4. 同步成功
+            // step3. 成为主节点并通知其他节点
+            SystemConfig.Node curNode = context.getCurNode();
             List<SystemConfig.Node> allNodes = context.getAllNodes();
-            context.getClients().clear();
+            // 保留恢复或同步得到的注册表，只替换旧主节点及本节点的记录；
+            // 从节点已同步的是旧主节点的注册表标识，首批复制由变更日志判定后自动退化为全量
+            context.removeMaster();
+            context.getRegistry().remove(context.getClientName());
             for (SystemConfig.Node node : allNodes) {
                 if (Objects.equals(curNode, node)) {
                     heartbeat(newHeartbeat(node.getIp(), node.getPort(), Role.MASTER));
                     continue;
                 }
                 log.info("doVote() sync node={}", node);
-                executor.submit(() -> {
-                    sendMasterSync(node, vote);
+                voteGateway.sendMasterSyncAsync(node, vote).whenComplete((v, e) -> {
+                    if (Objects.nonNull(e)) {
+                        log.error("sendMasterSync() failed, node={}, vote={}, msg={}", node, vote, e.getMessage());
+                    }
                 });
             }
+            registryReplicator.start(vote.getTerm(), curNode, getPeers());
             return true;
         } catch (Exception e) {
             log.error("doVote() failed", e);
@@ -264,25 +623,96 @@ public class VoteServiceImpl implements VoteService {
         }
     }
 
+    /**
+     * 向其他节点并发请求投票，获得多数同意或全部响应后立即返回，不占用等待线程
+     *
+     * @param vote 投票
+     * @return 是否获得多数同意(含自己)
+     */
+    private boolean requestVotes(Vote vote) throws InterruptedException {
+        SystemConfig.Node curNode = context.getCurNode();
+        List<SystemConfig.Node> allNodes = context.getAllNodes();
+        List<SystemConfig.Node> peers = Lists.newArrayList(allNodes);
+        peers.remove(curNode);
+        int expectAcceptVoteNum = Math.max((allNodes.size() / 2) + 1, systemConfig.getMinNodeLen());
+        AtomicInteger acceptTimes = new AtomicInteger(1);
+        AtomicInteger responseTimes = new AtomicInteger(0);
+        CompletableFuture<Boolean> quorum = new CompletableFuture<>();
+        if (acceptTimes.get() >= expectAcceptVoteNum) {
+            quorum.complete(true);
+        } else if (peers.isEmpty()) {
+            quorum.complete(false);
+        }
+        for (SystemConfig.Node node : peers) {
+            voteGateway.sendVoteRequestAsync(node, vote).whenComplete((v, e) -> {
+                if (Objects.isNull(e)) {
+                    if (acceptTimes.incrementAndGet() >= expectAcceptVoteNum) {
+                        quorum.complete(true);
+                    }
+                } else {
+                    log.info("requestVotes() node={}, msg={}", node, e.getMessage());
+                }
+                if (responseTimes.incrementAndGet() >= peers.size()) {
+                    quorum.complete(false);
+                }
+            });
+        }
+        try {
+            if (quorum.get(systemConfig.getVoteTimeout(), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (TimeoutException e) {
+            log.error("requestVotes() timeout, vote={}", vote);
+        } catch (ExecutionException e) {
+            log.error("requestVotes() failed", e);
+        }
+        log.info("requestVotes() acceptTimes={}, expect={}, preVote={}, term={}", acceptTimes.get(), expectAcceptVoteNum,
+                vote.getPreVote(), vote.getTerm());
+        return false;
+    }
+
+    /**
+     * 选举失败时并发向其他节点查询主节点，采用第一个报告可用主节点的应答
+     *
+     * @return 是否找到主节点并完成同步
+     */
     private boolean fallbackToQuery() {
         try {
             log.info("fallback to query...");
             SystemConfig.Node curNode = context.getCurNode();
-            for (SystemConfig.Node node : context.getAllNodes()) {
-                if (Objects.equals(curNode, node)) {
-                    continue;
-                }
-                Map<String, ClientConfig> clients = voteGateway.queryClients(node);
-                log.info("fallbackToQuery() clients={}", JSON.toJSONString(clients));
-                for (ClientConfig value : clients.values()) {
-                    if (value.isMaster()) {
-                        SystemConfig.Node masterNode = context.convertToNode(value);
-                        voteGateway.slaveHeartbeat(masterNode, context);
-                        context.setClients(voteGateway.queryClients(masterNode));
-                        return true;
+            List<SystemConfig.Node> peers = getPeers();
+            if (peers.isEmpty()) {
+                return false;
+            }
+            CompletableFuture<SystemConfig.Node> found = new CompletableFuture<>();
+            AtomicInteger responseTimes = new AtomicInteger(0);
+            QueryClients query = new QueryClients().setCluster(context.getClusterName())
+                    .setGroupCode(context.getGroupName())
+                    .setShard(shard);
+            for (SystemConfig.Node node : peers) {
+                voteGateway.queryClientsAsync(node, query).whenComplete((clients, e) -> {
+                    if (Objects.nonNull(clients)) {
+                        SystemConfig.Node masterNode = findReportedMaster(clients, curNode);
+                        if (Objects.nonNull(masterNode)) {
+                            found.complete(masterNode);
+                        }
                     }
-                }
+                    if (responseTimes.incrementAndGet() >= peers.size()) {
+                        found.complete(null);
+                    }
+                });
+            }
+            SystemConfig.Node masterNode = found.get(systemConfig.getVoteTimeout(), TimeUnit.MILLISECONDS);
+            if (Objects.isNull(masterNode)) {
+                return false;
             }
+            log.info("fallbackToQuery() master={}", masterNode);
+            voteGateway.slaveHeartbeat(masterNode, context);
+            syncFromMaster(masterNode);
+            context.touchLeader(System.currentTimeMillis());
+            return true;
+        } catch (TimeoutException e) {
+            log.error("failback to query timeout");
             return false;
         } catch (Exception e) {
             log.error("failback to query failed", e);
@@ -290,13 +720,37 @@ public class VoteServiceImpl implements VoteService {
         }
     }
 
-    private Vote newVote() {
+    private SystemConfig.Node findReportedMaster(Map<String, ClientConfig> clients, SystemConfig.Node curNode) {
+        for (ClientConfig value : clients.values()) {
+            if (!value.isMaster() || !Objects.equals(context.getClusterName(), value.getClusterName())
+                    || !Objects.equals(context.getGroupName(), value.getGroupName())) {
+                continue;
+            }
+            SystemConfig.Node masterNode = context.convertToNode(value);
+            // 已熔断的节点上报的主节点多半已失效
+            if (!Objects.equals(curNode, masterNode) && voteGateway.isAvailable(masterNode)) {
+                return masterNode;
+            }
+        }
+        return null;
+    }
+
+    private List<SystemConfig.Node> getPeers() {
+        List<SystemConfig.Node> r = Lists.newArrayList(context.getAllNodes());
+        r.remove(context.getCurNode());
+        return r;
+    }
+
+    private Vote newVote(long term, boolean preVote) {
         Vote vote = new Vote();
         vote.setVoteId(UUID.randomUUID().toString().replace("-", ""));
-        vote.setVoteTime(System.nanoTime());
+        vote.setVoteTime(System.currentTimeMillis());
+        vote.setTerm(term);
+        vote.setPreVote(preVote);
         vote.setBeginClientName(context.getClientName());
         vote.setIp(systemConfig.getIp());
         vote.setPort(systemConfig.getPort());
+        vote.setShard(shard);
         return vote;
     }
 
@@ -317,12 +771,26 @@ public class VoteServiceImpl implements VoteService {
                     return;
                 }
                 if (context.isCurMaster()) {
-                    log.info("ClusterWorker.run() is master, skip...");
+                    // 定时刷新从节点列表，并补发失败的复制批次
+                    registryReplicator.start(context.getCurrentTerm(), context.getCurNode(), getPeers());
+                    return;
+                }
+                registryReplicator.stop();
+                // 收到推送的从节点无需拉取
+                if (System.currentTimeMillis() - replicateTime < systemConfig.getClusterSyncTime()) {
                     return;
                 }
                 SystemConfig.Node masterNode = context.findMasterNode();
                 if (Objects.nonNull(masterNode)) {
-                    context.setClients(voteGateway.queryClients(masterNode));
+                    long begin = System.nanoTime();
+                    try {
+                        syncFromMaster(masterNode);
+                    } catch (Throwable e) {
+                        shardMetrics.getClusterSync().record(begin, false);
+                        throw e;
+                    }
+                    shardMetrics.getClusterSync().record(begin, true);
+                    context.touchLeader(System.currentTimeMillis());
                 } else {
                     log.error("masterNode is null");
                 }
@@ -332,19 +800,41 @@ public class VoteServiceImpl implements VoteService {
         }
     }
 
+    /**
+     * 过期清理worker，CP模式下只有主节点移除过期客户端
+     *
+     * @author Soulw
+     */
+    public class ExpireWorker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                boolean evict = !systemConfig.isCp() || context.isCurMaster();
+                int expired = context.getRegistry().expire(System.currentTimeMillis(), evict);
+                if (expired > 0) {
+                    log.info("ExpireWorker.run() expired={}, size={}", expired, context.getRegistry().size());
+                }
+            } catch (Throwable e) {
+                log.error("ExpireWorker.run() failed", e);
+            }
+        }
+    }
+
     /**
      * 心跳执行器
      *
      * @author Soulw
      */
     public class HeartbeatWorker implements Runnable {
-        private long heartbeatTime = -1;
-
         @Override
         public void run() {
             try {
-                // step1. 检测是CP类型
-                if (!systemConfig.isCp() || !systemConfig.getHeartbeat()) {
+                if (!systemConfig.getHeartbeat()) {
+                    return;
+                }
+                // step1. AP模式只刷新自身，随传播同步给其他节点
+                if (!systemConfig.isCp()) {
+                    heartbeat(newHeartbeat(systemConfig.getIp(), systemConfig.getPort(), Role.SLAVE));
                     return;
                 }
                 // step2. 检测在选举中
@@ -352,50 +842,117 @@ public class VoteServiceImpl implements VoteService {
                     log.info("heartbeatWorker.run() voting, skip...");
                     return;
                 }
-                // step3. 检测不是master
+                // step3. 主节点只刷新自身
                 if (context.isCurMaster()) {
                     heartbeat(newHeartbeat());
-                    heartbeatTime = System.currentTimeMillis();
+                    context.touchLeader(System.currentTimeMillis());
                     log.info("heartbeatWorker.run() master, skip...");
                     return;
                 }
-            } catch (Throwable e) {
-                log.error("precheck failed", e);
-                return;
-            }
-
-            // step4. 发送心跳
-            try {
+                // step4. 向主节点发送心跳，失败由选举超时处理
                 SystemConfig.Node masterNode = context.findMasterNode();
                 if (Objects.nonNull(masterNode)) {
-                    voteGateway.slaveHeartbeat(masterNode, context);
-                    heartbeatTime = System.currentTimeMillis();
-                    return;
+                    voteGateway.slaveHeartbeatAsync(masterNode, context).whenComplete((v, e) -> {
+                        if (Objects.nonNull(e)) {
+                            log.error("heartbeat failed, master={}, msg={}", masterNode, e.getMessage());
+                            return;
+                        }
+                        long now = System.currentTimeMillis();
+                        context.touchLeader(now);
+                        // 心跳刷新不在增量中同步，成功向主节点心跳后刷新本地记录
+                        context.getRegistry().touch(context.getClientName(), now);
+                    });
                 }
             } catch (Throwable e) {
                 log.error("heartbeat failed", e);
             }
+        }
+    }
 
-            // step5. 心跳失败，发起选举
+    /**
+     * 传播worker，AP模式下定时将本地变更发给随机节点
+     *
+     * @author Soulw
+     */
+    public class GossipWorker implements Runnable {
+        @Override
+        public void run() {
             try {
-                if ((System.currentTimeMillis() - heartbeatTime) >= systemConfig.getHeartbeatTime()) {
-                    try {
-                        Thread.sleep((long) (500 * Math.random()));
-                    } catch (InterruptedException e) {
-                        log.error("sleep failed", e);
-                    }
-                    if (!doVote()) {
-                        // step5.1 选举失败降级到查询
-                        if (fallbackToQuery()) {
-                            log.info("fallback to query success...");
-                            heartbeatTime = System.currentTimeMillis();
-                        }
-                    } else {
-                        heartbeatTime = System.currentTimeMillis();
-                    }
+                registryGossip.gossip(getPeers());
+            } catch (Throwable e) {
+                log.error("GossipWorker.run() failed", e);
+            }
+        }
+    }
+
+    /**
+     * 反熵worker，AP模式下定时与随机节点比对摘要并修复差异
+     *
+     * @author Soulw
+     */
+    public class AntiEntropyWorker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                registryGossip.antiEntropy(getPeers());
+            } catch (Throwable e) {
+                log.error("AntiEntropyWorker.run() failed", e);
+            }
+        }
+    }
+
+    /**
+     * 指标worker，定时统计各集群、分组的客户端数
+     *
+     * @author Soulw
+     */
+    public class MetricsWorker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                Map<String, Map<String, Integer>> sizes = Maps.newHashMap();
+                context.getRegistry().forEach(client -> sizes
+                        .computeIfAbsent(StringUtils.defaultIfBlank(client.getClusterName(), Registry.DEFAULT_CLUSTER),
+                                e -> Maps.newHashMap())
+                        .merge(StringUtils.defaultIfBlank(client.getGroupName(), Registry.DEFAULT_GROUP), 1, Integer::sum));
+                shardMetrics.updateGroupSizes(sizes);
+            } catch (Throwable e) {
+                log.error("MetricsWorker.run() failed", e);
+            }
+        }
+    }
+
+    /**
+     * 选举执行器，选举超时内未联系到主节点时发起选举
+     *
+     * @author Soulw
+     */
+    public class ElectionWorker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                if (!systemConfig.isCp() || !systemConfig.getHeartbeat() || context.isVoting()) {
+                    return;
+                }
+                long now = System.currentTimeMillis();
+                if (context.isCurMaster()) {
+                    context.resetElectionDeadline(now);
+                    return;
+                }
+                if (!context.isElectionTimeout(now)) {
+                    return;
+                }
+                log.info("ElectionWorker.run() election timeout, currentTerm={}", context.getCurrentTerm());
+                // 无论成败都重新随机，失败的候选节点错开下一轮
+                context.resetElectionDeadline(now);
+                long begin = System.nanoTime();
+                boolean elected = doVote();
+                shardMetrics.getElection().record(begin, elected);
+                if (!elected && fallbackToQuery()) {
+                    log.info("fallback to query success...");
                 }
             } catch (Throwable e) {
-                log.error("fallbackToQuery failed", e);
+                log.error("ElectionWorker.run() failed", e);
             }
         }
     }
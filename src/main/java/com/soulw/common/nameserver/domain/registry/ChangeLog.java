@@ -0,0 +1,87 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+
+/**
+ * 注册表变更日志，定长环形缓冲，只记录变更的客户端名称及对应版本号
+ *
+ * @author SoulW
+ * @since 2024/3/14 15:10
+ */
+public class ChangeLog {
+    private final long[] revisions;
+    private final String[] keys;
+    /**
+     * 下一个写入位置
+     */
+    private int tail;
+    private int count;
+    private long revision;
+
+    public ChangeLog(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+        this.revisions = new long[capacity];
+        this.keys = new String[capacity];
+    }
+
+    /**
+     * 追加一条变更
+     *
+     * @param clientName 变更的客户端名称
+     * @return 变更后的版本号
+     */
+    public synchronized long append(String clientName) {
+        revision++;
+        revisions[tail] = revision;
+        keys[tail] = clientName;
+        tail = (tail + 1) % keys.length;
+        count = Math.min(count + 1, keys.length);
+        return revision;
+    }
+
+    /**
+     * 当前版本号
+     *
+     * @return 版本号
+     */
+    public synchronized long revision() {
+        return revision;
+    }
+
+    /**
+     * 获取指定版本之后变更过的客户端名称
+     *
+     * @param since 起始版本(不含)
+     * @return 变更的客户端名称，日志已截断或版本非法时返回null
+     */
+    public synchronized Set<String> keysSince(long since) {
+        if (since > revision || since < 0) {
+            return null;
+        }
+        if (since == revision) {
+            return Sets.newHashSet();
+        }
+        if (count == 0 || revisions[(tail - count + keys.length) % keys.length] > since + 1) {
+            return null;
+        }
+        Set<String> r = Sets.newLinkedHashSet();
+        for (int i = 1; i <= count; i++) {
+            int idx = (tail - i + keys.length) % keys.length;
+            if (revisions[idx] <= since) {
+                break;
+            }
+            r.add(keys[idx]);
+        }
+        return r;
+    }
+
+    /**
+     * 清空日志，版本号保持递增
+     */
+    public synchronized void reset() {
+        count = 0;
+    }
+}
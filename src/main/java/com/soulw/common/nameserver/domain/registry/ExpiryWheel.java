@@ -0,0 +1,144 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 哈希时间轮，每个tick只处理当前槽位中的任务，与总任务数无关
+ * <p>
+ * 任意线程可调用{@link #schedule(Object, long)}，{@link #advance(long, Handler)}只允许单线程调用
+ *
+ * @author SoulW
+ * @since 2024/3/13 09:40
+ */
+public class ExpiryWheel<T> {
+    private final long tickDuration;
+    private final int mask;
+    private final ArrayDeque<Timeout<T>>[] buckets;
+    private final Queue<Timeout<T>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private long startTime = -1;
+    private long currentTick;
+
+    /**
+     * 构造时间轮
+     *
+     * @param tickDuration 每个tick的毫秒数
+     * @param wheelSize    槽位数，向上取整为2的幂
+     */
+    @SuppressWarnings("unchecked")
+    public ExpiryWheel(long tickDuration, int wheelSize) {
+        Preconditions.checkArgument(tickDuration > 0, "tickDuration must be positive");
+        Preconditions.checkArgument(wheelSize > 0, "wheelSize must be positive");
+        int n = Integer.highestOneBit(wheelSize - 1) << 1;
+        n = Math.max(n, 1);
+        this.tickDuration = tickDuration;
+        this.mask = n - 1;
+        this.buckets = new ArrayDeque[n];
+        for (int i = 0; i < n; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * 调度一个到期任务
+     *
+     * @param target   目标对象
+     * @param deadline 到期时间戳(ms)
+     */
+    public void schedule(T target, long deadline) {
+        pending.add(new Timeout<>(target, deadline));
+        size.incrementAndGet();
+    }
+
+    /**
+     * 推进时间轮到指定时间，处理所有到期槽位
+     *
+     * @param now     当前时间戳(ms)
+     * @param handler 到期处理器
+     * @return 本次被移除的任务数
+     */
+    public int advance(long now, Handler<T> handler) {
+        if (startTime < 0) {
+            startTime = now;
+        }
+        transferPending();
+        long targetTick = (now - startTime) / tickDuration;
+        int expired = 0;
+        while (currentTick <= targetTick) {
+            ArrayDeque<Timeout<T>> bucket = buckets[(int) (currentTick & mask)];
+            for (int i = bucket.size(); i > 0; i--) {
+                Timeout<T> timeout = bucket.pollFirst();
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                    bucket.addLast(timeout);
+                    continue;
+                }
+                long next = handler.onTimeout(timeout.target, now);
+                if (next > 0) {
+                    timeout.deadline = next;
+                    place(timeout, currentTick + 1);
+                } else {
+                    size.decrementAndGet();
+                    expired++;
+                }
+            }
+            currentTick++;
+        }
+        return expired;
+    }
+
+    /**
+     * 当前任务数
+     *
+     * @return 任务数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    private void transferPending() {
+        Timeout<T> timeout;
+        while ((timeout = pending.poll()) != null) {
+            place(timeout, currentTick);
+        }
+    }
+
+    private void place(Timeout<T> timeout, long minTick) {
+        long deadlineTick = (timeout.deadline - startTime + tickDuration - 1) / tickDuration;
+        long tick = Math.max(deadlineTick, minTick);
+        timeout.rounds = (tick - minTick) / buckets.length;
+        buckets[(int) (tick & mask)].addLast(timeout);
+    }
+
+    /**
+     * 到期处理器
+     *
+     * @author SoulW
+     */
+    public interface Handler<T> {
+        /**
+         * 任务到期回调
+         *
+         * @param target 目标对象
+         * @param now    当前时间戳(ms)
+         * @return 新的到期时间戳，小于等于0表示任务结束
+         */
+        long onTimeout(T target, long now);
+    }
+
+    private static final class Timeout<T> {
+        private final T target;
+        private long deadline;
+        private long rounds;
+
+        private Timeout(T target, long deadline) {
+            this.target = target;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 租约表，以leaseId为键的开放寻址哈希表(线性探测)，数据按槽位存放在原始类型数组中
+ * <p>
+ * 续约只需查找槽位并写入续约时间，不拼接字符串也不触发扩容；
+ * 授予、撤销、扩容持有写锁，续约持有读锁；多个续约可能并发写同一槽位，续约时间使用原子数组并只向后推进
+ *
+ * @author SoulW
+ * @since 2024/3/20 16:05
+ */
+public class LeaseTable {
+    private static final long EMPTY = 0L;
+    private static final int MIN_CAPACITY = 64;
+    /**
+     * 租约id上限，保证JSON调用方按double解析时不丢精度
+     */
+    private static final long MAX_LEASE_ID = 1L << 53;
+
+    private final StampedLock lock = new StampedLock();
+    private long[] keys;
+    private long[] ttls;
+    private AtomicLongArray keepaliveTimes;
+    private Set<String>[] attachments;
+    private int mask;
+    private int size;
+
+    public LeaseTable() {
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * 授予新租约
+     *
+     * @param ttl 租约有效期(ms)
+     * @param now 当前时间戳(ms)
+     * @return 租约id，恒为正数
+     */
+    public long grant(long ttl, long now) {
+        Preconditions.checkArgument(ttl > 0, "ttl must be positive");
+        long stamp = lock.writeLock();
+        try {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            long leaseId;
+            do {
+                leaseId = ThreadLocalRandom.current().nextLong(1, MAX_LEASE_ID);
+            } while (find(leaseId) >= 0);
+            int slot = index(leaseId);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = leaseId;
+            ttls[slot] = ttl;
+            keepaliveTimes.set(slot, now);
+            attachments[slot] = Sets.newConcurrentHashSet();
+            size++;
+            return leaseId;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 续约
+     *
+     * @param leaseId 租约id
+     * @param now     当前时间戳(ms)
+     * @return 租约是否存在
+     */
+    public boolean keepalive(long leaseId, long now) {
+        long stamp = lock.readLock();
+        try {
+            int slot = find(leaseId);
+            if (slot < 0) {
+                return false;
+            }
+            keepaliveTimes.accumulateAndGet(slot, now, Math::max);
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 将客户端挂到租约上
+     *
+     * @param leaseId    租约id
+     * @param clientName 客户端名称
+     * @return 租约是否存在
+     */
+    public boolean attach(long leaseId, String clientName) {
+        long stamp = lock.readLock();
+        try {
+            int slot = find(leaseId);
+            if (slot < 0) {
+                return false;
+            }
+            attachments[slot].add(clientName);
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 最近一次续约时间
+     *
+     * @param leaseId 租约id
+     * @return 续约时间戳，租约不存在返回-1
+     */
+    public long keepaliveTime(long leaseId) {
+        long stamp = lock.readLock();
+        try {
+            int slot = find(leaseId);
+            return slot < 0 ? -1 : keepaliveTimes.get(slot);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 挂在租约上的客户端名称
+     *
+     * @param leaseId 租约id
+     * @return 客户端名称的只读视图，租约不存在返回空集合
+     */
+    public Set<String> attachments(long leaseId) {
+        long stamp = lock.readLock();
+        try {
+            int slot = find(leaseId);
+            return slot < 0 ? Collections.emptySet() : Collections.unmodifiableSet(attachments[slot]);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 租约到期时间
+     *
+     * @param leaseId 租约id
+     * @return 到期时间戳，租约不存在返回-1
+     */
+    public long deadline(long leaseId) {
+        long stamp = lock.readLock();
+        try {
+            int slot = find(leaseId);
+            return slot < 0 ? -1 : keepaliveTimes.get(slot) + ttls[slot];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 撤销租约
+     *
+     * @param leaseId 租约id
+     * @return 挂在租约上的客户端名称，租约不存在返回空集合
+     */
+    public Set<String> revoke(long leaseId) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = find(leaseId);
+            if (slot < 0) {
+                return Collections.emptySet();
+            }
+            Set<String> r = attachments[slot];
+            removeAt(slot);
+            size--;
+            return r;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 清空租约表
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            allocate(MIN_CAPACITY);
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private int find(long leaseId) {
+        if (leaseId == EMPTY) {
+            return -1;
+        }
+        int slot = index(leaseId);
+        long key;
+        while ((key = keys[slot]) != EMPTY) {
+            if (key == leaseId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int index(long leaseId) {
+        long h = leaseId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * 线性探测的后移删除，保证探测链上不留空洞
+     */
+    private void removeAt(int slot) {
+        int hole = slot;
+        int cur = slot;
+        while (true) {
+            cur = (cur + 1) & mask;
+            if (keys[cur] == EMPTY) {
+                break;
+            }
+            int home = index(keys[cur]);
+            boolean between = hole <= cur ? (hole < home && home <= cur) : (hole < home || home <= cur);
+            if (between) {
+                continue;
+            }
+            keys[hole] = keys[cur];
+            ttls[hole] = ttls[cur];
+            keepaliveTimes.set(hole, keepaliveTimes.get(cur));
+            attachments[hole] = attachments[cur];
+            hole = cur;
+        }
+        keys[hole] = EMPTY;
+        attachments[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldTtls = ttls;
+        AtomicLongArray oldTimes = keepaliveTimes;
+        Set<String>[] oldAttachments = attachments;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) {
+                continue;
+            }
+            int slot = index(oldKeys[i]);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            ttls[slot] = oldTtls[i];
+            keepaliveTimes.set(slot, oldTimes.get(i));
+            attachments[slot] = oldAttachments[i];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        ttls = new long[capacity];
+        keepaliveTimes = new AtomicLongArray(capacity);
+        attachments = new Set[capacity];
+        mask = capacity - 1;
+    }
+}
@@ -0,0 +1,740 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.registry.store.ClientStore;
+import com.soulw.common.nameserver.domain.registry.store.HeapClientStore;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * 注册表，按 cluster -> group -> client 三级索引维护客户端，
+ * 同时保留 clientName -> client 的扁平索引用于按名称查找，索引由{@link ClientStore}维护
+ * <p>
+ * 结构性变更(新增、删除、角色/地址/分组/扩展信息变化)会递增版本号并写入变更日志，
+ * 心跳刷新不视为变更
+ *
+ * @author SoulW
+ * @since 2024/3/12 10:20
+ */
+@Slf4j
+public class Registry {
+    /**
+     * 默认集群
+     */
+    public static final String DEFAULT_CLUSTER = "defaultCluster";
+    /**
+     * 默认分组
+     */
+    public static final String DEFAULT_GROUP = "defaultGroup";
+    /**
+     * 默认过期时间
+     */
+    public static final long DEFAULT_EXPIRE_TIME = 30_000L;
+    /**
+     * 时间轮槽位数
+     */
+    private static final int WHEEL_SIZE = 512;
+    /**
+     * 默认变更日志长度
+     */
+    public static final int DEFAULT_CHANGE_LOG_SIZE = 10_000;
+
+    private final ClientStore store;
+    /**
+     * 按记录句柄调度过期检测
+     */
+    private final ExpiryWheel<Object> expiryWheel;
+    private final LeaseTable leaseTable = new LeaseTable();
+    private final ExpiryWheel<Long> leaseWheel;
+    /**
+     * 客户端过期时间(ms)，超过该时间未心跳的客户端会被移除
+     */
+    private final long expireTime;
+    private final ChangeLog changeLog;
+    /**
+     * 注册表标识，清空重建后重新生成，用于让增量同步方识别注册表已更换
+     */
+    private volatile String registryId = newRegistryId();
+    /**
+     * 变更通知，在变更所在线程同步调用，实现方不可阻塞
+     */
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+    public Registry() {
+        this(DEFAULT_EXPIRE_TIME, 1_000L, DEFAULT_CHANGE_LOG_SIZE);
+    }
+
+    /**
+     * 构造注册表
+     *
+     * @param expireTime 客户端过期时间(ms)
+     * @param tickTime   过期检测精度(ms)
+     * @param logSize    变更日志长度
+     */
+    public Registry(long expireTime, long tickTime, int logSize) {
+        this(expireTime, tickTime, logSize, new HeapClientStore());
+    }
+
+    /**
+     * 构造注册表
+     *
+     * @param expireTime 客户端过期时间(ms)
+     * @param tickTime   过期检测精度(ms)
+     * @param logSize    变更日志长度
+     * @param store      客户端存储
+     */
+    public Registry(long expireTime, long tickTime, int logSize, ClientStore store) {
+        this.store = store;
+        this.expireTime = expireTime;
+        this.expiryWheel = new ExpiryWheel<>(tickTime, WHEEL_SIZE);
+        this.leaseWheel = new ExpiryWheel<>(tickTime, WHEEL_SIZE);
+        this.changeLog = new ChangeLog(logSize);
+    }
+
+    /**
+     * 按名称查找客户端
+     *
+     * @param clientName 客户端名称
+     * @return 客户端配置，不存在返回null
+     */
+    public ClientConfig get(String clientName) {
+        return Objects.isNull(clientName) ? null : store.get(clientName);
+    }
+
+    /**
+     * 注册客户端，已存在则直接返回，分组变化时迁移到新分组
+     *
+     * @param cluster    集群名称
+     * @param group      分组名称
+     * @param clientName 客户端名称
+     * @param factory    不存在时的创建函数
+     * @return 注册表中的客户端配置
+     */
+    public ClientConfig register(String cluster, String group, String clientName,
+                                 Function<String, ClientConfig> factory) {
+        Preconditions.checkNotNull(clientName, "clientName is null");
+        String clusterName = normalizeCluster(cluster);
+        String groupName = normalizeGroup(group);
+        ClientConfig exists = store.get(clientName);
+        if (Objects.nonNull(exists) && isSameGroup(exists, clusterName, groupName)) {
+            return exists;
+        }
+        boolean[] changed = new boolean[1];
+        ClientConfig r = compute(clientName, old -> {
+            if (Objects.nonNull(old) && isSameGroup(old, clusterName, groupName)) {
+                return old;
+            }
+            ClientConfig client = Objects.nonNull(old) ? old : factory.apply(clientName);
+            client.setClusterName(clusterName);
+            client.setGroupName(groupName);
+            changed[0] = true;
+            return client;
+        });
+        if (changed[0]) {
+            logChange(clientName);
+        }
+        return r;
+    }
+
+    /**
+     * 客户端心跳，已在该分组下时只刷新心跳时间，否则先注册或迁移分组
+     *
+     * @param cluster       集群名称
+     * @param group         分组名称
+     * @param clientName    客户端名称
+     * @param factory       不存在时的创建函数
+     * @param heartbeatTime 心跳时间戳(ms)
+     */
+    public void heartbeat(String cluster, String group, String clientName,
+                          Function<String, ClientConfig> factory, long heartbeatTime) {
+        Preconditions.checkNotNull(clientName, "clientName is null");
+        if (store.touch(clientName, normalizeCluster(cluster), normalizeGroup(group), heartbeatTime)) {
+            return;
+        }
+        register(cluster, group, clientName, factory);
+        store.touch(clientName, null, null, heartbeatTime);
+    }
+
+    /**
+     * 客户端心跳，并同步心跳携带的扩展信息(权重、可用区等)；扩展信息为空时不修改已有的扩展信息，
+     * 与已有的一致时只刷新心跳时间
+     *
+     * @param cluster       集群名称
+     * @param group         分组名称
+     * @param clientName    客户端名称
+     * @param ext           扩展信息，可为空
+     * @param factory       不存在时的创建函数
+     * @param heartbeatTime 心跳时间戳(ms)
+     */
+    public void heartbeat(String cluster, String group, String clientName, Map<String, Object> ext,
+                          Function<String, ClientConfig> factory, long heartbeatTime) {
+        if (Objects.isNull(ext) || ext.isEmpty()) {
+            heartbeat(cluster, group, clientName, factory, heartbeatTime);
+            return;
+        }
+        heartbeat(cluster, group, clientName, e -> {
+            ClientConfig client = factory.apply(e);
+            client.setExt(Maps.newHashMap(ext));
+            return client;
+        }, heartbeatTime);
+        ClientConfig exists = store.get(clientName);
+        if (Objects.isNull(exists) || Objects.equals(exists.getExt(), ext)) {
+            return;
+        }
+        boolean[] changed = new boolean[1];
+        compute(clientName, old -> {
+            if (Objects.nonNull(old) && !Objects.equals(old.getExt(), ext)) {
+                old.setExt(Maps.newHashMap(ext));
+                changed[0] = true;
+            }
+            return old;
+        });
+        if (changed[0]) {
+            logChange(clientName);
+        }
+    }
+
+    /**
+     * 刷新心跳时间，不存在时忽略
+     *
+     * @param clientName    客户端名称
+     * @param heartbeatTime 心跳时间戳(ms)
+     * @return 客户端是否存在
+     */
+    public boolean touch(String clientName, long heartbeatTime) {
+        return Objects.nonNull(clientName) && store.touch(clientName, null, null, heartbeatTime);
+    }
+
+    /**
+     * 写入客户端配置，已存在时原地更新
+     *
+     * @param client 客户端配置
+     * @return 注册表中的客户端配置
+     */
+    public ClientConfig put(ClientConfig client) {
+        Preconditions.checkNotNull(client, "client is null");
+        client.setClusterName(normalizeCluster(client.getClusterName()));
+        client.setGroupName(normalizeGroup(client.getGroupName()));
+        boolean[] changed = new boolean[1];
+        ClientConfig r = compute(client.getClientName(), old -> {
+            if (Objects.isNull(old)) {
+                changed[0] = true;
+                return client;
+            }
+            changed[0] = update(old, client);
+            return old;
+        });
+        if (changed[0]) {
+            logChange(client.getClientName());
+        }
+        return r;
+    }
+
+    /**
+     * 按最后写入合并其他节点的客户端配置：心跳时间更晚的一方覆盖，
+     * 心跳时间相同时取内容哈希较大的一方，保证各节点合并结果一致
+     *
+     * @param client 其他节点的客户端配置
+     * @return 是否采用了该配置(包括只刷新心跳时间)
+     */
+    public boolean merge(ClientConfig client) {
+        Preconditions.checkNotNull(client, "client is null");
+        client.setClusterName(normalizeCluster(client.getClusterName()));
+        client.setGroupName(normalizeGroup(client.getGroupName()));
+        boolean[] accepted = new boolean[1];
+        boolean[] changed = new boolean[1];
+        compute(client.getClientName(), old -> {
+            if (Objects.isNull(old)) {
+                // 租约只在授予节点有效
+                client.setLeaseId(null);
+                accepted[0] = changed[0] = true;
+                return client;
+            }
+            if (client.getHeartbeatTime() < old.getHeartbeatTime() || (client.getHeartbeatTime() == old.getHeartbeatTime()
+                    && contentHash(client) <= contentHash(old))) {
+                return old;
+            }
+            accepted[0] = true;
+            changed[0] = update(old, client);
+            return old;
+        });
+        if (changed[0]) {
+            logChange(client.getClientName());
+        }
+        return accepted[0];
+    }
+
+    /**
+     * 客户端内容哈希，不含心跳时间和租约
+     *
+     * @param client 客户端配置
+     * @return 哈希值
+     */
+    public static long contentHash(ClientConfig client) {
+        return Hashing.murmur3_128().newHasher()
+                .putString(StringUtils.defaultString(client.getClientName()), StandardCharsets.UTF_8)
+                .putString(StringUtils.defaultString(client.getIp()), StandardCharsets.UTF_8)
+                .putInt(Objects.isNull(client.getPort()) ? -1 : client.getPort())
+                .putString(StringUtils.defaultString(client.getRole()), StandardCharsets.UTF_8)
+                .putString(normalizeCluster(client.getClusterName()), StandardCharsets.UTF_8)
+                .putString(normalizeGroup(client.getGroupName()), StandardCharsets.UTF_8)
+                .putString(String.valueOf(client.getExt()), StandardCharsets.UTF_8)
+                .hash()
+                .asLong();
+    }
+
+    /**
+     * 移除客户端
+     *
+     * @param clientName 客户端名称
+     * @return 被移除的客户端，不存在返回null
+     */
+    public ClientConfig remove(String clientName) {
+        if (Objects.isNull(clientName)) {
+            return null;
+        }
+        ClientConfig[] removed = new ClientConfig[1];
+        store.compute(clientName, old -> {
+            removed[0] = old;
+            return null;
+        });
+        if (Objects.nonNull(removed[0])) {
+            logChange(clientName);
+        }
+        return removed[0];
+    }
+
+    /**
+     * 仅当客户端心跳时间不晚于指定时间时移除，用于应用其他节点的移除记录
+     *
+     * @param clientName 客户端名称
+     * @param before     移除时间戳(ms)
+     * @return 是否移除成功
+     */
+    public boolean remove(String clientName, long before) {
+        return removeIf(clientName, old -> old.getHeartbeatTime() <= before);
+    }
+
+    /**
+     * 获取分组的主节点
+     *
+     * @param cluster 集群名称
+     * @param group   分组名称
+     * @return 主节点，不存在返回null
+     */
+    public ClientConfig getMaster(String cluster, String group) {
+        return store.getMaster(normalizeCluster(cluster), normalizeGroup(group));
+    }
+
+    /**
+     * 按集群、分组查询客户端，均为空时返回全部
+     *
+     * @param cluster 集群名称，可为空
+     * @param group   分组名称，可为空
+     * @return 客户端列表
+     */
+    public Map<String, ClientConfig> query(String cluster, String group) {
+        return store.query(cluster, group);
+    }
+
+    /**
+     * 用快照替换全部客户端，快照中不存在的客户端会被移除
+     *
+     * @param snapshot 客户端快照
+     */
+    public void replaceAll(Map<String, ClientConfig> snapshot) {
+        Map<String, ClientConfig> target = Objects.isNull(snapshot) ? Collections.emptyMap() : snapshot;
+        List<String> removes = Lists.newArrayList();
+        store.forEach(client -> {
+            if (!target.containsKey(client.getClientName())) {
+                removes.add(client.getClientName());
+            }
+        });
+        for (String clientName : removes) {
+            remove(clientName);
+        }
+        for (ClientConfig client : target.values()) {
+            put(client);
+        }
+    }
+
+    /**
+     * 清空注册表并重新生成注册表标识
+     */
+    public void clear() {
+        List<String> removes = Lists.newArrayList();
+        store.forEach(client -> removes.add(client.getClientName()));
+        for (String clientName : removes) {
+            remove(clientName);
+        }
+        leaseTable.clear();
+        registryId = newRegistryId();
+        changeLog.reset();
+        fireChanged();
+    }
+
+    /**
+     * 授予租约
+     *
+     * @param ttl 租约有效期(ms)
+     * @param now 当前时间戳(ms)
+     * @return 租约id
+     */
+    public long grantLease(long ttl, long now) {
+        long leaseId = leaseTable.grant(ttl, now);
+        leaseWheel.schedule(leaseId, now + ttl);
+        return leaseId;
+    }
+
+    /**
+     * 将客户端挂到租约上，之后由租约续约维持存活
+     *
+     * @param leaseId 租约id
+     * @param client  注册表中的客户端
+     * @return 租约是否存在
+     */
+    public boolean attachLease(long leaseId, ClientConfig client) {
+        if (!leaseTable.attach(leaseId, client.getClientName())) {
+            return false;
+        }
+        compute(client.getClientName(), old -> Objects.isNull(old) ? null : old.setLeaseId(leaseId));
+        return true;
+    }
+
+    /**
+     * 续约，只更新租约表中的续约时间
+     *
+     * @param leaseId 租约id
+     * @param now     当前时间戳(ms)
+     * @return 租约是否存在
+     */
+    public boolean keepalive(long leaseId, long now) {
+        return leaseTable.keepalive(leaseId, now);
+    }
+
+    /**
+     * 撤销租约并移除挂在租约上的客户端
+     *
+     * @param leaseId 租约id
+     * @return 移除的客户端数
+     */
+    public int revokeLease(long leaseId) {
+        int removed = 0;
+        for (String clientName : leaseTable.revoke(leaseId)) {
+            if (removeIf(clientName, old -> Objects.equals(leaseId, old.getLeaseId()))) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 将租约的续约时间同步到挂在租约上的客户端
+     *
+     * @param leaseId 租约id
+     * @return 心跳时间被刷新的客户端名称
+     */
+    public List<String> syncLease(long leaseId) {
+        long keepaliveTime = leaseTable.keepaliveTime(leaseId);
+        if (keepaliveTime < 0) {
+            return Collections.emptyList();
+        }
+        List<String> r = Lists.newArrayList();
+        for (String clientName : leaseTable.attachments(leaseId)) {
+            ClientConfig client = store.get(clientName);
+            if (Objects.nonNull(client) && Objects.equals(leaseId, client.getLeaseId())
+                    && keepaliveTime > client.getHeartbeatTime()) {
+                store.touch(clientName, null, null, keepaliveTime);
+                r.add(clientName);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * 挂在租约上的客户端名称
+     *
+     * @param leaseId 租约id
+     * @return 客户端名称，租约不存在返回空集合
+     */
+    public Set<String> getLeaseClients(long leaseId) {
+        return leaseTable.attachments(leaseId);
+    }
+
+    public int getLeaseSize() {
+        return leaseTable.size();
+    }
+
+    /**
+     * 当前版本号
+     *
+     * @return 版本号
+     */
+    public long getRevision() {
+        return changeLog.revision();
+    }
+
+    public String getRegistryId() {
+        return registryId;
+    }
+
+    /**
+     * 添加变更通知
+     *
+     * @param changeListener 变更通知，在变更所在线程同步调用，实现方不可阻塞
+     */
+    public void addChangeListener(Runnable changeListener) {
+        changeListeners.add(changeListener);
+    }
+
+    /**
+     * 计算指定版本之后的增量，注册表标识不一致或日志已截断时返回全量
+     *
+     * @param registryId 调用方已同步的注册表标识
+     * @param since      调用方已同步的版本号
+     * @return 增量
+     */
+    public RegistryDelta delta(String registryId, Long since) {
+        String curRegistryId = this.registryId;
+        long revision = changeLog.revision();
+        Set<String> keys = Objects.equals(curRegistryId, registryId) && Objects.nonNull(since)
+                ? changeLog.keysSince(since) : null;
+        RegistryDelta r = new RegistryDelta().setRegistryId(curRegistryId)
+                .setRevision(revision);
+        if (Objects.isNull(keys)) {
+            r.setFull(true);
+            store.forEach(client -> r.getUpserts().put(client.getClientName(), client));
+            return r;
+        }
+        r.setFull(false);
+        for (String key : keys) {
+            ClientConfig client = store.get(key);
+            if (Objects.isNull(client)) {
+                r.getRemoves().add(key);
+            } else {
+                r.getUpserts().put(key, client);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * 应用来自其他节点的增量
+     *
+     * @param delta 增量
+     */
+    public void apply(RegistryDelta delta) {
+        if (Boolean.TRUE.equals(delta.getFull())) {
+            replaceAll(delta.getUpserts());
+            return;
+        }
+        for (String clientName : delta.getRemoves()) {
+            remove(clientName);
+        }
+        for (ClientConfig client : delta.getUpserts().values()) {
+            put(client);
+        }
+    }
+
+    /**
+     * 获取全部客户端，只读
+     *
+     * @return 客户端列表
+     */
+    public Map<String, ClientConfig> getClients() {
+        return store.query(null, null);
+    }
+
+    /**
+     * 遍历全部客户端，遍历期间不可修改注册表
+     *
+     * @param consumer 消费者
+     */
+    public void forEach(Consumer<ClientConfig> consumer) {
+        store.forEach(consumer);
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * 推进过期时间轮，只处理到期槽位中的客户端
+     * <p>
+     * 非权威节点(如CP模式下的从节点)只顺延检测，不做移除，由主节点同步删除结果
+     *
+     * @param now   当前时间戳(ms)
+     * @param evict 是否移除过期客户端
+     * @return 本次移除的客户端数
+     */
+    public int expire(long now, boolean evict) {
+        int[] removed = new int[1];
+        leaseWheel.advance(now, (leaseId, time) -> {
+            long deadline = leaseTable.deadline(leaseId);
+            if (deadline < 0) {
+                return -1;
+            }
+            if (deadline > time) {
+                return deadline;
+            }
+            if (!evict) {
+                return time + expireTime;
+            }
+            int n = revokeLease(leaseId);
+            removed[0] += n;
+            log.info("expire() lease revoked, leaseId={}, clients={}", leaseId, n);
+            return -1;
+        });
+        expiryWheel.advance(now, (handle, time) -> {
+            // 记录已被移除或替换
+            ClientConfig client = store.get(handle);
+            if (Objects.isNull(client)) {
+                return -1;
+            }
+            long heartbeatTime = client.getHeartbeatTime();
+            long deadline = heartbeatTime + expireTime;
+            if (Objects.nonNull(client.getLeaseId())) {
+                // 租约续约不触碰客户端记录，检测时再同步续约时间；
+                // 租约有效期可长于客户端过期时间，租约存在时按租约到期时间检测，租约已不存在(如主节点切换)时按心跳时间检测
+                long keepaliveTime = leaseTable.keepaliveTime(client.getLeaseId());
+                if (keepaliveTime > heartbeatTime) {
+                    store.touch(client.getClientName(), null, null, keepaliveTime);
+                    heartbeatTime = keepaliveTime;
+                }
+                long leaseDeadline = leaseTable.deadline(client.getLeaseId());
+                deadline = leaseDeadline < 0 ? heartbeatTime + expireTime : leaseDeadline;
+            }
+            if (deadline > time) {
+                return deadline;
+            }
+            if (!evict) {
+                return time + expireTime;
+            }
+            if (store.remove(handle)) {
+                logChange(client.getClientName());
+                removed[0]++;
+                log.info("expire() removed, client={}, heartbeatTime={}", client.getClientName(), heartbeatTime);
+            }
+            return -1;
+        });
+        return removed[0];
+    }
+
+    /**
+     * 记录变更，须在映射写入可见后调用，保证读到某版本号的调用方一定能读到该版本之前的全部变更
+     */
+    private void logChange(String clientName) {
+        changeLog.append(clientName);
+        fireChanged();
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * 仅当客户端满足条件时移除
+     *
+     * @param clientName 客户端名称
+     * @param predicate  移除条件
+     * @return 是否移除成功
+     */
+    private boolean removeIf(String clientName, Predicate<ClientConfig> predicate) {
+        boolean[] removed = new boolean[1];
+        store.compute(clientName, old -> {
+            if (Objects.isNull(old) || !predicate.test(old)) {
+                return old;
+            }
+            removed[0] = true;
+            return null;
+        });
+        if (removed[0]) {
+            logChange(clientName);
+        }
+        return removed[0];
+    }
+
+    /**
+     * 原地更新客户端，分组索引由存储迁移，须在compute中调用
+     *
+     * @return 是否发生结构性变更
+     */
+    private boolean update(ClientConfig old, ClientConfig client) {
+        boolean moved = !isSameGroup(old, client.getClusterName(), client.getGroupName());
+        boolean changed = moved || !Objects.equals(old.getIp(), client.getIp())
+                || !Objects.equals(old.getPort(), client.getPort())
+                || !Objects.equals(old.getRole(), client.getRole())
+                || !Objects.equals(old.getExt(), client.getExt());
+        old.setIp(client.getIp())
+                .setPort(client.getPort())
+                .setRole(client.getRole())
+                .setHeartbeatTime(client.getHeartbeatTime())
+                .setClusterName(client.getClusterName())
+                .setGroupName(client.getGroupName())
+                .setExt(client.getExt());
+        return changed;
+    }
+
+    /**
+     * 修改客户端，新建或在存储间迁移(如堆外记录放不下扩展信息时移到堆内)会更换记录句柄，
+     * 此时按新句柄重新调度过期检测，旧句柄的检测到期后发现记录已替换自行丢弃
+     *
+     * @param clientName 客户端名称
+     * @param function   同{@link ClientStore#compute}
+     * @return 修改后的客户端
+     */
+    private ClientConfig compute(String clientName, UnaryOperator<ClientConfig> function) {
+        Object[] before = new Object[1];
+        ClientConfig r = store.compute(clientName, old -> {
+            before[0] = Objects.isNull(old) ? null : store.handle(clientName);
+            return function.apply(old);
+        });
+        if (Objects.nonNull(r) && (Objects.isNull(before[0]) || Objects.isNull(store.get(before[0])))) {
+            scheduleExpire(r);
+        }
+        return r;
+    }
+
+    private void scheduleExpire(ClientConfig client) {
+        Object handle = store.handle(client.getClientName());
+        if (Objects.nonNull(handle)) {
+            expiryWheel.schedule(handle, Math.max(client.getHeartbeatTime(), System.currentTimeMillis()) + expireTime);
+        }
+    }
+
+    private static String newRegistryId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+
+    private static boolean isSameGroup(ClientConfig client, String cluster, String group) {
+        return Objects.equals(cluster, client.getClusterName()) && Objects.equals(group, client.getGroupName());
+    }
+
+    private static String normalizeCluster(String cluster) {
+        return StringUtils.defaultIfBlank(cluster, DEFAULT_CLUSTER);
+    }
+
+    private static String normalizeGroup(String group) {
+        return StringUtils.defaultIfBlank(group, DEFAULT_GROUP);
+    }
+}
@@ -0,0 +1,326 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.gateway.VoteGateway;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * AP模式下的注册表复制，没有主节点，每个节点都直接接受心跳
+ * <p>
+ * 本地心跳、注册和移除记为待传播，每轮发给随机fanout个节点；收到的变更按心跳时间后写覆盖先写合并，
+ * 合并后有变化的再继续传播，没有变化的不再转发，传播自然收敛。
+ * 传播可能丢失，另外定时与随机节点比对两层摘要(根哈希 -> 分桶哈希)，只交换不一致分桶中的数据。
+ * 摘要不含心跳时间，心跳刷新只靠传播同步，各节点按同步到的心跳时间各自过期移除；
+ * 主动移除(撤销租约)留下移除记录，在过期时间内随传播和摘要交换下发，防止被旧副本复活
+ *
+ * @author SoulW
+ * @since 2024/3/22 10:40
+ */
+@Slf4j
+public class RegistryGossip {
+    /**
+     * 摘要分桶数
+     */
+    private static final int BUCKETS = 64;
+
+    private final Registry registry;
+    private final VoteGateway voteGateway;
+    private final int fanout;
+    private final int batchSize;
+    /**
+     * 客户端过期时间，超过该时间的副本和移除记录都不再传播
+     */
+    private final long expireTime;
+    private final int shard;
+    private final Set<String/** clientName */> dirty = Sets.newConcurrentHashSet();
+    private final Set<Long/** leaseId */> dirtyLeases = Sets.newConcurrentHashSet();
+    private final Map<String/** clientName */, Long/** removeTime */> tombstones = Maps.newConcurrentMap();
+
+    /**
+     * @param registry    注册表
+     * @param voteGateway 节点通信
+     * @param fanout      每轮传播的节点数
+     * @param batchSize   单次传播最多携带的客户端数
+     * @param expireTime  客户端过期时间(ms)
+     * @param shard       分片
+     */
+    public RegistryGossip(Registry registry, VoteGateway voteGateway, int fanout, int batchSize, long expireTime,
+                          int shard) {
+        this.registry = registry;
+        this.voteGateway = voteGateway;
+        this.fanout = fanout;
+        this.batchSize = batchSize;
+        this.expireTime = expireTime;
+        this.shard = shard;
+    }
+
+    /**
+     * 本地心跳或注册后记为待传播
+     *
+     * @param clientName 客户端名称
+     */
+    public void markDirty(String clientName) {
+        dirty.add(clientName);
+    }
+
+    /**
+     * 续约不触碰客户端对象，传播前再同步续约时间
+     *
+     * @param leaseId 租约id
+     */
+    public void markLease(long leaseId) {
+        dirtyLeases.add(leaseId);
+    }
+
+    /**
+     * 本地主动移除客户端后留下移除记录并传播
+     *
+     * @param clientName 客户端名称
+     * @param removeTime 移除时间戳(ms)
+     */
+    public void markRemoved(String clientName, long removeTime) {
+        tombstones.merge(clientName, removeTime, Math::max);
+        dirty.add(clientName);
+    }
+
+    /**
+     * 执行一轮传播，将待传播的变更发给随机节点
+     *
+     * @param peers 其他节点
+     */
+    public void gossip(List<SystemConfig.Node> peers) {
+        long now = System.currentTimeMillis();
+        tombstones.values().removeIf(time -> time + expireTime <= now);
+        for (Iterator<Long> it = dirtyLeases.iterator(); it.hasNext(); ) {
+            Long leaseId = it.next();
+            it.remove();
+            dirty.addAll(registry.syncLease(leaseId));
+        }
+        if (dirty.isEmpty()) {
+            return;
+        }
+        List<String> names = Lists.newArrayList();
+        for (Iterator<String> it = dirty.iterator(); it.hasNext(); ) {
+            names.add(it.next());
+            it.remove();
+        }
+        if (peers.isEmpty()) {
+            return;
+        }
+        List<SystemConfig.Node> targets = pick(peers, fanout);
+        for (List<String> part : Lists.partition(names, batchSize)) {
+            GossipMessage message = collect(part);
+            if (message.isEmpty()) {
+                continue;
+            }
+            for (SystemConfig.Node node : targets) {
+                send(node, message);
+            }
+        }
+    }
+
+    /**
+     * 与一个随机节点比对摘要，拉取对方不一致分桶中的数据，再把本地对应分桶推给对方
+     *
+     * @param peers 其他节点
+     */
+    public void antiEntropy(List<SystemConfig.Node> peers) {
+        if (peers.isEmpty()) {
+            return;
+        }
+        SystemConfig.Node node = peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+        voteGateway.digestAsync(node, digest()).whenComplete((diff, e) -> {
+            if (Objects.nonNull(e)) {
+                log.error("antiEntropy() failed, node={}, msg={}", node, e.getMessage());
+                return;
+            }
+            if (Objects.isNull(diff) || Objects.isNull(diff.getBuckets()) || diff.getBuckets().length == 0) {
+                return;
+            }
+            int merged = merge(diff.getMessage());
+            List<String> names = namesIn(diff.getBuckets());
+            log.info("antiEntropy() node={}, buckets={}, merged={}, push={}", node, diff.getBuckets().length, merged,
+                    names.size());
+            for (List<String> part : Lists.partition(names, batchSize)) {
+                GossipMessage message = collect(part);
+                if (!message.isEmpty()) {
+                    send(node, message);
+                }
+            }
+        });
+    }
+
+    /**
+     * 合并其他节点传播的变更，有变化的继续传播
+     *
+     * @param message 变更
+     * @return 有变化的客户端数
+     */
+    public int merge(GossipMessage message) {
+        if (Objects.isNull(message)) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        int changed = 0;
+        for (Map.Entry<String, Long> entry : message.getRemoves().entrySet()) {
+            String clientName = entry.getKey();
+            long removeTime = entry.getValue();
+            if (removeTime + expireTime <= now) {
+                continue;
+            }
+            Long old = tombstones.get(clientName);
+            if (Objects.nonNull(old) && old >= removeTime) {
+                continue;
+            }
+            tombstones.merge(clientName, removeTime, Math::max);
+            registry.remove(clientName, removeTime);
+            dirty.add(clientName);
+            changed++;
+        }
+        for (ClientConfig client : message.getUpserts()) {
+            // 已过期的副本不再复活，移除之前的心跳也不再生效
+            if (client.getHeartbeatTime() + expireTime <= now) {
+                continue;
+            }
+            Long removeTime = tombstones.get(client.getClientName());
+            if (Objects.nonNull(removeTime) && removeTime >= client.getHeartbeatTime()) {
+                continue;
+            }
+            if (registry.merge(client)) {
+                dirty.add(client.getClientName());
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 计算本地摘要
+     *
+     * @return 摘要
+     */
+    public GossipDigest digest() {
+        long[] buckets = new long[BUCKETS];
+        // 分桶哈希取各客户端哈希之和，与遍历顺序无关
+        registry.forEach(client -> buckets[bucket(client.getClientName())] += Registry.contentHash(client));
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (long bucket : buckets) {
+            hasher.putLong(bucket);
+        }
+        return new GossipDigest().setRoot(hasher.hash().asLong())
+                .setBuckets(buckets)
+                .setShard(shard);
+    }
+
+    /**
+     * 与其他节点的摘要比对，返回不一致的分桶及本地在这些分桶中的数据
+     *
+     * @param remote 其他节点的摘要
+     * @return 比对结果
+     */
+    public GossipDiff diff(GossipDigest remote) {
+        GossipDigest local = digest();
+        GossipDiff r = new GossipDiff();
+        if (Objects.isNull(remote) || Objects.equals(local.getRoot(), remote.getRoot())) {
+            return r;
+        }
+        long[] remoteBuckets = Objects.isNull(remote.getBuckets()) ? new long[0] : remote.getBuckets();
+        int[] buckets = new int[BUCKETS];
+        int n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (i >= remoteBuckets.length || remoteBuckets[i] != local.getBuckets()[i]) {
+                buckets[n++] = i;
+            }
+        }
+        int[] differs = new int[n];
+        System.arraycopy(buckets, 0, differs, 0, n);
+        r.setBuckets(differs);
+        r.setMessage(collect(namesIn(differs)));
+        return r;
+    }
+
+    /**
+     * 当前的移除记录数
+     *
+     * @return 移除记录数
+     */
+    public int getTombstoneSize() {
+        return tombstones.size();
+    }
+
+    private void send(SystemConfig.Node node, GossipMessage message) {
+        voteGateway.gossipAsync(node, message).whenComplete((v, e) -> {
+            if (Objects.nonNull(e)) {
+                log.error("gossip failed, node={}, size={}, msg={}", node, message.getUpserts().size(), e.getMessage());
+            }
+        });
+    }
+
+    private GossipMessage collect(List<String> names) {
+        GossipMessage r = new GossipMessage().setShard(shard);
+        for (String clientName : names) {
+            ClientConfig client = registry.get(clientName);
+            if (Objects.nonNull(client)) {
+                r.getUpserts().add(client);
+                continue;
+            }
+            Long removeTime = tombstones.get(clientName);
+            if (Objects.nonNull(removeTime)) {
+                r.getRemoves().put(clientName, removeTime);
+            }
+        }
+        return r;
+    }
+
+    private List<String> namesIn(int[] buckets) {
+        boolean[] selected = new boolean[BUCKETS];
+        for (int bucket : buckets) {
+            if (bucket >= 0 && bucket < BUCKETS) {
+                selected[bucket] = true;
+            }
+        }
+        List<String> r = Lists.newArrayList();
+        registry.forEach(client -> {
+            if (selected[bucket(client.getClientName())]) {
+                r.add(client.getClientName());
+            }
+        });
+        for (String clientName : tombstones.keySet()) {
+            if (selected[bucket(clientName)] && Objects.isNull(registry.get(clientName))) {
+                r.add(clientName);
+            }
+        }
+        return r;
+    }
+
+    private static List<SystemConfig.Node> pick(List<SystemConfig.Node> peers, int n) {
+        if (peers.size() <= n) {
+            return peers;
+        }
+        List<SystemConfig.Node> r = Lists.newArrayList(peers);
+        Collections.shuffle(r, ThreadLocalRandom.current());
+        return r.subList(0, n);
+    }
+
+    private static int bucket(String clientName) {
+        return Hashing.consistentHash(Hashing.murmur3_32_fixed().hashString(clientName, StandardCharsets.UTF_8), BUCKETS);
+    }
+}
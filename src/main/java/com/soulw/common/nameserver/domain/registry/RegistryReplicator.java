@@ -0,0 +1,205 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.context.gateway.VoteGateway;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 注册表复制，主节点将变更按版本顺序推送给各从节点
+ * <p>
+ * 每个从节点最多同时有window个批次在途，后续批次不等待前序确认即发出；
+ * 记录从节点已应用的版本，发送失败后从已应用版本重发，落后超出变更日志时自动退化为全量；
+ * 已熔断的从节点跳过，不构建批次。
+ * 复制进度只在executor线程中修改，executor须为单线程
+ *
+ * @author SoulW
+ * @since 2024/3/21 15:30
+ */
+@Slf4j
+public class RegistryReplicator {
+    private final Registry registry;
+    private final VoteGateway voteGateway;
+    private final Executor executor;
+    private final int window;
+    private final int shard;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Map<SystemConfig.Node, Follower> followers = Maps.newConcurrentMap();
+    private volatile List<SystemConfig.Node> peers = Collections.emptyList();
+    private volatile SystemConfig.Node self;
+    /**
+     * 主节点任期，小于0表示未在复制
+     */
+    private volatile long term = -1;
+
+    public RegistryReplicator(Registry registry, VoteGateway voteGateway, Executor executor, int window, int shard) {
+        this.registry = registry;
+        this.voteGateway = voteGateway;
+        this.executor = executor;
+        this.window = window;
+        this.shard = shard;
+        registry.addChangeListener(this::onChanged);
+    }
+
+    /**
+     * 以主节点身份开始或刷新复制，可重复调用，同时补发之前失败的批次
+     *
+     * @param term  主节点任期
+     * @param self  主节点
+     * @param peers 从节点
+     */
+    public void start(long term, SystemConfig.Node self, List<SystemConfig.Node> peers) {
+        this.self = self;
+        this.peers = peers;
+        this.term = term;
+        onChanged();
+    }
+
+    /**
+     * 停止复制
+     */
+    public void stop() {
+        if (term < 0) {
+            return;
+        }
+        term = -1;
+        onChanged();
+    }
+
+    /**
+     * 各从节点已应用的版本
+     *
+     * @return 节点 -> 版本
+     */
+    public Map<SystemConfig.Node, Long> getAppliedRevisions() {
+        Map<SystemConfig.Node, Long> r = Maps.newHashMap();
+        for (Follower follower : followers.values()) {
+            r.put(follower.node, follower.appliedRevision);
+        }
+        return r;
+    }
+
+    private void onChanged() {
+        if (term < 0 && followers.isEmpty() || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::pump);
+        } catch (Exception e) {
+            scheduled.set(false);
+            log.error("onChanged() submit failed", e);
+        }
+    }
+
+    private void pump() {
+        scheduled.set(false);
+        long curTerm = term;
+        if (curTerm < 0) {
+            followers.clear();
+            return;
+        }
+        List<SystemConfig.Node> curPeers = peers;
+        followers.keySet().retainAll(curPeers);
+        for (SystemConfig.Node node : curPeers) {
+            followers.computeIfAbsent(node, Follower::new).pump(curTerm);
+        }
+    }
+
+    /**
+     * 单个从节点的复制进度
+     *
+     * @author SoulW
+     */
+    private class Follower {
+        private final SystemConfig.Node node;
+        private long term = -1;
+        /**
+         * 发送批次的代数，重发时递增，旧代数的确认直接丢弃
+         */
+        private long epoch;
+        private int inFlight;
+        private String sentRegistryId;
+        private Long sentRevision;
+        private String appliedRegistryId;
+        private volatile Long appliedRevision;
+
+        private Follower(SystemConfig.Node node) {
+            this.node = node;
+        }
+
+        private void pump(long curTerm) {
+            if (term != curTerm) {
+                term = curTerm;
+                rewind();
+            }
+            if (!voteGateway.isAvailable(node)) {
+                // 熔断中的从节点不构建批次，恢复后由下一次变更或定时刷新从已应用版本继续
+                if (inFlight == 0) {
+                    rewind();
+                }
+                return;
+            }
+            while (inFlight < window) {
+                if (Objects.equals(sentRegistryId, registry.getRegistryId())
+                        && Objects.equals(sentRevision, registry.getRevision())) {
+                    return;
+                }
+                RegistryDelta delta = registry.delta(sentRegistryId, sentRevision);
+                ReplicationBatch batch = new ReplicationBatch()
+                        .setTerm(term)
+                        .setIp(self.getIp())
+                        .setPort(self.getPort())
+                        .setBaseRevision(Boolean.TRUE.equals(delta.getFull()) ? null : sentRevision)
+                        .setDelta(delta)
+                        .setShard(shard);
+                sentRegistryId = delta.getRegistryId();
+                sentRevision = delta.getRevision();
+                inFlight++;
+                long curEpoch = epoch;
+                voteGateway.replicateAsync(node, batch)
+                        .whenCompleteAsync((ack, e) -> onAck(curEpoch, ack, e), executor);
+            }
+        }
+
+        private void onAck(long ackEpoch, QueryDelta ack, Throwable e) {
+            if (ackEpoch != epoch || term != RegistryReplicator.this.term) {
+                return;
+            }
+            inFlight--;
+            if (Objects.nonNull(e)) {
+                // 等下一次变更或定时刷新时从已应用版本重发
+                log.error("replicate failed, node={}, applied={}, msg={}", node, appliedRevision, e.getMessage());
+                rewind();
+                return;
+            }
+            if (!Objects.equals(ack.getRegistryId(), appliedRegistryId) || Objects.isNull(appliedRevision)
+                    || (Objects.nonNull(ack.getRevision()) && ack.getRevision() > appliedRevision)) {
+                appliedRegistryId = ack.getRegistryId();
+                appliedRevision = ack.getRevision();
+            }
+            // 全部确认后从节点仍未追上已发送版本，说明有批次丢失，从已应用版本重发
+            if (inFlight == 0 && !(Objects.equals(appliedRegistryId, sentRegistryId)
+                    && Objects.equals(appliedRevision, sentRevision))) {
+                rewind();
+            }
+            pump(term);
+        }
+
+        private void rewind() {
+            epoch++;
+            inFlight = 0;
+            sentRegistryId = appliedRegistryId;
+            sentRevision = appliedRevision;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 注册表监听，调用方携带已同步版本挂起等待，注册表变化后推送增量
+ * <p>
+ * 变更通知只置位并提交一次分发任务，分发时同一版本的监听共用一份增量
+ *
+ * @author SoulW
+ * @since 2024/3/15 11:20
+ */
+@Slf4j
+public class RegistryWatcher {
+    private final Registry registry;
+    private final Executor executor;
+    private final Set<Watch> watches = Sets.newConcurrentHashSet();
+    private final AtomicBoolean dispatching = new AtomicBoolean(false);
+
+    public RegistryWatcher(Registry registry, Executor executor) {
+        this.registry = registry;
+        this.executor = executor;
+        registry.addChangeListener(this::onChanged);
+    }
+
+    /**
+     * 注册监听，调用方版本落后时立即回调
+     *
+     * @param registryId 调用方已同步的注册表标识
+     * @param revision   调用方已同步的版本号
+     * @param listener   变更回调，只会被调用一次
+     * @return 监听句柄
+     */
+    public Watch watch(String registryId, Long revision, Consumer<RegistryDelta> listener) {
+        Watch watch = new Watch(registryId, revision, listener);
+        if (watch.isStale(registry)) {
+            watch.fire(registry.delta(registryId, revision));
+            return watch;
+        }
+        watches.add(watch);
+        // 入队期间可能错过变更通知，补一次检查
+        if (watch.isStale(registry)) {
+            onChanged();
+        }
+        return watch;
+    }
+
+    /**
+     * 当前挂起的监听数
+     *
+     * @return 监听数
+     */
+    public int size() {
+        return watches.size();
+    }
+
+    private void onChanged() {
+        if (watches.isEmpty() || !dispatching.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::dispatch);
+        } catch (Exception e) {
+            dispatching.set(false);
+            log.error("onChanged() submit failed", e);
+        }
+    }
+
+    private void dispatch() {
+        dispatching.set(false);
+        Map<String, RegistryDelta> deltas = Maps.newHashMap();
+        for (Iterator<Watch> it = watches.iterator(); it.hasNext(); ) {
+            Watch watch = it.next();
+            if (!watch.isStale(registry)) {
+                continue;
+            }
+            it.remove();
+            try {
+                watch.fire(deltas.computeIfAbsent(watch.registryId + ":" + watch.revision,
+                        e -> registry.delta(watch.registryId, watch.revision)));
+            } catch (Exception e) {
+                log.error("dispatch() failed", e);
+            }
+        }
+    }
+
+    /**
+     * 监听句柄
+     *
+     * @author SoulW
+     */
+    public class Watch {
+        private final String registryId;
+        private final Long revision;
+        private final Consumer<RegistryDelta> listener;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+
+        private Watch(String registryId, Long revision, Consumer<RegistryDelta> listener) {
+            this.registryId = registryId;
+            this.revision = revision;
+            this.listener = listener;
+        }
+
+        /**
+         * 取消监听，超时或连接关闭时调用
+         */
+        public void cancel() {
+            done.set(true);
+            watches.remove(this);
+        }
+
+        private boolean isStale(Registry registry) {
+            return !Objects.equals(registryId, registry.getRegistryId()) || Objects.isNull(revision)
+                    || revision != registry.getRevision();
+        }
+
+        private void fire(RegistryDelta delta) {
+            if (done.compareAndSet(false, true)) {
+                listener.accept(delta);
+            }
+        }
+    }
+}
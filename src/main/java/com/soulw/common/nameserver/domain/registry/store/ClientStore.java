@@ -0,0 +1,104 @@
+package com.soulw.common.nameserver.domain.registry.store;
+
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * 客户端存储，维护 clientName -> client 及 cluster -> group -> client 两级索引，
+ * 变更日志、过期和租约由{@link com.soulw.common.nameserver.domain.registry.Registry}处理
+ * <p>
+ * 读取返回的客户端配置只读，可能是存储中的对象也可能是副本，修改须通过{@link #compute}或{@link #touch}；
+ * 句柄标识一条记录，客户端被移除后重新写入会得到新句柄，用于过期检测判断记录是否已被替换
+ *
+ * @author SoulW
+ * @since 2024/3/25 15:00
+ */
+public interface ClientStore {
+
+    /**
+     * 按名称查找客户端
+     *
+     * @param clientName 客户端名称
+     * @return 客户端配置，不存在返回null
+     */
+    ClientConfig get(String clientName);
+
+    /**
+     * 按句柄查找客户端
+     *
+     * @param handle 记录句柄
+     * @return 客户端配置，记录已被移除或替换返回null
+     */
+    ClientConfig get(Object handle);
+
+    /**
+     * 获取客户端当前记录的句柄
+     *
+     * @param clientName 客户端名称
+     * @return 记录句柄，不存在返回null
+     */
+    Object handle(String clientName);
+
+    /**
+     * 原子地读取、修改并写回一个客户端，分组变化时同步迁移分组索引
+     *
+     * @param clientName 客户端名称
+     * @param function   入参为当前客户端(不存在为null)，可原地修改后返回；返回null表示移除
+     * @return 写入后的客户端配置，被移除返回null
+     */
+    ClientConfig compute(String clientName, UnaryOperator<ClientConfig> function);
+
+    /**
+     * 刷新心跳时间，只增不减
+     *
+     * @param clientName    客户端名称
+     * @param cluster       集群名称，不为空时只刷新该集群、分组下的客户端
+     * @param group         分组名称
+     * @param heartbeatTime 心跳时间戳(ms)
+     * @return 客户端是否存在(且在指定分组下)
+     */
+    boolean touch(String clientName, String cluster, String group, long heartbeatTime);
+
+    /**
+     * 仅当句柄仍为当前记录时移除
+     *
+     * @param handle 记录句柄
+     * @return 是否移除成功
+     */
+    boolean remove(Object handle);
+
+    /**
+     * 查询集群、分组下的客户端
+     *
+     * @param cluster 集群名称，为空时不限
+     * @param group   分组名称，为空时不限
+     * @return 客户端列表
+     */
+    Map<String, ClientConfig> query(String cluster, String group);
+
+    /**
+     * 获取分组的主节点
+     *
+     * @param cluster 集群名称
+     * @param group   分组名称
+     * @return 主节点，不存在返回null
+     */
+    ClientConfig getMaster(String cluster, String group);
+
+    /**
+     * 遍历全部客户端
+     *
+     * @param consumer 消费者
+     */
+    void forEach(Consumer<ClientConfig> consumer);
+
+    /**
+     * 客户端数
+     *
+     * @return 客户端数
+     */
+    int size();
+}
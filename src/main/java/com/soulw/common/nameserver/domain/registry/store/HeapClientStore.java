@@ -0,0 +1,151 @@
+package com.soulw.common.nameserver.domain.registry.store;
+
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.client.ClientGroup;
+import com.soulw.common.nameserver.domain.client.Cluster;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * 堆内客户端存储，客户端配置对象直接放在并发映射中，读取返回存储中的对象，句柄即客户端对象本身
+ *
+ * @author SoulW
+ * @since 2024/3/25 15:20
+ */
+public class HeapClientStore implements ClientStore {
+    private final Map<String/** clientName */, ClientConfig> clients = Maps.newConcurrentMap();
+    private final Map<String/** clusterName */, Cluster> clusters = Maps.newConcurrentMap();
+
+    @Override
+    public ClientConfig get(String clientName) {
+        return Objects.isNull(clientName) ? null : clients.get(clientName);
+    }
+
+    @Override
+    public ClientConfig get(Object handle) {
+        if (!(handle instanceof ClientConfig)) {
+            return null;
+        }
+        ClientConfig client = (ClientConfig) handle;
+        return clients.get(client.getClientName()) == client ? client : null;
+    }
+
+    @Override
+    public Object handle(String clientName) {
+        return get(clientName);
+    }
+
+    @Override
+    public ClientConfig compute(String clientName, UnaryOperator<ClientConfig> function) {
+        return clients.compute(clientName, (k, old) -> {
+            // 函数可能原地修改old，须先记下原分组
+            String oldCluster = Objects.isNull(old) ? null : old.getClusterName();
+            String oldGroup = Objects.isNull(old) ? null : old.getGroupName();
+            ClientConfig r = function.apply(old);
+            boolean moved = Objects.nonNull(old) && (r != old
+                    || !Objects.equals(oldCluster, r.getClusterName()) || !Objects.equals(oldGroup, r.getGroupName()));
+            if (moved) {
+                unlink(k, oldCluster, oldGroup, old);
+            }
+            if (Objects.nonNull(r) && (Objects.isNull(old) || moved)) {
+                link(r);
+            }
+            return r;
+        });
+    }
+
+    @Override
+    public boolean touch(String clientName, String cluster, String group, long heartbeatTime) {
+        ClientConfig client = get(clientName);
+        if (Objects.isNull(client) || (Objects.nonNull(cluster) && (!Objects.equals(cluster, client.getClusterName())
+                || !Objects.equals(group, client.getGroupName())))) {
+            return false;
+        }
+        if (heartbeatTime > client.getHeartbeatTime()) {
+            client.setHeartbeatTime(heartbeatTime);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object handle) {
+        if (!(handle instanceof ClientConfig)) {
+            return false;
+        }
+        ClientConfig client = (ClientConfig) handle;
+        boolean[] removed = new boolean[1];
+        clients.computeIfPresent(client.getClientName(), (k, old) -> {
+            if (old != client) {
+                return old;
+            }
+            unlink(k, old.getClusterName(), old.getGroupName(), old);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public Map<String, ClientConfig> query(String cluster, String group) {
+        if (StringUtils.isBlank(cluster) && StringUtils.isBlank(group)) {
+            return Collections.unmodifiableMap(clients);
+        }
+        if (StringUtils.isNotBlank(cluster) && StringUtils.isNotBlank(group)) {
+            ClientGroup g = getGroup(cluster, group);
+            return Objects.isNull(g) ? Collections.emptyMap() : Collections.unmodifiableMap(g.getClients());
+        }
+        Map<String, ClientConfig> r = Maps.newHashMap();
+        for (Cluster c : clusters.values()) {
+            if (StringUtils.isNotBlank(cluster) && !Objects.equals(cluster, c.getClusterName())) {
+                continue;
+            }
+            for (ClientGroup g : c.getGroups().values()) {
+                if (StringUtils.isNotBlank(group) && !Objects.equals(group, g.getGroupName())) {
+                    continue;
+                }
+                r.putAll(g.getClients());
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public ClientConfig getMaster(String cluster, String group) {
+        ClientGroup g = getGroup(cluster, group);
+        return Objects.isNull(g) ? null : g.getMaster();
+    }
+
+    @Override
+    public void forEach(Consumer<ClientConfig> consumer) {
+        clients.values().forEach(consumer);
+    }
+
+    @Override
+    public int size() {
+        return clients.size();
+    }
+
+    private ClientGroup getGroup(String cluster, String group) {
+        Cluster c = clusters.get(cluster);
+        return Objects.isNull(c) ? null : c.getGroups().get(group);
+    }
+
+    private void link(ClientConfig client) {
+        clusters.computeIfAbsent(client.getClusterName(), e -> new Cluster().setClusterName(e))
+                .getGroups().computeIfAbsent(client.getGroupName(), e -> new ClientGroup().setGroupName(e))
+                .getClients().put(client.getClientName(), client);
+    }
+
+    private void unlink(String clientName, String cluster, String group, ClientConfig client) {
+        ClientGroup g = getGroup(cluster, group);
+        if (Objects.nonNull(g)) {
+            g.getClients().remove(clientName, client);
+        }
+    }
+}
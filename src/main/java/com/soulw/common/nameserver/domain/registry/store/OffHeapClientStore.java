@@ -0,0 +1,665 @@
+package com.soulw.common.nameserver.domain.registry.store;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.client.Role;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * 堆外客户端存储，每个客户端占一条定长记录，记录放在按需分配的堆外内存块中，
+ * 名称索引为开放寻址哈希表(基本类型数组)，分组索引为每个分组一个槽位数组，
+ * 常驻堆内的只有少量数组和集群、分组名称，客户端数量很大时不再给GC带来压力
+ * <p>
+ * 客户端配置只在读取时临时构造，读取结果是副本；心跳时间按槽位存放在堆内的原子数组中(每个内存块一个)，
+ * 心跳刷新只持有读锁并原子地推进心跳时间，不构造对象，也不与其它心跳互斥。
+ * 放不进定长记录的客户端(名称或地址过长、角色非MASTER/SLAVE、带扩展信息)存放在堆内存储中，
+ * 对调用方透明。记录句柄为 (代数 << 32 | 槽位)，槽位复用时代数递增
+ * <p>
+ * 写操作持有写锁，读操作及心跳刷新持有读锁
+ *
+ * @author SoulW
+ * @since 2024/3/25 16:00
+ */
+public class OffHeapClientStore implements ClientStore {
+    /**
+     * 默认每个内存块的记录数，128 byte * 65536 = 8MB
+     */
+    public static final int DEFAULT_SLAB_RECORDS = 65_536;
+    private static final int RECORD_SIZE = 128;
+    /**
+     * 记录布局
+     */
+    private static final int GEN = 0;
+    private static final int GROUP = 4;
+    /**
+     * 8~15保留，心跳时间存放在{@link #heartbeatTimes}
+     */
+    private static final int LEASE = 16;
+    private static final int PORT = 24;
+    private static final int GROUP_POS = 28;
+    private static final int ROLE = 32;
+    private static final int IP_TYPE = 33;
+    private static final int IP_LEN = 34;
+    private static final int NAME_LEN = 35;
+    private static final int IP = 36;
+    private static final int NAME = 76;
+    private static final int IP_MAX = NAME - IP;
+    private static final int NAME_MAX = RECORD_SIZE - NAME;
+
+    private static final int FREE = -1;
+    private static final long NO_LEASE = Long.MIN_VALUE;
+    private static final int NO_PORT = Integer.MIN_VALUE;
+    private static final byte IP_NULL = 0;
+    private static final byte IP_V4 = 1;
+    private static final byte IP_TEXT = 2;
+    private static final String[] ROLES = {null, Role.MASTER.name(), Role.SLAVE.name()};
+    private static final byte ROLE_MASTER = 1;
+    /**
+     * 索引表中的空位和删除标记
+     */
+    private static final int EMPTY = 0;
+    private static final int DELETED = -1;
+
+    private final int slabRecords;
+    private final List<ByteBuffer> slabs = Lists.newArrayList();
+    /**
+     * 各内存块中记录的心跳时间，与slabs一一对应
+     */
+    private final List<AtomicLongArray> heartbeatTimes = Lists.newArrayList();
+    private int allocated;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    /**
+     * 名称索引，存槽位+1，与hashes一一对应
+     */
+    private int[] table = new int[16];
+    private int[] hashes = new int[16];
+    /**
+     * 索引表中已占用(含删除标记)的位置数
+     */
+    private int used;
+    private volatile int size;
+    private final Map<String/** clusterName */, Map<String/** groupName */, Group>> groups = Maps.newHashMap();
+    private final List<Group> groupList = Lists.newArrayList();
+    private final HeapClientStore overflow = new HeapClientStore();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public OffHeapClientStore() {
+        this(DEFAULT_SLAB_RECORDS);
+    }
+
+    /**
+     * @param slabRecords 每个内存块的记录数
+     */
+    public OffHeapClientStore(int slabRecords) {
+        Preconditions.checkArgument(slabRecords > 0, "slabRecords must be positive");
+        this.slabRecords = slabRecords;
+    }
+
+    @Override
+    public ClientConfig get(String clientName) {
+        if (Objects.isNull(clientName)) {
+            return null;
+        }
+        byte[] key = clientName.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            int idx = find(key, hash(key));
+            if (idx >= 0) {
+                return read(table[idx] - 1);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return overflow.get(clientName);
+    }
+
+    @Override
+    public ClientConfig get(Object handle) {
+        if (!(handle instanceof Long)) {
+            return overflow.get(handle);
+        }
+        lock.readLock().lock();
+        try {
+            int slot = current((Long) handle);
+            return slot < 0 ? null : read(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Object handle(String clientName) {
+        if (Objects.isNull(clientName)) {
+            return null;
+        }
+        byte[] key = clientName.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            int idx = find(key, hash(key));
+            if (idx >= 0) {
+                int slot = table[idx] - 1;
+                return ((long) slab(slot).getInt(base(slot) + GEN) << 32) | slot;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return overflow.handle(clientName);
+    }
+
+    @Override
+    public ClientConfig compute(String clientName, UnaryOperator<ClientConfig> function) {
+        byte[] key = clientName.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(key);
+        lock.writeLock().lock();
+        try {
+            int idx = find(key, hash);
+            if (idx < 0 && Objects.nonNull(overflow.get(clientName))) {
+                // 堆内的客户端在堆内存储中修改，能放进定长记录时再移到堆外
+                ClientConfig[] moved = new ClientConfig[1];
+                ClientConfig r = overflow.compute(clientName, old -> {
+                    ClientConfig client = function.apply(old);
+                    if (Objects.nonNull(client) && fits(client, key)) {
+                        moved[0] = client;
+                        return null;
+                    }
+                    return client;
+                });
+                if (Objects.isNull(moved[0])) {
+                    return r;
+                }
+                int slot = allocate();
+                insert(slot, hash);
+                write(slot, key, moved[0]);
+                return moved[0];
+            }
+            int slot = idx >= 0 ? table[idx] - 1 : -1;
+            ClientConfig r = function.apply(slot >= 0 ? read(slot) : null);
+            if (Objects.isNull(r) || !fits(r, key)) {
+                if (slot >= 0) {
+                    release(idx, slot);
+                }
+                if (Objects.nonNull(r)) {
+                    overflow.compute(clientName, e -> r);
+                }
+                return r;
+            }
+            if (slot < 0) {
+                slot = allocate();
+                insert(slot, hash);
+            }
+            write(slot, key, r);
+            return r;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean touch(String clientName, String cluster, String group, long heartbeatTime) {
+        byte[] key = clientName.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            int idx = find(key, hash(key));
+            if (idx >= 0) {
+                int slot = table[idx] - 1;
+                if (Objects.nonNull(cluster)) {
+                    Group g = groupList.get(slab(slot).getInt(base(slot) + GROUP));
+                    if (!Objects.equals(cluster, g.cluster) || !Objects.equals(group, g.group)) {
+                        return false;
+                    }
+                }
+                heartbeatTimes(slot).accumulateAndGet(slot % slabRecords, heartbeatTime, Math::max);
+                return true;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return overflow.touch(clientName, cluster, group, heartbeatTime);
+    }
+
+    @Override
+    public boolean remove(Object handle) {
+        if (!(handle instanceof Long)) {
+            return overflow.remove(handle);
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = current((Long) handle);
+            if (slot < 0) {
+                return false;
+            }
+            byte[] key = readKey(slot);
+            release(find(key, hash(key)), slot);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, ClientConfig> query(String cluster, String group) {
+        Map<String, ClientConfig> r = Maps.newHashMap();
+        lock.readLock().lock();
+        try {
+            if (StringUtils.isBlank(cluster) && StringUtils.isBlank(group)) {
+                for (int slot = 0; slot < allocated; slot++) {
+                    if (slab(slot).getInt(base(slot) + GROUP) != FREE) {
+                        ClientConfig client = read(slot);
+                        r.put(client.getClientName(), client);
+                    }
+                }
+            } else {
+                for (Group g : groupList) {
+                    if ((StringUtils.isBlank(cluster) || Objects.equals(cluster, g.cluster))
+                            && (StringUtils.isBlank(group) || Objects.equals(group, g.group))) {
+                        for (int i = 0; i < g.size; i++) {
+                            ClientConfig client = read(g.slots[i]);
+                            r.put(client.getClientName(), client);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        r.putAll(overflow.query(cluster, group));
+        return r;
+    }
+
+    @Override
+    public ClientConfig getMaster(String cluster, String group) {
+        lock.readLock().lock();
+        try {
+            Map<String, Group> clusterGroups = groups.get(cluster);
+            Group g = Objects.isNull(clusterGroups) ? null : clusterGroups.get(group);
+            for (int i = 0; Objects.nonNull(g) && i < g.size; i++) {
+                int slot = g.slots[i];
+                if (slab(slot).get(base(slot) + ROLE) == ROLE_MASTER) {
+                    return read(slot);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return overflow.getMaster(cluster, group);
+    }
+
+    /**
+     * 在读锁内遍历，消费者不可修改存储
+     */
+    @Override
+    public void forEach(Consumer<ClientConfig> consumer) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < allocated; slot++) {
+                if (slab(slot).getInt(base(slot) + GROUP) != FREE) {
+                    consumer.accept(read(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        overflow.forEach(consumer);
+    }
+
+    @Override
+    public int size() {
+        return size + overflow.size();
+    }
+
+    /**
+     * 堆内存放的客户端数
+     *
+     * @return 客户端数
+     */
+    public int getOverflowSize() {
+        return overflow.size();
+    }
+
+    /**
+     * 已分配的堆外内存(byte)
+     *
+     * @return 字节数
+     */
+    public long getAllocatedBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) slabs.size() * slabRecords * RECORD_SIZE;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------- 记录
+
+    private ByteBuffer slab(int slot) {
+        return slabs.get(slot / slabRecords);
+    }
+
+    private AtomicLongArray heartbeatTimes(int slot) {
+        return heartbeatTimes.get(slot / slabRecords);
+    }
+
+    private int base(int slot) {
+        return (slot % slabRecords) * RECORD_SIZE;
+    }
+
+    /**
+     * 句柄对应的记录仍有效时返回槽位，否则返回-1
+     */
+    private int current(long handle) {
+        int slot = (int) handle;
+        if (slot < 0 || slot >= allocated) {
+            return -1;
+        }
+        ByteBuffer slab = slab(slot);
+        int base = base(slot);
+        return slab.getInt(base + GROUP) != FREE && slab.getInt(base + GEN) == (int) (handle >>> 32) ? slot : -1;
+    }
+
+    private int allocate() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (allocated == slabs.size() * slabRecords) {
+                slabs.add(ByteBuffer.allocateDirect(slabRecords * RECORD_SIZE));
+                heartbeatTimes.add(new AtomicLongArray(slabRecords));
+            }
+            slot = allocated++;
+        }
+        ByteBuffer slab = slab(slot);
+        int base = base(slot);
+        slab.putInt(base + GEN, slab.getInt(base + GEN) + 1);
+        slab.putInt(base + GROUP, FREE);
+        return slot;
+    }
+
+    /**
+     * 移除记录：删除名称索引和分组索引并回收槽位
+     */
+    private void release(int idx, int slot) {
+        table[idx] = DELETED;
+        size--;
+        unlinkGroup(slot);
+        slab(slot).putInt(base(slot) + GROUP, FREE);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void write(int slot, byte[] key, ClientConfig client) {
+        ByteBuffer slab = slab(slot);
+        int base = base(slot);
+        Group g = groupOf(client.getClusterName(), client.getGroupName());
+        int oldGroup = slab.getInt(base + GROUP);
+        if (oldGroup != g.id) {
+            if (oldGroup != FREE) {
+                unlinkGroup(slot);
+            }
+            g.add(slot, slab, base);
+        }
+        heartbeatTimes(slot).set(slot % slabRecords, client.getHeartbeatTime());
+        slab.putLong(base + LEASE, Objects.isNull(client.getLeaseId()) ? NO_LEASE : client.getLeaseId());
+        slab.putInt(base + PORT, Objects.isNull(client.getPort()) ? NO_PORT : client.getPort());
+        slab.put(base + ROLE, roleOf(client.getRole()));
+        String ip = client.getIp();
+        long ipv4 = parseIpv4(ip);
+        if (Objects.isNull(ip)) {
+            slab.put(base + IP_TYPE, IP_NULL);
+        } else if (ipv4 >= 0) {
+            slab.put(base + IP_TYPE, IP_V4);
+            slab.putInt(base + IP, (int) ipv4);
+        } else {
+            byte[] bytes = ip.getBytes(StandardCharsets.UTF_8);
+            slab.put(base + IP_TYPE, IP_TEXT);
+            slab.put(base + IP_LEN, (byte) bytes.length);
+            putBytes(slab, base + IP, bytes);
+        }
+        slab.put(base + NAME_LEN, (byte) key.length);
+        putBytes(slab, base + NAME, key);
+    }
+
+    private ClientConfig read(int slot) {
+        ByteBuffer slab = slab(slot);
+        int base = base(slot);
+        Group g = groupList.get(slab.getInt(base + GROUP));
+        int port = slab.getInt(base + PORT);
+        long leaseId = slab.getLong(base + LEASE);
+        String ip;
+        switch (slab.get(base + IP_TYPE)) {
+            case IP_V4:
+                ip = formatIpv4(slab.getInt(base + IP));
+                break;
+            case IP_TEXT:
+                ip = new String(getBytes(slab, base + IP, slab.get(base + IP_LEN)), StandardCharsets.UTF_8);
+                break;
+            default:
+                ip = null;
+        }
+        return new ClientConfig().setClientName(new String(readKey(slot), StandardCharsets.UTF_8))
+                .setIp(ip)
+                .setPort(port == NO_PORT ? null : port)
+                .setRole(ROLES[slab.get(base + ROLE)])
+                .setClusterName(g.cluster)
+                .setGroupName(g.group)
+                .setLeaseId(leaseId == NO_LEASE ? null : leaseId)
+                .setHeartbeatTime(heartbeatTimes(slot).get(slot % slabRecords));
+    }
+
+    private byte[] readKey(int slot) {
+        ByteBuffer slab = slab(slot);
+        int base = base(slot);
+        return getBytes(slab, base + NAME, slab.get(base + NAME_LEN));
+    }
+
+    /**
+     * 判断客户端能否放进定长记录
+     */
+    private static boolean fits(ClientConfig client, byte[] key) {
+        if (key.length > NAME_MAX || (Objects.nonNull(client.getExt()) && !client.getExt().isEmpty())
+                || Objects.isNull(client.getClusterName()) || Objects.isNull(client.getGroupName())) {
+            return false;
+        }
+        if (Objects.nonNull(client.getRole()) && roleOf(client.getRole()) == 0) {
+            return false;
+        }
+        String ip = client.getIp();
+        return Objects.isNull(ip) || parseIpv4(ip) >= 0 || ip.getBytes(StandardCharsets.UTF_8).length <= IP_MAX;
+    }
+
+    private static byte roleOf(String role) {
+        for (byte i = 1; i < ROLES.length; i++) {
+            if (Objects.equals(ROLES[i], role)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 解析点分十进制IPv4地址，只接受能原样还原的写法
+     *
+     * @return 无符号地址，无法解析返回-1
+     */
+    private static long parseIpv4(String ip) {
+        if (Objects.isNull(ip) || ip.length() < 7 || ip.length() > 15) {
+            return -1;
+        }
+        long r = 0;
+        int part = 0;
+        int digits = 0;
+        int parts = 0;
+        for (int i = 0; i <= ip.length(); i++) {
+            char c = i < ip.length() ? ip.charAt(i) : '.';
+            if (c == '.') {
+                if (digits == 0 || part > 255 || ++parts > 4) {
+                    return -1;
+                }
+                r = (r << 8) | part;
+                part = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (digits > 0 && part == 0) {
+                    return -1;
+                }
+                part = part * 10 + (c - '0');
+                digits++;
+            } else {
+                return -1;
+            }
+        }
+        return parts == 4 ? r : -1;
+    }
+
+    private static String formatIpv4(int ip) {
+        return (ip >>> 24) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+    }
+
+    private static void putBytes(ByteBuffer slab, int index, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            slab.put(index + i, bytes[i]);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer slab, int index, int length) {
+        byte[] r = new byte[length];
+        for (int i = 0; i < length; i++) {
+            r[i] = slab.get(index + i);
+        }
+        return r;
+    }
+
+    // ---------------------------------------------------------------- 名称索引
+
+    private static int hash(byte[] key) {
+        int h = Arrays.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private int find(byte[] key, int hash) {
+        int mask = table.length - 1;
+        for (int idx = hash & mask; ; idx = (idx + 1) & mask) {
+            int t = table[idx];
+            if (t == EMPTY) {
+                return -1;
+            }
+            if (t > 0 && hashes[idx] == hash && keyEquals(t - 1, key)) {
+                return idx;
+            }
+        }
+    }
+
+    private boolean keyEquals(int slot, byte[] key) {
+        ByteBuffer slab = slab(slot);
+        int base = base(slot);
+        if (slab.get(base + NAME_LEN) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (slab.get(base + NAME + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void insert(int slot, int hash) {
+        // 负载(含删除标记)不超过1/2
+        if ((used + 1) * 2 > table.length) {
+            rehash(Math.max(16, Integer.highestOneBit(Math.max(1, size) * 4 - 1) << 1));
+        }
+        int mask = table.length - 1;
+        int idx = hash & mask;
+        while (table[idx] > 0) {
+            idx = (idx + 1) & mask;
+        }
+        if (table[idx] == EMPTY) {
+            used++;
+        }
+        table[idx] = slot + 1;
+        hashes[idx] = hash;
+        size++;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldTable = table;
+        int[] oldHashes = hashes;
+        table = new int[capacity];
+        hashes = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] > 0) {
+                int idx = oldHashes[i] & mask;
+                while (table[idx] != EMPTY) {
+                    idx = (idx + 1) & mask;
+                }
+                table[idx] = oldTable[i];
+                hashes[idx] = oldHashes[i];
+            }
+        }
+        used = size;
+    }
+
+    // ---------------------------------------------------------------- 分组索引
+
+    private Group groupOf(String cluster, String group) {
+        return groups.computeIfAbsent(cluster, e -> Maps.newHashMap()).computeIfAbsent(group, e -> {
+            Group g = new Group(groupList.size(), cluster, group);
+            groupList.add(g);
+            return g;
+        });
+    }
+
+    private void unlinkGroup(int slot) {
+        ByteBuffer slab = slab(slot);
+        int base = base(slot);
+        Group g = groupList.get(slab.getInt(base + GROUP));
+        int pos = slab.getInt(base + GROUP_POS);
+        int last = g.slots[--g.size];
+        g.slots[pos] = last;
+        slab(last).putInt(base(last) + GROUP_POS, pos);
+    }
+
+    /**
+     * 分组，槽位数组无序，删除时用末尾元素填补
+     */
+    private static final class Group {
+        private final int id;
+        private final String cluster;
+        private final String group;
+        private int[] slots = new int[4];
+        private int size;
+
+        private Group(int id, String cluster, String group) {
+            this.id = id;
+            this.cluster = cluster;
+            this.group = group;
+        }
+
+        private void add(int slot, ByteBuffer slab, int base) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size] = slot;
+            slab.putInt(base + GROUP_POS, size);
+            slab.putInt(base + GROUP, id);
+            size++;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.soulw.common.nameserver.domain.registry.store;
+
+import com.google.common.base.Preconditions;
+import com.google.gson.Gson;
+import com.soulw.common.nameserver.domain.registry.Registry;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 注册表持久化，变更写入预写日志，定时生成快照并截断日志，重启时从快照和日志恢复
+ * <p>
+ * 变更通知只触发一次合并写入，写入线程按上次写入的版本取增量追加为一条日志，
+ * 写入期间到达的变更合并到下一条，刷盘策略作用于每条日志(组提交)。
+ * 注册表标识变化或变更日志截断时直接写快照。心跳刷新不是变更，不写日志，
+ * 恢复后的客户端从恢复时刻重新计算过期时间，需在过期时间内重新心跳。
+ * 日志和快照只在executor线程中读写，executor须为单线程
+ *
+ * @author SoulW
+ * @since 2024/3/25 11:00
+ */
+@Slf4j
+public class RegistryStore {
+    private static final Gson GSON = new Gson();
+    private static final String SNAPSHOT = "snapshot.json";
+
+    private final Registry registry;
+    private final File dir;
+    private final SegmentedWal wal;
+    private final FlushMode flushMode;
+    private final long flushInterval;
+    private final long snapshotInterval;
+    private final long compactSize;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private String loggedRegistryId;
+    private Long loggedRevision;
+    private long snapshotTime;
+    private boolean dirty;
+
+    /**
+     * @param registry         注册表
+     * @param dir              数据目录
+     * @param segmentSize      日志单段大小(byte)，累计超过4段时提前生成快照
+     * @param flushMode        刷盘策略
+     * @param flushInterval    定时刷盘间隔(ms)
+     * @param snapshotInterval 快照间隔(ms)
+     * @param executor         单线程执行器
+     */
+    public RegistryStore(Registry registry, File dir, int segmentSize, FlushMode flushMode, long flushInterval,
+                         long snapshotInterval, ScheduledExecutorService executor) {
+        this.registry = registry;
+        this.dir = dir;
+        this.wal = new SegmentedWal(dir, segmentSize);
+        this.flushMode = flushMode;
+        this.flushInterval = flushInterval;
+        this.snapshotInterval = snapshotInterval;
+        this.compactSize = segmentSize * 4L;
+        this.executor = executor;
+    }
+
+    /**
+     * 从快照和日志恢复注册表，然后写入新快照并开始记录变更，须在注册表对外服务前调用
+     *
+     * @return 恢复的客户端数
+     */
+    public int start() throws IOException {
+        long begin = System.currentTimeMillis();
+        RegistryDelta snapshot = readSnapshot();
+        List<byte[]> records = wal.readAll();
+        int replayed = 0;
+        if (Objects.nonNull(snapshot)) {
+            registry.apply(restore(snapshot));
+        }
+        for (byte[] record : records) {
+            RegistryDelta delta = GSON.fromJson(new String(record, StandardCharsets.UTF_8), RegistryDelta.class);
+            // 只回放快照之后的日志，快照之前或其他注册表标识的日志已包含在快照中
+            if (Objects.isNull(snapshot) || (Objects.equals(snapshot.getRegistryId(), delta.getRegistryId())
+                    && delta.getRevision() > snapshot.getRevision())) {
+                registry.apply(restore(delta));
+                replayed++;
+            }
+        }
+        log.info("start() recovered, dir={}, size={}, snapshot={}, records={}, replayed={}, cost={}ms", dir,
+                registry.size(), Objects.nonNull(snapshot), records.size(), replayed, System.currentTimeMillis() - begin);
+        // 恢复后的注册表标识已变化，写入新快照后旧日志不再需要
+        executor.submit(() -> {
+            writeSnapshot(registry.delta(null, null));
+            return null;
+        });
+        registry.addChangeListener(this::onChanged);
+        if (flushMode == FlushMode.INTERVAL) {
+            executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+        }
+        executor.scheduleWithFixedDelay(this::compact, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+        return registry.size();
+    }
+
+    /**
+     * 写入未落盘的变更并关闭日志
+     */
+    public void stop() {
+        try {
+            executor.submit(() -> {
+                append();
+                wal.close();
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.error("stop() failed", e);
+        }
+        executor.shutdown();
+    }
+
+    private void onChanged() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::append);
+        } catch (Exception e) {
+            scheduled.set(false);
+            log.error("onChanged() submit failed", e);
+        }
+    }
+
+    private void append() {
+        scheduled.set(false);
+        try {
+            if (Objects.equals(loggedRegistryId, registry.getRegistryId())
+                    && Objects.equals(loggedRevision, registry.getRevision())) {
+                return;
+            }
+            RegistryDelta delta = registry.delta(loggedRegistryId, loggedRevision);
+            if (Boolean.TRUE.equals(delta.getFull())) {
+                writeSnapshot(delta);
+                return;
+            }
+            wal.append(GSON.toJson(delta).getBytes(StandardCharsets.UTF_8));
+            loggedRegistryId = delta.getRegistryId();
+            loggedRevision = delta.getRevision();
+            dirty = true;
+            if (flushMode == FlushMode.ALWAYS) {
+                flush();
+            }
+            if (wal.getBytesWritten() >= compactSize) {
+                writeSnapshot(registry.delta(null, null));
+            }
+        } catch (Exception e) {
+            log.error("append() failed", e);
+        }
+    }
+
+    private void flush() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        wal.force();
+    }
+
+    private void compact() {
+        if (System.currentTimeMillis() - snapshotTime >= snapshotInterval && wal.getBytesWritten() > 0) {
+            writeSnapshot(registry.delta(null, null));
+        }
+    }
+
+    /**
+     * 写入快照后截断日志，先写临时文件再原子替换，任意时刻崩溃都能读到完整快照
+     */
+    private void writeSnapshot(RegistryDelta full) {
+        try {
+            File tmp = new File(dir, SNAPSHOT + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(GSON.toJson(full).getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            }
+            Files.move(tmp.toPath(), new File(dir, SNAPSHOT).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            wal.truncate();
+            loggedRegistryId = full.getRegistryId();
+            loggedRevision = full.getRevision();
+            snapshotTime = System.currentTimeMillis();
+            dirty = false;
+            log.info("writeSnapshot() revision={}, size={}", full.getRevision(), full.getUpserts().size());
+        } catch (Exception e) {
+            log.error("writeSnapshot() failed", e);
+        }
+    }
+
+    /**
+     * 租约不持久化，恢复的客户端解除租约绑定，避免与重启后新授予的租约id冲突
+     */
+    private static RegistryDelta restore(RegistryDelta delta) {
+        delta.getUpserts().values().forEach(client -> client.setLeaseId(null));
+        return delta;
+    }
+
+    private RegistryDelta readSnapshot() throws IOException {
+        File file = new File(dir, SNAPSHOT);
+        if (!file.exists()) {
+            return null;
+        }
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        return StringUtils.isBlank(content) ? null : GSON.fromJson(content, RegistryDelta.class);
+    }
+
+    /**
+     * 刷盘策略
+     *
+     * @author SoulW
+     */
+    public enum FlushMode {
+        /**
+         * 不主动刷盘，由操作系统回写，进程崩溃不丢数据，掉电可能丢失
+         */
+        NONE,
+        /**
+         * 定时刷盘，掉电最多丢失一个刷盘间隔内的变更
+         */
+        INTERVAL,
+        /**
+         * 每条日志写入后刷盘
+         */
+        ALWAYS;
+
+        public static FlushMode of(String name) {
+            Preconditions.checkArgument(StringUtils.isNotBlank(name), "flushMode is blank");
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.soulw.common.nameserver.domain.registry.store;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * 分段的内存映射预写日志，每段为固定大小的映射文件，写满后滚动到下一段
+ * <p>
+ * 记录格式为 [长度int][CRC32 int][内容]，长度为0表示段内已无记录；
+ * 读取时遇到长度越界或校验失败视为崩溃时未写完的尾部，丢弃该段后续内容。
+ * 非线程安全，由调用方保证单线程写入
+ *
+ * @author SoulW
+ * @since 2024/3/25 10:20
+ */
+@Slf4j
+public class SegmentedWal {
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+
+    private final File dir;
+    private final int segmentSize;
+    private long segmentSeq;
+    private MappedByteBuffer current;
+    private FileChannel currentChannel;
+    /**
+     * 当前段之前的段，可在快照后删除
+     */
+    private final List<File> sealed = Lists.newArrayList();
+    private File currentFile;
+    /**
+     * 自上次截断以来写入的字节数
+     */
+    private long bytesWritten;
+
+    /**
+     * @param dir         日志目录
+     * @param segmentSize 单段大小(byte)
+     */
+    public SegmentedWal(File dir, int segmentSize) {
+        Preconditions.checkArgument(segmentSize > HEADER_SIZE, "segmentSize too small");
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        Preconditions.checkState(dir.isDirectory() || dir.mkdirs(), "mkdirs failed: " + dir);
+    }
+
+    /**
+     * 按顺序读取全部段中的有效记录，之后的写入从新段开始
+     *
+     * @return 记录内容
+     */
+    public List<byte[]> readAll() throws IOException {
+        List<byte[]> r = Lists.newArrayList();
+        for (File file : listSegments()) {
+            segmentSeq = Math.max(segmentSeq, parseSeq(file) + 1);
+            sealed.add(file);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (buffer.remaining() >= HEADER_SIZE) {
+                    int length = buffer.getInt();
+                    int crc = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining()) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    buffer.get(payload);
+                    if (crc32(payload) != crc) {
+                        log.error("readAll() crc mismatch, file={}, position={}", file.getName(), buffer.position() - length);
+                        break;
+                    }
+                    r.add(payload);
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * 追加一条记录，当前段放不下时滚动到新段
+     *
+     * @param payload 记录内容
+     */
+    public void append(byte[] payload) throws IOException {
+        int size = HEADER_SIZE + payload.length;
+        if (Objects.isNull(current) || current.remaining() < size) {
+            roll(size);
+        }
+        current.putInt(payload.length);
+        current.putInt(crc32(payload));
+        current.put(payload);
+        bytesWritten += size;
+    }
+
+    /**
+     * 将当前段刷到磁盘
+     */
+    public void force() {
+        if (Objects.nonNull(current)) {
+            current.force();
+        }
+    }
+
+    /**
+     * 关闭当前段并删除之前的全部段，须在快照落盘后调用
+     */
+    public void truncate() throws IOException {
+        if (Objects.nonNull(current)) {
+            current.force();
+            sealCurrent();
+        }
+        for (File file : sealed) {
+            if (file.exists() && !file.delete()) {
+                log.error("truncate() delete failed, file={}", file);
+            }
+        }
+        sealed.clear();
+        bytesWritten = 0;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * 关闭日志
+     */
+    public void close() throws IOException {
+        if (Objects.nonNull(current)) {
+            current.force();
+            sealCurrent();
+        }
+    }
+
+    private void roll(int minSize) throws IOException {
+        if (Objects.nonNull(current)) {
+            current.force();
+            sealCurrent();
+        }
+        currentFile = new File(dir, String.format("%s%020d%s", PREFIX, segmentSeq++, SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(currentFile, "rw");
+        currentChannel = raf.getChannel();
+        // 超大记录单独成段
+        current = currentChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentSize, minSize + HEADER_SIZE));
+    }
+
+    private void sealCurrent() throws IOException {
+        sealed.add(currentFile);
+        currentChannel.close();
+        current = null;
+        currentChannel = null;
+        currentFile = null;
+    }
+
+    private List<File> listSegments() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (Objects.isNull(files)) {
+            return Lists.newArrayList();
+        }
+        Arrays.sort(files);
+        return Lists.newArrayList(files);
+    }
+
+    private static long parseSeq(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static int crc32(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
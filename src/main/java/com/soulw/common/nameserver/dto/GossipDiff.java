@@ -0,0 +1,23 @@
+package com.soulw.common.nameserver.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 摘要比对结果
+ *
+ * @author SoulW
+ * @since 2024/3/22 10:30
+ */
+@Data
+@Accessors(chain = true)
+public class GossipDiff {
+    /**
+     * 哈希不一致的分桶
+     */
+    private int[] buckets = new int[0];
+    /**
+     * 应答方在不一致分桶中的客户端及移除记录
+     */
+    private GossipMessage message = new GossipMessage();
+}
@@ -0,0 +1,27 @@
+package com.soulw.common.nameserver.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * AP模式下注册表的摘要(两层Merkle树)，根哈希一致时无需比对分桶
+ *
+ * @author SoulW
+ * @since 2024/3/22 10:25
+ */
+@Data
+@Accessors(chain = true)
+public class GossipDigest {
+    /**
+     * 根哈希，由全部分桶哈希计算
+     */
+    private Long root;
+    /**
+     * 分桶哈希，按客户端名称分桶
+     */
+    private long[] buckets;
+    /**
+     * 分片
+     */
+    private Integer shard;
+}
@@ -0,0 +1,37 @@
+package com.soulw.common.nameserver.dto;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AP模式下节点间传播的变更，按心跳时间后写覆盖先写
+ *
+ * @author SoulW
+ * @since 2024/3/22 10:20
+ */
+@Data
+@Accessors(chain = true)
+public class GossipMessage {
+    /**
+     * 新增或更新的客户端，携带最新心跳时间
+     */
+    private List<ClientConfig> upserts = Lists.newArrayList();
+    /**
+     * 主动移除的客户端及移除时间，心跳时间不晚于移除时间的副本都应移除
+     */
+    private Map<String/** clientName */, Long> removes = Maps.newHashMap();
+    /**
+     * 分片
+     */
+    private Integer shard;
+
+    public boolean isEmpty() {
+        return upserts.isEmpty() && removes.isEmpty();
+    }
+}
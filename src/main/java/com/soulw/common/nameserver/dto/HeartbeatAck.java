@@ -0,0 +1,20 @@
+package com.soulw.common.nameserver.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * 单个实例的心跳结果
+ *
+ * @author SoulW
+ * @since 2024/3/19 14:20
+ */
+@Data
+@Accessors(chain = true)
+public class HeartbeatAck implements Serializable {
+    private String clientName;
+    private Boolean success;
+    private String message;
+}
@@ -0,0 +1,26 @@
+package com.soulw.common.nameserver.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * 租约
+ *
+ * @author SoulW
+ * @since 2024/3/20 16:40
+ */
+@Data
+@Accessors(chain = true)
+public class Lease implements Serializable {
+    private Long leaseId;
+    /**
+     * 租约有效期(ms)，需在有效期内续约
+     */
+    private Long ttl;
+    /**
+     * 租约所属分片，节点间转发时指定，客户端请求为空
+     */
+    private Integer shard;
+}
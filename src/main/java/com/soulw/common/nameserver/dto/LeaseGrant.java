@@ -0,0 +1,27 @@
+package com.soulw.common.nameserver.dto;
+
+import com.google.common.collect.Lists;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.util.List;
+
+/**
+ * 租约申请，一个租约可维持多个实例存活
+ *
+ * @author SoulW
+ * @since 2024/3/20 16:40
+ */
+@Data
+@Accessors(chain = true)
+public class LeaseGrant {
+    /**
+     * 租约有效期(ms)，为空时取服务端客户端过期时间
+     */
+    private Long ttl;
+    /**
+     * 挂在租约上的实例，分片模式下须路由到同一分片，通常为同一集群、分组
+     */
+    private List<Heartbeat> heartbeats = Lists.newArrayList();
+}
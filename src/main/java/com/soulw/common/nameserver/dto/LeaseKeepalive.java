@@ -0,0 +1,25 @@
+package com.soulw.common.nameserver.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * 转发给分片主节点的续约请求
+ *
+ * @author SoulW
+ * @since 2024/4/1 10:00
+ */
+@Data
+@Accessors(chain = true)
+public class LeaseKeepalive implements Serializable {
+    /**
+     * 分片号
+     */
+    private Integer shard;
+    /**
+     * 待续约的租约id
+     */
+    private long[] leaseIds;
+}
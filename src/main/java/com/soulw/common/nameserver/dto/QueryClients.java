@@ -1,10 +1,27 @@
 package com.soulw.common.nameserver.dto;
 
+import lombok.Data;
+import lombok.experimental.Accessors;
+
 /**
  * Created by SoulW on 2024/3/5.
  *
  * @author SoulW
  * @since 2024/3/5 14:44
  */
+@Data
+@Accessors(chain = true)
 public class QueryClients {
+    /**
+     * 集群，为空时查询全部集群
+     */
+    private String cluster;
+    /**
+     * 分组，为空时查询全部分组
+     */
+    private String groupCode;
+    /**
+     * 分片，为空时按集群、分组路由，未同时指定集群和分组时查询全部分片
+     */
+    private Integer shard;
 }
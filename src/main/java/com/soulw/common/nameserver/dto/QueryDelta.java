@@ -0,0 +1,27 @@
+package com.soulw.common.nameserver.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 增量查询请求
+ *
+ * @author SoulW
+ * @since 2024/3/14 15:30
+ */
+@Data
+@Accessors(chain = true)
+public class QueryDelta {
+    /**
+     * 调用方已同步的注册表标识，与服务端不一致时返回全量
+     */
+    private String registryId;
+    /**
+     * 调用方已同步的版本号
+     */
+    private Long revision;
+    /**
+     * 分片，分片模式下每个分片独立维护注册表标识及版本，为空时取0号分片
+     */
+    private Integer shard;
+}
@@ -0,0 +1,42 @@
+package com.soulw.common.nameserver.dto;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 注册表增量
+ *
+ * @author SoulW
+ * @since 2024/3/14 15:30
+ */
+@Data
+@Accessors(chain = true)
+public class RegistryDelta implements Serializable {
+    /**
+     * 注册表标识，注册表重建后变化
+     */
+    private String registryId;
+    /**
+     * 本次增量对应的版本号
+     */
+    private Long revision;
+    /**
+     * 是否全量，全量时调用方需以upserts替换本地全部数据
+     */
+    private Boolean full;
+    /**
+     * 新增或更新的客户端
+     */
+    private Map<String/** clientName */, ClientConfig> upserts = Maps.newHashMap();
+    /**
+     * 被删除的客户端名称
+     */
+    private List<String> removes = Lists.newArrayList();
+}
@@ -0,0 +1,39 @@
+package com.soulw.common.nameserver.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 主节点推送给从节点的复制批次
+ *
+ * @author SoulW
+ * @since 2024/3/21 15:20
+ */
+@Data
+@Accessors(chain = true)
+public class ReplicationBatch {
+    /**
+     * 主节点任期
+     */
+    private Long term;
+    /**
+     * 主节点ip
+     */
+    private String ip;
+    /**
+     * 主节点端口
+     */
+    private Integer port;
+    /**
+     * 增量的起始版本(不含)，全量时为空
+     */
+    private Long baseRevision;
+    /**
+     * 增量
+     */
+    private RegistryDelta delta;
+    /**
+     * 分片
+     */
+    private Integer shard;
+}
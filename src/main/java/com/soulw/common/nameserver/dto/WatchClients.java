@@ -0,0 +1,31 @@
+package com.soulw.common.nameserver.dto;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 监听注册表变更请求
+ *
+ * @author SoulW
+ * @since 2024/3/15 11:40
+ */
+@Data
+@Accessors(chain = true)
+public class WatchClients {
+    /**
+     * 调用方已同步的注册表标识
+     */
+    private String registryId;
+    /**
+     * 调用方已同步的版本号
+     */
+    private Long revision;
+    /**
+     * 挂起等待时间(ms)，为空或超过服务端上限时取服务端上限
+     */
+    private Long timeout;
+    /**
+     * 分片，为空时取0号分片
+     */
+    private Integer shard;
+}
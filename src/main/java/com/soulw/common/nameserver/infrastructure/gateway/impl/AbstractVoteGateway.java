@@ -0,0 +1,243 @@
+package com.soulw.common.nameserver.infrastructure.gateway.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.gson.reflect.TypeToken;
+import com.soulw.common.nameserver.audit.RequestAuditor;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.gateway.VoteGateway;
+import com.soulw.common.nameserver.domain.context.model.Context;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import com.soulw.common.nameserver.domain.context.model.Vote;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
+import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+import com.soulw.common.nameserver.dto.Result;
+import com.soulw.common.nameserver.metrics.NameServerMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 节点间请求的公共部分，把{@link VoteGateway}的各方法映射为按路径发送的异步请求，
+ * 同步方法等待异步结果；具体传输方式由子类实现
+ *
+ * @author SoulW
+ * @since 2024/3/30 10:00
+ */
+@Slf4j
+public abstract class AbstractVoteGateway implements VoteGateway {
+    protected static final Type HEARTBEATS = new TypeToken<List<Heartbeat>>() {
+    }.getType();
+    protected static final Type VOID_RESULT = new TypeToken<Result<Void>>() {
+    }.getType();
+    protected static final Type CLIENTS_RESULT = new TypeToken<Result<Map<String, ClientConfig>>>() {
+    }.getType();
+    protected static final Type DELTA_RESULT = new TypeToken<Result<RegistryDelta>>() {
+    }.getType();
+    protected static final Type ACK_RESULT = new TypeToken<Result<QueryDelta>>() {
+    }.getType();
+    protected static final Type ACKS_RESULT = new TypeToken<Result<List<HeartbeatAck>>>() {
+    }.getType();
+    protected static final Type DIFF_RESULT = new TypeToken<Result<GossipDiff>>() {
+    }.getType();
+    protected static final Type LEASE_RESULT = new TypeToken<Result<Lease>>() {
+    }.getType();
+    protected static final Type LONGS_RESULT = new TypeToken<Result<long[]>>() {
+    }.getType();
+    @Resource
+    protected SystemConfig systemConfig;
+    @Resource
+    protected NameServerMetrics metrics;
+    @Resource
+    protected RequestAuditor requestAuditor;
+    /**
+     * 各节点健康状态，心跳、投票、同步等所有请求共用
+     */
+    private final Map<String/** addr */, PeerHealth> peers = Maps.newConcurrentMap();
+
+    @Override
+    public void slaveHeartbeat(SystemConfig.Node master, Context context) {
+        await(slaveHeartbeatAsync(master, context));
+    }
+
+    @Override
+    public Map<String, ClientConfig> queryClients(SystemConfig.Node master, QueryClients query) {
+        return await(queryClientsAsync(master, query));
+    }
+
+    @Override
+    public RegistryDelta queryDelta(SystemConfig.Node master, QueryDelta query) {
+        return await(queryDeltaAsync(master, query));
+    }
+
+    @Override
+    public void sendVoteRequest(SystemConfig.Node node, Vote vote) {
+        try {
+            await(sendVoteRequestAsync(node, vote));
+        } catch (Exception e) {
+            log.error("Send Vote Request failed, msg={}, vote={}", e.getMessage(), vote);
+            throw new RuntimeException("Send Vote Request failed, msg=" + e.getMessage());
+        }
+    }
+
+    @Override
+    public void sendMasterSync(SystemConfig.Node node, Vote vote) {
+        await(sendMasterSyncAsync(node, vote));
+    }
+
+    @Override
+    public CompletableFuture<QueryDelta> replicateAsync(SystemConfig.Node node, ReplicationBatch batch) {
+        return post(node, "/vote/replicate", batch, ACK_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<Void> gossipAsync(SystemConfig.Node node, GossipMessage message) {
+        return post(node, "/vote/gossip", message, VOID_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<GossipDiff> digestAsync(SystemConfig.Node node, GossipDigest digest) {
+        return post(node, "/vote/gossip/digest", digest, DIFF_RESULT);
+    }
+
+    @Override
+    public boolean isAvailable(SystemConfig.Node node) {
+        PeerHealth health = peers.get(toAddr(node));
+        return Objects.isNull(health) || health.isAvailable(System.currentTimeMillis());
+    }
+
+    @Override
+    public CompletableFuture<Void> slaveHeartbeatAsync(SystemConfig.Node master, Context context) {
+        Heartbeat request = new Heartbeat();
+        request.setCluster(context.getClusterName());
+        request.setGroupCode(context.getGroupName());
+        request.setShard(context.getShard());
+        SystemConfig config = context.getSystemConfig();
+        request.setClientConfig(new ClientConfig().setIp(config.getIp())
+                .setPort(config.getPort()));
+        return post(master, "/vote/heartbeat", request, VOID_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, ClientConfig>> queryClientsAsync(SystemConfig.Node node, QueryClients query) {
+        return post(node, "/vote/clusters", query, CLIENTS_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<Void> heartbeatAsync(SystemConfig.Node node, Heartbeat heartbeat) {
+        return post(node, "/vote/heartbeat", heartbeat, VOID_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<List<HeartbeatAck>> batchHeartbeatAsync(SystemConfig.Node node, List<Heartbeat> heartbeats) {
+        return post(node, "/vote/heartbeat/batch", heartbeats, HEARTBEATS, ACKS_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<Lease> grantLeaseAsync(SystemConfig.Node node, LeaseGrant grant) {
+        return post(node, "/vote/lease/grant", grant, LEASE_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<long[]> keepaliveAsync(SystemConfig.Node node, LeaseKeepalive request) {
+        return post(node, "/vote/lease/keepalive/shard", request, LONGS_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<Void> revokeLeaseAsync(SystemConfig.Node node, Lease lease) {
+        return post(node, "/vote/lease/revoke", lease, VOID_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<RegistryDelta> queryDeltaAsync(SystemConfig.Node master, QueryDelta query) {
+        return post(master, "/vote/clusters/delta", query, DELTA_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendVoteRequestAsync(SystemConfig.Node node, Vote vote) {
+        return post(node, "/vote/accept", vote, VOID_RESULT);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendMasterSyncAsync(SystemConfig.Node node, Vote vote) {
+        return post(node, "/vote/master/sync", vote, VOID_RESULT);
+    }
+
+    /**
+     * 异步发送请求，请求类型取请求对象的类型
+     *
+     * @param node    节点
+     * @param path    请求路径，与{@link com.soulw.common.nameserver.sdk.VoteApi}一致
+     * @param request 请求体
+     * @param type    响应类型
+     * @return 响应数据
+     */
+    protected <T> CompletableFuture<T> post(SystemConfig.Node node, String path, Object request, Type type) {
+        return post(node, path, request, request.getClass(), type);
+    }
+
+    /**
+     * 异步发送请求，调用线程不等待；节点熔断时直接失败，
+     * 按节点、路径记录往返耗时及成败，并提交审计
+     *
+     * @param node        节点
+     * @param path        请求路径
+     * @param request     请求体
+     * @param requestType 请求类型，泛型集合须显式指定
+     * @param type        响应类型
+     * @return 响应数据
+     */
+    protected abstract <T> CompletableFuture<T> post(SystemConfig.Node node, String path, Object request,
+                                                     Type requestType, Type type);
+
+    /**
+     * 节点地址，用于健康状态及指标
+     *
+     * @param node 节点
+     * @return 地址
+     */
+    protected abstract String toAddr(SystemConfig.Node node);
+
+    /**
+     * 获取节点健康状态，不存在时创建
+     *
+     * @param addr 节点地址
+     * @return 健康状态
+     */
+    protected PeerHealth health(String addr) {
+        return peers.computeIfAbsent(addr, e -> new PeerHealth(systemConfig.getPeerFailureThreshold(),
+                systemConfig.getPeerOpenTime()));
+    }
+
+    protected <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = Objects.isNull(e.getCause()) ? e : e.getCause();
+            Throwables.throwIfUnchecked(cause);
+            throw new RuntimeException(cause.getMessage(), cause);
+        }
+    }
+
+    protected void check(Result<?> resp) {
+        Preconditions.checkNotNull(resp, "resp is null");
+        Preconditions.checkState(resp.getSuccess(), "failed: " + resp.getMessage());
+    }
+}
@@ -0,0 +1,85 @@
+package com.soulw.common.nameserver.infrastructure.gateway.impl;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个节点的健康状态(熔断器)
+ * <p>
+ * 连续网络失败达到阈值后熔断，熔断期内请求直接失败；熔断期过后只放行一个探测请求，
+ * 探测成功则恢复，失败则重新熔断。对方返回的业务失败(如拒绝投票)不计入失败
+ *
+ * @author SoulW
+ * @since 2024/3/21 10:30
+ */
+public class PeerHealth {
+    private final int failureThreshold;
+    private final long openTime;
+    private final AtomicInteger failures = new AtomicInteger(0);
+    private final AtomicBoolean probing = new AtomicBoolean(false);
+    private volatile long openUntil = -1;
+
+    /**
+     * @param failureThreshold 连续失败多少次后熔断
+     * @param openTime         熔断时长(ms)
+     */
+    public PeerHealth(int failureThreshold, long openTime) {
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+    }
+
+    /**
+     * 判断是否放行请求，熔断期过后只放行一个探测请求
+     *
+     * @param now 当前时间戳(ms)
+     * @return 是否放行
+     */
+    public boolean tryAcquire(long now) {
+        if (failures.get() < failureThreshold) {
+            return true;
+        }
+        if (now < openUntil) {
+            return false;
+        }
+        return probing.compareAndSet(false, true);
+    }
+
+    /**
+     * 判断节点当前是否可用，不占用探测机会
+     *
+     * @param now 当前时间戳(ms)
+     * @return 是否可用
+     */
+    public boolean isAvailable(long now) {
+        return failures.get() < failureThreshold || (now >= openUntil && !probing.get());
+    }
+
+    /**
+     * 请求成功
+     */
+    public void onSuccess() {
+        failures.set(0);
+        probing.set(false);
+    }
+
+    /**
+     * 请求失败
+     *
+     * @param now 当前时间戳(ms)
+     */
+    public void onFailure(long now) {
+        if (failures.incrementAndGet() >= failureThreshold) {
+            openUntil = now + openTime;
+        }
+        probing.set(false);
+    }
+
+    /**
+     * 当前连续失败次数
+     *
+     * @return 失败次数
+     */
+    public int getFailures() {
+        return failures.get();
+    }
+}
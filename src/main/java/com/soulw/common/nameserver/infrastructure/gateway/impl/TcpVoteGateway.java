@@ -0,0 +1,259 @@
+package com.soulw.common.nameserver.infrastructure.gateway.impl;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.codec.BinaryCodec;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.context.service.impl.VoteServiceImpl;
+import com.soulw.common.nameserver.dto.Result;
+import com.soulw.common.nameserver.metrics.ResultTimer;
+import com.soulw.common.nameserver.transport.NioConnection;
+import com.soulw.common.nameserver.transport.NioEventLoop;
+import com.soulw.common.nameserver.transport.TcpMethod;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于NIO长连接的节点间请求，每个节点一条连接，请求按id匹配响应，多个请求可同时在途；
+ * 请求、响应均使用二进制编码，对方TCP端口为其HTTP端口加{@link SystemConfig#getTcpPortOffset()}
+ * <p>
+ * 响应在回调线程中解码，不占用IO线程；超时、连接断开的请求计入节点失败，与HTTP一致
+ *
+ * @author SoulW
+ * @since 2024/3/30 10:00
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "ns", name = "transport", havingValue = "tcp")
+public class TcpVoteGateway extends AbstractVoteGateway implements NioConnection.FrameListener {
+    /**
+     * 请求超时及建连超时(ms)，与HTTP一致
+     */
+    private static final long TIMEOUT = 3_000L;
+    private static final long TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+    private static final long EXPIRE_TICK = 100L;
+
+    private final Map<String/** addr */, NioConnection> connections = Maps.newConcurrentMap();
+    private final Map<Long/** id */, PendingCall<?>> pending = Maps.newConcurrentMap();
+    private final AtomicLong ids = new AtomicLong();
+    private NioEventLoop[] loops;
+    private ExecutorService callbackExecutor;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        Preconditions.checkState(systemConfig.getTcpPortOffset() > 0, "ns.tcpPortOffset is required for tcp transport");
+        loops = new NioEventLoop[Math.max(1, systemConfig.getTcpIoThreads())];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioEventLoop("tcpClientIo-" + i);
+        }
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        callbackExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), VoteServiceImpl.buildThreadFactory("tcpCallback-%s"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(VoteServiceImpl.buildThreadFactory("tcpTimeout-%s"));
+        scheduler.scheduleWithFixedDelay(this::expire, EXPIRE_TICK, EXPIRE_TICK, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        for (NioConnection conn : connections.values()) {
+            conn.close(new ClosedChannelException());
+        }
+        for (NioEventLoop loop : loops) {
+            loop.close();
+        }
+        callbackExecutor.shutdown();
+    }
+
+    /**
+     * 异步发送请求，编码后放入连接的发送队列即返回；节点熔断时直接失败
+     *
+     * @param node        节点
+     * @param path        请求路径，对应{@link TcpMethod}
+     * @param request     请求体
+     * @param requestType 请求类型，泛型集合须显式指定
+     * @param type        响应类型
+     * @return 响应数据
+     */
+    @Override
+    protected <T> CompletableFuture<T> post(SystemConfig.Node node, String path, Object request, Type requestType,
+                                           Type type) {
+        TcpMethod method = TcpMethod.ofPath(path);
+        Preconditions.checkArgument(Objects.nonNull(method), "unsupported path: %s", path);
+        String addr = toAddr(node);
+        PeerHealth health = health(addr);
+        CompletableFuture<T> r = new CompletableFuture<>();
+        if (!health.tryAcquire(System.currentTimeMillis())) {
+            metrics.peerRejected(addr);
+            r.completeExceptionally(new RuntimeException("节点已熔断, addr=" + addr));
+            return r;
+        }
+        byte[] payload = BinaryCodec.encode(request, requestType);
+        PendingCall<T> call = new PendingCall<>(path, addr, request, type, health, metrics.peerRequest(addr, path), r);
+        long id = ids.incrementAndGet();
+        pending.put(id, call);
+        try {
+            // 先记录连接再发送，连接随后关闭时按连接找到该请求
+            call.conn = connection(node, addr);
+            if (!call.conn.send(id, method.getCode(), payload)) {
+                throw new ClosedChannelException();
+            }
+        } catch (Exception e) {
+            if (pending.remove(id, call)) {
+                call.fail(e);
+            }
+        }
+        return r;
+    }
+
+    @Override
+    protected String toAddr(SystemConfig.Node node) {
+        return "tcp://" + node.getIp() + ":" + (node.getPort() + systemConfig.getTcpPortOffset());
+    }
+
+    @Override
+    public void onFrame(NioConnection conn, long id, int method, byte[] payload) {
+        PendingCall<?> call = pending.remove(id);
+        // 已超时的请求丢弃响应
+        if (Objects.nonNull(call)) {
+            dispatch(() -> call.complete(payload));
+        }
+    }
+
+    @Override
+    public void onClose(NioConnection conn, Throwable cause) {
+        connections.values().remove(conn);
+        log.warn("peer connection closed, remote={}, msg={}", conn.getRemote(),
+                Objects.isNull(cause) ? null : cause.getMessage());
+        Exception e = new ClosedChannelException();
+        if (Objects.nonNull(cause)) {
+            e.initCause(cause);
+        }
+        pending.forEach((id, call) -> {
+            if (call.conn == conn && pending.remove(id, call)) {
+                dispatch(() -> call.fail(e));
+            }
+        });
+    }
+
+    /**
+     * 获取节点连接，不存在或已关闭时新建，建连超时后关闭
+     */
+    private NioConnection connection(SystemConfig.Node node, String addr) {
+        NioConnection current = connections.get(addr);
+        if (Objects.nonNull(current) && !current.isClosed()) {
+            return current;
+        }
+        // 建连失败可能早于放入map就回调onClose，已关闭的连接在此替换
+        return connections.compute(addr, (e, old) -> {
+            if (Objects.nonNull(old) && !old.isClosed()) {
+                return old;
+            }
+            InetSocketAddress remote = new InetSocketAddress(node.getIp(), node.getPort() + systemConfig.getTcpPortOffset());
+            try {
+                NioConnection conn = NioConnection.connect(loops[Math.floorMod(addr.hashCode(), loops.length)],
+                        remote, this);
+                scheduler.schedule(() -> {
+                    if (!conn.isConnected()) {
+                        conn.close(new ConnectException("connect timeout, remote=" + remote));
+                    }
+                }, TIMEOUT, TimeUnit.MILLISECONDS);
+                return conn;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     * 超时的请求按失败处理
+     */
+    private void expire() {
+        long now = System.nanoTime();
+        pending.forEach((id, call) -> {
+            if (now - call.begin > TIMEOUT_NANOS && pending.remove(id, call)) {
+                dispatch(() -> call.fail(new SocketTimeoutException("timeout")));
+            }
+        });
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            callbackExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("callback executor is shutdown, drop response");
+        }
+    }
+
+    /**
+     * 在途请求
+     */
+    private class PendingCall<T> {
+        private final String path;
+        private final String addr;
+        private final Object request;
+        private final Type type;
+        private final PeerHealth health;
+        private final ResultTimer timer;
+        private final CompletableFuture<T> future;
+        private final long begin = System.nanoTime();
+        private volatile NioConnection conn;
+
+        PendingCall(String path, String addr, Object request, Type type, PeerHealth health, ResultTimer timer,
+                    CompletableFuture<T> future) {
+            this.path = path;
+            this.addr = addr;
+            this.request = request;
+            this.type = type;
+            this.health = health;
+            this.timer = timer;
+            this.future = future;
+        }
+
+        void complete(byte[] payload) {
+            health.onSuccess();
+            Result<T> resp = null;
+            try {
+                resp = BinaryCodec.decode(payload, type);
+                check(resp);
+                timer.record(begin, true);
+                requestAuditor.client(path, addr, begin, request, resp, null);
+                future.complete(resp.getData());
+            } catch (Exception e) {
+                timer.record(begin, false);
+                requestAuditor.client(path, addr, begin, request, resp, e);
+                future.completeExceptionally(e);
+            }
+        }
+
+        void fail(Exception e) {
+            health.onFailure(System.currentTimeMillis());
+            timer.record(begin, false);
+            requestAuditor.client(path, addr, begin, request, null, e);
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -1,34 +1,22 @@
 package com.soulw.common.nameserver.infrastructure.gateway.impl;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.soulw.common.nameserver.admission.AdmissionFilter;
+import com.soulw.common.nameserver.codec.BinaryCodec;
 import com.soulw.common.nameserver.config.SystemConfig;
-import com.soulw.common.nameserver.domain.client.ClientConfig;
-import com.soulw.common.nameserver.domain.context.gateway.VoteGateway;
-import com.soulw.common.nameserver.domain.context.model.Context;
-import com.soulw.common.nameserver.domain.context.model.Heartbeat;
-import com.soulw.common.nameserver.domain.context.model.Vote;
-import com.soulw.common.nameserver.dto.QueryClients;
 import com.soulw.common.nameserver.dto.Result;
-import com.soulw.common.nameserver.sdk.VoteApi;
-import feign.Client;
-import feign.Feign;
-import feign.Logger;
-import feign.Request;
-import feign.Response;
-import feign.Retryer;
-import feign.gson.GsonDecoder;
-import feign.gson.GsonEncoder;
+import com.soulw.common.nameserver.metrics.ResultTimer;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Dispatcher;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
-import org.apache.commons.collections4.CollectionUtils;
-import org.apache.commons.collections4.MapUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import javax.net.ssl.KeyManager;
@@ -36,14 +24,13 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.io.IOException;
-import java.net.ConnectException;
-import java.nio.charset.StandardCharsets;
+import java.lang.reflect.Type;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.time.Duration;
-import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -56,10 +43,22 @@ import java.util.concurrent.TimeUnit;
  */
 @Component
 @Slf4j
-public class VoteGatewayImpl implements VoteGateway {
+@ConditionalOnProperty(prefix = "ns", name = "transport", havingValue = "http", matchIfMissing = true)
+public class VoteGatewayImpl extends AbstractVoteGateway {
 
     private static final OkHttpClient okHttpClient = getOkHttpClient();
-    private final Map<String, VoteApi> apiCache = Maps.newConcurrentMap();
+    private static final MediaType JSON_TYPE = MediaType.parse("application/json;charset=UTF-8");
+    private static final MediaType BINARY_TYPE = MediaType.parse(BinaryCodec.MEDIA_TYPE);
+    /**
+     * 优先二进制编码，对方不支持该响应类型时返回JSON
+     */
+    private static final String ACCEPT_BINARY = BinaryCodec.MEDIA_TYPE + ", application/json;q=0.5";
+    private static final String ACCEPT_JSON = "application/json";
+    private static final Gson GSON = new Gson();
+    /**
+     * 同时在途的请求数上限，选举、主节点同步、心跳并发发往所有节点
+     */
+    private static final int MAX_REQUESTS = 64;
 
     public static OkHttpClient getOkHttpClient() {
         try {
@@ -80,6 +79,18 @@ public class VoteGatewayImpl implements VoteGateway {
             };
             sslContext.init(new KeyManager[0], new TrustManager[]{trustManager}, new SecureRandom());
 
+            // 异步请求由Dispatcher排队，在途请求数由Dispatcher限制，超出的请求排队而非被拒绝；
+            // 请求结束时在原线程中提交下一个请求，此时原线程仍占用线程池，线程池不能限制为在途请求上限
+            Dispatcher dispatcher = new Dispatcher(new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(false), new ThreadFactoryBuilder()
+                    .setNameFormat("httpPool-%s")
+                    .setPriority(Thread.NORM_PRIORITY)
+                    .setUncaughtExceptionHandler((t, e) -> log.error("uncaught exception, thread={}", t, e))
+                    .setDaemon(true)
+                    .build()));
+            dispatcher.setMaxRequests(MAX_REQUESTS);
+            dispatcher.setMaxRequestsPerHost(MAX_REQUESTS);
+
             Duration timeout = Duration.ofSeconds(3);
             OkHttpClient client = new OkHttpClient.Builder()
                     .connectTimeout(timeout)
@@ -90,13 +101,7 @@ public class VoteGatewayImpl implements VoteGateway {
                     .followRedirects(true)
                     .hostnameVerifier((hostname, session) -> true)
                     .sslSocketFactory(sslContext.getSocketFactory(), trustManager)
-                    .dispatcher(new Dispatcher(new ThreadPoolExecutor(20, 20, 30, TimeUnit.MINUTES,
-                            new SynchronousQueue<Runnable>(false), new ThreadFactoryBuilder()
-                            .setNameFormat("httpPool-%s")
-                            .setPriority(Thread.NORM_PRIORITY)
-                            .setUncaughtExceptionHandler((t, e) -> log.error("uncaught exception, thread={}", t, e))
-                            .setDaemon(true)
-                            .build())))
+                    .dispatcher(dispatcher)
                     .build();
             return client;
         } catch (Exception e) {
@@ -105,96 +110,83 @@ public class VoteGatewayImpl implements VoteGateway {
         }
     }
 
+    /**
+     * 异步发送请求，响应在OkHttp回调中解析；开启二进制编码且请求类型受支持时以二进制发送，响应按Content-Type解码
+     *
+     * @param node        节点
+     * @param path        请求路径
+     * @param request     请求体
+     * @param requestType 请求类型，泛型集合须显式指定
+     * @param type        响应类型
+     * @return 响应数据
+     */
     @Override
-    public void slaveHeartbeat(SystemConfig.Node master, Context context) {
-        VoteApi api = getApi(master);
-        Heartbeat request = new Heartbeat();
-        request.setCluster(context.getClusterName());
-        request.setGroupCode(context.getGroupName());
-        SystemConfig config = context.getSystemConfig();
-        request.setClientConfig(new ClientConfig().setIp(config.getIp())
-                .setPort(config.getPort()));
-        check(api.heartbeat(request));
-    }
-
-    private VoteApi getApi(SystemConfig.Node node) {
-        String addr = "http://" + String.join(":", node.getIp(), String.valueOf(node.getPort()));
-
-        return apiCache.computeIfAbsent(addr, e -> Feign.builder()
-                .encoder(new GsonEncoder())
-                .decoder(new GsonDecoder())
-                .logger(new Logger() {
+    protected <T> CompletableFuture<T> post(SystemConfig.Node node, String path, Object request, Type requestType,
+                                          Type type) {
+        String addr = toAddr(node);
+        String url = addr + path;
+        PeerHealth health = health(addr);
+        CompletableFuture<T> r = new CompletableFuture<>();
+        if (!health.tryAcquire(System.currentTimeMillis())) {
+            metrics.peerRejected(addr);
+            r.completeExceptionally(new RuntimeException("节点已熔断, addr=" + addr));
+            return r;
+        }
+        ResultTimer timer = metrics.peerRequest(addr, path);
+        long begin = System.nanoTime();
+        boolean binary = systemConfig.isBinaryPeerCodec() && BinaryCodec.supports(requestType);
+        RequestBody requestBody = binary ? RequestBody.create(BINARY_TYPE, BinaryCodec.encode(request, requestType))
+                : RequestBody.create(JSON_TYPE, GSON.toJson(request));
+        okHttpClient.newCall(new okhttp3.Request.Builder()
+                        .url(url)
+                        .header("Accept", binary && BinaryCodec.supports(type) ? ACCEPT_BINARY : ACCEPT_JSON)
+                        .header(AdmissionFilter.PEER_HEADER, systemConfig.getIp() + ":" + systemConfig.getPort())
+                        .post(requestBody)
+                        .build())
+                .enqueue(new Callback() {
                     @Override
-                    protected void log(String configKey, String format, Object... args) {
-                        log.info(String.format("[" + configKey + "]" + format, args));
+                    public void onFailure(Call call, IOException e) {
+                        health.onFailure(System.currentTimeMillis());
+                        timer.record(begin, false);
+                        requestAuditor.client(path, addr, begin, request, null, e);
+                        r.completeExceptionally(e);
                     }
-                })
-                .client(new Client() {
+
                     @Override
-                    public Response execute(Request request, Request.Options options) throws IOException {
-                        okhttp3.Request.Builder requestBuilder = new okhttp3.Request.Builder()
-                                .url(request.url());
-                        MapUtils.emptyIfNull(request.headers()).forEach((k, v) -> {
-                            if (CollectionUtils.isEmpty(v)) {
-                                return;
+                    public void onResponse(Call call, okhttp3.Response okResp) {
+                        Result<T> resp = null;
+                        try (ResponseBody body = okResp.body()) {
+                            if (okResp.code() >= 500) {
+                                health.onFailure(System.currentTimeMillis());
+                            } else {
+                                health.onSuccess();
                             }
-                            requestBuilder.header(k, v.iterator().next());
-                        });
-
-                        byte[] requestContent = request.body();
-                        requestBuilder.post(RequestBody.create(null, requestContent));
-
-                        Call call = okHttpClient.newCall(requestBuilder.build());
-                        okhttp3.Response okResp = null;
-                        try {
-                            okResp = call.execute();
-                        } catch (ConnectException ce) {
-                            log.error("connect failed, url={}", request.url());
+                            Preconditions.checkState(okResp.isSuccessful() && Objects.nonNull(body),
+                                    "http status " + okResp.code());
+                            // JSON直接从响应流解析，不把响应体转成字符串
+                            resp = isBinary(body.contentType()) ? BinaryCodec.decode(body.bytes(), type)
+                                    : GSON.fromJson(body.charStream(), type);
+                            check(resp);
+                            timer.record(begin, true);
+                            requestAuditor.client(path, addr, begin, request, resp, null);
+                            r.complete(resp.getData());
+                        } catch (Exception e) {
+                            timer.record(begin, false);
+                            requestAuditor.client(path, addr, begin, request, resp, e);
+                            r.completeExceptionally(e);
                         }
-
-                        ResponseBody body = Objects.nonNull(okResp) && okResp.isSuccessful() ? okResp.body() : null;
-                        String responseContent = Objects.nonNull(body) ? body.string() : null;
-
-                        log.info("Send Http Request, url={}, requestBody={}, response={}",
-                                request.url(), new String(requestContent, StandardCharsets.UTF_8), responseContent);
-                        return Response.builder()
-                                .request(request)
-                                .status(Objects.nonNull(okResp) ? okResp.code() : -1)
-                                .body(responseContent, StandardCharsets.UTF_8)
-                                .build();
                     }
-                })
-                .retryer(new Retryer.Default(0, 0, 0))
-                .logLevel(Logger.Level.NONE)
-                .target(VoteApi.class, addr));
+                });
+        return r;
     }
 
-    @Override
-    public Map<String, ClientConfig> queryClients(SystemConfig.Node master) {
-        Result<Map<String, ClientConfig>> resp = getApi(master).queryClusters(new QueryClients());
-        check(resp);
-        return resp.getData();
-    }
-
-    private void check(Result<?> resp) {
-        Preconditions.checkNotNull(resp, "resp is null");
-        Preconditions.checkState(resp.getSuccess(), "failed: " + resp.getMessage());
-    }
-
-    @Override
-    public void sendVoteRequest(SystemConfig.Node node, Vote vote) {
-        Result<Void> resp = getApi(node).acceptVote(vote);
-        try {
-            check(resp);
-        } catch (Exception e) {
-            log.error("Send Vote Request failed, msg={}, vote={}", e.getMessage(), vote);
-            throw new RuntimeException("Send Vote Request failed, msg=" + e.getMessage());
-        }
+    private static boolean isBinary(MediaType contentType) {
+        return Objects.nonNull(contentType) && BinaryCodec.MEDIA_TYPE.equalsIgnoreCase(contentType.type() + "/"
+                + contentType.subtype());
     }
 
     @Override
-    public void sendMasterSync(SystemConfig.Node node, Vote vote) {
-        Result<Void> resp = getApi(node).syncMaster(vote);
-        check(resp);
+    protected String toAddr(SystemConfig.Node node) {
+        return "http://" + String.join(":", node.getIp(), String.valueOf(node.getPort()));
     }
 }
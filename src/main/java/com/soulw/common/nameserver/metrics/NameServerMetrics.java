@@ -0,0 +1,110 @@
+package com.soulw.common.nameserver.metrics;
+
+import com.google.common.collect.Maps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 命名服务指标，由/actuator/prometheus暴露
+ * <p>
+ * 计时器、计数器在启动或首次出现时注册并缓存，请求路径上只做查找和记录，不分配对象；
+ * 注册表大小、任期、复制延迟等状态以仪表盘在采集时读取
+ *
+ * @author SoulW
+ * @since 2024/3/28 10:10
+ */
+@Getter
+@Component
+public class NameServerMetrics {
+    /**
+     * 不输出任何指标，供非Spring环境(基准测试、仿真)使用
+     */
+    public static final NameServerMetrics NOOP = new NameServerMetrics(new CompositeMeterRegistry());
+    static final Duration MIN_LATENCY = Duration.ofNanos(100_000L);
+    static final Duration MAX_LATENCY = Duration.ofSeconds(30);
+    private static final String HTTP_PREFIX = "http://";
+
+    private final MeterRegistry registry;
+    private final ResultTimer heartbeat;
+    private final ResultTimer batchHeartbeat;
+    private final ResultTimer queryClusters;
+    private final ResultTimer acceptVote;
+    private final ResultTimer masterSync;
+    /**
+     * 节点间请求耗时，按节点、路径区分
+     */
+    @Getter(lombok.AccessLevel.NONE)
+    private final Map<String/** addr */, Map<String/** path */, ResultTimer>> peerRequests = Maps.newConcurrentMap();
+    /**
+     * 节点熔断时直接拒绝的请求数
+     */
+    @Getter(lombok.AccessLevel.NONE)
+    private final Map<String/** addr */, Counter> peerRejected = Maps.newConcurrentMap();
+
+    public NameServerMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.heartbeat = endpoint("heartbeat");
+        this.batchHeartbeat = endpoint("heartbeatBatch");
+        this.queryClusters = endpoint("clusters");
+        this.acceptVote = endpoint("accept");
+        this.masterSync = endpoint("masterSync");
+    }
+
+    /**
+     * 节点间请求的耗时统计，失败率为outcome=failure的次数占比
+     *
+     * @param addr 节点地址
+     * @param path 请求路径
+     * @return 耗时统计
+     */
+    public ResultTimer peerRequest(String addr, String path) {
+        Map<String, ResultTimer> paths = peerRequests.get(addr);
+        if (Objects.isNull(paths)) {
+            paths = peerRequests.computeIfAbsent(addr, e -> Maps.newConcurrentMap());
+        }
+        ResultTimer r = paths.get(path);
+        if (Objects.isNull(r)) {
+            r = paths.computeIfAbsent(path, e -> new ResultTimer(registry, "ns.peer.requests",
+                    Tags.of("peer", StringUtils.removeStart(addr, HTTP_PREFIX), "path", e), MIN_LATENCY, MAX_LATENCY));
+        }
+        return r;
+    }
+
+    /**
+     * 记录一次因节点熔断被拒绝的请求
+     *
+     * @param addr 节点地址
+     */
+    public void peerRejected(String addr) {
+        Counter r = peerRejected.get(addr);
+        if (Objects.isNull(r)) {
+            r = peerRejected.computeIfAbsent(addr, e -> Counter.builder("ns.peer.rejected")
+                    .tag("peer", StringUtils.removeStart(e, HTTP_PREFIX))
+                    .register(registry));
+        }
+        r.increment();
+    }
+
+    /**
+     * 创建分片的指标
+     *
+     * @param shard 分片号
+     * @return 分片指标
+     */
+    public ShardMetrics shard(int shard) {
+        return new ShardMetrics(registry, shard);
+    }
+
+    private ResultTimer endpoint(String endpoint) {
+        return new ResultTimer(registry, "ns.server.requests", Tags.of("endpoint", endpoint), MIN_LATENCY, MAX_LATENCY);
+    }
+}
@@ -0,0 +1,50 @@
+package com.soulw.common.nameserver.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按结果区分的耗时统计，成功和失败各一个计时器，注册时创建，记录时不分配对象
+ *
+ * @author SoulW
+ * @since 2024/3/28 10:00
+ */
+public class ResultTimer {
+    private final Timer success;
+    private final Timer failure;
+
+    /**
+     * @param registry 指标注册表
+     * @param name     指标名称
+     * @param tags     公共标签，另加outcome=success/failure
+     * @param min      直方图最小预期值
+     * @param max      直方图最大预期值
+     */
+    public ResultTimer(MeterRegistry registry, String name, Tags tags, Duration min, Duration max) {
+        this.success = build(registry, name, tags.and("outcome", "success"), min, max);
+        this.failure = build(registry, name, tags.and("outcome", "failure"), min, max);
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param startNanos 开始时间，{@link System#nanoTime()}
+     * @param success    是否成功
+     */
+    public void record(long startNanos, boolean success) {
+        (success ? this.success : this.failure).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer build(MeterRegistry registry, String name, Tags tags, Duration min, Duration max) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(min)
+                .maximumExpectedValue(max)
+                .register(registry);
+    }
+}
@@ -0,0 +1,80 @@
+package com.soulw.common.nameserver.metrics;
+
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 单个分片的指标，均带shard标签
+ *
+ * @author SoulW
+ * @since 2024/3/28 10:30
+ */
+public class ShardMetrics {
+    private final MeterRegistry registry;
+    private final Tags tags;
+    /**
+     * 选举耗时，outcome=success表示当选
+     */
+    @Getter
+    private final ResultTimer election;
+    /**
+     * 从节点定时从主节点拉取同步的耗时
+     */
+    @Getter
+    private final ResultTimer clusterSync;
+    /**
+     * 各集群、分组的客户端数，定时刷新
+     */
+    private final MultiGauge registryClients;
+
+    public ShardMetrics(MeterRegistry registry, int shard) {
+        this.registry = registry;
+        this.tags = Tags.of("shard", String.valueOf(shard));
+        this.election = new ResultTimer(registry, "ns.election", tags, NameServerMetrics.MIN_LATENCY,
+                NameServerMetrics.MAX_LATENCY);
+        this.clusterSync = new ResultTimer(registry, "ns.cluster.sync", tags, NameServerMetrics.MIN_LATENCY,
+                NameServerMetrics.MAX_LATENCY);
+        this.registryClients = MultiGauge.builder("ns.registry.clients")
+                .tags(tags)
+                .register(registry);
+    }
+
+    /**
+     * 注册仪表盘，采集时调用函数读取当前值
+     *
+     * @param name      指标名称
+     * @param obj       读取对象，强引用
+     * @param function  读取函数
+     * @param extraTags 额外标签，键值交替
+     */
+    public <T> void gauge(String name, T obj, ToDoubleFunction<T> function, String... extraTags) {
+        Gauge.builder(name, obj, function)
+                .tags(tags.and(extraTags))
+                .strongReference(true)
+                .register(registry);
+    }
+
+    /**
+     * 刷新各集群、分组的客户端数，已不存在的分组随之移除
+     *
+     * @param sizes 集群 -> 分组 -> 客户端数
+     */
+    public void updateGroupSizes(Map<String, Map<String, Integer>> sizes) {
+        List<MultiGauge.Row<?>> rows = Lists.newArrayList();
+        for (Map.Entry<String, Map<String, Integer>> cluster : sizes.entrySet()) {
+            for (Map.Entry<String, Integer> group : cluster.getValue().entrySet()) {
+                rows.add(MultiGauge.Row.of(Tags.of("cluster", cluster.getKey(), "group", group.getKey()),
+                        group.getValue()));
+            }
+        }
+        registryClients.register(rows, true);
+    }
+}
@@ -0,0 +1,68 @@
+package com.soulw.common.nameserver.sdk;
+
+import com.soulw.common.nameserver.codec.BinaryCodec;
+import feign.RequestTemplate;
+import feign.Response;
+import feign.Util;
+import feign.codec.Decoder;
+import feign.codec.Encoder;
+import feign.gson.GsonDecoder;
+import feign.gson.GsonEncoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * {@link VoteApi}的二进制编解码，请求类型受支持时以二进制发送，否则退回JSON；
+ * 总是声明可接受二进制响应，响应按Content-Type解码
+ *
+ * @author SoulW
+ * @since 2024/3/29 16:00
+ */
+public class BinaryFeignCodec implements Encoder, Decoder {
+    private static final String CONTENT_TYPE = "Content-Type";
+    private static final String ACCEPT = "Accept";
+    private static final String ACCEPT_BINARY = BinaryCodec.MEDIA_TYPE + ", application/json;q=0.5";
+
+    private final GsonEncoder jsonEncoder = new GsonEncoder();
+    private final GsonDecoder jsonDecoder = new GsonDecoder();
+
+    @Override
+    public void encode(Object object, Type bodyType, RequestTemplate template) {
+        template.removeHeader(ACCEPT);
+        template.header(ACCEPT, ACCEPT_BINARY);
+        if (!BinaryCodec.supports(bodyType)) {
+            jsonEncoder.encode(object, bodyType, template);
+            return;
+        }
+        template.removeHeader(CONTENT_TYPE);
+        template.header(CONTENT_TYPE, BinaryCodec.MEDIA_TYPE);
+        template.body(BinaryCodec.encode(object, bodyType), null);
+    }
+
+    @Override
+    public Object decode(Response response, Type type) throws IOException {
+        if (!isBinary(response) || Objects.isNull(response.body())) {
+            return jsonDecoder.decode(response, type);
+        }
+        try (InputStream in = response.body().asInputStream()) {
+            return BinaryCodec.decode(Util.toByteArray(in), type);
+        }
+    }
+
+    private static boolean isBinary(Response response) {
+        Collection<String> contentType = response.headers().get(CONTENT_TYPE);
+        if (Objects.isNull(contentType)) {
+            return false;
+        }
+        for (String value : contentType) {
+            if (value.toLowerCase().startsWith(BinaryCodec.MEDIA_TYPE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,574 @@
+package com.soulw.common.nameserver.sdk;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.service.impl.ShardedVoteService;
+import com.soulw.common.nameserver.domain.registry.Registry;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.Result;
+import com.soulw.common.nameserver.dto.WatchClients;
+import feign.Feign;
+import feign.Request;
+import feign.Retryer;
+import lombok.Data;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务发现客户端，本地缓存订阅的集群、分组下的实例，查询直接读取内存，不经过网络
+ * <p>
+ * 首次查询某个集群、分组时同步拉取一次所在分片的全量，之后每个分片一个后台线程通过{@link WatchApi}监听增量，
+ * 只保留订阅范围内的实例；实例变化时回调监听器。订阅的实例定期写入本地快照文件，
+ * 启动时命名服务器不可达则先使用快照，恢复连接后以服务端数据为准
+ *
+ * @author SoulW
+ * @since 2024/3/31 15:00
+ */
+@Slf4j
+public class DiscoveryClient {
+    private static final Gson GSON = new Gson();
+    private static final String SNAPSHOT = "discovery-snapshot.json";
+    /**
+     * 连续失败时的最大重试间隔
+     */
+    private static final long MAX_RETRY_INTERVAL = 30_000L;
+
+    private final Config config;
+    private final List<VoteApi> voteApis = Lists.newArrayList();
+    private final List<WatchApi> watchApis = Lists.newArrayList();
+    /**
+     * 当前使用的命名服务器下标，请求失败后切换到下一个
+     */
+    private final AtomicInteger current = new AtomicInteger();
+    private final Map<String/** cluster/group */, Subscription> subscriptions = Maps.newConcurrentMap();
+    private final Map<Integer/** shard */, ShardSync> syncs = Maps.newConcurrentMap();
+    private final ExecutorService watchers = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("discoveryWatcher-%s")
+            .setUncaughtExceptionHandler((t, e) -> log.error(e.getMessage(), e))
+            .build());
+    /**
+     * 回调监听器及写快照，单线程保证同一订阅的回调按变化顺序执行
+     */
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("discoveryClient-%s")
+            .setUncaughtExceptionHandler((t, e) -> log.error(e.getMessage(), e))
+            .build());
+    private final File snapshotFile;
+    /**
+     * 启动时读取的本地快照，命名服务器不可达时使用
+     */
+    private final RegistryDelta localSnapshot;
+    private volatile boolean dirty;
+    private volatile boolean running = true;
+
+    /**
+     * 创建服务发现客户端
+     *
+     * @param config 配置
+     */
+    public DiscoveryClient(Config config) {
+        Preconditions.checkNotNull(config, "config is null");
+        Preconditions.checkArgument(Objects.nonNull(config.getAddresses()) && !config.getAddresses().isEmpty(),
+                "addresses is empty");
+        this.config = config;
+        BinaryFeignCodec codec = new BinaryFeignCodec();
+        // 监听请求由服务端挂起，读超时需大于挂起时间
+        Request.Options options = new Request.Options(config.getConnectTimeout(), TimeUnit.MILLISECONDS,
+                config.getWatchTimeout() + config.getConnectTimeout(), TimeUnit.MILLISECONDS, true);
+        for (String address : config.getAddresses()) {
+            Feign.Builder builder = Feign.builder()
+                    .encoder(codec)
+                    .decoder(codec)
+                    .options(options)
+                    .retryer(new Retryer.Default(0, 0, 0));
+            voteApis.add(builder.target(VoteApi.class, address));
+            watchApis.add(builder.target(WatchApi.class, address));
+        }
+        this.snapshotFile = StringUtils.isBlank(config.getSnapshotDir()) ? null : new File(config.getSnapshotDir(), SNAPSHOT);
+        this.localSnapshot = readSnapshot();
+        if (Objects.nonNull(snapshotFile)) {
+            scheduler.scheduleWithFixedDelay(this::writeSnapshot, config.getSnapshotInterval(),
+                    config.getSnapshotInterval(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 查询实例，首次查询时订阅该集群、分组并同步加载，之后直接读取本地缓存
+     *
+     * @param cluster 集群
+     * @param group   分组
+     * @return 实例列表，不可修改
+     */
+    public List<ClientConfig> getInstances(String cluster, String group) {
+        return subscribe(cluster, group).getInstances();
+    }
+
+    /**
+     * 订阅集群、分组，已订阅时直接返回
+     *
+     * @param cluster 集群
+     * @param group   分组
+     * @return 订阅
+     */
+    public Subscription subscribe(String cluster, String group) {
+        Preconditions.checkState(running, "client is shutdown");
+        String clusterName = StringUtils.defaultIfBlank(cluster, Registry.DEFAULT_CLUSTER);
+        String groupName = StringUtils.defaultIfBlank(group, Registry.DEFAULT_GROUP);
+        Subscription exists = subscriptions.get(key(clusterName, groupName));
+        if (Objects.nonNull(exists)) {
+            return exists;
+        }
+        synchronized (this) {
+            exists = subscriptions.get(key(clusterName, groupName));
+            if (Objects.nonNull(exists)) {
+                return exists;
+            }
+            return doSubscribe(clusterName, groupName);
+        }
+    }
+
+    /**
+     * 订阅集群、分组并添加监听器，添加后立即以当前实例回调一次
+     *
+     * @param cluster  集群
+     * @param group    分组
+     * @param listener 监听器，在回调线程中执行，不应阻塞
+     * @return 订阅
+     */
+    public Subscription subscribe(String cluster, String group, Listener listener) {
+        Preconditions.checkNotNull(listener, "listener is null");
+        Subscription subscription = subscribe(cluster, group);
+        subscription.listeners.add(listener);
+        scheduler.execute(() -> notify(listener, new ChangeEvent(subscription, subscription.instances,
+                subscription.instances, Collections.emptyList())));
+        return subscription;
+    }
+
+    /**
+     * 移除监听器，订阅及本地缓存保留
+     *
+     * @param cluster  集群
+     * @param group    分组
+     * @param listener 监听器
+     */
+    public void unsubscribe(String cluster, String group, Listener listener) {
+        Subscription subscription = subscriptions.get(key(StringUtils.defaultIfBlank(cluster, Registry.DEFAULT_CLUSTER),
+                StringUtils.defaultIfBlank(group, Registry.DEFAULT_GROUP)));
+        if (Objects.nonNull(subscription)) {
+            subscription.listeners.remove(listener);
+        }
+    }
+
+    /**
+     * 关闭客户端，关闭前写入一次快照
+     */
+    public void shutdown() {
+        running = false;
+        watchers.shutdownNow();
+        scheduler.shutdownNow();
+        writeSnapshot();
+    }
+
+    private Subscription doSubscribe(String cluster, String group) {
+        int shard = ShardedVoteService.route(cluster, group, config.getShards());
+        Subscription subscription = new Subscription(cluster, group);
+        ShardSync sync = syncs.computeIfAbsent(shard, ShardSync::new);
+        synchronized (sync) {
+            sync.subscriptions.add(subscription);
+        }
+        try {
+            // 重新拉取分片全量，新订阅与已有订阅从同一版本开始监听
+            apply(sync, fetch(shard));
+        } catch (Exception e) {
+            log.error("subscribe() load failed, cluster={}, group={}, msg={}", cluster, group, e.getMessage());
+            current.incrementAndGet();
+            restore(sync, subscription);
+        }
+        subscriptions.put(key(cluster, group), subscription);
+        if (!sync.started) {
+            sync.started = true;
+            watchers.execute(() -> watchLoop(sync));
+        }
+        return subscription;
+    }
+
+    /**
+     * 命名服务器不可达时使用本地快照中该集群、分组的实例，并清空分片版本，恢复连接后由监听线程拉取全量
+     */
+    private void restore(ShardSync sync, Subscription subscription) {
+        synchronized (sync) {
+            sync.registryId = null;
+            if (Objects.isNull(localSnapshot)) {
+                return;
+            }
+            for (ClientConfig client : localSnapshot.getUpserts().values()) {
+                if (subscription.contains(client)) {
+                    subscription.clients.put(client.getClientName(), client);
+                }
+            }
+            subscription.fromSnapshot = true;
+            publish(subscription, Lists.newArrayList(subscription.clients.values()), Collections.emptyList());
+            log.warn("subscribe() use local snapshot, cluster={}, group={}, size={}", subscription.cluster,
+                    subscription.group, subscription.clients.size());
+        }
+    }
+
+    private void watchLoop(ShardSync sync) {
+        long retryInterval = config.getRetryInterval();
+        while (running) {
+            try {
+                RegistryDelta delta;
+                if (Objects.isNull(sync.registryId)) {
+                    delta = fetch(sync.shard);
+                } else {
+                    Result<RegistryDelta> resp = watchApis.get(index()).watch(new WatchClients()
+                            .setRegistryId(sync.registryId)
+                            .setRevision(sync.revision)
+                            .setTimeout(config.getWatchTimeout())
+                            .setShard(sync.shard));
+                    delta = unwrap(resp);
+                }
+                apply(sync, delta);
+                retryInterval = config.getRetryInterval();
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("watch() failed, shard={}, retry after {}ms, msg={}", sync.shard, retryInterval, e.getMessage());
+                current.incrementAndGet();
+                try {
+                    Thread.sleep(retryInterval + ThreadLocalRandom.current().nextLong(retryInterval / 2 + 1));
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                retryInterval = Math.min(retryInterval * 2, MAX_RETRY_INTERVAL);
+            }
+        }
+    }
+
+    private RegistryDelta fetch(int shard) {
+        return unwrap(voteApis.get(index()).queryDelta(new QueryDelta().setShard(shard)));
+    }
+
+    private int index() {
+        return Math.floorMod(current.get(), voteApis.size());
+    }
+
+    private static RegistryDelta unwrap(Result<RegistryDelta> resp) {
+        Preconditions.checkNotNull(resp, "resp is null");
+        Preconditions.checkState(Boolean.TRUE.equals(resp.getSuccess()), "failed: " + resp.getMessage());
+        Preconditions.checkNotNull(resp.getData(), "delta is null");
+        return resp.getData();
+    }
+
+    /**
+     * 应用分片增量，只保留订阅范围内的实例；
+     * 订阅时拉取的全量可能比挂起中的监听请求更新，落后于本地版本的增量直接丢弃
+     */
+    private void apply(ShardSync sync, RegistryDelta delta) {
+        boolean full = Boolean.TRUE.equals(delta.getFull());
+        synchronized (sync) {
+            if (!full && (!Objects.equals(delta.getRegistryId(), sync.registryId)
+                    || Objects.isNull(delta.getRevision()) || delta.getRevision() < sync.revision)) {
+                return;
+            }
+            sync.registryId = delta.getRegistryId();
+            sync.revision = Objects.isNull(delta.getRevision()) ? 0L : delta.getRevision();
+            for (Subscription subscription : sync.subscriptions) {
+                List<ClientConfig> upserts = Lists.newArrayList();
+                List<ClientConfig> removes = Lists.newArrayList();
+                if (full) {
+                    for (ClientConfig old : subscription.clients.values()) {
+                        if (!delta.getUpserts().containsKey(old.getClientName())) {
+                            removes.add(old);
+                        }
+                    }
+                } else {
+                    for (String clientName : delta.getRemoves()) {
+                        ClientConfig old = subscription.clients.get(clientName);
+                        if (Objects.nonNull(old)) {
+                            removes.add(old);
+                        }
+                    }
+                }
+                for (ClientConfig client : delta.getUpserts().values()) {
+                    ClientConfig old = subscription.clients.get(client.getClientName());
+                    if (subscription.contains(client)) {
+                        if (Objects.isNull(old) || !isSameInstance(old, client)) {
+                            upserts.add(client);
+                        } else {
+                            // 只刷新心跳时间等，不视为变化
+                            subscription.clients.put(client.getClientName(), client);
+                        }
+                    } else if (Objects.nonNull(old)) {
+                        // 实例移到了其他集群、分组
+                        removes.add(old);
+                    }
+                }
+                boolean recovered = full && subscription.fromSnapshot;
+                subscription.fromSnapshot = false;
+                if (!upserts.isEmpty() || !removes.isEmpty() || recovered) {
+                    removes.forEach(e -> subscription.clients.remove(e.getClientName()));
+                    upserts.forEach(e -> subscription.clients.put(e.getClientName(), e));
+                    publish(subscription, upserts, removes);
+                }
+            }
+        }
+    }
+
+    /**
+     * 发布新的实例列表并通知监听器，调用方持有分片锁
+     */
+    private void publish(Subscription subscription, List<ClientConfig> upserts, List<ClientConfig> removes) {
+        List<ClientConfig> instances = ImmutableList.copyOf(subscription.clients.values());
+        subscription.instances = instances;
+        subscription.updateTime = System.currentTimeMillis();
+        dirty = true;
+        if (subscription.listeners.isEmpty() || (upserts.isEmpty() && removes.isEmpty())) {
+            return;
+        }
+        ChangeEvent event = new ChangeEvent(subscription, instances, upserts, removes);
+        for (Listener listener : subscription.listeners) {
+            scheduler.execute(() -> notify(listener, event));
+        }
+    }
+
+    private static void notify(Listener listener, ChangeEvent event) {
+        try {
+            listener.onChange(event);
+        } catch (Exception e) {
+            log.error("listener error, cluster={}, group={}", event.getCluster(), event.getGroup(), e);
+        }
+    }
+
+    /**
+     * 比较实例内容，忽略心跳时间、租约
+     */
+    private static boolean isSameInstance(ClientConfig a, ClientConfig b) {
+        return Objects.equals(a.getIp(), b.getIp()) && Objects.equals(a.getPort(), b.getPort())
+                && Objects.equals(a.getRole(), b.getRole()) && Objects.equals(a.getExt(), b.getExt());
+    }
+
+    private static String key(String cluster, String group) {
+        return cluster + "/" + group;
+    }
+
+    private RegistryDelta readSnapshot() {
+        if (Objects.isNull(snapshotFile) || !snapshotFile.exists()) {
+            return null;
+        }
+        try {
+            String content = new String(Files.readAllBytes(snapshotFile.toPath()), StandardCharsets.UTF_8);
+            return StringUtils.isBlank(content) ? null : GSON.fromJson(content, RegistryDelta.class);
+        } catch (Exception e) {
+            log.error("readSnapshot() failed, file={}", snapshotFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * 写入订阅的全部实例，先写临时文件再原子替换；原快照中本次未订阅的集群、分组原样保留
+     */
+    private void writeSnapshot() {
+        if (Objects.isNull(snapshotFile) || !dirty) {
+            return;
+        }
+        dirty = false;
+        RegistryDelta snapshot = new RegistryDelta().setFull(true);
+        if (Objects.nonNull(localSnapshot)) {
+            for (ClientConfig client : localSnapshot.getUpserts().values()) {
+                if (!subscriptions.containsKey(key(StringUtils.defaultIfBlank(client.getClusterName(), Registry.DEFAULT_CLUSTER),
+                        StringUtils.defaultIfBlank(client.getGroupName(), Registry.DEFAULT_GROUP)))) {
+                    snapshot.getUpserts().put(client.getClientName(), client);
+                }
+            }
+        }
+        for (Subscription subscription : subscriptions.values()) {
+            for (ClientConfig client : subscription.instances) {
+                snapshot.getUpserts().put(client.getClientName(), client);
+            }
+        }
+        try {
+            File dir = snapshotFile.getParentFile();
+            Preconditions.checkState(dir.isDirectory() || dir.mkdirs(), "mkdirs failed: " + dir);
+            File tmp = new File(dir, SNAPSHOT + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(GSON.toJson(snapshot).getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            }
+            Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            dirty = true;
+            log.error("writeSnapshot() failed, file={}", snapshotFile, e);
+        }
+    }
+
+    /**
+     * 单个分片的同步状态，同一分片的订阅共用一个监听
+     */
+    private static class ShardSync {
+        private final int shard;
+        private final List<Subscription> subscriptions = Lists.newArrayList();
+        private String registryId;
+        private long revision;
+        private boolean started;
+
+        ShardSync(int shard) {
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * 集群、分组订阅
+     *
+     * @author SoulW
+     */
+    public static class Subscription {
+        @Getter
+        private final String cluster;
+        @Getter
+        private final String group;
+        /**
+         * 当前实例，每次变化后整体替换
+         */
+        @Getter
+        private volatile List<ClientConfig> instances = Collections.emptyList();
+        /**
+         * 最近一次变化时间
+         */
+        @Getter
+        private volatile long updateTime = -1;
+        /**
+         * 是否来自本地快照，尚未从命名服务器加载成功
+         */
+        @Getter
+        private volatile boolean fromSnapshot;
+        private final Map<String/** clientName */, ClientConfig> clients = Maps.newLinkedHashMap();
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+        private Subscription(String cluster, String group) {
+            this.cluster = cluster;
+            this.group = group;
+        }
+
+        private boolean contains(ClientConfig client) {
+            return Objects.equals(cluster, StringUtils.defaultIfBlank(client.getClusterName(), Registry.DEFAULT_CLUSTER))
+                    && Objects.equals(group, StringUtils.defaultIfBlank(client.getGroupName(), Registry.DEFAULT_GROUP));
+        }
+    }
+
+    /**
+     * 实例变化事件
+     *
+     * @author SoulW
+     */
+    @Getter
+    public static class ChangeEvent {
+        private final String cluster;
+        private final String group;
+        /**
+         * 变化后的全部实例
+         */
+        private final List<ClientConfig> instances;
+        /**
+         * 新增或内容变化的实例
+         */
+        private final List<ClientConfig> upserts;
+        /**
+         * 被移除的实例
+         */
+        private final List<ClientConfig> removes;
+
+        private ChangeEvent(Subscription subscription, List<ClientConfig> instances, List<ClientConfig> upserts,
+                            List<ClientConfig> removes) {
+            this.cluster = subscription.cluster;
+            this.group = subscription.group;
+            this.instances = instances;
+            this.upserts = upserts;
+            this.removes = removes;
+        }
+    }
+
+    /**
+     * 实例变化监听器
+     *
+     * @author SoulW
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * 订阅的实例发生变化
+         *
+         * @param event 变化事件
+         */
+        void onChange(ChangeEvent event);
+    }
+
+    /**
+     * 服务发现客户端配置
+     *
+     * @author SoulW
+     */
+    @Data
+    @Accessors(chain = true)
+    public static class Config {
+        /**
+         * 命名服务器地址，如 http://127.0.0.1:8080，请求失败后切换到下一个
+         */
+        private List<String> addresses;
+        /**
+         * 注册表分片数，需与服务端ns.shards一致
+         */
+        private int shards = 1;
+        /**
+         * 本地快照目录，为空时不写快照
+         */
+        private String snapshotDir;
+        /**
+         * 写快照间隔(ms)，只在实例变化后写入
+         */
+        private long snapshotInterval = 5_000L;
+        /**
+         * 监听请求挂起时间(ms)
+         */
+        private long watchTimeout = 30_000L;
+        /**
+         * 连接超时(ms)
+         */
+        private long connectTimeout = 3_000L;
+        /**
+         * 失败后的首次重试间隔(ms)，连续失败时翻倍
+         */
+        private long retryInterval = 1_000L;
+    }
+}
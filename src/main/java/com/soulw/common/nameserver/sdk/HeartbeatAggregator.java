@@ -0,0 +1,224 @@
+package com.soulw.common.nameserver.sdk;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Result;
+import feign.Feign;
+import feign.RetryableException;
+import feign.Retryer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 心跳聚合器，同一JVM内注册到同一命名服务器的所有实例，每个周期合并为一次批量心跳请求
+ * <p>
+ * 通过{@link #of(String)}按地址共享实例，也可传入自定义的{@link VoteApi}单独创建
+ *
+ * @author SoulW
+ * @since 2024/3/19 14:40
+ */
+@Slf4j
+public class HeartbeatAggregator {
+    /**
+     * 默认心跳间隔
+     */
+    public static final long DEFAULT_INTERVAL = 10_000L;
+    /**
+     * 单次请求最多携带的心跳数
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    private static final Map<String/** address */, HeartbeatAggregator> INSTANCES = Maps.newConcurrentMap();
+
+    private final VoteApi voteApi;
+    private final long interval;
+    private final int batchSize;
+    private final Map<String/** clientName */, Registration> registrations = Maps.newConcurrentMap();
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("heartbeatAggregator-%s")
+            .setUncaughtExceptionHandler((t, e) -> log.error(e.getMessage(), e))
+            .build());
+
+    /**
+     * 创建心跳聚合器
+     *
+     * @param voteApi   命名服务器接口
+     * @param interval  心跳间隔(ms)
+     * @param batchSize 单次请求最多携带的心跳数
+     */
+    public HeartbeatAggregator(VoteApi voteApi, long interval, int batchSize) {
+        Preconditions.checkNotNull(voteApi, "voteApi is null");
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+        this.voteApi = voteApi;
+        this.interval = interval;
+        this.batchSize = batchSize;
+        scheduler.scheduleAtFixedRate(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取指定命名服务器地址共享的心跳聚合器
+     *
+     * @param address 命名服务器地址，如 http://127.0.0.1:8080
+     * @return 心跳聚合器
+     */
+    public static HeartbeatAggregator of(String address) {
+        return INSTANCES.computeIfAbsent(address, e -> {
+            BinaryFeignCodec codec = new BinaryFeignCodec();
+            return new HeartbeatAggregator(Feign.builder()
+                    .encoder(codec)
+                    .decoder(codec)
+                    .retryer(new Retryer.Default(0, 0, 0))
+                    .target(VoteApi.class, e), DEFAULT_INTERVAL, DEFAULT_BATCH_SIZE);
+        });
+    }
+
+    /**
+     * 注册实例，注册后立即发送一次心跳
+     *
+     * @param cluster      集群
+     * @param groupCode    分组
+     * @param clientConfig 实例信息
+     * @return 注册句柄
+     */
+    public Registration register(String cluster, String groupCode, ClientConfig clientConfig) {
+        Preconditions.checkNotNull(clientConfig, "clientConfig is null");
+        Registration registration = new Registration(new Heartbeat(cluster, groupCode, clientConfig));
+        registrations.put(clientConfig.getClientName(), registration);
+        scheduler.execute(() -> send(Lists.newArrayList(registration), true));
+        return registration;
+    }
+
+    /**
+     * 注销实例，之后不再发送心跳，由服务端过期移除
+     *
+     * @param registration 注册句柄
+     */
+    public void unregister(Registration registration) {
+        registrations.remove(registration.getClientName(), registration);
+    }
+
+    /**
+     * 关闭聚合器
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        INSTANCES.values().remove(this);
+    }
+
+    private void flush() {
+        List<Registration> batch = Lists.newArrayListWithCapacity(Math.min(batchSize, registrations.size()));
+        for (Registration registration : registrations.values()) {
+            batch.add(registration);
+            if (batch.size() >= batchSize) {
+                send(batch, true);
+                batch = Lists.newArrayListWithCapacity(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(batch, true);
+        }
+    }
+
+    /**
+     * 发送一批心跳
+     *
+     * @param batch 注册句柄
+     * @param retry 被服务端限流或过载拒绝时是否按Retry-After重试一次
+     */
+    private void send(List<Registration> batch, boolean retry) {
+        List<Heartbeat> request = Lists.newArrayListWithCapacity(batch.size());
+        for (Registration registration : batch) {
+            request.add(registration.heartbeat);
+        }
+        try {
+            Result<List<HeartbeatAck>> resp = voteApi.batchHeartbeat(request);
+            Preconditions.checkNotNull(resp, "resp is null");
+            Preconditions.checkState(Boolean.TRUE.equals(resp.getSuccess()), "failed: " + resp.getMessage());
+            List<HeartbeatAck> acks = resp.getData();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < batch.size(); i++) {
+                HeartbeatAck ack = Objects.nonNull(acks) && i < acks.size() ? acks.get(i) : null;
+                batch.get(i).onAck(ack, now);
+            }
+        } catch (RetryableException e) {
+            onFailed(batch, e);
+            if (retry) {
+                retryLater(batch, e.retryAfter());
+            }
+        } catch (Exception e) {
+            onFailed(batch, e);
+        }
+    }
+
+    private void onFailed(List<Registration> batch, Exception e) {
+        log.error("send() failed, size={}, msg={}", batch.size(), e.getMessage());
+        for (Registration registration : batch) {
+            registration.lastError = e.getMessage();
+        }
+    }
+
+    /**
+     * 在服务端建议的时间之后重试，叠加同等长度内的随机抖动，避免被拒绝的客户端同时重试；
+     * 晚于下个心跳周期时不再单独重试
+     *
+     * @param batch      注册句柄
+     * @param retryAfter 服务端建议的重试时间，为null时不重试
+     */
+    private void retryLater(List<Registration> batch, Date retryAfter) {
+        if (Objects.isNull(retryAfter)) {
+            return;
+        }
+        long delay = Math.max(0, retryAfter.getTime() - System.currentTimeMillis());
+        delay += ThreadLocalRandom.current().nextLong(delay + 1);
+        if (delay < interval) {
+            scheduler.schedule(() -> send(batch, false), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 注册句柄
+     *
+     * @author SoulW
+     */
+    @Getter
+    public static class Registration {
+        private final String clientName;
+        private final Heartbeat heartbeat;
+        /**
+         * 最近一次心跳成功时间
+         */
+        private volatile long lastSuccessTime = -1;
+        /**
+         * 最近一次失败信息
+         */
+        private volatile String lastError;
+
+        private Registration(Heartbeat heartbeat) {
+            this.clientName = heartbeat.getClientConfig().getClientName();
+            this.heartbeat = heartbeat;
+        }
+
+        private void onAck(HeartbeatAck ack, long now) {
+            if (Objects.nonNull(ack) && Boolean.TRUE.equals(ack.getSuccess())) {
+                lastSuccessTime = now;
+                lastError = null;
+            } else {
+                lastError = Objects.isNull(ack) ? "no ack" : ack.getMessage();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.soulw.common.nameserver.sdk;
+
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 实例选择器，从实例列表中选出一个实例发起调用
+ * <p>
+ * 选择器按列表对象缓存权重、可用区等派生状态，只在传入的列表对象变化时重建；
+ * 应传入{@link DiscoveryClient.Subscription#getInstances()}这类变化时整体替换、否则保持同一对象的列表，
+ * 每次调用都传入新列表会导致每次重建。实现需无锁，选择过程不分配对象
+ *
+ * @author SoulW
+ * @since 2024/3/31 17:00
+ */
+public interface InstanceSelector {
+    /**
+     * 权重，取自{@link ClientConfig#getExt()}，为0时不参与选择
+     */
+    String WEIGHT = "weight";
+    /**
+     * 可用区，取自{@link ClientConfig#getExt()}
+     */
+    String ZONE = "zone";
+    /**
+     * 未配置权重时的默认权重
+     */
+    int DEFAULT_WEIGHT = 100;
+
+    /**
+     * 选择实例
+     *
+     * @param instances 实例列表，不可修改
+     * @return 选中的实例，列表为空时返回null
+     */
+    ClientConfig select(List<ClientConfig> instances);
+
+    /**
+     * 调用结束，与{@link #select}成对调用；需要统计在途请求的选择器据此减少计数
+     *
+     * @param instance 选中的实例
+     */
+    default void release(ClientConfig instance) {
+    }
+
+    /**
+     * 读取实例权重，未配置或格式不正确时取默认权重，负数视为0
+     *
+     * @param instance 实例
+     * @return 权重
+     */
+    static int weight(ClientConfig instance) {
+        Map<String, Object> ext = instance.getExt();
+        Object value = Objects.isNull(ext) ? null : ext.get(WEIGHT);
+        int weight;
+        if (value instanceof Number) {
+            weight = ((Number) value).intValue();
+        } else if (Objects.nonNull(value)) {
+            weight = NumberUtils.toInt(StringUtils.trim(value.toString()), DEFAULT_WEIGHT);
+        } else {
+            weight = DEFAULT_WEIGHT;
+        }
+        return Math.max(weight, 0);
+    }
+
+    /**
+     * 读取实例可用区
+     *
+     * @param instance 实例
+     * @return 可用区，未配置时返回null
+     */
+    static String zone(ClientConfig instance) {
+        Map<String, Object> ext = instance.getExt();
+        Object value = Objects.isNull(ext) ? null : ext.get(ZONE);
+        return Objects.isNull(value) ? null : StringUtils.trimToNull(value.toString());
+    }
+}
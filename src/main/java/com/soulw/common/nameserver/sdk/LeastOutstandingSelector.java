@@ -0,0 +1,115 @@
+package com.soulw.common.nameserver.sdk;
+
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 两次随机选择(power of two choices)，随机取两个实例，选在途请求数相对权重较少的一个
+ * <p>
+ * 在途请求数在{@link #select}时加一、{@link #release}时减一，调用方需保证成对调用。
+ * 相比全局最少请求不需要遍历或排序，且多个客户端同时选择时不会都集中到同一个最空闲的实例。
+ * 实例列表变化时保留仍存在实例的在途请求数
+ *
+ * @author SoulW
+ * @since 2024/3/31 17:00
+ */
+public class LeastOutstandingSelector implements InstanceSelector {
+    private volatile Stats stats;
+
+    @Override
+    public ClientConfig select(List<ClientConfig> instances) {
+        if (Objects.isNull(instances) || instances.isEmpty()) {
+            return null;
+        }
+        Stats s = stats(instances);
+        int n = s.weights.length;
+        int chosen;
+        if (n == 1) {
+            chosen = 0;
+        } else {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int a = random.nextInt(n);
+            int b = random.nextInt(n - 1);
+            if (b >= a) {
+                b++;
+            }
+            if (s.weights[a] == 0 || s.weights[b] == 0) {
+                // 权重为0的实例只在另一个同样为0时被选中
+                chosen = s.weights[a] >= s.weights[b] ? a : b;
+            } else {
+                // 比较 outstanding/weight，交叉相乘避免除法
+                long loadA = (long) s.outstanding.get(a) * s.weights[b];
+                long loadB = (long) s.outstanding.get(b) * s.weights[a];
+                chosen = loadA <= loadB ? a : b;
+            }
+        }
+        s.outstanding.incrementAndGet(chosen);
+        return instances.get(chosen);
+    }
+
+    @Override
+    public void release(ClientConfig instance) {
+        Stats s = stats;
+        if (Objects.isNull(s) || Objects.isNull(instance)) {
+            return;
+        }
+        Integer index = s.indexes.get(instance.getClientName());
+        if (Objects.nonNull(index)) {
+            s.outstanding.updateAndGet(index, v -> v > 0 ? v - 1 : 0);
+        }
+    }
+
+    /**
+     * 当前在途请求数
+     *
+     * @param instance 实例
+     * @return 在途请求数，实例不在最近一次选择的列表中时返回0
+     */
+    public int getOutstanding(ClientConfig instance) {
+        Stats s = stats;
+        Integer index = Objects.isNull(s) ? null : s.indexes.get(instance.getClientName());
+        return Objects.isNull(index) ? 0 : s.outstanding.get(index);
+    }
+
+    private Stats stats(List<ClientConfig> instances) {
+        Stats s = stats;
+        if (Objects.isNull(s) || s.source != instances) {
+            s = new Stats(instances, s);
+            stats = s;
+        }
+        return s;
+    }
+
+    /**
+     * 按列表下标存放的权重及在途请求数
+     */
+    private static class Stats {
+        private final List<ClientConfig> source;
+        private final int[] weights;
+        private final AtomicIntegerArray outstanding;
+        private final Map<String/** clientName */, Integer> indexes;
+
+        Stats(List<ClientConfig> source, Stats previous) {
+            this.source = source;
+            int n = source.size();
+            this.weights = new int[n];
+            this.outstanding = new AtomicIntegerArray(n);
+            this.indexes = Maps.newHashMapWithExpectedSize(n);
+            for (int i = 0; i < n; i++) {
+                ClientConfig instance = source.get(i);
+                weights[i] = InstanceSelector.weight(instance);
+                indexes.put(instance.getClientName(), i);
+                Integer old = Objects.isNull(previous) ? null : previous.indexes.get(instance.getClientName());
+                if (Objects.nonNull(old)) {
+                    outstanding.set(i, previous.outstanding.get(old));
+                }
+            }
+        }
+    }
+}
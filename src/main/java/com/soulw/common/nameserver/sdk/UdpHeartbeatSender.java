@@ -0,0 +1,353 @@
+package com.soulw.common.nameserver.sdk;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.Result;
+import com.soulw.common.nameserver.transport.HeartbeatDatagram;
+import feign.Feign;
+import feign.Retryer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * UDP续约发送器，实例经HTTP申请租约，之后每个周期把所有租约id打包为定长报文经UDP发送，不等待响应
+ * <p>
+ * 服务端合并处理后回复确认，确认中的过期租约经HTTP重新申请。周期结束时仍未确认的报文视为丢失，
+ * 其中的租约立即改用HTTP续约；丢失比例超过阈值时之后若干周期全部改用HTTP，再尝试恢复UDP。
+ * 服务端需配置ns.udpPortOffset
+ *
+ * @author SoulW
+ * @since 2024/3/31 10:00
+ */
+@Slf4j
+public class UdpHeartbeatSender {
+    /**
+     * 默认续约间隔
+     */
+    public static final long DEFAULT_INTERVAL = 10_000L;
+    /**
+     * 默认丢包阈值，一个周期内未确认的报文超过该比例时退回HTTP
+     */
+    public static final double DEFAULT_LOSS_THRESHOLD = 0.1;
+    /**
+     * 退回HTTP后持续的周期数
+     */
+    private static final int FALLBACK_ROUNDS = 6;
+    private static final Map<String/** address */, UdpHeartbeatSender> INSTANCES = Maps.newConcurrentMap();
+
+    private final VoteApi voteApi;
+    private final double lossThreshold;
+    private final DatagramChannel channel;
+    private final Map<Long/** leaseId */, Registration> leases = Maps.newConcurrentMap();
+    /**
+     * 已发送未确认的报文
+     */
+    private final Map<Integer/** seq */, long[]> inflight = Maps.newConcurrentMap();
+    private final AtomicInteger seq = new AtomicInteger();
+    private final ByteBuffer out = ByteBuffer.allocate(HeartbeatDatagram.MAX_SIZE);
+    private final ScheduledExecutorService scheduler;
+    /**
+     * 上个周期经UDP发送的报文数，只在调度线程中访问
+     */
+    private int sent;
+    /**
+     * 剩余的HTTP续约周期数，只在调度线程中访问
+     */
+    private int fallbackRounds;
+
+    /**
+     * 创建UDP续约发送器
+     *
+     * @param voteApi       命名服务器接口，用于申请租约及退回HTTP续约
+     * @param target        服务端UDP地址
+     * @param interval      续约间隔(ms)，需小于租约有效期
+     * @param lossThreshold 丢包阈值
+     */
+    public UdpHeartbeatSender(VoteApi voteApi, InetSocketAddress target, long interval, double lossThreshold) {
+        Preconditions.checkNotNull(voteApi, "voteApi is null");
+        Preconditions.checkNotNull(target, "target is null");
+        this.voteApi = voteApi;
+        this.lossThreshold = lossThreshold;
+        try {
+            this.channel = DatagramChannel.open();
+            this.channel.connect(target);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("udpHeartbeatSender-%s")
+                .setUncaughtExceptionHandler((t, e) -> log.error(e.getMessage(), e))
+                .build();
+        this.scheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+        threadFactory.newThread(this::receive).start();
+        scheduler.scheduleAtFixedRate(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取指定命名服务器共享的UDP续约发送器
+     *
+     * @param address       命名服务器地址，如 http://127.0.0.1:8080
+     * @param udpPortOffset 服务端ns.udpPortOffset
+     * @return UDP续约发送器
+     */
+    public static UdpHeartbeatSender of(String address, int udpPortOffset) {
+        return INSTANCES.computeIfAbsent(address, e -> {
+            URI uri = URI.create(e);
+            BinaryFeignCodec codec = new BinaryFeignCodec();
+            return new UdpHeartbeatSender(Feign.builder()
+                    .encoder(codec)
+                    .decoder(codec)
+                    .retryer(new Retryer.Default(0, 0, 0))
+                    .target(VoteApi.class, e), new InetSocketAddress(uri.getHost(), uri.getPort() + udpPortOffset),
+                    DEFAULT_INTERVAL, DEFAULT_LOSS_THRESHOLD);
+        });
+    }
+
+    /**
+     * 经HTTP申请租约并注册挂在租约上的实例，之后由本发送器续约
+     *
+     * @param grant 租约申请
+     * @return 注册句柄
+     */
+    public Registration register(LeaseGrant grant) {
+        Preconditions.checkNotNull(grant, "grant is null");
+        Registration registration = new Registration(grant, grant(grant));
+        leases.put(registration.lease.getLeaseId(), registration);
+        return registration;
+    }
+
+    /**
+     * 注销，撤销租约，挂在租约上的实例一并移除
+     *
+     * @param registration 注册句柄
+     */
+    public void unregister(Registration registration) {
+        Lease lease = registration.lease;
+        leases.remove(lease.getLeaseId(), registration);
+        try {
+            voteApi.revokeLease(lease);
+        } catch (Exception e) {
+            log.error("revokeLease() failed, leaseId={}, msg={}", lease.getLeaseId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭发送器，租约到期后由服务端移除
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("close channel failed", e);
+        }
+        INSTANCES.values().remove(this);
+    }
+
+    private void flush() {
+        // step1. 上个周期未确认的报文视为丢失，其中的租约立即改用HTTP续约
+        List<long[]> unacked = Lists.newArrayList();
+        for (Iterator<Integer> it = inflight.keySet().iterator(); it.hasNext(); ) {
+            long[] ids = inflight.remove(it.next());
+            if (Objects.nonNull(ids)) {
+                unacked.add(ids);
+            }
+        }
+        if (sent > 0 && unacked.size() > sent * lossThreshold && fallbackRounds == 0) {
+            log.warn("udp heartbeat lost {}/{}, fall back to http", unacked.size(), sent);
+            fallbackRounds = FALLBACK_ROUNDS;
+        }
+        if (!unacked.isEmpty()) {
+            keepaliveHttp(concat(unacked));
+        }
+        // step2. 续约当前全部租约
+        long[] ids = leases.keySet().stream().mapToLong(Long::longValue).toArray();
+        sent = 0;
+        if (ids.length == 0) {
+            return;
+        }
+        if (fallbackRounds > 0) {
+            fallbackRounds--;
+            keepaliveHttp(ids);
+            return;
+        }
+        List<long[]> failed = Lists.newArrayList();
+        long now = System.currentTimeMillis();
+        for (int from = 0; from < ids.length; from += HeartbeatDatagram.MAX_LEASES) {
+            long[] chunk = Arrays.copyOfRange(ids, from, Math.min(ids.length, from + HeartbeatDatagram.MAX_LEASES));
+            int s = seq.incrementAndGet();
+            inflight.put(s, chunk);
+            HeartbeatDatagram.write(out, HeartbeatDatagram.TYPE_KEEPALIVE, s, now, chunk, 0, chunk.length);
+            try {
+                channel.write(out);
+                sent++;
+            } catch (IOException e) {
+                inflight.remove(s);
+                failed.add(chunk);
+            }
+        }
+        if (!failed.isEmpty()) {
+            keepaliveHttp(concat(failed));
+        }
+    }
+
+    /**
+     * 接收确认，确认晚于周期结束时已按丢失处理，直接忽略
+     */
+    private void receive() {
+        ByteBuffer in = ByteBuffer.allocate(HeartbeatDatagram.MAX_SIZE + 1);
+        while (channel.isOpen()) {
+            try {
+                in.clear();
+                channel.read(in);
+                in.flip();
+                HeartbeatDatagram ack = HeartbeatDatagram.read(in);
+                if (Objects.isNull(ack) || ack.getType() != HeartbeatDatagram.TYPE_ACK) {
+                    continue;
+                }
+                long[] ids = inflight.remove(ack.getSeq());
+                if (Objects.isNull(ids)) {
+                    continue;
+                }
+                onRenewed(ids, ack.getLeaseIds(), System.currentTimeMillis());
+                if (ack.getLeaseIds().length > 0) {
+                    scheduler.execute(() -> regrant(ack.getLeaseIds()));
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (Exception e) {
+                // 服务端端口不可达等错误，对应报文按丢失处理
+                log.debug("receive ack failed, msg={}", e.getMessage());
+            }
+        }
+    }
+
+    private void keepaliveHttp(long[] ids) {
+        try {
+            Result<long[]> resp = voteApi.keepalive(ids);
+            Preconditions.checkNotNull(resp, "resp is null");
+            Preconditions.checkState(Boolean.TRUE.equals(resp.getSuccess()), "failed: " + resp.getMessage());
+            long[] missing = Objects.isNull(resp.getData()) ? new long[0] : resp.getData();
+            onRenewed(ids, missing, System.currentTimeMillis());
+            if (missing.length > 0) {
+                regrant(missing);
+            }
+        } catch (Exception e) {
+            log.error("keepalive() failed, size={}, msg={}", ids.length, e.getMessage());
+            for (long id : ids) {
+                Registration registration = leases.get(id);
+                if (Objects.nonNull(registration)) {
+                    registration.lastError = e.getMessage();
+                }
+            }
+        }
+    }
+
+    private void onRenewed(long[] ids, long[] missing, long now) {
+        for (long id : ids) {
+            Registration registration = leases.get(id);
+            if (Objects.isNull(registration)) {
+                continue;
+            }
+            boolean expired = false;
+            for (long m : missing) {
+                expired |= m == id;
+            }
+            if (!expired) {
+                registration.lastSuccessTime = now;
+                registration.lastError = null;
+            }
+        }
+    }
+
+    /**
+     * 租约已过期，经HTTP重新申请，申请失败时保留原租约id，下个周期再次续约失败后重试
+     */
+    private void regrant(long[] expired) {
+        for (long id : expired) {
+            Registration registration = leases.remove(id);
+            if (Objects.isNull(registration)) {
+                continue;
+            }
+            try {
+                registration.lease = grant(registration.grant);
+                registration.lastSuccessTime = System.currentTimeMillis();
+                registration.lastError = null;
+                log.info("lease regranted, old={}, new={}", id, registration.lease.getLeaseId());
+            } catch (Exception e) {
+                log.error("grantLease() failed, leaseId={}, msg={}", id, e.getMessage());
+                registration.lastError = e.getMessage();
+            }
+            leases.put(registration.lease.getLeaseId(), registration);
+        }
+    }
+
+    private Lease grant(LeaseGrant grant) {
+        Result<Lease> resp = voteApi.grantLease(grant);
+        Preconditions.checkNotNull(resp, "resp is null");
+        Preconditions.checkState(Boolean.TRUE.equals(resp.getSuccess()) && Objects.nonNull(resp.getData()),
+                "failed: " + resp.getMessage());
+        return resp.getData();
+    }
+
+    private static long[] concat(List<long[]> chunks) {
+        long[] r = new long[chunks.stream().mapToInt(e -> e.length).sum()];
+        int n = 0;
+        for (long[] chunk : chunks) {
+            System.arraycopy(chunk, 0, r, n, chunk.length);
+            n += chunk.length;
+        }
+        return r;
+    }
+
+    /**
+     * 注册句柄
+     *
+     * @author SoulW
+     */
+    @Getter
+    public static class Registration {
+        private final LeaseGrant grant;
+        /**
+         * 当前租约，过期重新申请后更新
+         */
+        private volatile Lease lease;
+        /**
+         * 最近一次续约成功时间
+         */
+        private volatile long lastSuccessTime;
+        /**
+         * 最近一次失败信息
+         */
+        private volatile String lastError;
+
+        private Registration(LeaseGrant grant, Lease lease) {
+            this.grant = grant;
+            this.lease = lease;
+            this.lastSuccessTime = System.currentTimeMillis();
+        }
+    }
+}
@@ -3,11 +3,21 @@ package com.soulw.common.nameserver.sdk;
 import com.soulw.common.nameserver.domain.client.ClientConfig;
 import com.soulw.common.nameserver.domain.context.model.Heartbeat;
 import com.soulw.common.nameserver.domain.context.model.Vote;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
 import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
 import com.soulw.common.nameserver.dto.Result;
 import feign.Headers;
 import feign.RequestLine;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -21,12 +31,36 @@ public interface VoteApi {
     @RequestLine("POST /vote/heartbeat")
     Result<Void> heartbeat(Heartbeat request);
 
+    @RequestLine("POST /vote/heartbeat/batch")
+    Result<List<HeartbeatAck>> batchHeartbeat(List<Heartbeat> requests);
+
+    @RequestLine("POST /vote/lease/grant")
+    Result<Lease> grantLease(LeaseGrant grant);
+
+    @RequestLine("POST /vote/lease/keepalive")
+    Result<long[]> keepalive(long[] leaseIds);
+
+    @RequestLine("POST /vote/lease/revoke")
+    Result<Void> revokeLease(Lease lease);
+
     @RequestLine("POST /vote/clusters")
     Result<Map<String, ClientConfig>> queryClusters(QueryClients queryClients);
 
+    @RequestLine("POST /vote/clusters/delta")
+    Result<RegistryDelta> queryDelta(QueryDelta queryDelta);
+
     @RequestLine("POST /vote/master/sync")
     Result<Void> syncMaster(Vote vote);
 
+    @RequestLine("POST /vote/replicate")
+    Result<QueryDelta> replicate(ReplicationBatch batch);
+
+    @RequestLine("POST /vote/gossip")
+    Result<Void> gossip(GossipMessage message);
+
+    @RequestLine("POST /vote/gossip/digest")
+    Result<GossipDiff> digest(GossipDigest digest);
+
     @RequestLine("POST /vote/accept")
     Result<Void> acceptVote(Vote vote);
 
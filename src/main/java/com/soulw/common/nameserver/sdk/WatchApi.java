@@ -0,0 +1,21 @@
+package com.soulw.common.nameserver.sdk;
+
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.Result;
+import com.soulw.common.nameserver.dto.WatchClients;
+import feign.Headers;
+import feign.RequestLine;
+
+/**
+ * 注册表监听接口，服务端挂起请求直到注册表变化或超时，
+ * 客户端读超时需大于{@link WatchClients#getTimeout()}
+ *
+ * @author SoulW
+ * @since 2024/3/15 11:40
+ */
+@Headers({"Content-Type:application/json;charset=UTF-8", "Accept: */*"})
+public interface WatchApi {
+
+    @RequestLine("POST /vote/watch")
+    Result<RegistryDelta> watch(WatchClients watchClients);
+}
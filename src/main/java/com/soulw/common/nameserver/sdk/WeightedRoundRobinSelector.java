@@ -0,0 +1,104 @@
+package com.soulw.common.nameserver.sdk;
+
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 平滑加权轮询
+ * <p>
+ * 实例列表变化时按平滑加权轮询算法预先生成一个调度周期的选择顺序，同一实例的选中位置尽量分散；
+ * 之后每次选择只递增计数取下一个位置，无锁且不分配对象。权重之和超过{@link #MAX_SCHEDULE}时按比例缩小，
+ * 每个权重非0的实例至少保留一个位置
+ *
+ * @author SoulW
+ * @since 2024/3/31 17:00
+ */
+public class WeightedRoundRobinSelector implements InstanceSelector {
+    /**
+     * 单个调度周期的最大长度，实例数更多时取实例数
+     */
+    static final int MAX_SCHEDULE = 4096;
+
+    private final AtomicLong counter = new AtomicLong();
+    private volatile Schedule schedule;
+
+    @Override
+    public ClientConfig select(List<ClientConfig> instances) {
+        if (Objects.isNull(instances) || instances.isEmpty()) {
+            return null;
+        }
+        Schedule s = schedule;
+        if (Objects.isNull(s) || s.source != instances) {
+            // 并发重建时结果相同，后写入的覆盖即可
+            s = new Schedule(instances);
+            schedule = s;
+        }
+        int[] order = s.order;
+        return instances.get(order[(int) ((counter.getAndIncrement() & Long.MAX_VALUE) % order.length)]);
+    }
+
+    /**
+     * 一个调度周期的选择顺序
+     */
+    private static class Schedule {
+        private final List<ClientConfig> source;
+        private final int[] order;
+
+        Schedule(List<ClientConfig> source) {
+            this.source = source;
+            int n = source.size();
+            int[] weights = new int[n];
+            long total = 0;
+            for (int i = 0; i < n; i++) {
+                weights[i] = InstanceSelector.weight(source.get(i));
+                total += weights[i];
+            }
+            // 全部权重为0时退化为普通轮询
+            if (total == 0) {
+                Arrays.fill(weights, 1);
+                total = n;
+            }
+            int max = Math.max(MAX_SCHEDULE, n);
+            if (total > max) {
+                for (int i = 0; i < n; i++) {
+                    if (weights[i] > 0) {
+                        weights[i] = (int) Math.max(1, (long) weights[i] * max / total);
+                    }
+                }
+            } else {
+                int gcd = 0;
+                for (int weight : weights) {
+                    gcd = gcd(gcd, weight);
+                }
+                for (int i = 0; i < n; i++) {
+                    weights[i] /= gcd;
+                }
+            }
+            total = 0;
+            for (int weight : weights) {
+                total += weight;
+            }
+            this.order = new int[(int) total];
+            int[] current = new int[n];
+            for (int k = 0; k < order.length; k++) {
+                int best = -1;
+                for (int i = 0; i < n; i++) {
+                    current[i] += weights[i];
+                    if (weights[i] > 0 && (best < 0 || current[i] > current[best])) {
+                        best = i;
+                    }
+                }
+                current[best] -= order.length;
+                order[k] = best;
+            }
+        }
+
+        private static int gcd(int a, int b) {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.soulw.common.nameserver.sdk;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 同可用区优先，本可用区可用实例足够时只在本可用区内选择，否则在全部实例中选择，具体选择交给委托的选择器
+ * <p>
+ * 本可用区的实例列表在实例列表变化时计算一次并缓存，委托的选择器每次拿到同一个列表对象，其派生状态同样只在变化时重建
+ *
+ * @author SoulW
+ * @since 2024/3/31 17:00
+ */
+public class ZoneAwareSelector implements InstanceSelector {
+    private final String zone;
+    private final int minInstances;
+    private final InstanceSelector delegate;
+    private volatile Partition partition;
+
+    /**
+     * 创建同可用区优先的选择器
+     *
+     * @param zone         本地可用区，为空时不区分可用区
+     * @param minInstances 本可用区至少有多少个权重非0的实例时才只在本可用区内选择
+     * @param delegate     实际执行选择的选择器
+     */
+    public ZoneAwareSelector(String zone, int minInstances, InstanceSelector delegate) {
+        Preconditions.checkNotNull(delegate, "delegate is null");
+        Preconditions.checkArgument(minInstances > 0, "minInstances must be positive");
+        this.zone = StringUtils.trimToNull(zone);
+        this.minInstances = minInstances;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ClientConfig select(List<ClientConfig> instances) {
+        if (Objects.isNull(instances) || instances.isEmpty()) {
+            return null;
+        }
+        if (Objects.isNull(zone)) {
+            return delegate.select(instances);
+        }
+        Partition p = partition;
+        if (Objects.isNull(p) || p.source != instances) {
+            p = new Partition(instances, zone, minInstances);
+            partition = p;
+        }
+        return delegate.select(p.candidates);
+    }
+
+    @Override
+    public void release(ClientConfig instance) {
+        delegate.release(instance);
+    }
+
+    /**
+     * 实例列表对应的候选实例
+     */
+    private static class Partition {
+        private final List<ClientConfig> source;
+        /**
+         * 本可用区实例足够时为本可用区实例，否则为全部实例
+         */
+        private final List<ClientConfig> candidates;
+
+        Partition(List<ClientConfig> source, String zone, int minInstances) {
+            this.source = source;
+            ImmutableList.Builder<ClientConfig> local = ImmutableList.builder();
+            int available = 0;
+            for (ClientConfig instance : source) {
+                if (zone.equals(InstanceSelector.zone(instance))) {
+                    local.add(instance);
+                    if (InstanceSelector.weight(instance) > 0) {
+                        available++;
+                    }
+                }
+            }
+            this.candidates = available >= minInstances ? local.build() : source;
+        }
+    }
+}
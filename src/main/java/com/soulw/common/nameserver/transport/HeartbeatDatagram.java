@@ -0,0 +1,89 @@
+package com.soulw.common.nameserver.transport;
+
+import com.google.common.base.Preconditions;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * UDP续约报文，定长头部加租约id数组，单个报文不超过一个以太网MTU
+ * <p>
+ * 格式：short魔数 + byte版本 + byte类型 + int序号 + long发送时间 + short租约数 + long[]租约id。
+ * 续约报文携带要续约的租约；确认报文使用相同的序号和发送时间，只携带不存在(已过期)的租约，因此不大于续约报文
+ *
+ * @author SoulW
+ * @since 2024/3/31 10:00
+ */
+@Getter
+public class HeartbeatDatagram {
+    public static final int TYPE_KEEPALIVE = 1;
+    public static final int TYPE_ACK = 2;
+    /**
+     * 单个报文最多携带的租约数，1472(MTU减IP、UDP头)内
+     */
+    public static final int MAX_LEASES = 180;
+    private static final short MAGIC = 0x4E53;
+    private static final byte VERSION = 1;
+    private static final int HEADER = 2 + 1 + 1 + 4 + 8 + 2;
+    public static final int MAX_SIZE = HEADER + MAX_LEASES * 8;
+
+    private final int type;
+    private final int seq;
+    /**
+     * 发送方时间戳(ms)，确认报文原样带回，用于计算往返耗时；不同机器时钟不一致，服务端不据此判断过期
+     */
+    private final long timestamp;
+    private final long[] leaseIds;
+
+    private HeartbeatDatagram(int type, int seq, long timestamp, long[] leaseIds) {
+        this.type = type;
+        this.seq = seq;
+        this.timestamp = timestamp;
+        this.leaseIds = leaseIds;
+    }
+
+    /**
+     * 写入报文，写入前清空缓冲区，写入后切换为读模式
+     *
+     * @param buf       缓冲区，容量不小于{@link #MAX_SIZE}
+     * @param type      类型
+     * @param seq       序号
+     * @param timestamp 发送时间
+     * @param leaseIds  租约id
+     * @param from      起始下标
+     * @param count     租约数，不超过{@link #MAX_LEASES}
+     */
+    public static void write(ByteBuffer buf, int type, int seq, long timestamp, long[] leaseIds, int from, int count) {
+        Preconditions.checkArgument(count <= MAX_LEASES, "too many leases: %s", count);
+        buf.clear();
+        buf.putShort(MAGIC).put(VERSION).put((byte) type).putInt(seq).putLong(timestamp).putShort((short) count);
+        for (int i = from; i < from + count; i++) {
+            buf.putLong(leaseIds[i]);
+        }
+        buf.flip();
+    }
+
+    /**
+     * 解析报文
+     *
+     * @param buf 读模式的缓冲区
+     * @return 报文，格式不正确时返回null
+     */
+    public static HeartbeatDatagram read(ByteBuffer buf) {
+        if (buf.remaining() < HEADER || buf.getShort() != MAGIC || buf.get() != VERSION) {
+            return null;
+        }
+        int type = buf.get();
+        int seq = buf.getInt();
+        long timestamp = buf.getLong();
+        int count = buf.getShort() & 0xFFFF;
+        if (count > MAX_LEASES || buf.remaining() != count * 8) {
+            return null;
+        }
+        long[] leaseIds = new long[count];
+        for (int i = 0; i < count; i++) {
+            leaseIds[i] = buf.getLong();
+        }
+        return new HeartbeatDatagram(type, seq, timestamp, leaseIds);
+    }
+}
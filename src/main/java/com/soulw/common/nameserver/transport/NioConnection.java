@@ -0,0 +1,296 @@
+package com.soulw.common.nameserver.transport;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 长连接，按帧收发，多个请求以请求id区分，可同时在途
+ * <p>
+ * 帧格式：int长度(不含自身) + long请求id + byte方法编号 + 内容，响应使用与请求相同的id和方法编号。
+ * 任意线程调用{@link #send}只把帧放入发送队列，由事件循环线程批量聚合写出；读到完整帧后回调{@link FrameListener}
+ *
+ * @author SoulW
+ * @since 2024/3/30 10:00
+ */
+@Slf4j
+public class NioConnection implements NioHandler {
+    /**
+     * 帧头长度：长度 + 请求id + 方法编号
+     */
+    private static final int HEADER = 4 + 8 + 1;
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+    private static final int READ_BUFFER = 64 * 1024;
+    /**
+     * 单次聚合写出的最大帧数
+     */
+    private static final int WRITE_BATCH = 64;
+
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private final FrameListener listener;
+    private final String remote;
+    private final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+    /**
+     * 是否已提交写出任务，多个线程并发发送时只提交一次
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final ByteBuffer[] batch = new ByteBuffer[WRITE_BATCH];
+    private ByteBuffer readBuf = ByteBuffer.allocate(READ_BUFFER);
+    private SelectionKey key;
+    private boolean writeInterest;
+    private volatile boolean connected;
+
+    private NioConnection(NioEventLoop loop, SocketChannel channel, FrameListener listener, String remote) {
+        this.loop = loop;
+        this.channel = channel;
+        this.listener = listener;
+        this.remote = remote;
+    }
+
+    /**
+     * 发起连接，立即返回，连接建立前发送的帧在连接建立后写出
+     *
+     * @param loop     事件循环
+     * @param addr     对方地址
+     * @param listener 帧回调
+     * @return 连接
+     * @throws IOException 创建通道失败
+     */
+    public static NioConnection connect(NioEventLoop loop, InetSocketAddress addr, FrameListener listener)
+            throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        NioConnection conn = new NioConnection(loop, channel, listener, addr.toString());
+        loop.execute(() -> {
+            try {
+                boolean done = channel.connect(addr);
+                conn.key = loop.register(channel, done ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, conn);
+                if (done) {
+                    conn.onConnected();
+                }
+            } catch (IOException e) {
+                conn.close(e);
+            }
+        });
+        return conn;
+    }
+
+    /**
+     * 接管已接受的连接
+     *
+     * @param loop     事件循环
+     * @param channel  已接受的通道
+     * @param listener 帧回调
+     * @return 连接
+     * @throws IOException 设置通道失败
+     */
+    public static NioConnection accept(NioEventLoop loop, SocketChannel channel, FrameListener listener)
+            throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        NioConnection conn = new NioConnection(loop, channel, listener, String.valueOf(channel.getRemoteAddress()));
+        loop.execute(() -> {
+            try {
+                conn.key = loop.register(channel, SelectionKey.OP_READ, conn);
+                conn.onConnected();
+            } catch (IOException e) {
+                conn.close(e);
+            }
+        });
+        return conn;
+    }
+
+    /**
+     * 发送一帧，可在任意线程调用
+     *
+     * @param id      请求id
+     * @param method  方法编号
+     * @param payload 内容
+     * @return 连接已关闭时返回false
+     */
+    public boolean send(long id, int method, byte[] payload) {
+        if (closed.get()) {
+            return false;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(HEADER + payload.length);
+        frame.putInt(HEADER - 4 + payload.length).putLong(id).put((byte) method).put(payload).flip();
+        out.offer(frame);
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.execute(this::flush);
+        }
+        return true;
+    }
+
+    /**
+     * 关闭连接，丢弃未写出的帧，只回调一次{@link FrameListener#onClose}
+     *
+     * @param cause 原因
+     */
+    public void close(Throwable cause) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("close connection failed, remote={}", remote, e);
+        }
+        out.clear();
+        listener.onClose(this, cause);
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    public String getRemote() {
+        return remote;
+    }
+
+    @Override
+    public void onReady(SelectionKey key) throws IOException {
+        if (key.isConnectable()) {
+            channel.finishConnect();
+            key.interestOps(SelectionKey.OP_READ);
+            onConnected();
+            return;
+        }
+        if (key.isValid() && key.isReadable()) {
+            read();
+        }
+        if (key.isValid() && key.isWritable()) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onClose(Throwable cause) {
+        close(cause);
+    }
+
+    private void onConnected() {
+        connected = true;
+        flush();
+    }
+
+    /**
+     * 读取并解析完整帧，不完整的帧留在缓冲区；缓冲区不足以容纳一帧时扩容，读空后恢复初始大小
+     */
+    private void read() throws IOException {
+        if (channel.read(readBuf) < 0) {
+            throw new EOFException("connection closed by peer");
+        }
+        readBuf.flip();
+        int need = 0;
+        while (readBuf.remaining() >= 4) {
+            int len = readBuf.getInt(readBuf.position());
+            if (len < HEADER - 4 || len > MAX_FRAME) {
+                throw new IOException("invalid frame length " + len + ", remote=" + remote);
+            }
+            if (readBuf.remaining() < 4 + len) {
+                need = 4 + len;
+                break;
+            }
+            readBuf.getInt();
+            long id = readBuf.getLong();
+            int method = readBuf.get() & 0xFF;
+            byte[] payload = new byte[len - (HEADER - 4)];
+            readBuf.get(payload);
+            listener.onFrame(this, id, method, payload);
+        }
+        readBuf.compact();
+        if (need > readBuf.capacity()) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(need, readBuf.capacity() << 1));
+            readBuf.flip();
+            readBuf = bigger.put(readBuf);
+        } else if (readBuf.position() == 0 && readBuf.capacity() > READ_BUFFER) {
+            readBuf = ByteBuffer.allocate(READ_BUFFER);
+        }
+    }
+
+    /**
+     * 聚合写出发送队列中的帧，写不完时关注可写事件，写完后取消
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        if (!connected || closed.get()) {
+            return;
+        }
+        try {
+            while (true) {
+                int n = 0;
+                for (ByteBuffer frame : out) {
+                    batch[n++] = frame;
+                    if (n == WRITE_BATCH) {
+                        break;
+                    }
+                }
+                if (n == 0) {
+                    setWriteInterest(false);
+                    return;
+                }
+                channel.write(batch, 0, n);
+                int done = 0;
+                while (done < n && !batch[done].hasRemaining()) {
+                    out.poll();
+                    done++;
+                }
+                Arrays.fill(batch, 0, n, null);
+                if (done < n) {
+                    setWriteInterest(true);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            close(e);
+        }
+    }
+
+    private void setWriteInterest(boolean interest) {
+        if (writeInterest != interest && key.isValid()) {
+            writeInterest = interest;
+            key.interestOps(interest ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * 帧回调，在事件循环线程中调用，不应阻塞
+     */
+    public interface FrameListener {
+
+        /**
+         * 收到完整帧
+         *
+         * @param conn    连接
+         * @param id      请求id
+         * @param method  方法编号
+         * @param payload 内容
+         */
+        void onFrame(NioConnection conn, long id, int method, byte[] payload);
+
+        /**
+         * 连接关闭
+         *
+         * @param conn  连接
+         * @param cause 原因
+         */
+        void onClose(NioConnection conn, Throwable cause);
+    }
+}
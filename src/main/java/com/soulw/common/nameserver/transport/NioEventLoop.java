@@ -0,0 +1,133 @@
+package com.soulw.common.nameserver.transport;
+
+import com.soulw.common.nameserver.domain.context.service.impl.VoteServiceImpl;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 单线程事件循环，一个Selector处理多个连接的读写；其他线程通过{@link #execute}提交任务，
+ * 注册通道、修改关注事件等Selector操作都在循环线程内执行
+ * <p>
+ * 多个线程同时提交任务时只唤醒一次Selector
+ *
+ * @author SoulW
+ * @since 2024/3/30 10:00
+ */
+@Slf4j
+public class NioEventLoop implements AutoCloseable {
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    /**
+     * 是否已唤醒Selector，循环线程每次select返回后重置
+     */
+    private final AtomicBoolean woken = new AtomicBoolean(false);
+    private volatile boolean running = true;
+
+    public NioEventLoop(String name) {
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.thread = VoteServiceImpl.buildThreadFactory(name).newThread(this::run);
+        this.thread.start();
+    }
+
+    /**
+     * 在循环线程中执行任务
+     *
+     * @param task 任务
+     */
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        if (!inLoop() && woken.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * 当前线程是否为循环线程
+     *
+     * @return 是返回true
+     */
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * 注册通道，只能在循环线程中调用
+     *
+     * @param channel 通道
+     * @param ops     关注的事件
+     * @param handler 事件处理
+     * @return 注册结果
+     * @throws ClosedChannelException 通道已关闭
+     */
+    public SelectionKey register(SelectableChannel channel, int ops, NioHandler handler) throws ClosedChannelException {
+        return channel.register(selector, ops, handler);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                // 循环线程自己提交的任务不会唤醒Selector，有待执行任务时不阻塞
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                woken.set(false);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    NioHandler handler = (NioHandler) key.attachment();
+                    try {
+                        handler.onReady(key);
+                    } catch (Exception e) {
+                        handler.onClose(e);
+                    }
+                }
+                runTasks();
+            } catch (Exception e) {
+                log.error("event loop error", e);
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            ((NioHandler) key.attachment()).onClose(new ClosedChannelException());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.warn("close selector failed", e);
+        }
+    }
+
+    private void runTasks() {
+        for (Runnable task; Objects.nonNull(task = tasks.poll()); ) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("event loop task error", e);
+            }
+        }
+    }
+}
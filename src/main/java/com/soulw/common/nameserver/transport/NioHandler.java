@@ -0,0 +1,28 @@
+package com.soulw.common.nameserver.transport;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+
+/**
+ * 注册到{@link NioEventLoop}的通道事件处理，在循环线程中调用
+ *
+ * @author SoulW
+ * @since 2024/3/30 10:00
+ */
+public interface NioHandler {
+
+    /**
+     * 通道就绪
+     *
+     * @param key 就绪的通道
+     * @throws IOException 读写失败，随后调用{@link #onClose}
+     */
+    void onReady(SelectionKey key) throws IOException;
+
+    /**
+     * 通道出错或事件循环关闭
+     *
+     * @param cause 原因
+     */
+    void onClose(Throwable cause);
+}
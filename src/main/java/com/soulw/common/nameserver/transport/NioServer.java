@@ -0,0 +1,112 @@
+package com.soulw.common.nameserver.transport;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * TCP监听，在第一个事件循环上接受连接，连接按轮询分配到各事件循环
+ *
+ * @author SoulW
+ * @since 2024/3/30 10:00
+ */
+@Slf4j
+public class NioServer implements NioHandler, AutoCloseable {
+    private final NioEventLoop[] loops;
+    private final NioConnection.FrameListener listener;
+    private final ServerSocketChannel serverChannel;
+    private int next;
+
+    /**
+     * 绑定端口并开始接受连接
+     *
+     * @param port     端口
+     * @param threads  IO线程数
+     * @param listener 帧回调
+     * @throws IOException 绑定失败
+     */
+    public NioServer(int port, int threads, NioConnection.FrameListener listener) throws IOException {
+        this.listener = listener;
+        this.loops = new NioEventLoop[Math.max(1, threads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioEventLoop("tcpServerIo-" + i);
+        }
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(new InetSocketAddress(port));
+            register();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void onReady(SelectionKey key) {
+        // 接受失败(如文件句柄耗尽)不关闭监听，下次就绪时重试
+        try {
+            for (SocketChannel channel; Objects.nonNull(channel = serverChannel.accept()); ) {
+                NioEventLoop loop = loops[next++ % loops.length];
+                try {
+                    NioConnection.accept(loop, channel, listener);
+                } catch (IOException e) {
+                    log.warn("accept connection failed", e);
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("accept failed", e);
+        }
+    }
+
+    @Override
+    public void onClose(Throwable cause) {
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            log.warn("close server channel failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        onClose(null);
+        for (NioEventLoop loop : loops) {
+            loop.close();
+        }
+    }
+
+    /**
+     * 在事件循环线程中注册，等待注册完成，注册失败时抛出
+     */
+    private void register() throws IOException {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<IOException> error = new AtomicReference<>();
+        loops[0].execute(() -> {
+            try {
+                loops[0].register(serverChannel, SelectionKey.OP_ACCEPT, this);
+            } catch (IOException e) {
+                error.set(e);
+            } finally {
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        }
+        if (Objects.nonNull(error.get())) {
+            throw error.get();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.soulw.common.nameserver.transport;
+
+import com.google.common.collect.Maps;
+import com.google.gson.reflect.TypeToken;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import com.soulw.common.nameserver.domain.context.model.Vote;
+import com.soulw.common.nameserver.dto.GossipDiff;
+import com.soulw.common.nameserver.dto.GossipDigest;
+import com.soulw.common.nameserver.dto.GossipMessage;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
+import com.soulw.common.nameserver.dto.QueryClients;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+import com.soulw.common.nameserver.dto.Result;
+import lombok.Getter;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TCP传输的请求方法，与HTTP路径一一对应，帧中只写方法编号；请求、响应均按{@link com.soulw.common.nameserver.codec.BinaryCodec}编码
+ *
+ * @author SoulW
+ * @since 2024/3/30 10:00
+ */
+@Getter
+public enum TcpMethod {
+    HEARTBEAT(1, "/vote/heartbeat", Heartbeat.class, Types.VOID_RESULT, false),
+    HEARTBEAT_BATCH(2, "/vote/heartbeat/batch", Types.HEARTBEATS, Types.ACKS_RESULT, false),
+    CLUSTERS(3, "/vote/clusters", QueryClients.class, Types.CLIENTS_RESULT, false),
+    CLUSTERS_DELTA(4, "/vote/clusters/delta", QueryDelta.class, Types.DELTA_RESULT, false),
+    ACCEPT(5, "/vote/accept", Vote.class, Types.VOID_RESULT, true),
+    MASTER_SYNC(6, "/vote/master/sync", Vote.class, Types.VOID_RESULT, true),
+    REPLICATE(7, "/vote/replicate", ReplicationBatch.class, Types.ACK_RESULT, true),
+    GOSSIP(8, "/vote/gossip", GossipMessage.class, Types.VOID_RESULT, true),
+    GOSSIP_DIGEST(9, "/vote/gossip/digest", GossipDigest.class, Types.DIFF_RESULT, true),
+    LEASE_GRANT(10, "/vote/lease/grant", LeaseGrant.class, Types.LEASE_RESULT, false),
+    LEASE_KEEPALIVE(11, "/vote/lease/keepalive/shard", LeaseKeepalive.class, Types.LONGS_RESULT, false),
+    LEASE_REVOKE(12, "/vote/lease/revoke", Lease.class, Types.VOID_RESULT, false);
+
+    private static final TcpMethod[] BY_CODE = new TcpMethod[16];
+    private static final Map<String, TcpMethod> BY_PATH = Maps.newHashMap();
+
+    static {
+        for (TcpMethod method : values()) {
+            BY_CODE[method.code] = method;
+            BY_PATH.put(method.path, method);
+        }
+    }
+
+    /**
+     * 帧中的方法编号
+     */
+    private final int code;
+    /**
+     * 对应的HTTP路径
+     */
+    private final String path;
+    private final Type requestType;
+    private final Type responseType;
+    /**
+     * 是否为选举、复制等节点间控制请求，服务端使用单独线程处理，不受客户端请求积压影响
+     */
+    private final boolean control;
+
+    TcpMethod(int code, String path, Type requestType, Type responseType, boolean control) {
+        this.code = code;
+        this.path = path;
+        this.requestType = requestType;
+        this.responseType = responseType;
+        this.control = control;
+    }
+
+    /**
+     * 按编号查找
+     *
+     * @param code 方法编号
+     * @return 方法，不存在时返回null
+     */
+    public static TcpMethod of(int code) {
+        return code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+
+    /**
+     * 按HTTP路径查找
+     *
+     * @param path 请求路径
+     * @return 方法，不存在时返回null
+     */
+    public static TcpMethod ofPath(String path) {
+        return BY_PATH.get(path);
+    }
+
+    /**
+     * 枚举构造时不能引用自身的静态字段，类型放在单独的类中
+     */
+    private static class Types {
+        static final Type HEARTBEATS = new TypeToken<List<Heartbeat>>() {
+        }.getType();
+        static final Type VOID_RESULT = new TypeToken<Result<Void>>() {
+        }.getType();
+        static final Type CLIENTS_RESULT = new TypeToken<Result<Map<String, ClientConfig>>>() {
+        }.getType();
+        static final Type DELTA_RESULT = new TypeToken<Result<RegistryDelta>>() {
+        }.getType();
+        static final Type ACK_RESULT = new TypeToken<Result<QueryDelta>>() {
+        }.getType();
+        static final Type ACKS_RESULT = new TypeToken<Result<List<HeartbeatAck>>>() {
+        }.getType();
+        static final Type DIFF_RESULT = new TypeToken<Result<GossipDiff>>() {
+        }.getType();
+        static final Type LEASE_RESULT = new TypeToken<Result<Lease>>() {
+        }.getType();
+        static final Type LONGS_RESULT = new TypeToken<Result<long[]>>() {
+        }.getType();
+    }
+}
@@ -0,0 +1,191 @@
+package com.soulw.common.nameserver.codec;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.reflect.TypeToken;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.client.Role;
+import com.soulw.common.nameserver.domain.context.model.Heartbeat;
+import com.soulw.common.nameserver.dto.HeartbeatAck;
+import com.soulw.common.nameserver.dto.Lease;
+import com.soulw.common.nameserver.dto.LeaseGrant;
+import com.soulw.common.nameserver.dto.LeaseKeepalive;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+import com.soulw.common.nameserver.dto.Result;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 二进制编码测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 12:00
+ */
+public class BinaryCodecTest {
+
+    @Test
+    public void heartbeatWithExt() {
+        ClientConfig client = client("10.0.0.1", 8080);
+        client.getExt().put("zone", "a");
+        client.getExt().put("weight", 10);
+        client.getExt().put("big", 1L << 40);
+        client.getExt().put("ratio", 0.5D);
+        client.getExt().put("canary", true);
+        client.getExt().put("none", null);
+        Heartbeat heartbeat = new Heartbeat("c", "g", client, 2);
+        heartbeat.getExt().put("version", "1.0");
+
+        Heartbeat r = roundTrip(heartbeat, Heartbeat.class);
+        assertEquals(heartbeat, r);
+        assertEquals(client.getExt(), r.getClientConfig().getExt());
+    }
+
+    @Test
+    public void nonPrimitiveExtAsJson() {
+        ClientConfig client = client("10.0.0.1", 8080);
+        Map<String, Object> tags = Maps.newHashMap();
+        tags.put("k", "v");
+        client.getExt().put("tags", tags);
+        client.getExt().put("list", Lists.newArrayList(1, 2));
+
+        ClientConfig r = roundTrip(client, ClientConfig.class);
+        assertEquals(tags, r.getExt().get("tags"));
+        assertEquals(Lists.newArrayList(1, 2), r.getExt().get("list"));
+    }
+
+    @Test
+    public void replicationBatch() {
+        RegistryDelta delta = new RegistryDelta().setRegistryId("r1")
+                .setRevision(42L)
+                .setFull(false);
+        for (int i = 0; i < 3; i++) {
+            ClientConfig client = client("10.0.0." + i, 8080 + i);
+            delta.getUpserts().put(client.getClientName(), client);
+        }
+        delta.getRemoves().add("10.0.0.9:8080");
+        ReplicationBatch batch = new ReplicationBatch().setTerm(7L)
+                .setIp("10.0.1.1")
+                .setPort(9000)
+                .setBaseRevision(41L)
+                .setDelta(delta)
+                .setShard(1);
+
+        ReplicationBatch r = roundTrip(batch, ReplicationBatch.class);
+        assertEquals(batch, r);
+    }
+
+    @Test
+    public void emptyCollectionsAndNulls() {
+        RegistryDelta delta = new RegistryDelta().setRevision(0L);
+
+        RegistryDelta r = roundTrip(delta, RegistryDelta.class);
+        assertNull(r.getRegistryId());
+        assertNull(r.getFull());
+        assertEquals(0L, r.getRevision());
+        assertTrue(r.getUpserts().isEmpty());
+        assertTrue(r.getRemoves().isEmpty());
+    }
+
+    @Test
+    public void resultOfAcks() {
+        Type type = new TypeToken<Result<List<HeartbeatAck>>>() {
+        }.getType();
+        List<HeartbeatAck> acks = Lists.newArrayList(
+                new HeartbeatAck().setClientName("a").setSuccess(true),
+                new HeartbeatAck().setClientName("b").setSuccess(false).setMessage("not master"));
+        Result<List<HeartbeatAck>> result = Result.success(acks);
+
+        Result<List<HeartbeatAck>> r = roundTrip(result, type);
+        assertEquals(result, r);
+
+        Result<List<HeartbeatAck>> failed = Result.failed("error");
+        r = roundTrip(failed, type);
+        assertFalse(r.getSuccess());
+        assertEquals("error", r.getMessage());
+        assertNull(r.getData());
+    }
+
+    @Test
+    public void resultOfLongArray() {
+        Type type = new TypeToken<Result<long[]>>() {
+        }.getType();
+        long[] ids = {0L, 1L, Long.MAX_VALUE, 1L << 33};
+
+        Result<long[]> r = roundTrip(Result.success(ids), type);
+        assertArrayEquals(ids, r.getData());
+    }
+
+    @Test
+    public void lease() {
+        LeaseGrant grant = new LeaseGrant().setTtl(10_000L)
+                .setHeartbeats(Lists.newArrayList(new Heartbeat("c", "g", client("10.0.0.1", 8080), 0),
+                        new Heartbeat("c", "g", client("10.0.0.2", 8080), 0)));
+        assertEquals(grant, roundTrip(grant, LeaseGrant.class));
+
+        Lease lease = new Lease().setLeaseId(123L).setTtl(10_000L).setShard(2);
+        assertEquals(lease, roundTrip(lease, Lease.class));
+
+        LeaseKeepalive keepalive = new LeaseKeepalive().setShard(1).setLeaseIds(new long[]{1L, 2L, 3L});
+        LeaseKeepalive r = roundTrip(keepalive, LeaseKeepalive.class);
+        assertEquals(1, r.getShard());
+        assertArrayEquals(keepalive.getLeaseIds(), r.getLeaseIds());
+    }
+
+    @Test
+    public void repeatedStringsWrittenOnce() {
+        List<ClientConfig> shared = Lists.newArrayList();
+        List<ClientConfig> distinct = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            shared.add(client("10.0.0.1", 8000 + i));
+            distinct.add(client("10.0.0.1", 8000 + i).setClusterName("cluster-" + i).setGroupName("group-" + i));
+        }
+        Type type = new TypeToken<List<ClientConfig>>() {
+        }.getType();
+        byte[] sharedData = BinaryCodec.encode(shared, type);
+        byte[] distinctData = BinaryCodec.encode(distinct, type);
+        // 重复的集群、分组只在字符串表中写一次，之后只写下标
+        assertTrue(distinctData.length - sharedData.length >= 99 * ("cluster-0".length() + "group-0".length()));
+        assertEquals(shared, BinaryCodec.decode(sharedData, type));
+        assertEquals(distinct, BinaryCodec.decode(distinctData, type));
+    }
+
+    @Test
+    public void rejectsUnsupportedAndCorrupted() {
+        assertFalse(BinaryCodec.supports(Object.class));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.encode(new Object(), Object.class));
+
+        byte[] data = BinaryCodec.encode(new HeartbeatAck().setClientName("a"), HeartbeatAck.class);
+        byte[] version = data.clone();
+        version[0] = 99;
+        assertThrows(IllegalStateException.class, () -> BinaryCodec.decode(version, HeartbeatAck.class));
+        byte[] trailing = new byte[data.length + 1];
+        System.arraycopy(data, 0, trailing, 0, data.length);
+        assertThrows(IllegalStateException.class, () -> BinaryCodec.decode(trailing, HeartbeatAck.class));
+    }
+
+    private static <T> T roundTrip(T value, Type type) {
+        assertTrue(BinaryCodec.supports(type));
+        return BinaryCodec.decode(BinaryCodec.encode(value, type), type);
+    }
+
+    private static ClientConfig client(String ip, int port) {
+        return new ClientConfig().setClientName(ip + ":" + port)
+                .setIp(ip)
+                .setPort(port)
+                .setRole(Role.SLAVE.name())
+                .setClusterName("c")
+                .setGroupName("g")
+                .setHeartbeatTime(100L);
+    }
+}
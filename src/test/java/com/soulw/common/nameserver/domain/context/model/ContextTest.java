@@ -0,0 +1,110 @@
+package com.soulw.common.nameserver.domain.context.model;
+
+import com.soulw.common.nameserver.config.SystemConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 任期选举规则测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 13:00
+ */
+public class ContextTest {
+    private static final long TIMEOUT = 1_000L;
+
+    private Context context;
+
+    @BeforeEach
+    public void setUp() {
+        SystemConfig systemConfig = new SystemConfig();
+        systemConfig.setElectionTimeout(TIMEOUT);
+        context = new Context();
+        context.setSystemConfig(systemConfig);
+        context.setClientName("127.0.0.1:8080");
+    }
+
+    @Test
+    public void oneVotePerTerm() {
+        assertTrue(context.grantVote(vote("a", 1), 0));
+        assertEquals(1, context.getCurrentTerm());
+        // 同一候选节点重发可再次同意，其它候选节点被拒绝
+        assertTrue(context.grantVote(vote("a", 1), 0));
+        assertFalse(context.grantVote(vote("b", 1), 0));
+
+        // 更高任期重置投票
+        assertTrue(context.grantVote(vote("b", 2), 0));
+        assertEquals(2, context.getCurrentTerm());
+        assertEquals("b", context.getVotedFor());
+    }
+
+    @Test
+    public void rejectStaleTerm() {
+        assertTrue(context.grantVote(vote("a", 3), 0));
+        assertFalse(context.grantVote(vote("b", 2), 0));
+        assertFalse(context.grantPreVote(vote("b", 3), 0));
+        assertFalse(context.acceptLeader(vote("b", 2), 0));
+        assertEquals(3, context.getCurrentTerm());
+    }
+
+    @Test
+    public void rejectWhileLeaderAlive() {
+        assertTrue(context.acceptLeader(vote("leader", 1), 100));
+        assertTrue(context.hasLeader(100 + TIMEOUT - 1));
+
+        // 仍能联系到主节点时，更高任期的预投票和投票都被拒绝，任期不变
+        assertFalse(context.grantPreVote(vote("a", 2), 100 + TIMEOUT - 1));
+        assertFalse(context.grantVote(vote("a", 2), 100 + TIMEOUT - 1));
+        assertEquals(1, context.getCurrentTerm());
+
+        // 超过选举超时后同意
+        assertFalse(context.hasLeader(100 + TIMEOUT));
+        assertTrue(context.grantPreVote(vote("a", 2), 100 + TIMEOUT));
+        assertTrue(context.grantVote(vote("a", 2), 100 + TIMEOUT));
+    }
+
+    @Test
+    public void preVoteKeepsTerm() {
+        assertTrue(context.grantPreVote(vote("a", 5), 0));
+        assertEquals(0, context.getCurrentTerm());
+        assertNull(context.getVotedFor());
+        // 预投票不占用投票
+        assertTrue(context.grantVote(vote("b", 5), 0));
+    }
+
+    @Test
+    public void acceptLeaderAdoptsTerm() {
+        assertEquals(1, context.startElection());
+        assertEquals("127.0.0.1:8080", context.getVotedFor());
+
+        assertTrue(context.acceptLeader(vote("a", 3), 0));
+        assertEquals(3, context.getCurrentTerm());
+        assertEquals("a", context.getVote().getBeginClientName());
+        // 同任期的主节点仍接受
+        assertTrue(context.acceptLeader(vote("a", 3), 0));
+    }
+
+    @Test
+    public void electionDeadline() {
+        context.resetElectionDeadline(0);
+        assertFalse(context.isElectionTimeout(TIMEOUT - 1));
+        assertTrue(context.isElectionTimeout(2 * TIMEOUT));
+
+        context.touchLeader(2 * TIMEOUT);
+        assertFalse(context.isElectionTimeout(3 * TIMEOUT - 1));
+    }
+
+    private static Vote vote(String candidate, long term) {
+        Vote vote = new Vote();
+        vote.setBeginClientName(candidate);
+        vote.setTerm(term);
+        vote.setIp("127.0.0.1");
+        vote.setPort(8080);
+        return vote;
+    }
+}
@@ -0,0 +1,76 @@
+package com.soulw.common.nameserver.domain.context.service.impl;
+
+import com.soulw.common.nameserver.domain.registry.Registry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分片路由测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 14:00
+ */
+public class ShardedVoteServiceTest {
+
+    @Test
+    public void singleShard() {
+        ShardedVoteService service = service(1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, service.route("cluster-" + i, "group-" + i));
+        }
+    }
+
+    @Test
+    public void stableAcrossNodes() {
+        // 各节点独立计算，同一集群、分组必须落在同一分片
+        ShardedVoteService a = service(8);
+        ShardedVoteService b = service(8);
+        for (int i = 0; i < 1000; i++) {
+            int shard = a.route("cluster-" + i % 7, "group-" + i);
+            assertTrue(shard >= 0 && shard < 8);
+            assertEquals(shard, b.route("cluster-" + i % 7, "group-" + i));
+            assertEquals(shard, a.route("cluster-" + i % 7, "group-" + i));
+        }
+        assertEquals(a.route(Registry.DEFAULT_CLUSTER, Registry.DEFAULT_GROUP), a.route(null, ""));
+    }
+
+    @Test
+    public void pinnedValues() {
+        // 路由结果随版本变化会使升级期间新旧节点对同一分组的分片判断不一致
+        ShardedVoteService service = service(8);
+        assertEquals(4, service.route("c", "g"));
+        assertEquals(0, service.route("order", "pay"));
+        assertEquals(4, service.route(null, null));
+    }
+
+    @Test
+    public void growingShardsMovesOnlyToNewShard() {
+        ShardedVoteService before = service(8);
+        ShardedVoteService after = service(9);
+        int moved = 0;
+        int[] counts = new int[8];
+        for (int i = 0; i < 1000; i++) {
+            int from = before.route("cluster", "group-" + i);
+            int to = after.route("cluster", "group-" + i);
+            counts[from]++;
+            if (from != to) {
+                assertEquals(8, to);
+                moved++;
+            }
+        }
+        // 约1/9的分组迁移到新分片，其余不动
+        assertTrue(moved > 50 && moved < 200, "moved=" + moved);
+        for (int count : counts) {
+            assertTrue(count > 60, "count=" + count);
+        }
+    }
+
+    private static ShardedVoteService service(int shards) {
+        ShardedVoteService r = new ShardedVoteService();
+        ReflectionTestUtils.setField(r, "shards", new VoteServiceImpl[shards]);
+        return r;
+    }
+}
@@ -0,0 +1,152 @@
+package com.soulw.common.nameserver.domain.context.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.soulw.common.nameserver.config.SystemConfig;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.client.Role;
+import com.soulw.common.nameserver.domain.context.model.Context;
+import com.soulw.common.nameserver.domain.registry.Registry;
+import com.soulw.common.nameserver.domain.registry.RegistryReplicator;
+import com.soulw.common.nameserver.dto.QueryDelta;
+import com.soulw.common.nameserver.dto.RegistryDelta;
+import com.soulw.common.nameserver.dto.ReplicationBatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 从节点应用复制增量及当选后保留注册表测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 13:30
+ */
+public class VoteServiceImplTest {
+    private Registry master;
+    private VoteServiceImpl slave;
+
+    @BeforeEach
+    public void setUp() {
+        SystemConfig systemConfig = new SystemConfig();
+        Context context = new Context();
+        context.setSystemConfig(systemConfig);
+        slave = new VoteServiceImpl();
+        slave.setSystemConfig(systemConfig);
+        slave.setContext(context);
+        master = new Registry();
+    }
+
+    @Test
+    public void outOfOrderDeltasAppliedInOrder() {
+        replicate(null, master.delta(null, null));
+        assertEquals(0L, slave.getContext().getSyncRevision());
+
+        register("a");
+        RegistryDelta d1 = master.delta(master.getRegistryId(), 0L);
+        register("b");
+        RegistryDelta d2 = master.delta(master.getRegistryId(), 1L);
+        master.remove("a");
+        RegistryDelta d3 = master.delta(master.getRegistryId(), 2L);
+
+        // 前序批次未到，暂存
+        assertEquals(0L, replicate(2L, d3).getRevision());
+        assertEquals(0L, replicate(1L, d2).getRevision());
+        assertTrue(slave.getContext().getClients().isEmpty());
+
+        // 缺口补齐后连同暂存的批次一起按顺序应用
+        assertEquals(3L, replicate(0L, d1).getRevision());
+        assertNull(slave.getContext().getRegistry().get("a"));
+        assertNotNull(slave.getContext().getRegistry().get("b"));
+        assertEquals(1, slave.getContext().getClients().size());
+    }
+
+    @Test
+    public void staleDeltaDropped() {
+        replicate(null, master.delta(null, null));
+        register("a");
+        RegistryDelta d1 = master.delta(master.getRegistryId(), 0L);
+        master.remove("a");
+        RegistryDelta d2 = master.delta(master.getRegistryId(), 1L);
+
+        replicate(0L, d1);
+        assertEquals(2L, replicate(1L, d2).getRevision());
+        // 重发的旧批次不能把已删除的客户端加回来
+        assertEquals(2L, replicate(0L, d1).getRevision());
+        assertNull(slave.getContext().getRegistry().get("a"));
+    }
+
+    @Test
+    public void deltaOfOtherRegistryIgnored() {
+        replicate(null, master.delta(null, null));
+        Registry other = new Registry();
+        other.register("c", "g", "x", this::newClient);
+
+        assertEquals(0L, replicate(0L, other.delta(other.getRegistryId(), 0L)).getRevision());
+        assertNull(slave.getContext().getRegistry().get("x"));
+
+        // 全量同步切换到新的注册表
+        QueryDelta ack = replicate(null, other.delta(null, null));
+        assertEquals(other.getRegistryId(), ack.getRegistryId());
+        assertNotNull(slave.getContext().getRegistry().get("x"));
+    }
+
+    @Test
+    public void electedKeepsRegistry() {
+        SystemConfig systemConfig = slave.getSystemConfig();
+        systemConfig.setIp("10.0.1.2");
+        systemConfig.setPort(8080);
+        systemConfig.setMinNodeLen(1);
+        systemConfig.setNodes(Lists.newArrayList(new SystemConfig.Node().setIp("10.0.1.2").setPort(8080)));
+        Context context = slave.getContext();
+        context.setClusterName(systemConfig.getCluster());
+        context.setGroupName(systemConfig.getClientGroup());
+        context.setClientName(ClientConfig.calculateClientName("10.0.1.2", 8080));
+        slave.setRegistryReplicator(new RegistryReplicator(context.getRegistry(), null,
+                MoreExecutors.directExecutor(), 1, 0));
+
+        // 作为从节点同步到的注册表，本节点记录为从节点角色
+        register("a");
+        master.register(systemConfig.getCluster(), systemConfig.getClientGroup(), context.getClientName(),
+                e -> newClient(e).setIp("10.0.1.2"));
+        replicate(null, master.delta(null, null));
+        String registryId = context.getRegistry().getRegistryId();
+        assertFalse(context.isCurMaster());
+
+        assertEquals(Boolean.TRUE, ReflectionTestUtils.invokeMethod(slave, "doVote"));
+        assertTrue(context.isCurMaster());
+        assertNotNull(context.getRegistry().get("a"));
+        assertEquals(registryId, context.getRegistry().getRegistryId());
+        assertEquals(1L, context.getCurrentTerm());
+    }
+
+    private void register(String clientName) {
+        master.register("c", "g", clientName, this::newClient);
+    }
+
+    private ClientConfig newClient(String clientName) {
+        return new ClientConfig().setClientName(clientName)
+                .setIp("10.0.0.1")
+                .setPort(8080)
+                .setRole(Role.SLAVE.name())
+                .setHeartbeatTime(System.currentTimeMillis());
+    }
+
+    /**
+     * 经JSON往返模拟网络传输，避免主从共享对象
+     */
+    private QueryDelta replicate(Long baseRevision, RegistryDelta delta) {
+        RegistryDelta copy = JSON.parseObject(JSON.toJSONString(delta), RegistryDelta.class);
+        return slave.replicate(new ReplicationBatch().setTerm(1L)
+                .setIp("10.0.1.1")
+                .setPort(8080)
+                .setBaseRevision(baseRevision)
+                .setDelta(copy));
+    }
+}
@@ -0,0 +1,59 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 变更日志测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 14:20
+ */
+public class ChangeLogTest {
+
+    @Test
+    public void keysSinceRevision() {
+        ChangeLog log = new ChangeLog(8);
+        assertEquals(1, log.append("a"));
+        assertEquals(2, log.append("b"));
+        assertEquals(3, log.append("a"));
+
+        assertEquals(Sets.newHashSet("a", "b"), log.keysSince(0));
+        assertEquals(Sets.newHashSet("a", "b"), log.keysSince(1));
+        assertEquals(Sets.newHashSet("a"), log.keysSince(2));
+        assertTrue(log.keysSince(3).isEmpty());
+        // 调用方版本超前或非法时需全量
+        assertNull(log.keysSince(4));
+        assertNull(log.keysSince(-1));
+    }
+
+    @Test
+    public void truncatedLogRequiresFull() {
+        ChangeLog log = new ChangeLog(4);
+        for (int i = 1; i <= 10; i++) {
+            log.append("k" + i);
+        }
+        assertEquals(10, log.revision());
+        // 日志只保留版本7~10
+        assertEquals(Sets.newHashSet("k7", "k8", "k9", "k10"), log.keysSince(6));
+        assertEquals(Sets.newHashSet("k10"), log.keysSince(9));
+        assertNull(log.keysSince(5));
+    }
+
+    @Test
+    public void resetKeepsRevisionIncreasing() {
+        ChangeLog log = new ChangeLog(4);
+        log.append("a");
+        log.append("b");
+        log.reset();
+        assertEquals(2, log.revision());
+        assertTrue(log.keysSince(2).isEmpty());
+        assertNull(log.keysSince(1));
+        assertEquals(3, log.append("c"));
+        assertEquals(Sets.newHashSet("c"), log.keysSince(2));
+    }
+}
@@ -0,0 +1,91 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 过期时间轮测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 14:00
+ */
+public class ExpiryWheelTest {
+
+    @Test
+    public void firesAtDeadline() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(100, 8);
+        wheel.advance(0, (target, now) -> -1);
+        wheel.schedule("a", 250);
+        wheel.schedule("b", 500);
+        List<String> fired = Lists.newArrayList();
+
+        assertEquals(0, wheel.advance(200, (target, now) -> record(fired, target)));
+        assertEquals(1, wheel.advance(300, (target, now) -> record(fired, target)));
+        assertEquals(Lists.newArrayList("a"), fired);
+        assertEquals(1, wheel.advance(500, (target, now) -> record(fired, target)));
+        assertEquals(Lists.newArrayList("a", "b"), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void deadlineBeyondOneRound() {
+        // 8个槽位 * 100ms，到期时间超过一圈时按圈数推迟
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(100, 8);
+        wheel.advance(0, (target, now) -> -1);
+        wheel.schedule("a", 2_000);
+        List<String> fired = Lists.newArrayList();
+        for (long now = 100; now < 2_000; now += 100) {
+            wheel.advance(now, (target, t) -> record(fired, target));
+        }
+        assertTrue(fired.isEmpty());
+        wheel.advance(2_000, (target, t) -> record(fired, target));
+        assertEquals(Lists.newArrayList("a"), fired);
+    }
+
+    @Test
+    public void rescheduleUntilDone() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(100, 8);
+        wheel.advance(0, (target, now) -> -1);
+        wheel.schedule("a", 100);
+        Map<Long, String> fired = Maps.newLinkedHashMap();
+        long[] deadline = {100};
+        for (long now = 100; now <= 1_500; now += 100) {
+            wheel.advance(now, (target, t) -> {
+                fired.put(t, target);
+                // 顺延两次，每次700ms
+                if (fired.size() < 3) {
+                    deadline[0] = t + 700;
+                    return deadline[0];
+                }
+                return -1;
+            });
+        }
+        assertEquals(Lists.newArrayList(100L, 800L, 1_500L), Lists.newArrayList(fired.keySet()));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void skippedTicksAreProcessed() {
+        ExpiryWheel<Integer> wheel = new ExpiryWheel<>(100, 4);
+        wheel.advance(0, (target, now) -> -1);
+        for (int i = 1; i <= 10; i++) {
+            wheel.schedule(i, i * 100L);
+        }
+        assertEquals(10, wheel.size());
+        // 一次推进跨过多圈，所有到期任务都被处理
+        assertEquals(10, wheel.advance(5_000, (target, now) -> -1));
+        assertEquals(0, wheel.size());
+    }
+
+    private static long record(List<String> fired, String target) {
+        fired.add(target);
+        return -1;
+    }
+}
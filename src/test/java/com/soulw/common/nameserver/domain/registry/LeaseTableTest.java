@@ -0,0 +1,93 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 租约表测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 10:30
+ */
+public class LeaseTableTest {
+
+    @Test
+    public void grantKeepaliveRevoke() {
+        LeaseTable table = new LeaseTable();
+        long leaseId = table.grant(1000, 100);
+        assertTrue(leaseId > 0);
+        assertEquals(1100, table.deadline(leaseId));
+        assertTrue(table.attach(leaseId, "a"));
+        assertTrue(table.keepalive(leaseId, 500));
+        assertEquals(1500, table.deadline(leaseId));
+        // 较早的续约时间不回退
+        assertTrue(table.keepalive(leaseId, 300));
+        assertEquals(500, table.keepaliveTime(leaseId));
+
+        Set<String> attached = table.revoke(leaseId);
+        assertEquals(1, attached.size());
+        assertTrue(attached.contains("a"));
+        assertFalse(table.keepalive(leaseId, 600));
+        assertEquals(-1, table.deadline(leaseId));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void resizeAndRemoveKeepOthersReachable() {
+        LeaseTable table = new LeaseTable();
+        List<Long> ids = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++) {
+            ids.add(table.grant(1000, i));
+        }
+        assertEquals(1000, table.size());
+        for (int i = 0; i < ids.size(); i += 2) {
+            table.revoke(ids.get(i));
+        }
+        assertEquals(500, table.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(i % 2 == 1, table.keepalive(ids.get(i), 5000), "leaseId=" + ids.get(i));
+        }
+        for (int i = 1; i < ids.size(); i += 2) {
+            assertEquals(5000, table.keepaliveTime(ids.get(i)));
+        }
+    }
+
+    @Test
+    public void concurrentKeepaliveAndGrant() throws Exception {
+        LeaseTable table = new LeaseTable();
+        long leaseId = table.grant(1000, 0);
+        int threads = 4;
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicBoolean lost = new AtomicBoolean();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    for (long now = 1; now <= 20000; now++) {
+                        if (!table.keepalive(leaseId, now)) {
+                            lost.set(true);
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        // 并发授予触发扩容，续约中的租约不能丢失
+        for (int i = 0; i < 2000; i++) {
+            table.grant(1000, 0);
+        }
+        done.await();
+        assertFalse(lost.get());
+        assertEquals(20000, table.keepaliveTime(leaseId));
+        assertEquals(2001, table.size());
+    }
+}
@@ -0,0 +1,138 @@
+package com.soulw.common.nameserver.domain.registry;
+
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.client.Role;
+import com.soulw.common.nameserver.domain.registry.store.OffHeapClientStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 注册表测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 11:30
+ */
+public class RegistryTest {
+    private static final long EXPIRE_TIME = 1_000L;
+    private static final long TICK_TIME = 100L;
+
+    @Test
+    public void expireAfterMigratingToOverflow() {
+        OffHeapClientStore store = new OffHeapClientStore(16);
+        Registry registry = new Registry(EXPIRE_TIME, TICK_TIME, 100, store);
+        long now = System.currentTimeMillis();
+        registry.expire(now, true);
+        registry.put(client(now, null));
+        // 带扩展信息后从堆外记录移到堆内，记录句柄随之更换
+        registry.put(client(now, "a"));
+        assertEquals(1, store.getOverflowSize());
+
+        assertEquals(0, registry.expire(now + EXPIRE_TIME / 2, true));
+        assertNotNull(registry.get(name()));
+        assertEquals(1, registry.expire(now + EXPIRE_TIME * 3, true));
+        assertNull(registry.get(name()));
+    }
+
+    @Test
+    public void expireAfterMigratingBackToSlab() {
+        OffHeapClientStore store = new OffHeapClientStore(16);
+        Registry registry = new Registry(EXPIRE_TIME, TICK_TIME, 100, store);
+        long now = System.currentTimeMillis();
+        registry.expire(now, true);
+        registry.merge(client(now, "a"));
+        registry.merge(client(now + 1, null));
+        assertEquals(0, store.getOverflowSize());
+        assertEquals(1, registry.size());
+
+        assertEquals(1, registry.expire(now + EXPIRE_TIME * 3, true));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void heartbeatKeepsMigratedClientAlive() {
+        OffHeapClientStore store = new OffHeapClientStore(16);
+        Registry registry = new Registry(EXPIRE_TIME, TICK_TIME, 100, store);
+        long now = System.currentTimeMillis();
+        registry.expire(now, true);
+        registry.put(client(now, null));
+        registry.put(client(now, "a"));
+        for (long t = now; t <= now + EXPIRE_TIME * 3; t += TICK_TIME) {
+            registry.touch(name(), t);
+            assertEquals(0, registry.expire(t, true));
+        }
+        assertNotNull(registry.get(name()));
+        assertEquals("a", registry.get(name()).getExt().get("zone"));
+    }
+
+    @Test
+    public void heartbeatCarriesExt() {
+        Registry registry = new Registry(EXPIRE_TIME, TICK_TIME, 100, new OffHeapClientStore(16));
+        long now = System.currentTimeMillis();
+        Map<String, Object> ext = Maps.newHashMap();
+        ext.put("weight", 50);
+        registry.heartbeat("c", "g", name(), ext, e -> new ClientConfig().setClientName(e)
+                .setIp("10.0.0.1")
+                .setPort(8080), now);
+        assertEquals(50, registry.get(name()).getExt().get("weight"));
+        long revision = registry.getRevision();
+
+        // 扩展信息不变时只刷新心跳，为空时保留已有的扩展信息
+        registry.heartbeat("c", "g", name(), ext, e -> null, now + 1);
+        registry.heartbeat("c", "g", name(), Maps.newHashMap(), e -> null, now + 2);
+        assertEquals(revision, registry.getRevision());
+        assertEquals(now + 2, registry.get(name()).getHeartbeatTime());
+
+        ext.put("weight", 200);
+        registry.heartbeat("c", "g", name(), ext, e -> null, now + 3);
+        assertEquals(revision + 1, registry.getRevision());
+        assertEquals(200, registry.get(name()).getExt().get("weight"));
+        assertEquals(now + 3, registry.get(name()).getHeartbeatTime());
+    }
+
+    @Test
+    public void leaseLongerThanExpireTime() {
+        Registry registry = new Registry(EXPIRE_TIME, TICK_TIME, 100);
+        long now = System.currentTimeMillis();
+        registry.expire(now, true);
+        long leaseId = registry.grantLease(EXPIRE_TIME * 3, now);
+        registry.attachLease(leaseId, registry.put(client(now, null)));
+
+        // 只续约不心跳，超过客户端过期时间后仍按租约到期时间存活
+        for (long t = now; t < now + EXPIRE_TIME * 5; t += TICK_TIME) {
+            if (t == now + EXPIRE_TIME * 2) {
+                assertTrue(registry.keepalive(leaseId, t));
+            }
+            assertEquals(0, registry.expire(t, true));
+            assertNotNull(registry.get(name()));
+        }
+        assertEquals(1, registry.expire(now + EXPIRE_TIME * 5 + TICK_TIME * 2, true));
+        assertNull(registry.get(name()));
+    }
+
+    private static String name() {
+        return ClientConfig.calculateClientName("10.0.0.1", 8080);
+    }
+
+    private static ClientConfig client(long heartbeatTime, String zone) {
+        ClientConfig client = new ClientConfig().setClientName(name())
+                .setIp("10.0.0.1")
+                .setPort(8080)
+                .setRole(Role.SLAVE.name())
+                .setClusterName("c")
+                .setGroupName("g")
+                .setHeartbeatTime(heartbeatTime);
+        Map<String, Object> ext = Maps.newHashMap();
+        if (zone != null) {
+            ext.put("zone", zone);
+        }
+        client.setExt(ext);
+        return client;
+    }
+}
@@ -0,0 +1,142 @@
+package com.soulw.common.nameserver.domain.registry.store;
+
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import com.soulw.common.nameserver.domain.client.Role;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 堆外客户端存储测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 11:00
+ */
+public class OffHeapClientStoreTest {
+
+    @Test
+    public void putReadRemove() {
+        OffHeapClientStore store = new OffHeapClientStore(4);
+        ClientConfig client = client("10.0.0.1", 8080);
+        store.compute(client.getClientName(), e -> client);
+
+        ClientConfig r = store.get(client.getClientName());
+        assertEquals(client.getClientName(), r.getClientName());
+        assertEquals("10.0.0.1", r.getIp());
+        assertEquals(8080, r.getPort());
+        assertEquals(Role.SLAVE.name(), r.getRole());
+        assertEquals(100L, r.getHeartbeatTime());
+        assertEquals(1, store.query("c", "g").size());
+        assertEquals(0, store.getOverflowSize());
+
+        assertTrue(store.remove(store.handle(client.getClientName())));
+        assertNull(store.get(client.getClientName()));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void slotReuseInvalidatesOldHandle() {
+        OffHeapClientStore store = new OffHeapClientStore(4);
+        ClientConfig a = client("10.0.0.1", 1);
+        store.compute(a.getClientName(), e -> a);
+        Object handle = store.handle(a.getClientName());
+        store.compute(a.getClientName(), e -> null);
+        assertNull(store.get(handle));
+
+        // 复用同一槽位，旧句柄的代数不再匹配
+        ClientConfig b = client("10.0.0.2", 2);
+        store.compute(b.getClientName(), e -> b);
+        Object reused = store.handle(b.getClientName());
+        assertEquals((int) (long) (Long) handle, (int) (long) (Long) reused);
+        assertNotEquals(handle, reused);
+        assertNull(store.get(handle));
+        assertFalse(store.remove(handle));
+        assertEquals(b.getClientName(), store.get(reused).getClientName());
+        assertEquals(1, store.getAllocatedBytes() / (4 * 128));
+    }
+
+    @Test
+    public void migrateBetweenSlabAndOverflow() {
+        OffHeapClientStore store = new OffHeapClientStore(4);
+        ClientConfig client = client("10.0.0.1", 8080);
+        String name = client.getClientName();
+        store.compute(name, e -> client);
+        Object offHeap = store.handle(name);
+
+        // 带扩展信息放不进定长记录，移到堆内存储
+        store.compute(name, e -> withExt(e, "zone", "a"));
+        assertEquals(1, store.getOverflowSize());
+        assertEquals(1, store.size());
+        Object onHeap = store.handle(name);
+        assertNotEquals(offHeap, onHeap);
+        assertNull(store.get(offHeap));
+        assertEquals("a", store.get(name).getExt().get("zone"));
+        assertTrue(store.touch(name, "c", "g", 200));
+        assertEquals(200L, store.get(name).getHeartbeatTime());
+
+        // 去掉扩展信息后移回堆外
+        store.compute(name, e -> withExt(e));
+        assertEquals(0, store.getOverflowSize());
+        assertEquals(1, store.size());
+        assertNull(store.get(onHeap));
+        assertEquals(200L, store.get(store.handle(name)).getHeartbeatTime());
+    }
+
+    @Test
+    public void touchKeepsLatestHeartbeat() throws Exception {
+        OffHeapClientStore store = new OffHeapClientStore(64);
+        for (int i = 0; i < 100; i++) {
+            ClientConfig client = client("10.0.0.1", i);
+            store.compute(client.getClientName(), e -> client);
+        }
+        String name = ClientConfig.calculateClientName("10.0.0.1", 7);
+        assertFalse(store.touch(name, "c", "other", 300));
+        assertTrue(store.touch(name, null, null, 300));
+        assertTrue(store.touch(name, "c", "g", 200));
+        assertEquals(300L, store.get(name).getHeartbeatTime());
+
+        int threads = 4;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            new Thread(() -> {
+                try {
+                    for (long now = 1000 + offset; now < 21000; now += threads) {
+                        store.touch(name, "c", "g", now);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        assertEquals(20999L, store.get(name).getHeartbeatTime());
+    }
+
+    private static ClientConfig client(String ip, int port) {
+        return new ClientConfig().setClientName(ClientConfig.calculateClientName(ip, port))
+                .setIp(ip)
+                .setPort(port)
+                .setRole(Role.SLAVE.name())
+                .setClusterName("c")
+                .setGroupName("g")
+                .setHeartbeatTime(100L);
+    }
+
+    private static ClientConfig withExt(ClientConfig client, String... kv) {
+        Map<String, Object> ext = Maps.newHashMap();
+        for (int i = 0; i + 1 < kv.length; i += 2) {
+            ext.put(kv[i], kv[i + 1]);
+        }
+        client.setExt(ext);
+        return client;
+    }
+}
@@ -0,0 +1,128 @@
+package com.soulw.common.nameserver.domain.registry.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分段预写日志测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 11:30
+ */
+public class SegmentedWalTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void readAllAcrossSegments() throws IOException {
+        SegmentedWal wal = new SegmentedWal(dir, 64);
+        for (int i = 0; i < 10; i++) {
+            wal.append(bytes("record-" + i));
+        }
+        // 超过单段大小的记录单独成段
+        byte[] large = new byte[200];
+        Arrays.fill(large, (byte) 7);
+        wal.append(large);
+        wal.close();
+        assertTrue(segments().length > 1);
+
+        List<byte[]> records = new SegmentedWal(dir, 64).readAll();
+        assertEquals(11, records.size());
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(bytes("record-" + i), records.get(i));
+        }
+        assertArrayEquals(large, records.get(10));
+    }
+
+    @Test
+    public void crcMismatchDropsTornTail() throws IOException {
+        SegmentedWal wal = new SegmentedWal(dir, 1024);
+        wal.append(bytes("a"));
+        wal.append(bytes("bb"));
+        wal.append(bytes("ccc"));
+        wal.close();
+
+        // 最后一条记录内容写了一半
+        File segment = segments()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(8 + 1 + 8 + 2 + 8 + 1);
+            raf.write('x');
+        }
+
+        SegmentedWal recovered = new SegmentedWal(dir, 1024);
+        List<byte[]> records = recovered.readAll();
+        assertEquals(2, records.size());
+        assertArrayEquals(bytes("a"), records.get(0));
+        assertArrayEquals(bytes("bb"), records.get(1));
+
+        // 恢复后的写入从新段开始，不覆盖旧段
+        recovered.append(bytes("dddd"));
+        recovered.close();
+        assertEquals(2, segments().length);
+        records = new SegmentedWal(dir, 1024).readAll();
+        assertEquals(3, records.size());
+        assertArrayEquals(bytes("dddd"), records.get(2));
+    }
+
+    @Test
+    public void lengthBeyondSegmentDropsTornTail() throws IOException {
+        SegmentedWal wal = new SegmentedWal(dir, 64);
+        wal.append(bytes("a"));
+        wal.close();
+
+        // 只写了长度，长度超出段内剩余空间
+        File segment = segments()[0];
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            raf.seek(8 + 1);
+            raf.writeInt(1 << 20);
+        }
+
+        List<byte[]> records = new SegmentedWal(dir, 64).readAll();
+        assertEquals(1, records.size());
+        assertArrayEquals(bytes("a"), records.get(0));
+    }
+
+    @Test
+    public void truncateDeletesSealedSegments() throws IOException {
+        SegmentedWal wal = new SegmentedWal(dir, 64);
+        for (int i = 0; i < 10; i++) {
+            wal.append(bytes("record-" + i));
+        }
+        assertTrue(wal.getBytesWritten() > 0);
+        wal.truncate();
+        assertEquals(0, wal.getBytesWritten());
+        assertEquals(0, segments().length);
+
+        wal.append(bytes("after"));
+        wal.close();
+        List<byte[]> records = new SegmentedWal(dir, 64).readAll();
+        assertEquals(1, records.size());
+        assertArrayEquals(bytes("after"), records.get(0));
+    }
+
+    private File[] segments() {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("wal-"));
+        if (Objects.isNull(files)) {
+            return new File[0];
+        }
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
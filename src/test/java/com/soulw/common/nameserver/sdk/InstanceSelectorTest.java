@@ -0,0 +1,138 @@
+package com.soulw.common.nameserver.sdk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.soulw.common.nameserver.domain.client.ClientConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 实例选择器测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 14:30
+ */
+public class InstanceSelectorTest {
+
+    @Test
+    public void weightFromExt() {
+        assertEquals(InstanceSelector.DEFAULT_WEIGHT, InstanceSelector.weight(instance("a", null, null)));
+        assertEquals(20, InstanceSelector.weight(instance("a", 20, null)));
+        assertEquals(20, InstanceSelector.weight(instance("a", " 20 ", null)));
+        assertEquals(InstanceSelector.DEFAULT_WEIGHT, InstanceSelector.weight(instance("a", "x", null)));
+        assertEquals(0, InstanceSelector.weight(instance("a", -1, null)));
+    }
+
+    @Test
+    public void weightedRoundRobinSmooth() {
+        List<ClientConfig> instances = ImmutableList.of(instance("a", 5, null), instance("b", 1, null),
+                instance("c", 1, null));
+        WeightedRoundRobinSelector selector = new WeightedRoundRobinSelector();
+        Map<String, Integer> counts = Maps.newHashMap();
+        String prev = null;
+        int run = 0;
+        for (int i = 0; i < 700; i++) {
+            String name = selector.select(instances).getClientName();
+            counts.merge(name, 1, Integer::sum);
+            // 平滑加权下一个调度周期(7次)内权重最大的实例也不会连续被选中太多次
+            run = i % 7 != 0 && name.equals(prev) ? run + 1 : 1;
+            prev = name;
+            assertTrue(run <= 2, "run=" + run);
+        }
+        assertEquals(500, counts.get("a"));
+        assertEquals(100, counts.get("b"));
+        assertEquals(100, counts.get("c"));
+    }
+
+    @Test
+    public void weightedRoundRobinZeroAndScaledWeights() {
+        WeightedRoundRobinSelector selector = new WeightedRoundRobinSelector();
+        List<ClientConfig> zero = ImmutableList.of(instance("a", 0, null), instance("b", 1, null));
+        for (int i = 0; i < 10; i++) {
+            assertEquals("b", selector.select(zero).getClientName());
+        }
+
+        // 全部为0时退化为普通轮询
+        List<ClientConfig> allZero = ImmutableList.of(instance("a", 0, null), instance("b", 0, null));
+        assertNotEquals(selector.select(allZero).getClientName(), selector.select(allZero).getClientName());
+
+        // 权重之和超出调度周期时按比例缩小，小权重实例仍保留位置
+        List<ClientConfig> large = ImmutableList.of(instance("a", 1_000_000, null), instance("b", 1, null));
+        int b = 0;
+        for (int i = 0; i < WeightedRoundRobinSelector.MAX_SCHEDULE + 1; i++) {
+            if ("b".equals(selector.select(large).getClientName())) {
+                b++;
+            }
+        }
+        assertTrue(b >= 1 && b <= 2, "b=" + b);
+        assertNull(selector.select(ImmutableList.of()));
+    }
+
+    @Test
+    public void leastOutstandingPrefersIdle() {
+        List<ClientConfig> instances = ImmutableList.of(instance("a", null, null), instance("b", null, null));
+        LeastOutstandingSelector selector = new LeastOutstandingSelector();
+        ClientConfig first = selector.select(instances);
+        ClientConfig second = selector.select(instances);
+        // 两个实例时总是比较双方，在途请求较少的一方被选中
+        assertNotEquals(first.getClientName(), second.getClientName());
+        assertEquals(1, selector.getOutstanding(first));
+
+        selector.release(first);
+        selector.release(first);
+        assertEquals(0, selector.getOutstanding(first));
+        assertSame(first, selector.select(instances));
+
+        // 列表变化时保留仍存在实例的在途请求数
+        List<ClientConfig> changed = ImmutableList.of(instances.get(0), instances.get(1), instance("c", null, null));
+        selector.select(changed);
+        assertTrue(selector.getOutstanding(first) >= 1);
+        assertTrue(selector.getOutstanding(second) >= 1);
+    }
+
+    @Test
+    public void leastOutstandingSkipsZeroWeight() {
+        List<ClientConfig> instances = ImmutableList.of(instance("a", 0, null), instance("b", 1, null));
+        LeastOutstandingSelector selector = new LeastOutstandingSelector();
+        for (int i = 0; i < 10; i++) {
+            assertEquals("b", selector.select(instances).getClientName());
+        }
+    }
+
+    @Test
+    public void zoneAware() {
+        List<ClientConfig> instances = ImmutableList.of(instance("a", null, "z1"), instance("b", null, "z2"),
+                instance("c", null, "z1"));
+        ZoneAwareSelector enough = new ZoneAwareSelector("z1", 2, new WeightedRoundRobinSelector());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("z1", InstanceSelector.zone(enough.select(instances)));
+        }
+
+        // 本可用区实例不足时在全部实例中选择
+        ZoneAwareSelector notEnough = new ZoneAwareSelector("z2", 2, new WeightedRoundRobinSelector());
+        Map<String, Integer> counts = Maps.newHashMap();
+        for (int i = 0; i < 30; i++) {
+            counts.merge(notEnough.select(instances).getClientName(), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+    }
+
+    private static ClientConfig instance(String name, Object weight, String zone) {
+        ClientConfig r = new ClientConfig().setClientName(name);
+        if (weight != null) {
+            r.getExt().put(InstanceSelector.WEIGHT, weight);
+        }
+        if (zone != null) {
+            r.getExt().put(InstanceSelector.ZONE, zone);
+        }
+        return r;
+    }
+}
@@ -0,0 +1,204 @@
+package com.soulw.common.nameserver.transport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 长连接帧拆分与重组测试
+ *
+ * @author SoulW
+ * @since 2024/4/1 12:30
+ */
+public class NioConnectionTest {
+    private NioEventLoop loop;
+    private ServerSocketChannel server;
+    private final BlockingQueue<Frame> frames = new LinkedBlockingQueue<>();
+    private final CompletableFuture<Throwable> closed = new CompletableFuture<>();
+    private final NioConnection.FrameListener listener = new NioConnection.FrameListener() {
+        @Override
+        public void onFrame(NioConnection conn, long id, int method, byte[] payload) {
+            frames.offer(new Frame(id, method, payload));
+        }
+
+        @Override
+        public void onClose(NioConnection conn, Throwable cause) {
+            closed.complete(cause);
+        }
+    };
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        loop = new NioEventLoop("nioTest");
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        loop.close();
+        server.close();
+    }
+
+    @Test
+    public void reassembleFrameSplitAcrossReads() throws Exception {
+        try (SocketChannel peer = acceptPeer()) {
+            byte[] frame = encode(7L, 3, payload(100));
+            // 逐字节写出，每次读到的都是半帧
+            for (byte b : frame) {
+                write(peer, new byte[]{b});
+                Thread.sleep(1);
+            }
+            assertFrame(frames.poll(5, TimeUnit.SECONDS), 7L, 3, payload(100));
+        }
+    }
+
+    @Test
+    public void splitMultipleFramesInOneRead() throws Exception {
+        try (SocketChannel peer = acceptPeer()) {
+            ByteBuffer buf = ByteBuffer.allocate(4096);
+            for (int i = 0; i < 10; i++) {
+                buf.put(encode(i, i, payload(i * 10)));
+            }
+            // 最后一帧只写前半部分，与下一次写出的后半部分拼接
+            byte[] last = encode(10L, 10, payload(200));
+            buf.put(last, 0, 50);
+            buf.flip();
+            byte[] head = new byte[buf.remaining()];
+            buf.get(head);
+            write(peer, head);
+            for (int i = 0; i < 10; i++) {
+                assertFrame(frames.poll(5, TimeUnit.SECONDS), i, i, payload(i * 10));
+            }
+            Thread.sleep(50);
+            assertTrue(frames.isEmpty());
+
+            write(peer, Arrays.copyOfRange(last, 50, last.length));
+            assertFrame(frames.poll(5, TimeUnit.SECONDS), 10L, 10, payload(200));
+        }
+    }
+
+    @Test
+    public void frameLargerThanReadBuffer() throws Exception {
+        try (SocketChannel peer = acceptPeer()) {
+            byte[] large = payload(300 * 1024);
+            write(peer, encode(1L, 1, large));
+            assertFrame(frames.poll(5, TimeUnit.SECONDS), 1L, 1, large);
+
+            // 缓冲区恢复后仍能正常读取后续帧
+            write(peer, encode(2L, 2, payload(10)));
+            assertFrame(frames.poll(5, TimeUnit.SECONDS), 2L, 2, payload(10));
+        }
+    }
+
+    @Test
+    public void invalidLengthClosesConnection() throws Exception {
+        try (SocketChannel peer = acceptPeer()) {
+            write(peer, ByteBuffer.allocate(4).putInt(-1).array());
+            Throwable cause = closed.get(5, TimeUnit.SECONDS);
+            assertNotNull(cause);
+            assertTrue(cause instanceof IOException);
+        }
+    }
+
+    @Test
+    public void sendAndReceiveOverConnection() throws Exception {
+        BlockingQueue<Frame> replies = new LinkedBlockingQueue<>();
+        NioConnection client = NioConnection.connect(loop, (InetSocketAddress) server.getLocalAddress(),
+                new NioConnection.FrameListener() {
+                    @Override
+                    public void onFrame(NioConnection conn, long id, int method, byte[] payload) {
+                        replies.offer(new Frame(id, method, payload));
+                    }
+
+                    @Override
+                    public void onClose(NioConnection conn, Throwable cause) {
+                    }
+                });
+        // 连接建立前发送的帧在建立后写出
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(client.send(i, 1, payload(i)));
+        }
+        try (SocketChannel peer = server.accept()) {
+            NioConnection conn = NioConnection.accept(loop, peer, listener);
+            for (int i = 0; i < 1000; i++) {
+                Frame frame = frames.poll(5, TimeUnit.SECONDS);
+                assertFrame(frame, i, 1, payload(i));
+                conn.send(frame.id, frame.method, frame.payload);
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertFrame(replies.poll(5, TimeUnit.SECONDS), i, 1, payload(i));
+            }
+            client.close(null);
+        }
+    }
+
+    /**
+     * 接受一个连接交给被测的{@link NioConnection}，返回对端以便按任意方式写出字节
+     */
+    private SocketChannel acceptPeer() throws IOException {
+        SocketChannel peer = SocketChannel.open(server.getLocalAddress());
+        NioConnection.accept(loop, server.accept(), listener);
+        return peer;
+    }
+
+    private static void write(SocketChannel channel, byte[] data) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private static byte[] encode(long id, int method, byte[] payload) {
+        return ByteBuffer.allocate(4 + 8 + 1 + payload.length)
+                .putInt(8 + 1 + payload.length)
+                .putLong(id)
+                .put((byte) method)
+                .put(payload)
+                .array();
+    }
+
+    private static byte[] payload(int size) {
+        byte[] r = new byte[size];
+        for (int i = 0; i < size; i++) {
+            r[i] = (byte) (i * 31 + size);
+        }
+        return r;
+    }
+
+    private static void assertFrame(Frame frame, long id, int method, byte[] payload) {
+        assertNotNull(frame);
+        assertEquals(id, frame.id);
+        assertEquals(method, frame.method);
+        assertArrayEquals(payload, frame.payload);
+    }
+
+    private static class Frame {
+        private final long id;
+        private final int method;
+        private final byte[] payload;
+
+        Frame(long id, int method, byte[] payload) {
+            this.id = id;
+            this.method = method;
+            this.payload = payload;
+        }
+    }
+}